@@ -2,8 +2,10 @@ package ru.yandex.practicum.filmorate.configs;
 
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @Configuration
+@EnableScheduling
 @ComponentScan("ru.yandex.practicum.filmorate")
 public class AppConfig {
 }
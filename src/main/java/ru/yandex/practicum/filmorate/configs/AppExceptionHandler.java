@@ -13,6 +13,7 @@ import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExceptionHandler;
 import ru.yandex.practicum.filmorate.dto.ProblemDetail;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.exceptions.TooManyRequestsException;
 
 import javax.validation.ConstraintViolationException;
 import java.util.Map;
@@ -32,6 +33,16 @@ public class AppExceptionHandler extends ResponseEntityExceptionHandler {
         return handleExceptionInternal(ex, problemDetail, new HttpHeaders(), HttpStatus.NOT_FOUND, request);
     }
 
+    @ExceptionHandler
+    public ResponseEntity<Object> tooManyRequestsExceptionHandler(TooManyRequestsException ex, WebRequest request) {
+        ProblemDetail problemDetail = new ProblemDetail(
+                HttpStatus.TOO_MANY_REQUESTS,
+                ((ServletWebRequest) request).getRequest().getRequestURI(),
+                ex.getMessage());
+        log.warn(ex.getMessage());
+        return handleExceptionInternal(ex, problemDetail, new HttpHeaders(), HttpStatus.TOO_MANY_REQUESTS, request);
+    }
+
     @ExceptionHandler
     public ResponseEntity<Object> handleConstraintViolationException(ConstraintViolationException ex, WebRequest request) {
         ProblemDetail problemDetail = new ProblemDetail(
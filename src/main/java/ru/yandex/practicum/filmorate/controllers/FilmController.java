@@ -1,10 +1,12 @@
 package ru.yandex.practicum.filmorate.controllers;
 
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.convert.ConversionService;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -14,21 +16,26 @@ import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.dto.CreatedFilmDto;
 import ru.yandex.practicum.filmorate.dto.CreatedGenreDto;
 import ru.yandex.practicum.filmorate.dto.FilmDto;
+import ru.yandex.practicum.filmorate.dto.FilmLikeBatchDto;
 import ru.yandex.practicum.filmorate.dto.UpdateFilmDto;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
-import ru.yandex.practicum.filmorate.models.EventType;
 import ru.yandex.practicum.filmorate.models.Film;
+import ru.yandex.practicum.filmorate.models.FilmLikeOperation;
 import ru.yandex.practicum.filmorate.models.FilmRating;
 import ru.yandex.practicum.filmorate.models.FilmSort;
-import ru.yandex.practicum.filmorate.models.Operation;
 import ru.yandex.practicum.filmorate.services.FilmService;
 import ru.yandex.practicum.filmorate.services.SearchService;
-import ru.yandex.practicum.filmorate.services.UserService;
+import ru.yandex.practicum.filmorate.utils.Paging;
 
 import javax.validation.Valid;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
@@ -38,23 +45,64 @@ import java.util.stream.Collectors;
 @Slf4j
 @RestController
 public class FilmController {
+    private static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+
     private final FilmService filmService;
-    private final UserService userService;
     private final SearchService searchService;
     private final ConversionService conversionService;
+    private final ObjectMapper objectMapper;
 
     /**
-     * Получение всех фильмов
+     * Получение страницы фильмов в порядке возрастания id.
+     * Если страница заполнена целиком, в заголовке X-Next-Cursor возвращается значение after для следующей.
+     * @param after id последнего фильма предыдущей страницы
+     * @param limit размер страницы
      * @return List<CreatedFilmDto>
      */
     @GetMapping("/films")
-    @io.swagger.v3.oas.annotations.Operation(summary = "Получение всех фильмов")
-    public ResponseEntity<List<CreatedFilmDto>> getFilms() {
-        List<CreatedFilmDto> filmsDto = filmService.getFilms()
+    @io.swagger.v3.oas.annotations.Operation(summary = "Получение фильмов постранично")
+    public ResponseEntity<List<CreatedFilmDto>> getFilms(@RequestParam(required = false) Long after,
+                                                         @RequestParam(defaultValue = "100") int limit) {
+        if (after != null && after < 0) {
+            throw new NotFoundException("Значение параметра after не может быть отрицательным");
+        }
+        Paging.checkLimit(limit);
+        List<Film> films = filmService.getFilms(after, limit);
+        List<CreatedFilmDto> filmsDto = films
                 .stream()
                 .map(film -> conversionService.convert(film, CreatedFilmDto.class))
                 .collect(Collectors.toList());
-        return ResponseEntity.ok(filmsDto);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (films.size() == limit) {
+            response.header(Paging.NEXT_CURSOR_HEADER, String.valueOf(films.get(films.size() - 1).getId()));
+        }
+        return response.body(filmsDto);
+    }
+
+    /**
+     * Выгрузка всего каталога фильмов в формате NDJSON: по одному CreatedFilmDto на строку.
+     * Фильмы пишутся в ответ по мере чтения из БД, весь каталог в памяти не собирается.
+     * @return StreamingResponseBody
+     */
+    @GetMapping(path = "/films/export", produces = NDJSON_MEDIA_TYPE)
+    @io.swagger.v3.oas.annotations.Operation(summary = "Выгрузка всех фильмов в формате NDJSON")
+    public ResponseEntity<StreamingResponseBody> exportFilms() {
+        StreamingResponseBody body = outputStream -> {
+            final OutputStream out = new BufferedOutputStream(outputStream);
+            filmService.exportFilms(film -> {
+                try {
+                    out.write(objectMapper.writeValueAsBytes(conversionService.convert(film, CreatedFilmDto.class)));
+                    out.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            out.flush();
+            log.debug("Выполнена выгрузка каталога фильмов");
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NDJSON_MEDIA_TYPE))
+                .body(body);
     }
 
     /**
@@ -146,7 +194,6 @@ public class FilmController {
         }
         Film likedFilm = filmService.likeFilm(filmId, userId);
         log.debug("Пользователь id={} лайкнул фильм id={}", userId, filmId);
-        userService.addEvent(userId, filmId, EventType.LIKE, Operation.ADD);
         return ResponseEntity.ok(conversionService.convert(likedFilm, CreatedFilmDto.class));
     }
 
@@ -169,10 +216,28 @@ public class FilmController {
         }
         Film unlikedFilm = filmService.unlikeFilm(filmId, userId);
         log.debug("Пользователь id={} дизлайкнул фильм id={}", userId, filmId);
-        userService.addEvent(userId, filmId, EventType.LIKE, Operation.REMOVE);
         return ResponseEntity.ok(conversionService.convert(unlikedFilm, CreatedFilmDto.class));
     }
 
+    /**
+     * Пакетная постановка и удаление лайков.
+     * Операции записываются асинхронно пакетами, повторные операции над одной парой фильм-пользователь
+     * схлопываются. Пакет с несуществующими фильмами или пользователями отклоняется целиком.
+     * @param batchDto FilmLikeBatchDto
+     * @return 202 Accepted, 404 при неизвестных id, либо 429 при переполнении очереди
+     */
+    @PostMapping(path = "/films/likes:batch")
+    @io.swagger.v3.oas.annotations.Operation(summary = "Пакетная постановка и удаление лайков")
+    public ResponseEntity<Void> submitFilmLikes(@Valid @RequestBody FilmLikeBatchDto batchDto) {
+        List<FilmLikeOperation> operations = batchDto.getOperations()
+                .stream()
+                .map(dto -> conversionService.convert(dto, FilmLikeOperation.class))
+                .collect(Collectors.toList());
+        filmService.submitFilmLikes(operations);
+        log.debug("Принят пакет из {} операций с лайками", operations.size());
+        return ResponseEntity.accepted().build();
+    }
+
     /**
      * Возвращает список из первых count фильмов по количеству лайков.
      * Если значение параметра count не задано, вернёт первые 10.
@@ -195,6 +260,30 @@ public class FilmController {
         return ResponseEntity.ok(filmsDto);
     }
 
+    /**
+     * Возвращает фильмы, которые чаще всего лайкают вместе с данным.
+     * Если значение параметра count не задано, вернёт первые 10.
+     * @param id id фильма
+     * @param count количество фильмов
+     * @return List<CreatedFilmDto>
+     */
+    @GetMapping(path = "/films/{id}/similar")
+    @io.swagger.v3.oas.annotations.Operation(summary = "Похожие фильмы по совместным лайкам")
+    public ResponseEntity<List<CreatedFilmDto>> getSimilarFilms(@PathVariable long id,
+                                                                @RequestParam(defaultValue = "10") int count) {
+        if (id <= 0) {
+            throw new NotFoundException("Id фильма должен быть положительным");
+        }
+        if (count <= 0) {
+            throw new NotFoundException("Значение параметра count должно быть положительным");
+        }
+        List<CreatedFilmDto> filmsDto = filmService.getSimilarFilms(id, count)
+                .stream()
+                .map(film -> conversionService.convert(film, CreatedFilmDto.class))
+                .collect(Collectors.toList());
+        return ResponseEntity.ok(filmsDto);
+    }
+
     /**
      * Возвращает список фильмов режиссера отсортированных по количеству лайков или году выпуска.
      * @param sortBy способ сортировки
@@ -18,11 +18,8 @@ import ru.yandex.practicum.filmorate.dto.CreatedReviewDto;
 import ru.yandex.practicum.filmorate.dto.ReviewDto;
 import ru.yandex.practicum.filmorate.dto.UpdatedReviewDto;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
-import ru.yandex.practicum.filmorate.models.EventType;
-import ru.yandex.practicum.filmorate.models.Operation;
 import ru.yandex.practicum.filmorate.models.Review;
 import ru.yandex.practicum.filmorate.services.ReviewService;
-import ru.yandex.practicum.filmorate.services.UserService;
 
 import javax.validation.Valid;
 import java.util.List;
@@ -36,7 +33,6 @@ import java.util.stream.Collectors;
 @RequestMapping("/reviews")
 public class ReviewController {
     private final ReviewService reviewService;
-    private final UserService userService;
     private final ConversionService conversionService;
 
     /**
@@ -74,7 +70,6 @@ public class ReviewController {
                 .orElseThrow(() -> new IllegalStateException("Ошибка конвертации ReviewDto->Review. Метод вернул null."));
         Review createdReview = reviewService.createReview(review);
         log.debug("Добавлен новый отзыв на фильм с id={}", createdReview.getFilmId());
-        userService.addEvent(createdReview.getUserId(), createdReview.getId(), EventType.REVIEW, Operation.ADD);
         return ResponseEntity.ok(conversionService.convert(createdReview, CreatedReviewDto.class));
     }
 
@@ -91,7 +86,6 @@ public class ReviewController {
         final Review result = reviewService.updateReview(reviewUpdates)
                 .orElseThrow(() -> new NotFoundException("Отзыв на фильм не найден"));
         log.debug("Изменён отзыв с id={}", reviewUpdates.getId());
-        userService.addEvent(result.getUserId(), result.getId(), EventType.REVIEW, Operation.UPDATE);
         return ResponseEntity.ok(conversionService.convert(result, CreatedReviewDto.class));
     }
 
@@ -109,7 +103,6 @@ public class ReviewController {
         final Review result = reviewService.deleteReviewById(id)
                 .orElseThrow(() -> new NotFoundException("Отзыв не найден"));
         log.debug("Удалён отзыв с id={}", id);
-        userService.addEvent(result.getUserId(), result.getId(), EventType.REVIEW, Operation.REMOVE);
         return ResponseEntity.ok(conversionService.convert(result, CreatedReviewDto.class));
     }
 
@@ -4,6 +4,7 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.convert.ConversionService;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -11,19 +12,24 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import ru.yandex.practicum.filmorate.dto.CreatedEventDto;
 import ru.yandex.practicum.filmorate.dto.CreatedFilmDto;
 import ru.yandex.practicum.filmorate.dto.CreatedUserDto;
 import ru.yandex.practicum.filmorate.dto.UpdateUserDto;
 import ru.yandex.practicum.filmorate.dto.UserDto;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
-import ru.yandex.practicum.filmorate.models.EventType;
-import ru.yandex.practicum.filmorate.models.Operation;
+import ru.yandex.practicum.filmorate.models.Event;
 import ru.yandex.practicum.filmorate.models.User;
+import ru.yandex.practicum.filmorate.services.FeedStreamHub;
 import ru.yandex.practicum.filmorate.services.RecommendationService;
 import ru.yandex.practicum.filmorate.services.UserService;
+import ru.yandex.practicum.filmorate.utils.AppProperties;
+import ru.yandex.practicum.filmorate.utils.Paging;
 
 import javax.validation.Valid;
 import java.util.List;
@@ -39,19 +45,34 @@ public class UserController {
     private final UserService userService;
     private final ConversionService conversionService;
     private final RecommendationService recommendationService;
+    private final FeedStreamHub feedStreamHub;
+    private final AppProperties appProperties;
 
     /**
-     * Получение списка всех пользователей
+     * Получение страницы пользователей в порядке возрастания id.
+     * Если страница заполнена целиком, в заголовке X-Next-Cursor возвращается значение after для следующей.
+     * @param after id последнего пользователя предыдущей страницы
+     * @param limit размер страницы
      * @return List<CreatedUserDto>
      */
     @GetMapping
-    @io.swagger.v3.oas.annotations.Operation(summary = "Получение списка всех пользователей")
-    public ResponseEntity<List<CreatedUserDto>> getUsers() {
-        List<CreatedUserDto> userDto = userService.getUsers()
+    @io.swagger.v3.oas.annotations.Operation(summary = "Получение пользователей постранично")
+    public ResponseEntity<List<CreatedUserDto>> getUsers(@RequestParam(required = false) Long after,
+                                                         @RequestParam(defaultValue = "100") int limit) {
+        if (after != null && after < 0) {
+            throw new NotFoundException("Значение параметра after не может быть отрицательным");
+        }
+        Paging.checkLimit(limit);
+        List<User> users = userService.getUsers(after, limit);
+        List<CreatedUserDto> userDto = users
                 .stream()
                 .map(user -> conversionService.convert(user, CreatedUserDto.class))
                 .collect(Collectors.toList());
-        return ResponseEntity.ok(userDto);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (users.size() == limit) {
+            response.header(Paging.NEXT_CURSOR_HEADER, String.valueOf(users.get(users.size() - 1).getId()));
+        }
+        return response.body(userDto);
     }
 
     /**
@@ -138,7 +159,6 @@ public class UserController {
         }
         User currentUser = userService.addAsFriend(id, friendId);
         log.debug("Пользователь id={} добавил в друзья пользователя id={}", id, friendId);
-        userService.addEvent(id, friendId, EventType.FRIEND, Operation.ADD);
         return ResponseEntity.ok(conversionService.convert(currentUser, CreatedUserDto.class));
     }
 
@@ -157,7 +177,6 @@ public class UserController {
         }
         User currentUser = userService.removeFromFriends(id, friendId);
         log.debug("Пользователь id={} удалил из друзей пользователя id={}", id, friendId);
-        userService.addEvent(id, friendId, EventType.FRIEND, Operation.REMOVE);
         return ResponseEntity.ok(conversionService.convert(currentUser, CreatedUserDto.class));
     }
 
@@ -219,21 +238,64 @@ public class UserController {
     }
 
     /**
-     * Возвращает ленту событий пользователя.
+     * Возвращает страницу ленты событий пользователя в порядке возрастания времени.
+     * Без before возвращаются последние события, без limit - вся лента, как до появления страниц.
+     * Если страница заполнена целиком, в заголовке X-Next-Cursor возвращается значение before
+     * для более ранней страницы.
      * @param id id пользователя
+     * @param before id события, с которого начинается более ранняя страница
+     * @param limit размер страницы, необязательный
      * @return List<CreatedEventDto>
      */
     @GetMapping(path = "/{id}/feed")
     @io.swagger.v3.oas.annotations.Operation(summary = "Получение ленты событий пользователя")
-    public ResponseEntity<List<CreatedEventDto>> getFeedByUserId(@PathVariable long id) {
+    public ResponseEntity<List<CreatedEventDto>> getFeedByUserId(@PathVariable long id,
+                                                                 @RequestParam(required = false) Long before,
+                                                                 @RequestParam(required = false) Integer limit) {
         if (id <= 0) {
             throw new NotFoundException("Id пользователей должны быть положительными числами");
         }
-        List<CreatedEventDto> feed = userService.getFeedByUserId(id)
+        if (before != null && before <= 0) {
+            throw new NotFoundException("Значение параметра before должно быть положительным");
+        }
+        if (limit != null) {
+            Paging.checkLimit(limit);
+        }
+        List<Event> events = userService.getFeedByUserId(id, before, limit);
+        List<CreatedEventDto> feed = events
                 .stream()
                 .map(event -> conversionService.convert(event, CreatedEventDto.class))
                 .collect(Collectors.toList());
-        return ResponseEntity.ok(feed);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (limit != null && events.size() == limit) {
+            response.header(Paging.NEXT_CURSOR_HEADER, String.valueOf(events.get(0).getEventId()));
+        }
+        return response.body(feed);
+    }
+
+    /**
+     * Поток событий ленты пользователя (Server-Sent Events).
+     * Сначала отправляются события, следующие за Last-Event-ID, затем новые события по мере их записи.
+     * Id каждого сообщения - id события, по нему клиент продолжает поток после переподключения.
+     * @param id id пользователя
+     * @param lastEventId id последнего полученного события
+     * @return SseEmitter
+     */
+    @GetMapping(path = "/{id}/feed/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @io.swagger.v3.oas.annotations.Operation(summary = "Поток событий ленты пользователя")
+    public SseEmitter streamFeedByUserId(@PathVariable long id,
+                                         @RequestHeader(name = "Last-Event-ID", required = false) Long lastEventId) {
+        if (id <= 0) {
+            throw new NotFoundException("Id пользователей должны быть положительными числами");
+        }
+        if (lastEventId != null && lastEventId <= 0) {
+            throw new NotFoundException("Значение Last-Event-ID должно быть положительным");
+        }
+        SseEmitter emitter = new SseEmitter(appProperties.getFeedStreamTimeoutMs());
+        feedStreamHub.subscribe(id, lastEventId, emitter,
+                event -> conversionService.convert(event, CreatedEventDto.class));
+        log.debug("Пользователь id={} подписан на ленту, Last-Event-ID={}", id, lastEventId);
+        return emitter;
     }
 
     /**
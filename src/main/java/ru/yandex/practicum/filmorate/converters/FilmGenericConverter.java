@@ -5,9 +5,11 @@ import ru.yandex.practicum.filmorate.dto.CreatedDirectorDto;
 import ru.yandex.practicum.filmorate.dto.CreatedFilmDto;
 import ru.yandex.practicum.filmorate.dto.CreatedGenreDto;
 import ru.yandex.practicum.filmorate.dto.FilmDto;
+import ru.yandex.practicum.filmorate.dto.FilmLikeDto;
 import ru.yandex.practicum.filmorate.dto.UpdateFilmDto;
 import ru.yandex.practicum.filmorate.models.Director;
 import ru.yandex.practicum.filmorate.models.Film;
+import ru.yandex.practicum.filmorate.models.FilmLikeOperation;
 import ru.yandex.practicum.filmorate.models.FilmRating;
 import ru.yandex.practicum.filmorate.models.Genre;
 import ru.yandex.practicum.filmorate.utils.AppProperties;
@@ -39,7 +41,15 @@ public class FilmGenericConverter extends AbstractGenericConverter {
                         this::convertFilmDtoToFilm),
                 new AbstractMap.SimpleEntry<>(
                         new ConvertiblePair(Film.class, CreatedFilmDto.class),
-                        this::convertFilmToCreatedFilmDto));
+                        this::convertFilmToCreatedFilmDto),
+                new AbstractMap.SimpleEntry<>(
+                        new ConvertiblePair(FilmLikeDto.class, FilmLikeOperation.class),
+                        this::convertFilmLikeDtoToFilmLikeOperation));
+    }
+
+    private FilmLikeOperation convertFilmLikeDtoToFilmLikeOperation(Object filmLikeDto) {
+        FilmLikeDto dto = (FilmLikeDto) filmLikeDto;
+        return new FilmLikeOperation(dto.getFilmId(), dto.getUserId(), dto.getOperation());
     }
 
     private Film convertUpdateFilmDtoToFilm(Object updateFilmDto) {
@@ -117,7 +127,7 @@ public class FilmGenericConverter extends AbstractGenericConverter {
                 .description(film.getDescription())
                 .releaseDate(film.getReleaseDate().format(appProperties.getDefaultDateFormatter()))
                 .duration(film.getDuration().toMinutes())
-                .numLikes(film.getNumOfLikes())
+                .numLikes(film.getLikeCount())
                 .mpa(film.getRating())
                 .directors(directors)
                 .genres(genres)
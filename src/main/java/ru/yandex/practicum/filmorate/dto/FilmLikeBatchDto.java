@@ -0,0 +1,23 @@
+package ru.yandex.practicum.filmorate.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Size;
+import java.util.List;
+
+/**
+ * Controllers-DTO для пакетной постановки и удаления лайков
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FilmLikeBatchDto {
+    @NotEmpty(message = "Список операций не может быть пустым")
+    @Size(max = 1000, message = "Максимальный размер пакета - 1000 операций")
+    @Valid
+    private List<FilmLikeDto> operations;
+}
@@ -0,0 +1,26 @@
+package ru.yandex.practicum.filmorate.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ru.yandex.practicum.filmorate.models.Operation;
+import ru.yandex.practicum.filmorate.validators.ValidOperation;
+
+import javax.validation.constraints.Positive;
+
+/**
+ * Controllers-DTO для операции над лайком в пакетном запросе
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FilmLikeDto {
+    @Positive(message = "Id фильма должен быть положительным числом")
+    private long filmId;
+
+    @Positive(message = "Id пользователя должен быть положительным числом")
+    private long userId;
+
+    @ValidOperation(anyOf = {Operation.ADD, Operation.REMOVE}, message = "Допустимые операции: ADD, REMOVE")
+    private Operation operation;
+}
@@ -0,0 +1,14 @@
+package ru.yandex.practicum.filmorate.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Режиссёр создан (ADD), изменён (UPDATE) или удалён (REMOVE).
+ */
+@Data
+@AllArgsConstructor
+public class DirectorChangedEvent {
+    private final Director director;
+    private final Operation operation;
+}
@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * События записаны в ленту и получили id.
+ */
+@Data
+@AllArgsConstructor
+public class FeedEventsAddedEvent {
+    private final List<Event> events;
+}
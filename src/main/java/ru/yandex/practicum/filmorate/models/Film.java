@@ -17,8 +17,10 @@ public class Film {
     private LocalDate releaseDate;
     private Duration duration;
 
-    @Builder.Default
-    private Set<Long> likes = new HashSet<>();
+    /**
+     * Количество лайков. Сами id поставивших лайк пользователей с фильмом не загружаются.
+     */
+    private int likeCount;
 
     private FilmRating rating;
 
@@ -35,29 +37,13 @@ public class Film {
                 .description(this.description)
                 .releaseDate(this.releaseDate)
                 .duration(this.duration)
-                .likes(new HashSet<>(this.likes))
+                .likeCount(this.likeCount)
                 .genres(new HashSet<>(this.genres))
                 .rating(this.rating)
                 .directors(new HashSet<>(this.directors))
                 .build();
     }
 
-    public boolean addLike(Long userId) {
-        return likes.add(userId);
-    }
-
-    public void addLike(Set<Long> likes) {
-        this.likes.addAll(likes);
-    }
-
-    public boolean removeLike(Long userId) {
-        return likes.remove(userId);
-    }
-
-    public int getNumOfLikes() {
-        return likes.size();
-    }
-
     public void addGenre(Set<Genre> genres) {
         this.genres.addAll(genres);
     }
@@ -0,0 +1,14 @@
+package ru.yandex.practicum.filmorate.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Фильм создан (ADD), изменён (UPDATE) или удалён (REMOVE).
+ */
+@Data
+@AllArgsConstructor
+public class FilmChangedEvent {
+    private final Film film;
+    private final Operation operation;
+}
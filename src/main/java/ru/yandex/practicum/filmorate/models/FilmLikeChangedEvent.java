@@ -0,0 +1,25 @@
+package ru.yandex.practicum.filmorate.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Лайк фильма фактически добавлен (ADD) или удалён (REMOVE).
+ * Событие создаётся в транзакции сразу после изменения строки film_likes, а изменения одной пары
+ * (фильм, пользователь) сериализуются блокировкой этой строки, поэтому sequence одной пары растёт
+ * в порядке фиксации, даже если слушатели после фиксации вызываются в другом порядке.
+ */
+@Data
+@AllArgsConstructor
+public class FilmLikeChangedEvent {
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private final long filmId;
+    private final long userId;
+    private final Operation operation;
+    @EqualsAndHashCode.Exclude
+    private final long sequence = SEQUENCE.incrementAndGet();
+}
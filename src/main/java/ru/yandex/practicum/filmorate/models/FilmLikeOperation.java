@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Операция над лайком фильма: постановка (ADD) или удаление (REMOVE).
+ */
+@Data
+@AllArgsConstructor
+public class FilmLikeOperation {
+    private final long filmId;
+    private final long userId;
+    private final Operation operation;
+}
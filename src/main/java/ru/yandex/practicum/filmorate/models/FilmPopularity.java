@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.Set;
+
+@Data
+@AllArgsConstructor
+public class FilmPopularity {
+    private long filmId;
+    private int releaseYear;
+    private int likes;
+    private Set<Long> genreIds;
+}
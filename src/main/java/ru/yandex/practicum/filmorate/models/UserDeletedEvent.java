@@ -0,0 +1,17 @@
+package ru.yandex.practicum.filmorate.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.Set;
+
+/**
+ * Пользователь удалён вместе со всеми его лайками и дружбами.
+ * likedFilmIds - фильмы, лайки которых удалены вместе с пользователем.
+ */
+@Data
+@AllArgsConstructor
+public class UserDeletedEvent {
+    private final long userId;
+    private final Set<Long> likedFilmIds;
+}
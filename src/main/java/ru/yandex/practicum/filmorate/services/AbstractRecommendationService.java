@@ -0,0 +1,77 @@
+package ru.yandex.practicum.filmorate.services;
+
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.models.Film;
+import ru.yandex.practicum.filmorate.storages.FilmStorage;
+import ru.yandex.practicum.filmorate.storages.UserStorage;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Общая часть рекомендаций: берутся пользователи с наибольшим числом общих лайков
+ * и рекомендуются их фильмы, которые текущий пользователь ещё не лайкал.
+ * Наследники определяют, среди кого искать похожих пользователей.
+ */
+abstract class AbstractRecommendationService implements RecommendationService {
+    private static final int MAX_USERS_CHECK = 2;
+
+    protected final FilmStorage filmStorage;
+    protected final UserStorage userStorage;
+    protected final LikeIndex likeIndex;
+
+    protected AbstractRecommendationService(FilmStorage filmStorage, UserStorage userStorage, LikeIndex likeIndex) {
+        this.filmStorage = filmStorage;
+        this.userStorage = userStorage;
+        this.likeIndex = likeIndex;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Film> getRecommendations(final long id) {
+        if (!userStorage.existsUser(id)) {
+            throw new NotFoundException("Не найден пользователь id=" + id);
+        }
+
+        Set<Long> filmIds = getRecommendedFilmIds(id);
+        if (filmIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return filmStorage.getFilmsByIds(filmIds);
+    }
+
+    /**
+     * Id рекомендуемых фильмов без чтения самих фильмов.
+     * @param id id пользователя
+     * @return Set<Long>, пустой если рекомендовать нечего
+     */
+    public Set<Long> getRecommendedFilmIds(final long id) {
+        final Set<Long> currentUserLikes = likeIndex.getUserFilms(id);
+        if (currentUserLikes.isEmpty()) {
+            return new HashSet<>(); // пользователь ничего не лайкал -> нечего рекомендовать
+        }
+
+        List<Long> intersectedUsers = findNeighbours(id, MAX_USERS_CHECK);
+        if (intersectedUsers.isEmpty()) {
+            return new HashSet<>(); // нет пользователей с пересекающимися лайками
+        }
+
+        Set<Long> intersectedUsersFilms = new HashSet<>();
+        for (Long intersectedUser : intersectedUsers) {
+            intersectedUsersFilms.addAll(likeIndex.getUserFilms(intersectedUser));
+        }
+        intersectedUsersFilms.removeAll(currentUserLikes);
+        return intersectedUsersFilms; // пусто, если все пролайкали одни и те-же фильмы
+    }
+
+    /**
+     * Пользователи с наибольшим количеством общих лайков, при равенстве - с меньшим id.
+     * @param id id пользователя
+     * @param limit максимальное количество пользователей
+     * @return List<Long>, только пользователи хотя бы с одним общим лайком
+     */
+    protected abstract List<Long> findNeighbours(long id, int limit);
+}
@@ -0,0 +1,191 @@
+package ru.yandex.practicum.filmorate.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Разреженная матрица совместных лайков фильмов: для фильмов A и B - количество пользователей,
+ * лайкнувших оба. Строка фильма хранится в {@link LongIntHashMap} и содержит только ненулевые ячейки.
+ * Строится по графу {@link LikeIndex} при старте приложения или при первом обращении, строки считаются
+ * параллельно по частям списка фильмов. Затем обновляется изменениями, которые LikeIndex передаёт
+ * под своей блокировкой, поэтому собственной копии лайков матрица не держит.
+ */
+@Slf4j
+@Component
+public class CoLikeMatrix {
+    // фильмов в одной задаче, меньшие части не делятся
+    private static final int PARTITION_SIZE = 256;
+
+    private final LikeIndex likeIndex;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, LongIntHashMap> rows = new HashMap<>();
+    private volatile boolean built;
+
+    public CoLikeMatrix(LikeIndex likeIndex) {
+        this.likeIndex = likeIndex;
+        likeIndex.addChangeListener(this::onLikeChanged);
+    }
+
+    /**
+     * Фильмы, чаще всего лайкнутые вместе с данным, в порядке убывания количества общих пользователей.
+     * @param filmId id фильма
+     * @param count максимальное количество фильмов
+     * @return List<Long>
+     */
+    public List<Long> getSimilarFilmIds(long filmId, int count) {
+        ensureBuilt();
+        final List<long[]> cells = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            LongIntHashMap row = rows.get(filmId);
+            if (row == null) {
+                return new ArrayList<>();
+            }
+            row.forEach((otherId, common) -> cells.add(new long[]{otherId, common}));
+        } finally {
+            lock.readLock().unlock();
+        }
+        cells.sort((a, b) -> a[1] != b[1] ? Long.compare(b[1], a[1]) : Long.compare(a[0], b[0]));
+        final List<Long> result = new ArrayList<>(Math.min(count, cells.size()));
+        for (int i = 0; i < cells.size() && i < count; i++) {
+            result.add(cells.get(i)[0]);
+        }
+        return result;
+    }
+
+    /**
+     * Количество пользователей, лайкнувших оба фильма.
+     * @param filmId id фильма
+     * @param otherId id другого фильма
+     * @return int
+     */
+    public int getCommonLikes(long filmId, long otherId) {
+        ensureBuilt();
+        lock.readLock().lock();
+        try {
+            LongIntHashMap row = rows.get(filmId);
+            return row == null ? 0 : row.get(otherId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        ensureBuilt();
+    }
+
+    /**
+     * Пересчитывает матрицу по текущему графу лайков.
+     */
+    public void rebuild() {
+        likeIndex.withGraph(graph -> {
+            final Map<Long, LongIntHashMap> computed =
+                    ForkJoinPool.commonPool().invoke(new RowsTask(graph, 0, graph.filmCount()));
+            lock.writeLock().lock();
+            try {
+                rows.clear();
+                rows.putAll(computed);
+                built = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.debug("Матрица совместных лайков построена, строк: {}", computed.size());
+        });
+    }
+
+    private synchronized void ensureBuilt() {
+        if (!built) {
+            rebuild();
+        }
+    }
+
+    // вызывается под блокировкой записи LikeIndex; до построения изменения уже входят в граф построения
+    private void onLikeChanged(long filmId, int delta, long[] otherFilms) {
+        if (!built) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            changePairs(filmId, otherFilms, delta);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // меняет ячейки filmId x другие фильмы пользователя в обе стороны
+    private void changePairs(long filmId, long[] otherFilms, int delta) {
+        for (long otherId : otherFilms) {
+            changeCell(filmId, otherId, delta);
+            changeCell(otherId, filmId, delta);
+        }
+    }
+
+    private void changeCell(long filmId, long otherId, int delta) {
+        LongIntHashMap row = rows.computeIfAbsent(filmId, id -> new LongIntHashMap());
+        row.addTo(otherId, delta);
+        if (row.size() == 0) {
+            rows.remove(filmId);
+        }
+    }
+
+    /**
+     * Строки матрицы для фильмов графа с номерами [from, to). Граф неизменяемый,
+     * поэтому части считаются независимо и без блокировок.
+     */
+    private static class RowsTask extends RecursiveTask<Map<Long, LongIntHashMap>> {
+        private final LikeGraph graph;
+        private final int from;
+        private final int to;
+
+        RowsTask(LikeGraph graph, int from, int to) {
+            this.graph = graph;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Map<Long, LongIntHashMap> compute() {
+            if (to - from <= PARTITION_SIZE) {
+                final Map<Long, LongIntHashMap> result = new HashMap<>();
+                for (int film = from; film < to; film++) {
+                    LongIntHashMap row = computeRow(film);
+                    if (row.size() > 0) {
+                        result.put(graph.filmId(film), row);
+                    }
+                }
+                return result;
+            }
+            int middle = (from + to) >>> 1;
+            RowsTask left = new RowsTask(graph, from, middle);
+            left.fork();
+            Map<Long, LongIntHashMap> result = new RowsTask(graph, middle, to).compute();
+            result.putAll(left.join());
+            return result;
+        }
+
+        private LongIntHashMap computeRow(int film) {
+            final LongIntHashMap row = new LongIntHashMap();
+            for (int p = graph.filmUsersStart(film); p < graph.filmUsersEnd(film); p++) {
+                int user = graph.filmUserAt(p);
+                for (int q = graph.userFilmsStart(user); q < graph.userFilmsEnd(user); q++) {
+                    int other = graph.userFilmAt(q);
+                    if (other != film) {
+                        row.addTo(graph.filmId(other), 1);
+                    }
+                }
+            }
+            return row;
+        }
+    }
+}
@@ -1,10 +1,13 @@
 package ru.yandex.practicum.filmorate.services;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.models.Director;
+import ru.yandex.practicum.filmorate.models.DirectorChangedEvent;
+import ru.yandex.practicum.filmorate.models.Operation;
 import ru.yandex.practicum.filmorate.storages.DirectorStorage;
 
 import java.util.List;
@@ -14,6 +17,7 @@ import java.util.Optional;
 @RequiredArgsConstructor
 public class DirectorServiceImpl implements DirectorService {
     private final DirectorStorage directorStorage;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Override
     public List<Director> getDirectors() {
@@ -23,13 +27,17 @@ public class DirectorServiceImpl implements DirectorService {
     @Override
     @Transactional
     public Director createDirector(Director director) {
-        return directorStorage.createDirector(director);
+        Director created = directorStorage.createDirector(director);
+        eventPublisher.publishEvent(new DirectorChangedEvent(created, Operation.ADD));
+        return created;
     }
 
     @Override
     @Transactional
     public Optional<Director> updateDirector(Director directorUpdates) {
-        return directorStorage.updateDirector(directorUpdates);
+        Optional<Director> result = directorStorage.updateDirector(directorUpdates);
+        result.ifPresent(d -> eventPublisher.publishEvent(new DirectorChangedEvent(d, Operation.UPDATE)));
+        return result;
     }
 
     @Override
@@ -42,5 +50,6 @@ public class DirectorServiceImpl implements DirectorService {
     @Transactional
     public void deleteDirectorById(long id) {
         directorStorage.deleteDirectorById(id);
+        eventPublisher.publishEvent(new DirectorChangedEvent(Director.builder().id(id).build(), Operation.REMOVE));
     }
 }
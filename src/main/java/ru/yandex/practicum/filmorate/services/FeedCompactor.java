@@ -0,0 +1,81 @@
+package ru.yandex.practicum.filmorate.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.models.Event;
+import ru.yandex.practicum.filmorate.storages.FeedSegmentArchive;
+import ru.yandex.practicum.filmorate.storages.FeedStorage;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Переносит события ленты старше окна хранения app.feed.retention-days из таблицы feed в архив сегментов.
+ * События переносятся пакетами по segment-size: пакет записывается в новый сегмент, затем удаляется из feed.
+ * Если после записи сегмента удаление не выполнилось, события последнего сегмента удаляются при следующем запуске.
+ * Окно хранения 0 (по умолчанию) отключает перенос, его включают явно положительным app.feed.retention-days.
+ */
+@Slf4j
+@Component
+public class FeedCompactor {
+    private final FeedStorage feedStorage;
+    private final FeedSegmentArchive archive;
+    private final TransactionTemplate transactionTemplate;
+    private final int retentionDays;
+    private final int segmentSize;
+
+    public FeedCompactor(FeedStorage feedStorage,
+                         FeedSegmentArchive archive,
+                         TransactionTemplate transactionTemplate,
+                         @Value("${app.feed.retention-days:0}") int retentionDays,
+                         @Value("${app.feed.archive.segment-size:100000}") int segmentSize) {
+        this.feedStorage = feedStorage;
+        this.archive = archive;
+        this.transactionTemplate = transactionTemplate;
+        this.retentionDays = retentionDays;
+        this.segmentSize = segmentSize;
+    }
+
+    @Scheduled(cron = "${app.feed.archive.compact-cron:0 30 4 * * *}")
+    public int compact() {
+        if (retentionDays <= 0) {
+            return 0;
+        }
+        return compactBefore(Instant.now().minus(Duration.ofDays(retentionDays)).toEpochMilli());
+    }
+
+    /**
+     * Переносит в архив события с timestamp меньше заданного.
+     * @param timestamp граница окна хранения
+     * @return количество перенесённых событий
+     */
+    public synchronized int compactBefore(long timestamp) {
+        final List<Long> archivedIds = archive.getLastSegmentEventIds();
+        if (!archivedIds.isEmpty()) {
+            transactionTemplate.executeWithoutResult(status -> feedStorage.removeEvents(archivedIds));
+        }
+        int moved = 0;
+        while (true) {
+            final List<Event> events = feedStorage.getEventsBefore(timestamp, segmentSize);
+            if (events.isEmpty()) {
+                break;
+            }
+            archive.writeSegment(events);
+            final List<Long> ids = events.stream().map(Event::getEventId).collect(Collectors.toList());
+            transactionTemplate.executeWithoutResult(status -> feedStorage.removeEvents(ids));
+            moved += events.size();
+            if (events.size() < segmentSize) {
+                break;
+            }
+        }
+        if (moved > 0) {
+            log.info("Перенесено в архив событий ленты: {}", moved);
+        }
+        return moved;
+    }
+}
@@ -0,0 +1,124 @@
+package ru.yandex.practicum.filmorate.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.models.Event;
+import ru.yandex.practicum.filmorate.models.EventType;
+import ru.yandex.practicum.filmorate.models.FeedEventsAddedEvent;
+import ru.yandex.practicum.filmorate.models.Operation;
+import ru.yandex.practicum.filmorate.storages.FeedStorage;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Транзакционный outbox ленты событий.
+ * Сервисы записывают событие в feed_outbox в той же транзакции, что и само изменение,
+ * поэтому событие не теряется при сбое и не появляется для отменённого изменения.
+ * Фоновая задача раз в publish-interval-ms переносит накопленные события в feed пакетами по batch-size.
+ * В синхронном режиме (app.feed.outbox.sync=true) событие пишется сразу в feed в транзакции вызова,
+ * а фоновая задача один раз переносит то, что осталось в outbox после асинхронного режима, и дальше не опрашивает его.
+ * О событиях, попавших в feed, публикуется {@link FeedEventsAddedEvent}.
+ * Время события - время записи в outbox. event_id назначается при переносе, поэтому outbox переносится
+ * в порядке (timestamp, id): тогда id в feed растут вместе со временем и курсор after не пропускает события.
+ */
+@Slf4j
+@Component
+public class FeedOutbox {
+    private final FeedStorage feedStorage;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final boolean sync;
+    private volatile boolean drained;
+
+    public FeedOutbox(FeedStorage feedStorage,
+                      ApplicationEventPublisher eventPublisher,
+                      TransactionTemplate transactionTemplate,
+                      @Value("${app.feed.outbox.batch-size:500}") int batchSize,
+                      @Value("${app.feed.outbox.sync:false}") boolean sync) {
+        this.feedStorage = feedStorage;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.sync = sync;
+    }
+
+    /**
+     * Записывает событие ленты. Вызывается внутри транзакции изменения.
+     * @param userId id пользователя - автора события
+     * @param entityId id сущности
+     * @param eventType тип события
+     * @param operation операция
+     */
+    public void stage(long userId, long entityId, EventType eventType, Operation operation) {
+        final Event event = Event.builder()
+                .userId(userId)
+                .entityId(entityId)
+                .eventType(eventType)
+                .operation(operation)
+                .timestamp(Instant.now().toEpochMilli())
+                .build();
+        if (sync) {
+            eventPublisher.publishEvent(new FeedEventsAddedEvent(feedStorage.addEvents(List.of(event))));
+        } else {
+            feedStorage.addOutboxEvent(event);
+        }
+    }
+
+    /**
+     * Записывает пакет событий ленты одним запросом. Вызывается внутри транзакции изменения.
+     * @param events события без id с заполненным временем
+     */
+    public void stage(List<Event> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        if (sync) {
+            eventPublisher.publishEvent(new FeedEventsAddedEvent(feedStorage.addEvents(events)));
+        } else {
+            feedStorage.addOutboxEvents(events);
+        }
+    }
+
+    /**
+     * Переносит накопленные события в feed. Каждый пакет переносится и удаляется из outbox в одной транзакции.
+     * @return количество перенесённых событий
+     */
+    @Scheduled(fixedDelayString = "${app.feed.outbox.publish-interval-ms:200}")
+    public synchronized int publish() {
+        if (sync && drained) {
+            return 0;
+        }
+        int published = 0;
+        while (true) {
+            Integer count = transactionTemplate.execute(status -> {
+                final List<Event> events = feedStorage.getOutboxEvents(batchSize);
+                if (!events.isEmpty()) {
+                    eventPublisher.publishEvent(new FeedEventsAddedEvent(feedStorage.addEvents(events)));
+                    feedStorage.removeOutboxEvents(events.stream()
+                            .map(Event::getEventId)
+                            .collect(Collectors.toList()));
+                }
+                return events.size();
+            });
+            if (count == null || count == 0) {
+                break;
+            }
+            published += count;
+            if (count < batchSize) {
+                break;
+            }
+        }
+        if (published > 0) {
+            log.debug("Перенесено событий ленты из outbox: {}", published);
+        }
+        drained = true;
+        return published;
+    }
+}
@@ -0,0 +1,290 @@
+package ru.yandex.practicum.filmorate.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.models.Event;
+import ru.yandex.practicum.filmorate.models.EventType;
+import ru.yandex.practicum.filmorate.models.FeedEventsAddedEvent;
+import ru.yandex.practicum.filmorate.models.Operation;
+import ru.yandex.practicum.filmorate.storages.UserStorage;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Рассылка событий ленты подписчикам SSE.
+ * Подписчик получает события, следующие за курсором Last-Event-ID, а затем новые события своей ленты
+ * по мере их записи в feed: свои события и лайки и отзывы друзей.
+ * История после курсора читается страницами по replay-limit событий, пока не будет прочитана целиком;
+ * одновременно историю из БД читают не больше replay-concurrency подписчиков.
+ * У каждого подписчика своя очередь на buffer-size событий. Историю и очередь подписчику отправляет
+ * его собственная задача в растущем пуле потоков, поэтому медленный клиент блокирует только свою отправку:
+ * его очередь переполняется, и отключается именно он, а не остальные подписчики.
+ * Подписчик, очередь которого переполнена, отключается и может переподключиться с последним полученным id.
+ */
+@Slf4j
+@Component
+public class FeedStreamHub {
+    // события друзей, которые попадают в ленту пользователя
+    private static final Set<EventType> FRIEND_EVENT_TYPES = Set.of(EventType.LIKE, EventType.REVIEW);
+    // события, записанные раньше подписки больше чем на это время, не могут прийти и из истории, и из очереди
+    private static final long OVERLAP_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private final UserStorage userStorage;
+    private final UserService userService;
+    private final int bufferSize;
+    private final int replayLimit;
+    private final ExecutorService executor;
+    private final Semaphore replayPermits;
+    // автор событий -> подписчики, в ленту которых попадают его события
+    private final Map<Long, Set<Subscriber>> subscribersByAuthor = new ConcurrentHashMap<>();
+
+    public FeedStreamHub(UserStorage userStorage,
+                         UserService userService,
+                         @Value("${app.feed.stream.buffer-size:256}") int bufferSize,
+                         @Value("${app.feed.stream.replay-limit:1000}") int replayLimit,
+                         @Value("${app.feed.stream.replay-concurrency:2}") int replayConcurrency) {
+        this.userStorage = userStorage;
+        this.userService = userService;
+        this.bufferSize = bufferSize;
+        this.replayLimit = replayLimit;
+        this.replayPermits = new Semaphore(replayConcurrency);
+        final AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "feed-stream-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Подписывает emitter на ленту пользователя.
+     * История после курсора отправляется задачей подписчика, после того как emitter возвращён из контроллера.
+     * @param userId id пользователя
+     * @param lastEventId id последнего полученного события, события после него отправляются первыми
+     * @param emitter emitter запроса
+     * @param converter преобразование события в тело сообщения
+     * @throws NotFoundException если пользователь не найден
+     */
+    public void subscribe(long userId, @Nullable Long lastEventId, SseEmitter emitter,
+                          Function<Event, Object> converter) throws NotFoundException {
+        if (!userStorage.existsUser(userId)) {
+            throw new NotFoundException("Не найден пользователь id=" + userId);
+        }
+        final Subscriber subscriber = new Subscriber(userId, emitter, converter, bufferSize);
+        emitter.onCompletion(() -> unsubscribe(subscriber));
+        emitter.onTimeout(() -> unsubscribe(subscriber));
+        emitter.onError(e -> unsubscribe(subscriber));
+        // подписка до чтения истории, чтобы не потерять события, записанные во время чтения
+        follow(subscriber, userId);
+        userStorage.getFriendIds(userId).forEach(friendId -> follow(subscriber, friendId));
+
+        if (lastEventId == null) {
+            subscriber.live = true;
+            schedule(subscriber);
+            return;
+        }
+        subscriber.overlapFrom = System.currentTimeMillis() - OVERLAP_MS;
+        subscriber.scheduled.set(true);
+        executor.execute(() -> replay(subscriber, lastEventId));
+    }
+
+    /**
+     * Количество активных подписчиков.
+     * @return int
+     */
+    public int getSubscriberCount() {
+        Set<Subscriber> subscribers = new HashSet<>();
+        subscribersByAuthor.values().forEach(subscribers::addAll);
+        return subscribers.size();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFeedEventsAdded(FeedEventsAddedEvent feedEvents) {
+        for (Event event : feedEvents.getEvents()) {
+            Set<Subscriber> subscribers = subscribersByAuthor.get(event.getUserId());
+            if (subscribers == null) {
+                continue;
+            }
+            for (Subscriber subscriber : new ArrayList<>(subscribers)) {
+                if (subscriber.userId == event.getUserId()) {
+                    if (event.getEventType() == EventType.FRIEND) {
+                        followFriend(subscriber, event);
+                    }
+                    deliver(subscriber, event);
+                } else if (FRIEND_EVENT_TYPES.contains(event.getEventType())) {
+                    deliver(subscriber, event);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+        List<Subscriber> subscribers = new ArrayList<>();
+        subscribersByAuthor.values().forEach(subscribers::addAll);
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        subscribersByAuthor.clear();
+    }
+
+    // Пока история отправляется, новые события копятся в очереди подписчика:
+    // если клиент читает медленно, очередь переполняется и подписчик отключается, отправка истории прекращается.
+    // id назначаются до фиксации, и событие может попасть в историю с меньшим id, чем уже отправленные,
+    // поэтому повторы в очереди отсекаются по множеству id, отправленных из истории в окне перекрытия
+    private void replay(Subscriber subscriber, long lastEventId) {
+        long cursor = lastEventId;
+        List<Event> page;
+        try {
+            do {
+                page = readPage(subscriber, cursor);
+                for (Event event : page) {
+                    if (subscriber.closed) {
+                        return;
+                    }
+                    subscriber.send(event);
+                    if (event.getTimestamp() >= subscriber.overlapFrom) {
+                        subscriber.replayed.add(event.getEventId());
+                    }
+                    cursor = event.getEventId();
+                }
+            } while (page.size() >= replayLimit);
+        } catch (IOException | IllegalStateException | NotFoundException e) {
+            evict(subscriber, "ошибка отправки истории");
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            subscriber.scheduled.set(false);
+        }
+        subscriber.live = true;
+        schedule(subscriber);
+    }
+
+    private List<Event> readPage(Subscriber subscriber, long cursor) throws InterruptedException {
+        replayPermits.acquire();
+        try {
+            return userService.getFeedAfter(subscriber.userId, cursor, replayLimit);
+        } finally {
+            replayPermits.release();
+        }
+    }
+
+    // подписчик сам добавил или удалил друга - лента меняется без переподключения
+    private void followFriend(Subscriber subscriber, Event event) {
+        if (event.getOperation() == Operation.ADD) {
+            follow(subscriber, event.getEntityId());
+        } else if (event.getOperation() == Operation.REMOVE && event.getEntityId() != subscriber.userId) {
+            subscriber.authors.remove(event.getEntityId());
+            subscribersByAuthor.computeIfPresent(event.getEntityId(), (id, subscribers) -> {
+                subscribers.remove(subscriber);
+                return subscribers.isEmpty() ? null : subscribers;
+            });
+        }
+    }
+
+    private void follow(Subscriber subscriber, long authorId) {
+        subscriber.authors.add(authorId);
+        subscribersByAuthor.compute(authorId, (id, subscribers) -> {
+            Set<Subscriber> result = subscribers == null ? ConcurrentHashMap.newKeySet() : subscribers;
+            result.add(subscriber);
+            return result;
+        });
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        subscriber.closed = true;
+        for (Long authorId : subscriber.authors) {
+            subscribersByAuthor.computeIfPresent(authorId, (id, subscribers) -> {
+                subscribers.remove(subscriber);
+                return subscribers.isEmpty() ? null : subscribers;
+            });
+        }
+    }
+
+    private void deliver(Subscriber subscriber, Event event) {
+        if (!subscriber.buffer.offer(event)) {
+            evict(subscriber, "очередь переполнена");
+            return;
+        }
+        schedule(subscriber);
+    }
+
+    private void evict(Subscriber subscriber, String reason) {
+        unsubscribe(subscriber);
+        subscriber.emitter.complete();
+        log.debug("Подписчик ленты пользователя id={} отключён: {}", subscriber.userId, reason);
+    }
+
+    private void schedule(Subscriber subscriber) {
+        if (subscriber.live && !subscriber.buffer.isEmpty() && subscriber.scheduled.compareAndSet(false, true)) {
+            executor.execute(() -> drain(subscriber));
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        try {
+            Event event;
+            while ((event = subscriber.buffer.poll()) != null) {
+                // событие приходит из очереди не больше одного раза, после совпадения id больше не нужен
+                if (!subscriber.replayed.remove(event.getEventId())) {
+                    subscriber.send(event);
+                }
+            }
+        } catch (IOException | IllegalStateException e) {
+            evict(subscriber, "ошибка отправки");
+            return;
+        } finally {
+            subscriber.scheduled.set(false);
+        }
+        // события, добавленные после опустошения очереди, но до сброса флага
+        schedule(subscriber);
+    }
+
+    private static class Subscriber {
+        private final long userId;
+        private final SseEmitter emitter;
+        private final Function<Event, Object> converter;
+        private final BlockingQueue<Event> buffer;
+        private final Set<Long> authors = ConcurrentHashMap.newKeySet();
+        private final Set<Long> replayed = ConcurrentHashMap.newKeySet();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean live;
+        private volatile long overlapFrom;
+        private volatile boolean closed;
+
+        Subscriber(long userId, SseEmitter emitter, Function<Event, Object> converter, int bufferSize) {
+            this.userId = userId;
+            this.emitter = emitter;
+            this.converter = converter;
+            this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        }
+
+        void send(Event event) throws IOException {
+            emitter.send(SseEmitter.event()
+                    .id(String.valueOf(event.getEventId()))
+                    .data(converter.apply(event)));
+        }
+    }
+}
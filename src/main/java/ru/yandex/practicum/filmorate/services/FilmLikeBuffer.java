@@ -0,0 +1,250 @@
+package ru.yandex.practicum.filmorate.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.exceptions.TooManyRequestsException;
+import ru.yandex.practicum.filmorate.models.Event;
+import ru.yandex.practicum.filmorate.models.EventType;
+import ru.yandex.practicum.filmorate.models.FilmLike;
+import ru.yandex.practicum.filmorate.models.FilmLikeChangedEvent;
+import ru.yandex.practicum.filmorate.models.FilmLikeOperation;
+import ru.yandex.practicum.filmorate.models.Operation;
+import ru.yandex.practicum.filmorate.storages.FilmStorage;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Буфер отложенной записи лайков.
+ * Операции складываются в ограниченную очередь и записываются в film_likes пакетами
+ * по достижении batch-size операций или по истечении flush-interval-ms с момента первой операции пакета.
+ * Внутри пакета операции над одной парой фильм-пользователь схлопываются - применяется последняя.
+ * События ленты пакета записываются через {@link FeedOutbox} в той же транзакции, что и лайки.
+ * Если очередь заполнена дольше offer-timeout-ms, запрос отклоняется с {@link TooManyRequestsException}.
+ * Пакет, который не удалось записать, повторяется до max-retries раз с удвоением паузы от retry-backoff-ms.
+ * Операции пакета, не записанного и после повторов, учитываются в метрике filmorate.likes.buffer.dropped.
+ * В синхронном режиме (app.likes.buffer.sync=true) операции применяются сразу в потоке вызова.
+ */
+@Slf4j
+@Component
+public class FilmLikeBuffer {
+    private final FilmStorage filmStorage;
+    private final FeedOutbox feedOutbox;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final BlockingQueue<FilmLikeOperation> queue;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final long offerTimeoutMs;
+    private final boolean sync;
+    private final int maxRetries;
+    private final long retryBackoffMs;
+    private final Counter droppedCounter;
+    private volatile boolean running;
+    private Thread flusher;
+
+    public FilmLikeBuffer(FilmStorage filmStorage,
+                          FeedOutbox feedOutbox,
+                          ApplicationEventPublisher eventPublisher,
+                          TransactionTemplate transactionTemplate,
+                          MeterRegistry meterRegistry,
+                          @Value("${app.likes.buffer.capacity:10000}") int capacity,
+                          @Value("${app.likes.buffer.batch-size:500}") int batchSize,
+                          @Value("${app.likes.buffer.flush-interval-ms:200}") long flushIntervalMs,
+                          @Value("${app.likes.buffer.offer-timeout-ms:100}") long offerTimeoutMs,
+                          @Value("${app.likes.buffer.sync:false}") boolean sync,
+                          @Value("${app.likes.buffer.max-retries:3}") int maxRetries,
+                          @Value("${app.likes.buffer.retry-backoff-ms:100}") long retryBackoffMs) {
+        this.filmStorage = filmStorage;
+        this.feedOutbox = feedOutbox;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = transactionTemplate;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.offerTimeoutMs = offerTimeoutMs;
+        this.sync = sync;
+        this.maxRetries = maxRetries;
+        this.retryBackoffMs = retryBackoffMs;
+        this.droppedCounter = Counter.builder("filmorate.likes.buffer.dropped")
+                .description("Принятые операции над лайками, которые не удалось записать")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (sync) {
+            return;
+        }
+        running = true;
+        flusher = new Thread(this::runFlusher, "film-like-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (flusher == null) {
+            return;
+        }
+        running = false;
+        flusher.interrupt();
+        flusher.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    /**
+     * Принимает операции над лайками. Операции, принятые до отказа по переполнению, будут применены.
+     * @param operations операции
+     * @throws TooManyRequestsException если очередь переполнена
+     */
+    public void submit(List<FilmLikeOperation> operations) throws TooManyRequestsException {
+        if (sync) {
+            apply(operations);
+            return;
+        }
+        try {
+            for (FilmLikeOperation operation : operations) {
+                if (!queue.offer(operation, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                    throw new TooManyRequestsException("Очередь лайков переполнена, повторите запрос позже");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Прервано ожидание места в очереди лайков");
+        }
+    }
+
+    /**
+     * Количество операций, ожидающих записи.
+     * @return int
+     */
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    /**
+     * Количество принятых операций, отброшенных после исчерпания повторов записи.
+     * @return long
+     */
+    public long getDroppedCount() {
+        return (long) droppedCounter.count();
+    }
+
+    private void runFlusher() {
+        final List<FilmLikeOperation> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                FilmLikeOperation first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    FilmLikeOperation next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                applyWithRetry(batch);
+            } catch (InterruptedException e) {
+                log.debug("Остановка записи лайков, в очереди: {}", queue.size());
+                // при остановке цикл дописывает оставшиеся в очереди операции
+                queue.drainTo(batch, batchSize - batch.size());
+                applyWithRetry(batch);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void applyWithRetry(List<FilmLikeOperation> operations) {
+        long backoffMs = retryBackoffMs;
+        boolean stopping = false;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                apply(operations);
+                return;
+            } catch (RuntimeException e) {
+                if (attempt > maxRetries) {
+                    droppedCounter.increment(operations.size());
+                    log.error("Не удалось записать пакет лайков из {} операций за {} попыток, операции отброшены",
+                            operations.size(), attempt, e);
+                    return;
+                }
+                log.warn("Не удалось записать пакет лайков из {} операций, попытка {}: {}",
+                        operations.size(), attempt, e.getMessage());
+            }
+            if (!stopping) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(backoffMs);
+                } catch (InterruptedException e) {
+                    // при остановке оставшиеся попытки выполняются без пауз
+                    stopping = true;
+                }
+                backoffMs *= 2;
+            }
+        }
+    }
+
+    private void apply(List<FilmLikeOperation> operations) {
+        if (operations.isEmpty()) {
+            return;
+        }
+        final Map<FilmLike, Operation> coalesced = new LinkedHashMap<>();
+        operations.forEach(op -> coalesced.put(new FilmLike(op.getFilmId(), op.getUserId()), op.getOperation()));
+        final List<FilmLike> likes = new ArrayList<>();
+        final List<FilmLike> unlikes = new ArrayList<>();
+        coalesced.forEach((like, op) -> (op == Operation.ADD ? likes : unlikes).add(like));
+
+        transactionTemplate.executeWithoutResult(status -> {
+            final List<Event> feedEvents = new ArrayList<>();
+            final long timestamp = Instant.now().toEpochMilli();
+            if (!likes.isEmpty()) {
+                publishChanges(likes, filmStorage.createFilmLikes(likes), Operation.ADD, timestamp, feedEvents);
+            }
+            if (!unlikes.isEmpty()) {
+                publishChanges(unlikes, filmStorage.removeFilmLikes(unlikes), Operation.REMOVE, timestamp, feedEvents);
+            }
+            feedOutbox.stage(feedEvents);
+        });
+        log.debug("Записан пакет лайков: операций {}, после схлопывания {}", operations.size(), coalesced.size());
+    }
+
+    private void publishChanges(List<FilmLike> likes, int[] affectedRows, Operation operation, long timestamp,
+                                List<Event> feedEvents) {
+        for (int i = 0; i < affectedRows.length; i++) {
+            if (affectedRows[i] <= 0) {
+                continue;
+            }
+            FilmLike like = likes.get(i);
+            eventPublisher.publishEvent(new FilmLikeChangedEvent(like.getFilmId(), like.getUserId(), operation));
+            feedEvents.add(Event.builder()
+                    .userId(like.getUserId())
+                    .entityId(like.getFilmId())
+                    .eventType(EventType.LIKE)
+                    .operation(operation)
+                    .timestamp(timestamp)
+                    .build());
+        }
+    }
+}
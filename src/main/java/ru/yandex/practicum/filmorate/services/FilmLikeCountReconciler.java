@@ -0,0 +1,30 @@
+package ru.yandex.practicum.filmorate.services;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.storages.FilmStorage;
+
+/**
+ * Периодически пересчитывает денормализованные счётчики лайков фильмов по таблице film_likes.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FilmLikeCountReconciler {
+    private final FilmStorage filmStorage;
+    private final PopularityIndex popularityIndex;
+
+    @Scheduled(cron = "${app.likes.reconcile-cron:0 0 4 * * *}")
+    @Transactional
+    public int reconcile() {
+        int repaired = filmStorage.reconcileFilmLikeCounts();
+        if (repaired > 0) {
+            log.warn("Исправлены счётчики лайков у {} фильмов", repaired);
+            popularityIndex.invalidate();
+        }
+        return repaired;
+    }
+}
@@ -3,16 +3,21 @@ package ru.yandex.practicum.filmorate.services;
 import org.springframework.lang.NonNull;
 import org.springframework.lang.Nullable;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.exceptions.TooManyRequestsException;
 import ru.yandex.practicum.filmorate.models.Film;
+import ru.yandex.practicum.filmorate.models.FilmLikeOperation;
 import ru.yandex.practicum.filmorate.models.FilmSort;
 import ru.yandex.practicum.filmorate.models.Genre;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface FilmService {
     @NonNull
-    List<Film> getFilms();
+    List<Film> getFilms(@Nullable Long afterId, int limit);
+
+    void exportFilms(@NonNull Consumer<Film> consumer);
 
     @NonNull
     Film createFilm(@NonNull Film film);
@@ -29,9 +34,14 @@ public interface FilmService {
     @NonNull
     Film unlikeFilm(long filmId, long userId) throws NotFoundException;
 
+    void submitFilmLikes(@NonNull List<FilmLikeOperation> operations) throws NotFoundException, TooManyRequestsException;
+
     @NonNull
     List<Film> getMostPopularFilms(int count, @Nullable Long genreId, @Nullable Integer year);
 
+    @NonNull
+    List<Film> getSimilarFilms(long id, int count) throws NotFoundException;
+
     @NonNull
     List<Film> getFilmsByDirector(long directorId, FilmSort sort);
 
@@ -1,25 +1,32 @@
 package ru.yandex.practicum.filmorate.services;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.models.Director;
+import ru.yandex.practicum.filmorate.models.EventType;
 import ru.yandex.practicum.filmorate.models.Film;
+import ru.yandex.practicum.filmorate.models.FilmChangedEvent;
+import ru.yandex.practicum.filmorate.models.FilmLikeChangedEvent;
+import ru.yandex.practicum.filmorate.models.FilmLikeOperation;
 import ru.yandex.practicum.filmorate.models.FilmSort;
 import ru.yandex.practicum.filmorate.models.Genre;
-import ru.yandex.practicum.filmorate.models.User;
-import ru.yandex.practicum.filmorate.storages.DirectorStorage;
+import ru.yandex.practicum.filmorate.models.Operation;
 import ru.yandex.practicum.filmorate.storages.FilmStorage;
-import ru.yandex.practicum.filmorate.storages.GenreStorage;
 import ru.yandex.practicum.filmorate.storages.UserStorage;
+import ru.yandex.practicum.filmorate.utils.AppProperties;
 
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -27,12 +34,22 @@ import java.util.stream.Collectors;
 public class FilmServiceImpl implements FilmService {
     private final FilmStorage filmStorage;
     private final UserStorage userStorage;
-    private final GenreStorage genreStorage;
-    private final DirectorStorage directorStorage;
+    private final ReferenceDataCache referenceDataCache;
+    private final PopularityIndex popularityIndex;
+    private final CoLikeMatrix coLikeMatrix;
+    private final ApplicationEventPublisher eventPublisher;
+    private final AppProperties appProperties;
+    private final FilmLikeBuffer filmLikeBuffer;
+    private final FeedOutbox feedOutbox;
 
     @Override
-    public List<Film> getFilms() {
-        return filmStorage.getAllFilms();
+    public List<Film> getFilms(Long afterId, int limit) {
+        return filmStorage.getFilms(afterId, limit);
+    }
+
+    @Override
+    public void exportFilms(Consumer<Film> consumer) {
+        filmStorage.exportFilms(appProperties.getFilmExportFetchSize(), consumer);
     }
 
     @Transactional
@@ -43,7 +60,7 @@ public class FilmServiceImpl implements FilmService {
                 .collect(Collectors.toSet());
         Set<Genre> foundGenres = null;
         if (genresId.size() > 0) {
-            foundGenres = new HashSet<>(genreStorage.getGenresById(genresId));
+            foundGenres = new HashSet<>(referenceDataCache.getGenresById(genresId));
             if (foundGenres.size() != genresId.size()) {
                 throw new NotFoundException("Переданы несуществующие id жанров");
             }
@@ -54,8 +71,8 @@ public class FilmServiceImpl implements FilmService {
                 .collect(Collectors.toSet());
         Set<Director> foundDirectors = null;
         if (directorsId.size() > 0) {
-            foundDirectors = new HashSet<>(directorStorage.getDirectorsById(directorsId));
-            if (foundDirectors.size() != genresId.size()) {
+            foundDirectors = new HashSet<>(referenceDataCache.getDirectorsById(directorsId));
+            if (foundDirectors.size() != directorsId.size()) {
                 throw new NotFoundException("Переданы несуществующие id режиссеров");
             }
         }
@@ -78,6 +95,7 @@ public class FilmServiceImpl implements FilmService {
             filmStorage.addFilmDirectors(createdFilm.getId(), foundDirectorsId);
             createdFilm.setDirectors(foundDirectors);
         }
+        eventPublisher.publishEvent(new FilmChangedEvent(createdFilm, Operation.ADD));
         return createdFilm;
     }
 
@@ -89,7 +107,7 @@ public class FilmServiceImpl implements FilmService {
                 .collect(Collectors.toSet());
         Set<Genre> updateGenres = new HashSet<>();
         if (genresId.size() > 0) {
-            updateGenres.addAll(genreStorage.getGenresById(genresId));
+            updateGenres.addAll(referenceDataCache.getGenresById(genresId));
             if (updateGenres.size() != genresId.size()) {
                 throw new NotFoundException("Переданы несуществующие id жанров");
             }
@@ -100,7 +118,7 @@ public class FilmServiceImpl implements FilmService {
                 .collect(Collectors.toSet());
         Set<Director> updateDirectors = new HashSet<>();
         if (directorsId.size() > 0) {
-            updateDirectors.addAll(directorStorage.getDirectorsById(directorsId));
+            updateDirectors.addAll(referenceDataCache.getDirectorsById(directorsId));
             if (updateDirectors.size() != directorsId.size()) {
                 throw new NotFoundException("Переданы несуществующие id режиссеров");
             }
@@ -110,46 +128,14 @@ public class FilmServiceImpl implements FilmService {
         if (updatedFilm.isEmpty()) {
             return updatedFilm;
         }
-
-        Set<Long> updateGenresId = updateGenres
-                .stream()
-                .map(Genre::getId)
-                .collect(Collectors.toSet());
-        Set<Long> currentGenresId = updatedFilm
-                .get()
-                .getGenres()
-                .stream()
-                .map(Genre::getId)
-                .collect(Collectors.toSet());
-        Set<Long> intersectGenres = new HashSet<>(updateGenresId);
-        intersectGenres.retainAll(currentGenresId);
-        final Set<Long> genresToRemove = new HashSet<>(currentGenresId);
-        genresToRemove.removeAll(intersectGenres);
-        final Set<Long> genresToAdd = new HashSet<>(updateGenresId);
-        genresToAdd.removeAll(intersectGenres);
-
-        Set<Long> updateDirectorsId = updateDirectors
-                .stream()
-                .map(Director::getId)
-                .collect(Collectors.toSet());
-        Set<Long> currentDirectorsId = updatedFilm
-                .get()
-                .getDirectors()
-                .stream()
-                .map(Director::getId)
-                .collect(Collectors.toSet());
-        Set<Long> intersectDirectors = new HashSet<>(updateDirectorsId);
-        intersectDirectors.retainAll(currentDirectorsId);
-        final Set<Long> directorsToRemove = new HashSet<>(currentDirectorsId);
-        directorsToRemove.removeAll(intersectDirectors);
-        final Set<Long> directosToAdd = new HashSet<>(updateDirectorsId);
-        directosToAdd.removeAll(intersectDirectors);
-
-        filmStorage.addFilmGenres(filmUpdates.getId(), genresToAdd);
-        filmStorage.removeFilmGenres(filmUpdates.getId(), genresToRemove);
-        filmStorage.addFilmDirectors(filmUpdates.getId(), directosToAdd);
-        filmStorage.removeFilmDirectors(filmUpdates.getId(), directorsToRemove);
-        return filmStorage.getFilmById(filmUpdates.getId());
+        // связи заменяются целиком, фильм после обновления не перечитывается
+        filmStorage.setFilmGenres(filmUpdates.getId(), genresId);
+        filmStorage.setFilmDirectors(filmUpdates.getId(), directorsId);
+        Film film = updatedFilm.get();
+        film.setGenres(updateGenres);
+        film.setDirectors(updateDirectors);
+        eventPublisher.publishEvent(new FilmChangedEvent(film, Operation.UPDATE));
+        return updatedFilm;
     }
 
     @Override
@@ -163,11 +149,14 @@ public class FilmServiceImpl implements FilmService {
     public Film likeFilm(long filmId, long userId) throws NotFoundException {
         final Film film = filmStorage.getFilmById(filmId)
                 .orElseThrow(() -> new NotFoundException("Не найден фильм с id:" + filmId));
-        final User user = userStorage.getUserById(userId)
-                .orElseThrow(() -> new NotFoundException("Не найден пользователь с id:" + userId));
-        if (film.addLike(user.getId())) {
-            filmStorage.createFilmLike(filmId, userId);
+        if (!userStorage.existsUser(userId)) {
+            throw new NotFoundException("Не найден пользователь с id:" + userId);
+        }
+        if (filmStorage.createFilmLike(filmId, userId)) {
+            film.setLikeCount(film.getLikeCount() + 1);
+            eventPublisher.publishEvent(new FilmLikeChangedEvent(filmId, userId, Operation.ADD));
         }
+        feedOutbox.stage(userId, filmId, EventType.LIKE, Operation.ADD);
         return film;
     }
 
@@ -176,24 +165,51 @@ public class FilmServiceImpl implements FilmService {
     public Film unlikeFilm(long filmId, long userId) throws NotFoundException {
         final Film film = filmStorage.getFilmById(filmId)
                 .orElseThrow(() -> new NotFoundException("Не найден фильм с id:" + filmId));
-        final User user = userStorage.getUserById(userId)
-                .orElseThrow(() -> new NotFoundException("Не найден пользователь с id:" + userId));
-        if (film.removeLike(user.getId())) {
-            filmStorage.removeFilmLike(filmId, userId);
+        if (!userStorage.existsUser(userId)) {
+            throw new NotFoundException("Не найден пользователь с id:" + userId);
         }
+        if (filmStorage.removeFilmLike(filmId, userId)) {
+            film.setLikeCount(film.getLikeCount() - 1);
+            eventPublisher.publishEvent(new FilmLikeChangedEvent(filmId, userId, Operation.REMOVE));
+        }
+        feedOutbox.stage(userId, filmId, EventType.LIKE, Operation.REMOVE);
         return film;
     }
 
+    @Override
+    public void submitFilmLikes(List<FilmLikeOperation> operations) {
+        // id проверяются одним запросом на таблицу до постановки в очередь, а не при записи пакета
+        final Set<Long> filmIds = operations.stream().map(FilmLikeOperation::getFilmId).collect(Collectors.toSet());
+        final Set<Long> userIds = operations.stream().map(FilmLikeOperation::getUserId).collect(Collectors.toSet());
+        filmIds.removeAll(filmStorage.existingIds(filmIds));
+        if (!filmIds.isEmpty()) {
+            throw new NotFoundException("Не найдены фильмы с id:" + filmIds);
+        }
+        userIds.removeAll(userStorage.existingIds(userIds));
+        if (!userIds.isEmpty()) {
+            throw new NotFoundException("Не найдены пользователи с id:" + userIds);
+        }
+        filmLikeBuffer.submit(operations);
+    }
+
     @Override
     public List<Film> getMostPopularFilms(int count, Long genreId, Integer year) {
-        return filmStorage.getMostPopularFilms(count, genreId, year);
+        return getFilmsInOrder(popularityIndex.getMostPopularFilmIds(count, genreId, year));
+    }
+
+    @Override
+    public List<Film> getSimilarFilms(long id, int count) {
+        if (!filmStorage.existsFilm(id)) {
+            throw new NotFoundException("Не найден фильм с id:" + id);
+        }
+        return getFilmsInOrder(coLikeMatrix.getSimilarFilmIds(id, count));
     }
 
     @Override
     @Transactional(readOnly = true)
     public List<Film> getFilmsByDirector(long directorId, FilmSort sort) {
 
-        directorStorage.getDirectorById(directorId)
+        referenceDataCache.getDirectorById(directorId)
                 .orElseThrow(() -> new NotFoundException("Не найден режиссер с id:" + directorId));
 
         return filmStorage.getFilmsByDirector(directorId, sort);
@@ -201,33 +217,25 @@ public class FilmServiceImpl implements FilmService {
 
     @Override
     public List<Genre> getGenres() {
-        return genreStorage.getAllGenres();
+        return referenceDataCache.getAllGenres();
     }
 
     @Override
     public Optional<Genre> getGenreById(long id) {
-        return genreStorage.getGenreById(id);
+        return referenceDataCache.getGenreById(id);
     }
 
     @Override
     @Transactional(readOnly = true)
     public List<Film> getCommonFilms(long userId, long friendId) {
-        userStorage.getUserById(userId)
-                .orElseThrow(() -> new NotFoundException("Не найден пользователь с id:" + userId));
-        userStorage.getUserById(friendId)
-                .orElseThrow(() -> new NotFoundException("Не найден пользователь с id:" + friendId));
-
-        Set<Long> userFilmLikes = filmStorage.getUserFilmLikes(userId);
-        Set<Long> friendFilmLikes = filmStorage.getUserFilmLikes(friendId);
-        Set<Long> commonFilmLikes = new HashSet<>(userFilmLikes);
-        commonFilmLikes.retainAll(friendFilmLikes);
-        if (commonFilmLikes.isEmpty()) {
-            return new ArrayList<>();
+        if (!userStorage.existsUser(userId)) {
+            throw new NotFoundException("Не найден пользователь с id:" + userId);
         }
-        return filmStorage.getFilmsByIds(commonFilmLikes)
-                .stream()
-                .sorted(Comparator.comparingInt(Film::getNumOfLikes).reversed())
-                .collect(Collectors.toList());
+        if (!userStorage.existsUser(friendId)) {
+            throw new NotFoundException("Не найден пользователь с id:" + friendId);
+        }
+
+        return filmStorage.getCommonFilms(userId, friendId);
     }
 
     @Override
@@ -236,6 +244,20 @@ public class FilmServiceImpl implements FilmService {
         final Film film = filmStorage.getFilmById(id)
                 .orElseThrow(() -> new NotFoundException("Не найден фильм с id: " + id));
         filmStorage.deleteFilmById(id);
+        eventPublisher.publishEvent(new FilmChangedEvent(film, Operation.REMOVE));
         return film;
     }
+
+    private List<Film> getFilmsInOrder(List<Long> filmIds) {
+        if (filmIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Long, Film> films = filmStorage.getFilmsByIds(new HashSet<>(filmIds))
+                .stream()
+                .collect(Collectors.toMap(Film::getId, Function.identity()));
+        return filmIds.stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
 }
@@ -0,0 +1,194 @@
+package ru.yandex.practicum.filmorate.services;
+
+import ru.yandex.practicum.filmorate.models.FilmLike;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Неизменяемый двудольный граф лайков пользователь - фильм в сжатом построчном виде (CSR).
+ * Пользователи и фильмы нумеруются по возрастанию id. Строка пользователя u - отсортированные номера фильмов
+ * userFilms[userOffsets[u], userOffsets[u + 1]), строка фильма устроена так же.
+ * Один лайк занимает по одному int в каждом направлении, пересечение строк считается слиянием без выделения памяти.
+ */
+final class LikeGraph {
+    static final LikeGraph EMPTY = build(new long[0], new long[0], 0);
+
+    private final long[] userIds;
+    private final long[] filmIds;
+    private final int[] userOffsets;
+    private final int[] userFilms;
+    private final int[] filmOffsets;
+    private final int[] filmUsers;
+
+    private LikeGraph(long[] userIds, long[] filmIds, int[] userOffsets, int[] userFilms,
+                      int[] filmOffsets, int[] filmUsers) {
+        this.userIds = userIds;
+        this.filmIds = filmIds;
+        this.userOffsets = userOffsets;
+        this.userFilms = userFilms;
+        this.filmOffsets = filmOffsets;
+        this.filmUsers = filmUsers;
+    }
+
+    static LikeGraph of(Collection<FilmLike> likes) {
+        final long[] users = new long[likes.size()];
+        final long[] films = new long[likes.size()];
+        int i = 0;
+        for (FilmLike like : likes) {
+            users[i] = like.getUserId();
+            films[i] = like.getFilmId();
+            i++;
+        }
+        return build(users, films, i);
+    }
+
+    /**
+     * Строит граф из пар (likeUserIds[i], likeFilmIds[i]), i < count. Пары не должны повторяться.
+     */
+    static LikeGraph build(long[] likeUserIds, long[] likeFilmIds, int count) {
+        final long[] userIds = distinctSorted(likeUserIds, count);
+        final long[] filmIds = distinctSorted(likeFilmIds, count);
+        final int[] userOfLike = new int[count];
+        final int[] filmOfLike = new int[count];
+        final int[] userOffsets = new int[userIds.length + 1];
+        final int[] filmOffsets = new int[filmIds.length + 1];
+        for (int i = 0; i < count; i++) {
+            userOfLike[i] = Arrays.binarySearch(userIds, likeUserIds[i]);
+            filmOfLike[i] = Arrays.binarySearch(filmIds, likeFilmIds[i]);
+            userOffsets[userOfLike[i] + 1]++;
+            filmOffsets[filmOfLike[i] + 1]++;
+        }
+        for (int u = 0; u < userIds.length; u++) {
+            userOffsets[u + 1] += userOffsets[u];
+        }
+        for (int f = 0; f < filmIds.length; f++) {
+            filmOffsets[f + 1] += filmOffsets[f];
+        }
+
+        final int[] userFilms = new int[count];
+        final int[] filmUsers = new int[count];
+        final int[] userFill = Arrays.copyOf(userOffsets, userIds.length);
+        final int[] filmFill = Arrays.copyOf(filmOffsets, filmIds.length);
+        for (int i = 0; i < count; i++) {
+            userFilms[userFill[userOfLike[i]]++] = filmOfLike[i];
+            filmUsers[filmFill[filmOfLike[i]]++] = userOfLike[i];
+        }
+        for (int u = 0; u < userIds.length; u++) {
+            Arrays.sort(userFilms, userOffsets[u], userOffsets[u + 1]);
+        }
+        for (int f = 0; f < filmIds.length; f++) {
+            Arrays.sort(filmUsers, filmOffsets[f], filmOffsets[f + 1]);
+        }
+        return new LikeGraph(userIds, filmIds, userOffsets, userFilms, filmOffsets, filmUsers);
+    }
+
+    int userCount() {
+        return userIds.length;
+    }
+
+    int filmCount() {
+        return filmIds.length;
+    }
+
+    int likeCount() {
+        return userFilms.length;
+    }
+
+    /**
+     * @return номер пользователя или -1, если у пользователя нет лайков
+     */
+    int userIndex(long userId) {
+        int index = Arrays.binarySearch(userIds, userId);
+        return index >= 0 ? index : -1;
+    }
+
+    /**
+     * @return номер фильма или -1, если у фильма нет лайков
+     */
+    int filmIndex(long filmId) {
+        int index = Arrays.binarySearch(filmIds, filmId);
+        return index >= 0 ? index : -1;
+    }
+
+    long userId(int user) {
+        return userIds[user];
+    }
+
+    long filmId(int film) {
+        return filmIds[film];
+    }
+
+    int userFilmsStart(int user) {
+        return userOffsets[user];
+    }
+
+    int userFilmsEnd(int user) {
+        return userOffsets[user + 1];
+    }
+
+    int userFilmAt(int position) {
+        return userFilms[position];
+    }
+
+    int filmUsersStart(int film) {
+        return filmOffsets[film];
+    }
+
+    int filmUsersEnd(int film) {
+        return filmOffsets[film + 1];
+    }
+
+    int filmUserAt(int position) {
+        return filmUsers[position];
+    }
+
+    boolean containsLike(int user, int film) {
+        return Arrays.binarySearch(userFilms, userOffsets[user], userOffsets[user + 1], film) >= 0;
+    }
+
+    /**
+     * Количество фильмов, которые лайкнули оба пользователя.
+     */
+    int countCommonFilms(int user, int other) {
+        return intersectionSize(userFilms, userOffsets[user], userOffsets[user + 1],
+                userFilms, userOffsets[other], userOffsets[other + 1]);
+    }
+
+    int userDegree(int user) {
+        return userOffsets[user + 1] - userOffsets[user];
+    }
+
+    /**
+     * Размер пересечения отсортированных без повторов диапазонов a[aFrom, aTo) и b[bFrom, bTo).
+     */
+    static int intersectionSize(int[] a, int aFrom, int aTo, int[] b, int bFrom, int bTo) {
+        int count = 0;
+        int i = aFrom;
+        int j = bFrom;
+        while (i < aTo && j < bTo) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                count++;
+                i++;
+                j++;
+            }
+        }
+        return count;
+    }
+
+    private static long[] distinctSorted(long[] values, int count) {
+        final long[] sorted = Arrays.copyOf(values, count);
+        Arrays.sort(sorted);
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            if (size == 0 || sorted[size - 1] != sorted[i]) {
+                sorted[size++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, size);
+    }
+}
@@ -0,0 +1,585 @@
+package ru.yandex.practicum.filmorate.services;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.yandex.practicum.filmorate.models.FilmChangedEvent;
+import ru.yandex.practicum.filmorate.models.FilmLike;
+import ru.yandex.practicum.filmorate.models.FilmLikeChangedEvent;
+import ru.yandex.practicum.filmorate.models.Operation;
+import ru.yandex.practicum.filmorate.models.UserDeletedEvent;
+import ru.yandex.practicum.filmorate.storages.FilmStorage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+
+/**
+ * Индекс лайков в памяти в обе стороны: пользователь -> фильмы и фильм -> пользователи.
+ * Основная часть хранится в неизменяемом {@link LikeGraph}, лайки после его построения - в небольших
+ * наборах добавленных и удалённых пар. Когда изменений накапливается больше восьмой части графа,
+ * граф перестраивается в памяти вместе с ними.
+ * Строится из film_likes при старте приложения или при первом обращении,
+ * затем обновляется инкрементально после фиксации транзакций лайков.
+ * Слушатели после фиксации параллельных транзакций могут прийти не в порядке фиксации, поэтому для каждой
+ * пары (фильм, пользователь) запоминается sequence последнего применённого события, и более раннее
+ * событие той же пары пропускается. Запомненные sequence хранятся, пока через индекс не пройдёт
+ * ещё одно уплотнение.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LikeIndex {
+    /**
+     * Порядок слушателей событий лайков: индекс обновляется раньше построенных на нём индексов.
+     */
+    public static final int LISTENER_ORDER = Ordered.HIGHEST_PRECEDENCE;
+    private static final int MIN_PENDING_CHANGES = 1024;
+    // плотных счётчиков больше, чем процессоров, одновременно не нужно
+    private static final int DENSE_SCRATCH_LIMIT = Runtime.getRuntime().availableProcessors();
+
+    private final FilmStorage filmStorage;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Set<Long>> addedUserFilms = new HashMap<>();
+    private final Map<Long, Set<Long>> addedFilmUsers = new HashMap<>();
+    private final Map<Long, Set<Long>> removedUserFilms = new HashMap<>();
+    private final Map<Long, Set<Long>> removedFilmUsers = new HashMap<>();
+    private final Queue<Scratch> denseScratch = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger denseScratchCount = new AtomicInteger();
+    private final List<ChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+    // пара (фильм, пользователь) -> sequence последнего применённого события
+    private final Map<FilmLike, Long> appliedSequences = new HashMap<>();
+    private long maxAppliedSequence;
+    // sequence не больше этого значения удаляются при следующем уплотнении
+    private long staleSequence;
+    private LikeGraph graph = LikeGraph.EMPTY;
+    private int pendingChanges;
+    private volatile boolean built;
+
+    /**
+     * Фильмы, которые лайкнул пользователь.
+     * @param userId id пользователя
+     * @return Set<Long>, пустой если лайков нет
+     */
+    public Set<Long> getUserFilms(long userId) {
+        ensureBuilt();
+        lock.readLock().lock();
+        try {
+            final Set<Long> films = new HashSet<>();
+            forEachUserFilm(userId, films::add);
+            return films;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Пользователи, у которых есть хотя бы один лайк.
+     * @return Set<Long>
+     */
+    public Set<Long> getUserIds() {
+        ensureBuilt();
+        lock.readLock().lock();
+        try {
+            final Set<Long> users = new HashSet<>(addedUserFilms.keySet());
+            for (int u = 0; u < graph.userCount(); u++) {
+                long userId = graph.userId(u);
+                Set<Long> removed = removedUserFilms.get(userId);
+                if (removed == null || removed.size() < graph.userDegree(u)) {
+                    users.add(userId);
+                }
+            }
+            return users;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Количество фильмов, которые лайкнули оба пользователя.
+     * Без изменений после построения графа считается слиянием строк графа без выделения памяти.
+     * @param userId id пользователя
+     * @param otherId id другого пользователя
+     * @return int
+     */
+    public int countCommonFilms(long userId, long otherId) {
+        ensureBuilt();
+        lock.readLock().lock();
+        try {
+            if (pendingChanges == 0) {
+                int user = graph.userIndex(userId);
+                int other = graph.userIndex(otherId);
+                return user < 0 || other < 0 ? 0 : graph.countCommonFilms(user, other);
+            }
+            final Set<Long> films = new HashSet<>();
+            forEachUserFilm(userId, films::add);
+            final int[] common = new int[1];
+            forEachUserFilm(otherId, filmId -> {
+                if (films.contains(filmId)) {
+                    common[0]++;
+                }
+            });
+            return common[0];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Пользователи с наибольшим количеством общих лайков, при равенстве - с меньшим id.
+     * Счётчики ведутся по номерам графа, без словаря по всем пересекающимся пользователям.
+     * @param userId id пользователя
+     * @param limit максимальное количество пользователей
+     * @return List<Long>
+     */
+    public List<Long> getTopNeighbours(long userId, int limit) {
+        ensureBuilt();
+        lock.readLock().lock();
+        final Scratch s = acquireScratch();
+        try {
+            final Map<Long, Integer> extra = new HashMap<>();
+            countOverlaps(userId, s, extra);
+            final long[] bestIds = new long[limit];
+            final int[] bestCounts = new int[limit];
+            final int[] size = new int[1];
+            s.forEach((user, count) ->
+                    size[0] = offer(bestIds, bestCounts, size[0], graph.userId((int) user), count));
+            for (Map.Entry<Long, Integer> entry : extra.entrySet()) {
+                size[0] = offer(bestIds, bestCounts, size[0], entry.getKey(), entry.getValue());
+            }
+            final List<Long> result = new ArrayList<>(size[0]);
+            for (int i = 0; i < size[0]; i++) {
+                result.add(bestIds[i]);
+            }
+            return result;
+        } finally {
+            releaseScratch(s);
+            lock.readLock().unlock();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        ensureBuilt();
+    }
+
+    /**
+     * Перечитывает лайки из хранилища. Получатели изменений о перечитывании не узнают.
+     */
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            load();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Передаёт action неизменяемый граф всех лайков с уже применёнными изменениями.
+     * Пока action выполняется, новые изменения ждут, поэтому получатели изменений
+     * получают только изменения, которых в графе ещё нет.
+     */
+    void withGraph(Consumer<LikeGraph> action) {
+        ensureBuilt();
+        lock.writeLock().lock();
+        try {
+            if (pendingChanges > 0) {
+                compact();
+            }
+            lock.readLock().lock();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            action.accept(graph);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void addChangeListener(ChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    @Order(LISTENER_ORDER)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFilmLikeChanged(FilmLikeChangedEvent event) {
+        final FilmLike like = new FilmLike(event.getFilmId(), event.getUserId());
+        lock.writeLock().lock();
+        try {
+            Long applied = appliedSequences.get(like);
+            if (applied != null && applied > event.getSequence()) {
+                log.debug("Пропущено устаревшее изменение лайка фильма id={} пользователем id={}",
+                        event.getFilmId(), event.getUserId());
+                return;
+            }
+            appliedSequences.put(like, event.getSequence());
+            maxAppliedSequence = Math.max(maxAppliedSequence, event.getSequence());
+            apply(event.getFilmId(), event.getUserId(), event.getOperation() == Operation.ADD);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Order(LISTENER_ORDER)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFilmChanged(FilmChangedEvent event) {
+        if (event.getOperation() != Operation.REMOVE) {
+            return;
+        }
+        final long filmId = event.getFilm().getId();
+        lock.writeLock().lock();
+        try {
+            final List<Long> users = new ArrayList<>();
+            forEachFilmUser(filmId, users::add);
+            users.forEach(userId -> apply(filmId, userId, false));
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Order(LISTENER_ORDER)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserDeleted(UserDeletedEvent event) {
+        final long userId = event.getUserId();
+        lock.writeLock().lock();
+        try {
+            final List<Long> films = new ArrayList<>();
+            forEachUserFilm(userId, films::add);
+            films.forEach(filmId -> apply(filmId, userId, false));
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void ensureBuilt() {
+        if (built) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (!built) {
+                load();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void load() {
+        graph = LikeGraph.of(filmStorage.getAllFilmLikes());
+        clearChanges();
+        built = true;
+        log.debug("Индекс лайков построен, пользователей: {}, фильмов: {}, лайков: {}",
+                graph.userCount(), graph.filmCount(), graph.likeCount());
+    }
+
+    private Scratch acquireScratch() {
+        final Scratch s = denseScratch.poll();
+        if (s != null) {
+            return s;
+        }
+        if (denseScratchCount.incrementAndGet() <= DENSE_SCRATCH_LIMIT) {
+            return new Scratch(true);
+        }
+        denseScratchCount.decrementAndGet();
+        return new Scratch(false);
+    }
+
+    private void releaseScratch(Scratch s) {
+        s.reset();
+        if (s.dense) {
+            denseScratch.offer(s);
+        }
+    }
+
+    // счётчики пользователей графа - в s, пользователей вне графа - в extra
+    private void countOverlaps(long userId, Scratch s, Map<Long, Integer> extra) {
+        s.ensureCapacity(graph.userCount());
+        final int self = graph.userIndex(userId);
+        if (self >= 0) {
+            final Set<Long> removedFilms = pendingChanges == 0 ? null : removedUserFilms.get(userId);
+            for (int p = graph.userFilmsStart(self); p < graph.userFilmsEnd(self); p++) {
+                int film = graph.userFilmAt(p);
+                if (removedFilms != null && removedFilms.contains(graph.filmId(film))) {
+                    continue;
+                }
+                countFilmUsers(film, graph.filmId(film), userId, self, s, extra);
+            }
+        }
+        if (pendingChanges > 0) {
+            for (Long filmId : addedUserFilms.getOrDefault(userId, Set.of())) {
+                countFilmUsers(graph.filmIndex(filmId), filmId, userId, self, s, extra);
+            }
+        }
+    }
+
+    private void countFilmUsers(int film, long filmId, long userId, int self, Scratch s, Map<Long, Integer> extra) {
+        final Set<Long> removedUsers = pendingChanges == 0 ? null : removedFilmUsers.get(filmId);
+        if (film >= 0) {
+            for (int p = graph.filmUsersStart(film); p < graph.filmUsersEnd(film); p++) {
+                int other = graph.filmUserAt(p);
+                if (other == self || removedUsers != null && removedUsers.contains(graph.userId(other))) {
+                    continue;
+                }
+                s.increment(other);
+            }
+        }
+        if (pendingChanges > 0) {
+            for (Long otherId : addedFilmUsers.getOrDefault(filmId, Set.of())) {
+                if (otherId == userId) {
+                    continue;
+                }
+                int other = graph.userIndex(otherId);
+                if (other >= 0) {
+                    s.increment(other);
+                } else {
+                    extra.merge(otherId, 1, Integer::sum);
+                }
+            }
+        }
+    }
+
+    // вставка в отсортированную по убыванию количества и возрастанию id выборку фиксированного размера
+    private static int offer(long[] ids, int[] counts, int size, long id, int count) {
+        int position = size;
+        while (position > 0 && (counts[position - 1] < count
+                || counts[position - 1] == count && ids[position - 1] > id)) {
+            position--;
+        }
+        if (position >= ids.length) {
+            return size;
+        }
+        int last = Math.min(size, ids.length - 1);
+        System.arraycopy(ids, position, ids, position + 1, last - position);
+        System.arraycopy(counts, position, counts, position + 1, last - position);
+        ids[position] = id;
+        counts[position] = count;
+        return Math.min(size + 1, ids.length);
+    }
+
+    private void forEachUserFilm(long userId, LongConsumer action) {
+        final int user = graph.userIndex(userId);
+        if (user >= 0) {
+            final Set<Long> removed = removedUserFilms.get(userId);
+            for (int p = graph.userFilmsStart(user); p < graph.userFilmsEnd(user); p++) {
+                long filmId = graph.filmId(graph.userFilmAt(p));
+                if (removed == null || !removed.contains(filmId)) {
+                    action.accept(filmId);
+                }
+            }
+        }
+        addedUserFilms.getOrDefault(userId, Set.of()).forEach(action::accept);
+    }
+
+    private void forEachFilmUser(long filmId, LongConsumer action) {
+        final int film = graph.filmIndex(filmId);
+        if (film >= 0) {
+            final Set<Long> removed = removedFilmUsers.get(filmId);
+            for (int p = graph.filmUsersStart(film); p < graph.filmUsersEnd(film); p++) {
+                long userId = graph.userId(graph.filmUserAt(p));
+                if (removed == null || !removed.contains(userId)) {
+                    action.accept(userId);
+                }
+            }
+        }
+        addedFilmUsers.getOrDefault(filmId, Set.of()).forEach(action::accept);
+    }
+
+    private boolean graphContains(long filmId, long userId) {
+        int user = graph.userIndex(userId);
+        int film = graph.filmIndex(filmId);
+        return user >= 0 && film >= 0 && graph.containsLike(user, film);
+    }
+
+    // применяет лайк и, если индекс изменился, передаёт изменение получателям
+    private void apply(long filmId, long userId, boolean added) {
+        final boolean changed = added ? add(filmId, userId) : remove(filmId, userId);
+        if (!changed || changeListeners.isEmpty()) {
+            return;
+        }
+        final LongStream.Builder otherFilms = LongStream.builder();
+        forEachUserFilm(userId, id -> {
+            if (id != filmId) {
+                otherFilms.add(id);
+            }
+        });
+        final long[] others = otherFilms.build().toArray();
+        for (ChangeListener listener : changeListeners) {
+            listener.onLikeChanged(filmId, added ? 1 : -1, others);
+        }
+    }
+
+    private boolean add(long filmId, long userId) {
+        if (removeFrom(removedUserFilms, userId, filmId)) {
+            removeFrom(removedFilmUsers, filmId, userId);
+            pendingChanges--;
+            return true;
+        }
+        if (graphContains(filmId, userId)) {
+            return false;
+        }
+        if (addedUserFilms.computeIfAbsent(userId, id -> new HashSet<>()).add(filmId)) {
+            addedFilmUsers.computeIfAbsent(filmId, id -> new HashSet<>()).add(userId);
+            pendingChanges++;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean remove(long filmId, long userId) {
+        if (removeFrom(addedUserFilms, userId, filmId)) {
+            removeFrom(addedFilmUsers, filmId, userId);
+            pendingChanges--;
+            return true;
+        }
+        if (!graphContains(filmId, userId)) {
+            return false;
+        }
+        if (removedUserFilms.computeIfAbsent(userId, id -> new HashSet<>()).add(filmId)) {
+            removedFilmUsers.computeIfAbsent(filmId, id -> new HashSet<>()).add(userId);
+            pendingChanges++;
+            return true;
+        }
+        return false;
+    }
+
+    private void compactIfNeeded() {
+        if (pendingChanges > Math.max(MIN_PENDING_CHANGES, graph.likeCount() / 8)) {
+            compact();
+        }
+    }
+
+    private void compact() {
+        final int capacity = graph.likeCount() + pendingChanges;
+        final long[] users = new long[capacity];
+        final long[] films = new long[capacity];
+        int count = 0;
+        for (int u = 0; u < graph.userCount(); u++) {
+            final long userId = graph.userId(u);
+            final Set<Long> removed = removedUserFilms.get(userId);
+            for (int p = graph.userFilmsStart(u); p < graph.userFilmsEnd(u); p++) {
+                long filmId = graph.filmId(graph.userFilmAt(p));
+                if (removed == null || !removed.contains(filmId)) {
+                    users[count] = userId;
+                    films[count++] = filmId;
+                }
+            }
+        }
+        for (Map.Entry<Long, Set<Long>> entry : addedUserFilms.entrySet()) {
+            for (Long filmId : entry.getValue()) {
+                users[count] = entry.getKey();
+                films[count++] = filmId;
+            }
+        }
+        graph = LikeGraph.build(users, films, count);
+        clearChanges();
+        final long stale = staleSequence;
+        appliedSequences.values().removeIf(sequence -> sequence <= stale);
+        staleSequence = maxAppliedSequence;
+        log.debug("Индекс лайков уплотнён, лайков: {}", graph.likeCount());
+    }
+
+    private void clearChanges() {
+        addedUserFilms.clear();
+        addedFilmUsers.clear();
+        removedUserFilms.clear();
+        removedFilmUsers.clear();
+        pendingChanges = 0;
+    }
+
+    private static boolean removeFrom(Map<Long, Set<Long>> index, long key, long value) {
+        Set<Long> values = index.get(key);
+        if (values == null || !values.remove(value)) {
+            return false;
+        }
+        if (values.isEmpty()) {
+            index.remove(key);
+        }
+        return true;
+    }
+
+    /**
+     * Получатель изменений индекса. Вызывается под блокировкой записи индекса сразу после
+     * применения каждого лайка, в порядке применения.
+     */
+    interface ChangeListener {
+        /**
+         * @param filmId id фильма
+         * @param delta 1 - лайк добавлен, -1 - удалён
+         * @param otherFilms остальные фильмы пользователя после изменения
+         */
+        void onLikeChanged(long filmId, int delta, long[] otherFilms);
+    }
+
+    /**
+     * Счётчики общих лайков по номерам пользователей графа.
+     * Плотные - массивы на всех пользователей графа, переиспользуются между запросами; их не больше,
+     * чем процессоров, поэтому память не растёт с числом потоков. Когда все плотные заняты,
+     * запрос считает в разреженной хэш-таблице только по затронутым пользователям.
+     */
+    static final class Scratch {
+        private final boolean dense;
+        private final LongIntHashMap sparse;
+        private int[] counts = new int[0];
+        private int[] touched = new int[0];
+        private int touchedSize;
+
+        Scratch(boolean dense) {
+            this.dense = dense;
+            this.sparse = dense ? null : new LongIntHashMap();
+        }
+
+        void ensureCapacity(int users) {
+            if (dense && counts.length < users) {
+                counts = new int[users];
+                touched = new int[users];
+            }
+        }
+
+        void increment(int user) {
+            if (!dense) {
+                sparse.addTo(user + 1L, 1); // ключ 0 в LongIntHashMap занят под пустую ячейку
+            } else if (counts[user]++ == 0) {
+                touched[touchedSize++] = user;
+            }
+        }
+
+        void forEach(LongIntHashMap.LongIntConsumer consumer) {
+            if (!dense) {
+                sparse.forEach((key, count) -> consumer.accept(key - 1, count));
+                return;
+            }
+            for (int i = 0; i < touchedSize; i++) {
+                consumer.accept(touched[i], counts[touched[i]]);
+            }
+        }
+
+        void reset() {
+            for (int i = 0; i < touchedSize; i++) {
+                counts[touched[i]] = 0;
+            }
+            touchedSize = 0;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package ru.yandex.practicum.filmorate.services;
+
+/**
+ * Хэш-таблица long -> int с открытой адресацией без упаковки ключей и значений в объекты.
+ * Ключ 0 зарезервирован под пустую ячейку. Значение, ставшее нулевым, удаляет ключ.
+ * Не потокобезопасна.
+ */
+class LongIntHashMap {
+    private static final int MIN_CAPACITY = 4;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+
+    LongIntHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, expectedSize * 2 - 1)) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+    }
+
+    int get(long key) {
+        int index = indexOf(key);
+        return keys[index] == key ? values[index] : 0;
+    }
+
+    /**
+     * Прибавляет delta к значению ключа, отсутствующий ключ считается равным 0.
+     * @param key ключ, не 0
+     * @param delta приращение
+     * @return новое значение
+     */
+    int addTo(long key, int delta) {
+        if (key == 0) {
+            throw new IllegalArgumentException("Ключ 0 зарезервирован");
+        }
+        int index = indexOf(key);
+        if (keys[index] == key) {
+            int value = values[index] + delta;
+            if (value == 0) {
+                removeAt(index);
+            } else {
+                values[index] = value;
+            }
+            return value;
+        }
+        if (delta == 0) {
+            return 0;
+        }
+        keys[index] = key;
+        values[index] = delta;
+        if (++size * 2 > keys.length) {
+            resize(keys.length << 1);
+        }
+        return delta;
+    }
+
+    void remove(long key) {
+        int index = indexOf(key);
+        if (keys[index] == key && key != 0) {
+            removeAt(index);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    void forEach(LongIntConsumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    // ячейка ключа или первая пустая ячейка на пути поиска
+    private int indexOf(long key) {
+        int mask = keys.length - 1;
+        int index = hash(key) & mask;
+        while (keys[index] != 0 && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    // удаление со сдвигом следующих ключей цепочки, чтобы поиск не обрывался на дыре
+    private void removeAt(int index) {
+        int mask = keys.length - 1;
+        int hole = index;
+        int next = (hole + 1) & mask;
+        while (keys[next] != 0) {
+            int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = 0;
+        values[hole] = 0;
+        size--;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[capacity];
+        values = new int[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int index = indexOf(oldKeys[i]);
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @FunctionalInterface
+    interface LongIntConsumer {
+        void accept(long key, int value);
+    }
+}
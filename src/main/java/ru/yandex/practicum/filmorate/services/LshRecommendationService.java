@@ -0,0 +1,48 @@
+package ru.yandex.practicum.filmorate.services;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.storages.FilmStorage;
+import ru.yandex.practicum.filmorate.storages.UserStorage;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Приближённые рекомендации (app.recommendations.mode=lsh).
+ * Кандидаты в похожие пользователи берутся из корзин {@link MinHashIndex},
+ * общие лайки точно пересчитываются только для них.
+ * Похожий пользователь, не попавший ни в одну общую корзину, будет пропущен -
+ * полноту относительно {@link SimpleRecommendationService} настраивают параметрами bands и rows.
+ */
+@Service
+@ConditionalOnProperty(name = "app.recommendations.mode", havingValue = "lsh")
+public class LshRecommendationService extends AbstractRecommendationService {
+    private final MinHashIndex minHashIndex;
+
+    public LshRecommendationService(FilmStorage filmStorage, UserStorage userStorage, LikeIndex likeIndex,
+                                    MinHashIndex minHashIndex) {
+        super(filmStorage, userStorage, likeIndex);
+        this.minHashIndex = minHashIndex;
+    }
+
+    @Override
+    protected List<Long> findNeighbours(long id, int limit) {
+        final Map<Long, Integer> scores = new HashMap<>();
+        for (Long candidate : minHashIndex.getCandidates(id)) {
+            int common = likeIndex.countCommonFilms(id, candidate);
+            if (common > 0) {
+                scores.put(candidate, common);
+            }
+        }
+        return scores.entrySet()
+                .stream()
+                .sorted(Map.Entry.<Long, Integer>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+}
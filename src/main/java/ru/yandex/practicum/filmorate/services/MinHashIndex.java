@@ -0,0 +1,202 @@
+package ru.yandex.practicum.filmorate.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.yandex.practicum.filmorate.models.FilmLikeChangedEvent;
+import ru.yandex.practicum.filmorate.models.UserDeletedEvent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * LSH-индекс пользователей по MinHash-сигнатурам их лайков.
+ * Сигнатура из bands * rows минимальных хэшей делится на bands полос, пользователи с совпадающей
+ * полосой попадают в одну корзину. Пара с мерой Жаккара J становится кандидатами
+ * с вероятностью 1 - (1 - J^rows)^bands: больше rows - меньше ложных кандидатов, больше bands - выше полнота.
+ * Лайки берутся из {@link LikeIndex}. Пользователи с изменившимися лайками помечаются событиями
+ * после того, как их применил LikeIndex, и пересчитываются при следующем поиске. Удаление фильма сигнатуры не пересчитывает,
+ * это влияет только на отбор кандидатов - общие лайки кандидатов считаются точно.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.recommendations.mode", havingValue = "lsh")
+public class MinHashIndex {
+    private final LikeIndex likeIndex;
+    private final int bands;
+    private final int rows;
+    private final long[] seeds;
+    private final List<Map<Long, Set<Long>>> buckets;
+    private final Map<Long, long[]> userBandKeys = new HashMap<>();
+    private final Set<Long> dirtyUsers = ConcurrentHashMap.newKeySet();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean built;
+
+    public MinHashIndex(LikeIndex likeIndex,
+                        @Value("${app.recommendations.lsh.bands:64}") int bands,
+                        @Value("${app.recommendations.lsh.rows:2}") int rows) {
+        if (bands <= 0 || rows <= 0) {
+            throw new IllegalArgumentException("bands и rows должны быть положительными");
+        }
+        this.likeIndex = likeIndex;
+        this.bands = bands;
+        this.rows = rows;
+        // фиксированное зерно: сигнатуры не зависят от перезапуска
+        Random random = new Random(bands * 31L + rows);
+        this.seeds = new long[bands * rows];
+        for (int i = 0; i < seeds.length; i++) {
+            seeds[i] = random.nextLong();
+        }
+        this.buckets = new ArrayList<>(bands);
+        for (int i = 0; i < bands; i++) {
+            buckets.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * Пользователи, попавшие в одну корзину с данным хотя бы в одной полосе.
+     * @param userId id пользователя
+     * @return Set<Long> без самого пользователя
+     */
+    public Set<Long> getCandidates(long userId) {
+        if (!built) {
+            rebuild();
+        }
+        if (!dirtyUsers.isEmpty()) {
+            refreshDirtyUsers();
+        }
+        lock.readLock().lock();
+        try {
+            final long[] keys = userBandKeys.get(userId);
+            if (keys == null) {
+                return new HashSet<>();
+            }
+            final Set<Long> candidates = new HashSet<>();
+            for (int band = 0; band < bands; band++) {
+                candidates.addAll(buckets.get(band).get(keys[band]));
+            }
+            candidates.remove(userId);
+            return candidates;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            buckets.forEach(Map::clear);
+            userBandKeys.clear();
+            dirtyUsers.clear();
+            for (Long userId : likeIndex.getUserIds()) {
+                put(userId, likeIndex.getUserFilms(userId));
+            }
+            built = true;
+            log.debug("LSH-индекс построен, пользователей: {}, полос: {}, строк: {}",
+                    userBandKeys.size(), bands, rows);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Order(LikeIndex.LISTENER_ORDER + 1)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFilmLikeChanged(FilmLikeChangedEvent event) {
+        dirtyUsers.add(event.getUserId());
+    }
+
+    @Order(LikeIndex.LISTENER_ORDER + 1)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserDeleted(UserDeletedEvent event) {
+        dirtyUsers.add(event.getUserId());
+    }
+
+    private void refreshDirtyUsers() {
+        lock.writeLock().lock();
+        try {
+            Iterator<Long> iterator = dirtyUsers.iterator();
+            while (iterator.hasNext()) {
+                long userId = iterator.next();
+                iterator.remove();
+                removeUser(userId);
+                put(userId, likeIndex.getUserFilms(userId));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void put(long userId, Set<Long> films) {
+        if (films.isEmpty()) {
+            return;
+        }
+        final long[] keys = bandKeys(signature(films));
+        userBandKeys.put(userId, keys);
+        for (int band = 0; band < bands; band++) {
+            buckets.get(band).computeIfAbsent(keys[band], k -> new HashSet<>()).add(userId);
+        }
+    }
+
+    private void removeUser(long userId) {
+        final long[] keys = userBandKeys.remove(userId);
+        if (keys == null) {
+            return;
+        }
+        for (int band = 0; band < bands; band++) {
+            Map<Long, Set<Long>> bucket = buckets.get(band);
+            Set<Long> users = bucket.get(keys[band]);
+            users.remove(userId);
+            if (users.isEmpty()) {
+                bucket.remove(keys[band]);
+            }
+        }
+    }
+
+    private long[] signature(Set<Long> films) {
+        final long[] signature = new long[seeds.length];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        for (Long filmId : films) {
+            for (int i = 0; i < seeds.length; i++) {
+                long hash = mix(filmId ^ seeds[i]);
+                if (hash < signature[i]) {
+                    signature[i] = hash;
+                }
+            }
+        }
+        return signature;
+    }
+
+    private long[] bandKeys(long[] signature) {
+        final long[] keys = new long[bands];
+        for (int band = 0; band < bands; band++) {
+            long key = 0;
+            for (int row = 0; row < rows; row++) {
+                key = mix(key * 31 + signature[band * rows + row]);
+            }
+            keys[band] = key;
+        }
+        return keys;
+    }
+
+    // финализатор splitmix64
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+}
@@ -0,0 +1,275 @@
+package ru.yandex.practicum.filmorate.services;
+
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.yandex.practicum.filmorate.models.Film;
+import ru.yandex.practicum.filmorate.models.FilmChangedEvent;
+import ru.yandex.practicum.filmorate.models.FilmLikeChangedEvent;
+import ru.yandex.practicum.filmorate.models.FilmPopularity;
+import ru.yandex.practicum.filmorate.models.Genre;
+import ru.yandex.practicum.filmorate.models.Operation;
+import ru.yandex.practicum.filmorate.models.UserDeletedEvent;
+import ru.yandex.practicum.filmorate.storages.FilmStorage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Индекс популярности фильмов в памяти.
+ * Хранит количество лайков каждого фильма в упорядоченных множествах: общем, по жанрам и по годам выпуска.
+ * Обновляется инкрементально после фиксации транзакций лайков, строится заново из film_likes
+ * при старте приложения и после инвалидации.
+ * Транзакция с изменением лайков или фильма держит читающую блокировку commitGate от начала фиксации до применения
+ * изменения к индексу, перестроение читает снимок под пишущей. Поэтому каждое изменение либо применено до снимка
+ * и вошло в него, либо зафиксировано после снимка и применяется к новому индексу - без двойного счёта.
+ * Для этого здесь своя синхронизация транзакции, а не @TransactionalEventListener, как у LikeIndex и других
+ * индексов: слушатель после фиксации не может удерживать блокировку с момента фиксации, и снимок, прочитанный
+ * между фиксацией и вызовом слушателя, уже содержит лайк, который слушатель затем прибавит ещё раз.
+ * LikeIndex этого не нужно - он применяет наличие пары (фильм, пользователь), и повтор ничего не меняет,
+ * а индекс популярности применяет приращение счётчика.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PopularityIndex {
+    private static final Comparator<Entry> BY_POPULARITY = Comparator.comparingInt(Entry::getLikes).reversed()
+            .thenComparingLong(Entry::getFilmId);
+
+    private final FilmStorage filmStorage;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ReentrantReadWriteLock commitGate = new ReentrantReadWriteLock();
+    private final Map<Long, Entry> entries = new HashMap<>();
+    private final NavigableSet<Entry> all = new TreeSet<>(BY_POPULARITY);
+    private final Map<Long, NavigableSet<Entry>> byGenre = new HashMap<>();
+    private final Map<Integer, NavigableSet<Entry>> byYear = new HashMap<>();
+    // инвалидация увеличивает generation, перестроение запоминает поколение, с которого начало читать снимок
+    private final AtomicLong generation = new AtomicLong(1);
+    private final AtomicLong builtGeneration = new AtomicLong();
+
+    /**
+     * Возвращает id самых популярных фильмов в порядке убывания количества лайков.
+     * @param count максимальное количество фильмов
+     * @param genreId id жанра или null
+     * @param year год выпуска или null
+     * @return List<Long>
+     */
+    public List<Long> getMostPopularFilmIds(int count, @Nullable Long genreId, @Nullable Integer year) {
+        if (builtGeneration.get() < generation.get()) {
+            rebuild();
+        }
+        lock.readLock().lock();
+        try {
+            NavigableSet<Entry> source;
+            Predicate<Entry> filter = e -> true;
+            if (genreId != null && year != null) {
+                NavigableSet<Entry> genreSet = byGenre.getOrDefault(genreId, Collections.emptyNavigableSet());
+                NavigableSet<Entry> yearSet = byYear.getOrDefault(year, Collections.emptyNavigableSet());
+                if (genreSet.size() <= yearSet.size()) {
+                    source = genreSet;
+                    filter = e -> e.getYear() == year;
+                } else {
+                    source = yearSet;
+                    filter = e -> e.getGenreIds().contains(genreId);
+                }
+            } else if (genreId != null) {
+                source = byGenre.getOrDefault(genreId, Collections.emptyNavigableSet());
+            } else if (year != null) {
+                source = byYear.getOrDefault(year, Collections.emptyNavigableSet());
+            } else {
+                source = all;
+            }
+
+            List<Long> result = new ArrayList<>(Math.min(count, source.size()));
+            for (Entry entry : source) {
+                if (result.size() >= count) {
+                    break;
+                }
+                if (filter.test(entry)) {
+                    result.add(entry.getFilmId());
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        final long target = generation.get();
+        commitGate.writeLock().lock();
+        try {
+            if (builtGeneration.get() >= target) {
+                return; // индекс уже перестроен другим потоком
+            }
+            final List<FilmPopularity> snapshot = filmStorage.getFilmPopularity();
+            lock.writeLock().lock();
+            try {
+                entries.clear();
+                all.clear();
+                byGenre.clear();
+                byYear.clear();
+                for (FilmPopularity popularity : snapshot) {
+                    put(new Entry(popularity.getFilmId(), popularity.getLikes(), popularity.getReleaseYear(),
+                            Set.copyOf(popularity.getGenreIds())));
+                }
+                builtGeneration.set(target);
+                log.debug("Индекс популярности построен, фильмов: {}", entries.size());
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            commitGate.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Помечает индекс устаревшим, он будет перестроен при следующем обращении.
+     * Инвалидация во время перестроения не теряется: перестроение отмечает только поколение, с которого начало.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+    }
+
+    @EventListener
+    public void onFilmLikeChanged(FilmLikeChangedEvent event) {
+        final int delta = event.getOperation() == Operation.ADD ? 1 : -1;
+        afterCommit(() -> applyDelta(event.getFilmId(), delta));
+    }
+
+    @EventListener
+    public void onFilmChanged(FilmChangedEvent event) {
+        afterCommit(() -> applyFilmChange(event));
+    }
+
+    @EventListener
+    public void onUserDeleted(UserDeletedEvent event) {
+        // лайки пользователя удалены каскадно, счётчики фильмов уменьшены в той же транзакции
+        afterCommit(() -> event.getLikedFilmIds().forEach(filmId -> applyDelta(filmId, -1)));
+    }
+
+    /**
+     * Выполняет изменение индекса после фиксации текущей транзакции, а без транзакции - сразу.
+     * От начала фиксации до применения изменения удерживается читающая блокировка commitGate.
+     */
+    private void afterCommit(Runnable change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            commitGate.readLock().lock();
+            try {
+                change.run();
+            } finally {
+                commitGate.readLock().unlock();
+            }
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            private boolean gateLocked;
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                commitGate.readLock().lock();
+                gateLocked = true;
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                try {
+                    if (status == STATUS_COMMITTED) {
+                        change.run();
+                    }
+                } finally {
+                    if (gateLocked) {
+                        commitGate.readLock().unlock();
+                    }
+                }
+            }
+        });
+    }
+
+    private void applyFilmChange(FilmChangedEvent event) {
+        final Film film = event.getFilm();
+        lock.writeLock().lock();
+        try {
+            Entry current = entries.get(film.getId());
+            if (current != null) {
+                remove(current);
+            }
+            if (event.getOperation() == Operation.REMOVE) {
+                return;
+            }
+            int likes = current != null ? current.getLikes() : film.getLikeCount();
+            Set<Long> genreIds = film.getGenres().stream()
+                    .map(Genre::getId)
+                    .collect(Collectors.toUnmodifiableSet());
+            put(new Entry(film.getId(), likes, film.getReleaseDate().getYear(), genreIds));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void applyDelta(long filmId, int delta) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = entries.get(filmId);
+            if (entry == null) {
+                invalidate(); // фильма нет в индексе - он попадёт туда при перестроении вместе с лайком
+                return;
+            }
+            remove(entry);
+            put(new Entry(entry.getFilmId(), Math.max(0, entry.getLikes() + delta), entry.getYear(),
+                    entry.getGenreIds()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void put(Entry entry) {
+        entries.put(entry.getFilmId(), entry);
+        all.add(entry);
+        byYear.computeIfAbsent(entry.getYear(), y -> new TreeSet<>(BY_POPULARITY)).add(entry);
+        entry.getGenreIds().forEach(g -> byGenre.computeIfAbsent(g, id -> new TreeSet<>(BY_POPULARITY)).add(entry));
+    }
+
+    private void remove(Entry entry) {
+        entries.remove(entry.getFilmId());
+        all.remove(entry);
+        removeFromBucket(byYear, entry.getYear(), entry);
+        entry.getGenreIds().forEach(g -> removeFromBucket(byGenre, g, entry));
+    }
+
+    private static <K> void removeFromBucket(Map<K, NavigableSet<Entry>> buckets, K key, Entry entry) {
+        NavigableSet<Entry> bucket = buckets.get(key);
+        if (bucket != null) {
+            bucket.remove(entry);
+            if (bucket.isEmpty()) {
+                buckets.remove(key);
+            }
+        }
+    }
+
+    @Value
+    private static class Entry {
+        long filmId;
+        int likes;
+        int year;
+        Set<Long> genreIds;
+    }
+}
@@ -0,0 +1,182 @@
+package ru.yandex.practicum.filmorate.services;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.models.Film;
+import ru.yandex.practicum.filmorate.models.UserDeletedEvent;
+import ru.yandex.practicum.filmorate.storages.FilmStorage;
+import ru.yandex.practicum.filmorate.storages.UserStorage;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Рекомендации из заранее посчитанной таблицы в памяти.
+ * Фоновая задача раз в refresh-interval-ms пересчитывает id рекомендуемых фильмов для всех пользователей
+ * с лайками, разбивая их на части по числу потоков пула, и целиком подменяет таблицу.
+ * Рекомендации могут отставать от лайков на интервал обновления.
+ * Возраст таблицы публикуется метрикой filmorate.recommendations.refresh.age (секунды, NaN до первого обновления).
+ * Для пользователей, которых нет в таблице, рекомендации считаются по запросу и в таблицу не попадают.
+ * Отключается настройкой app.recommendations.precomputed=false, тогда рекомендации считаются на каждый запрос.
+ * Сами рекомендации считает активная реализация ({@link SimpleRecommendationService} или {@link LshRecommendationService}).
+ */
+@Slf4j
+@Service
+@Primary
+@ConditionalOnProperty(name = "app.recommendations.precomputed", havingValue = "true", matchIfMissing = true)
+public class PrecomputedRecommendationService implements RecommendationService {
+    private final AbstractRecommendationService recommendationService;
+    private final FilmStorage filmStorage;
+    private final UserStorage userStorage;
+    private final LikeIndex likeIndex;
+    private final int threads;
+    private final ExecutorService executor;
+    private final Set<Long> deletedUsers = ConcurrentHashMap.newKeySet();
+    private volatile Map<Long, Set<Long>> recommendations = new ConcurrentHashMap<>();
+    private volatile Instant lastRefresh;
+
+    public PrecomputedRecommendationService(AbstractRecommendationService recommendationService,
+                                            FilmStorage filmStorage,
+                                            UserStorage userStorage,
+                                            LikeIndex likeIndex,
+                                            MeterRegistry meterRegistry,
+                                            @Value("${app.recommendations.refresh-threads:4}") int threads) {
+        this.recommendationService = recommendationService;
+        this.filmStorage = filmStorage;
+        this.userStorage = userStorage;
+        this.likeIndex = likeIndex;
+        this.threads = threads;
+        final AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "recommendation-refresh-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("filmorate.recommendations.refresh.age", this,
+                        service -> service.getLastRefreshAge().map(age -> age.toMillis() / 1000.0).orElse(Double.NaN))
+                .description("Возраст таблицы рекомендаций")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public List<Film> getRecommendations(long id) {
+        Set<Long> filmIds = recommendations.get(id);
+        if (filmIds == null) {
+            if (!userStorage.existsUser(id)) {
+                throw new NotFoundException("Не найден пользователь id=" + id);
+            }
+            // не сохраняется: у пользователя без лайков рекомендации появятся сразу после первого лайка
+            filmIds = recommendationService.getRecommendedFilmIds(id);
+        }
+        if (filmIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return filmStorage.getFilmsByIds(filmIds);
+    }
+
+    /**
+     * Пересчитывает таблицу рекомендаций. При ошибке в любой из частей остаётся прежняя таблица.
+     * Возраст заменяемой таблицы пишется в лог при каждом обновлении, и успешном, и неудачном.
+     * Задача ждёт частей пересчёта, поэтому пул планировщика (spring.task.scheduling.pool.size)
+     * должен быть больше одного потока, иначе на время пересчёта встают остальные задачи по расписанию.
+     */
+    @Scheduled(fixedDelayString = "${app.recommendations.refresh-interval-ms:300000}",
+            initialDelayString = "${app.recommendations.refresh-initial-delay-ms:60000}")
+    public synchronized void refresh() {
+        final long started = System.nanoTime();
+        deletedUsers.clear();
+        final List<List<Long>> partitions = partition(new ArrayList<>(likeIndex.getUserIds()));
+        final List<Future<Map<Long, Set<Long>>>> futures = new ArrayList<>(partitions.size());
+        for (List<Long> partition : partitions) {
+            futures.add(executor.submit(() -> compute(partition)));
+        }
+
+        final Map<Long, Set<Long>> refreshed = new ConcurrentHashMap<>();
+        try {
+            for (Future<Map<Long, Set<Long>>> future : futures) {
+                refreshed.putAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(f -> f.cancel(true));
+            return;
+        } catch (ExecutionException e) {
+            log.error("Рекомендации не обновлены, возраст текущей таблицы: {} с",
+                    getLastRefreshAge().map(Duration::getSeconds).orElse(-1L), e.getCause());
+            futures.forEach(f -> f.cancel(true));
+            return;
+        }
+        final long previousAge = getLastRefreshAge().map(Duration::getSeconds).orElse(-1L);
+        refreshed.keySet().removeAll(deletedUsers);
+        recommendations = refreshed;
+        refreshed.keySet().removeAll(deletedUsers); // удалённые во время подмены
+        lastRefresh = Instant.now();
+        log.info("Рекомендации обновлены для {} пользователей за {} мс, возраст прежней таблицы: {} с",
+                refreshed.size(), (System.nanoTime() - started) / 1_000_000, previousAge);
+    }
+
+    /**
+     * Возраст таблицы рекомендаций.
+     * @return Optional<Duration>, пустой если таблица ещё не обновлялась
+     */
+    public Optional<Duration> getLastRefreshAge() {
+        final Instant refreshed = lastRefresh;
+        if (refreshed == null) {
+            return Optional.empty();
+        }
+        return Optional.of(Duration.between(refreshed, Instant.now()));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserDeleted(UserDeletedEvent event) {
+        deletedUsers.add(event.getUserId());
+        recommendations.remove(event.getUserId());
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    private Map<Long, Set<Long>> compute(List<Long> userIds) {
+        final Map<Long, Set<Long>> result = new HashMap<>();
+        for (Long userId : userIds) {
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            result.put(userId, recommendationService.getRecommendedFilmIds(userId));
+        }
+        return result;
+    }
+
+    private List<List<Long>> partition(List<Long> userIds) {
+        final int size = Math.max(1, (userIds.size() + threads - 1) / threads);
+        final List<List<Long>> partitions = new ArrayList<>();
+        for (int from = 0; from < userIds.size(); from += size) {
+            partitions.add(userIds.subList(from, Math.min(from + size, userIds.size())));
+        }
+        return partitions;
+    }
+}
@@ -0,0 +1,177 @@
+package ru.yandex.practicum.filmorate.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.yandex.practicum.filmorate.models.Director;
+import ru.yandex.practicum.filmorate.models.DirectorChangedEvent;
+import ru.yandex.practicum.filmorate.models.Genre;
+import ru.yandex.practicum.filmorate.models.Operation;
+import ru.yandex.practicum.filmorate.storages.DirectorStorage;
+import ru.yandex.practicum.filmorate.storages.GenreStorage;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Кэш справочных данных: жанров и режиссёров.
+ * Справочники целиком загружаются при первом обращении. Жанры не меняются,
+ * режиссёры обновляются после фиксации изменений в DirectorServiceImpl.
+ * Id, которых нет в кэше, дочитываются из хранилища и считаются промахами.
+ * Попадания и промахи публикуются счётчиком filmorate.reference-cache.gets с тегом result.
+ * Загрузка справочников, сохранение дочитанных значений и обработка изменений режиссёров идут под одной
+ * блокировкой, а дочитанное значение не сохраняется, если за время чтения пришло изменение режиссёров:
+ * иначе прочитанный до удаления режиссёр вернулся бы в кэш после его удаления.
+ */
+@Slf4j
+@Component
+public class ReferenceDataCache {
+    private final GenreStorage genreStorage;
+    private final DirectorStorage directorStorage;
+    private final Map<Long, Genre> genres = new ConcurrentHashMap<>();
+    private final Map<Long, Director> directors = new ConcurrentHashMap<>();
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private volatile boolean loaded;
+    // количество обработанных изменений режиссёров, меняется под блокировкой кэша
+    private volatile long version;
+
+    public ReferenceDataCache(GenreStorage genreStorage, DirectorStorage directorStorage, MeterRegistry meterRegistry) {
+        this.genreStorage = genreStorage;
+        this.directorStorage = directorStorage;
+        this.hitCounter = Counter.builder("filmorate.reference-cache.gets")
+                .tag("result", "hit")
+                .description("Обращения к кэшу справочников")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("filmorate.reference-cache.gets")
+                .tag("result", "miss")
+                .description("Обращения к кэшу справочников")
+                .register(meterRegistry);
+    }
+
+    public List<Genre> getAllGenres() {
+        load();
+        hitCounter.increment();
+        return sorted(genres, Genre::getId);
+    }
+
+    public Optional<Genre> getGenreById(long id) {
+        return getGenresById(Set.of(id)).stream().findFirst();
+    }
+
+    /**
+     * Жанры по id. Несуществующие id в результат не попадают.
+     * @param ids id жанров
+     * @return List<Genre>
+     */
+    public List<Genre> getGenresById(Set<Long> ids) {
+        load();
+        return lookup(ids, genres, genreStorage::getGenresById, Genre::getId);
+    }
+
+    public List<Director> getAllDirectors() {
+        load();
+        hitCounter.increment();
+        return sorted(directors, Director::getId);
+    }
+
+    public Optional<Director> getDirectorById(long id) {
+        return getDirectorsById(Set.of(id)).stream().findFirst();
+    }
+
+    /**
+     * Режиссёры по id. Несуществующие id в результат не попадают.
+     * @param ids id режиссёров
+     * @return List<Director>
+     */
+    public List<Director> getDirectorsById(Set<Long> ids) {
+        load();
+        return lookup(ids, directors, directorStorage::getDirectorsById, Director::getId);
+    }
+
+    public long getHitCount() {
+        return (long) hitCounter.count();
+    }
+
+    public long getMissCount() {
+        return (long) missCounter.count();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onDirectorChanged(DirectorChangedEvent event) {
+        version++;
+        final Director director = event.getDirector();
+        if (event.getOperation() == Operation.REMOVE) {
+            directors.remove(director.getId());
+        } else {
+            directors.put(director.getId(), copyOf(director));
+        }
+    }
+
+    private void load() {
+        if (!loaded) {
+            loadOnce();
+        }
+    }
+
+    private synchronized void loadOnce() {
+        if (loaded) {
+            return;
+        }
+        genreStorage.getAllGenres().forEach(g -> genres.put(g.getId(), g));
+        directorStorage.getAllDirectors().forEach(d -> directors.put(d.getId(), d));
+        loaded = true;
+        log.debug("Справочники загружены: жанров {}, режиссёров {}", genres.size(), directors.size());
+    }
+
+    private <T> List<T> lookup(Set<Long> ids, Map<Long, T> cache, Function<Set<Long>, List<T>> loader,
+                               ToLongFunction<T> idGetter) {
+        final List<T> result = new ArrayList<>(ids.size());
+        final Set<Long> missing = new HashSet<>();
+        for (Long id : ids) {
+            T value = cache.get(id);
+            if (value != null) {
+                result.add(value);
+            } else {
+                missing.add(id);
+            }
+        }
+        hitCounter.increment(result.size());
+        if (!missing.isEmpty()) {
+            missCounter.increment(missing.size());
+            final long readVersion = version;
+            final List<T> values = loader.apply(missing);
+            synchronized (this) {
+                if (version == readVersion) {
+                    values.forEach(value -> cache.put(idGetter.applyAsLong(value), value));
+                }
+            }
+            result.addAll(values);
+        }
+        return result;
+    }
+
+    private static <T> List<T> sorted(Map<Long, T> cache, ToLongFunction<T> idGetter) {
+        return cache.values().stream()
+                .sorted(Comparator.comparingLong(idGetter))
+                .collect(Collectors.toList());
+    }
+
+    private static Director copyOf(Director director) {
+        return Director.builder()
+                .id(director.getId())
+                .name(director.getName())
+                .build();
+    }
+}
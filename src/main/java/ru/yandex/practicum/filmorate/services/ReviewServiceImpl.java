@@ -4,8 +4,9 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.models.EventType;
+import ru.yandex.practicum.filmorate.models.Operation;
 import ru.yandex.practicum.filmorate.models.Review;
-import ru.yandex.practicum.filmorate.models.User;
 import ru.yandex.practicum.filmorate.storages.ReviewStorage;
 import ru.yandex.practicum.filmorate.storages.UserStorage;
 
@@ -17,6 +18,7 @@ import java.util.Optional;
 public class ReviewServiceImpl implements ReviewService {
     private final ReviewStorage reviewStorage;
     private final UserStorage userStorage;
+    private final FeedOutbox feedOutbox;
 
     @Override
     public List<Review> getReviews(Long filmId, int count) {
@@ -26,13 +28,18 @@ public class ReviewServiceImpl implements ReviewService {
     @Override
     @Transactional
     public Review createReview(Review review) {
-        return reviewStorage.createReview(review);
+        final Review createdReview = reviewStorage.createReview(review);
+        feedOutbox.stage(createdReview.getUserId(), createdReview.getId(), EventType.REVIEW, Operation.ADD);
+        return createdReview;
     }
 
     @Override
     @Transactional
     public Optional<Review> updateReview(Review reviewUpdates) {
-        return reviewStorage.updateReview(reviewUpdates);
+        final Optional<Review> result = reviewStorage.updateReview(reviewUpdates);
+        result.ifPresent(updated -> feedOutbox.stage(updated.getUserId(), updated.getId(),
+                EventType.REVIEW, Operation.UPDATE));
+        return result;
     }
 
     @Override
@@ -41,6 +48,7 @@ public class ReviewServiceImpl implements ReviewService {
         return reviewStorage.getReviewById(id)
                 .map(founded -> {
                     reviewStorage.deleteReviewById(founded.getId());
+                    feedOutbox.stage(founded.getUserId(), founded.getId(), EventType.REVIEW, Operation.REMOVE);
                     return founded;
                 })
                 .or(Optional::empty);
@@ -56,9 +64,10 @@ public class ReviewServiceImpl implements ReviewService {
     public Review addOrUpdateLikeReview(long id, long userId) {
         final Review review = reviewStorage.getReviewById(id)
                 .orElseThrow(() -> new NotFoundException("Не найден отзыв с id:" + id));
-        final User user = userStorage.getUserById(userId)
-                .orElseThrow(() -> new NotFoundException("Не найден пользователь с id:" + userId));
-        reviewStorage.createReviewLike(review.getId(), user.getId());
+        if (!userStorage.existsUser(userId)) {
+            throw new NotFoundException("Не найден пользователь с id:" + userId);
+        }
+        reviewStorage.createReviewLike(review.getId(), userId);
         return reviewStorage.getReviewById(id)
                 .orElseThrow(() -> new IllegalStateException("Не найден отзыв с id:" + id));
     }
@@ -68,9 +77,10 @@ public class ReviewServiceImpl implements ReviewService {
     public Review addOrUpdateDislikeReview(long id, long userId) {
         final Review review = reviewStorage.getReviewById(id)
                 .orElseThrow(() -> new NotFoundException("Не найден отзыв с id:" + id));
-        final User user = userStorage.getUserById(userId)
-                .orElseThrow(() -> new NotFoundException("Не найден пользователь с id:" + userId));
-        reviewStorage.createReviewDislike(review.getId(), user.getId());
+        if (!userStorage.existsUser(userId)) {
+            throw new NotFoundException("Не найден пользователь с id:" + userId);
+        }
+        reviewStorage.createReviewDislike(review.getId(), userId);
         return reviewStorage.getReviewById(id)
                 .orElseThrow(() -> new IllegalStateException("Не найден отзыв с id:" + id));
     }
@@ -80,9 +90,10 @@ public class ReviewServiceImpl implements ReviewService {
     public Review deleteLikeReview(long id, long userId) {
         final Review review = reviewStorage.getReviewById(id)
                 .orElseThrow(() -> new NotFoundException("Не найден отзыв с id:" + id));
-        final User user = userStorage.getUserById(userId)
-                .orElseThrow(() -> new NotFoundException("Не найден пользователь с id:" + userId));
-        if (reviewStorage.deleteLikeReview(review.getId(), user.getId())) {
+        if (!userStorage.existsUser(userId)) {
+            throw new NotFoundException("Не найден пользователь с id:" + userId);
+        }
+        if (reviewStorage.deleteLikeReview(review.getId(), userId)) {
             return reviewStorage.getReviewById(id)
                     .orElseThrow(() -> new IllegalStateException("Не найден отзыв с id:" + id));
         }
@@ -94,9 +105,10 @@ public class ReviewServiceImpl implements ReviewService {
     public Review deleteDislikeReview(long id, long userId) {
         final Review review = reviewStorage.getReviewById(id)
                 .orElseThrow(() -> new NotFoundException("Не найден отзыв с id:" + id));
-        final User user = userStorage.getUserById(userId)
-                .orElseThrow(() -> new NotFoundException("Не найден пользователь с id:" + userId));
-        if (reviewStorage.deleteDisLikeReview(review.getId(), user.getId())) {
+        if (!userStorage.existsUser(userId)) {
+            throw new NotFoundException("Не найден пользователь с id:" + userId);
+        }
+        if (reviewStorage.deleteDisLikeReview(review.getId(), userId)) {
             return reviewStorage.getReviewById(id)
                     .orElseThrow(() -> new IllegalStateException("Не найден отзыв с id:" + id));
         }
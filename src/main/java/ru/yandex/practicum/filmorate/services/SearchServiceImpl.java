@@ -1,61 +1,76 @@
 package ru.yandex.practicum.filmorate.services;
 
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.models.Director;
+import ru.yandex.practicum.filmorate.models.DirectorChangedEvent;
 import ru.yandex.practicum.filmorate.models.Film;
-import ru.yandex.practicum.filmorate.models.FilmSort;
+import ru.yandex.practicum.filmorate.models.FilmChangedEvent;
+import ru.yandex.practicum.filmorate.models.Operation;
 import ru.yandex.practicum.filmorate.storages.DirectorStorage;
 import ru.yandex.practicum.filmorate.storages.FilmStorage;
 
 import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+/**
+ * Поиск фильмов по подстроке в названии фильма или имени режиссёра.
+ * Названия и имена хранятся в триграммных индексах в памяти, которые строятся при старте приложения
+ * и обновляются после фиксации изменений фильмов и режиссёров. Из базы загружаются только найденные фильмы.
+ * Перестроение заполняет новые индексы и подменяет ими прежние, поэтому запросы во время перестроения
+ * ищут по прежним индексам. Изменения, пришедшие во время перестроения, ждут его окончания и применяются к новым.
+ */
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class SearchServiceImpl implements SearchService {
     private final FilmStorage filmStorage;
     private final DirectorStorage directorStorage;
+    private volatile TrigramIndex filmIndex = new TrigramIndex();
+    private volatile TrigramIndex directorIndex = new TrigramIndex();
+    private volatile boolean stale = true;
 
     @Override
     public List<Film> getFilmsByTitle(String title) {
-        String lowCaseTitle = title.toLowerCase();
-        return filmStorage.getFilmsByTitle(lowCaseTitle);
-
+        ensureBuilt();
+        Set<Long> filmIds = filmIndex.search(title);
+        if (filmIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return filmStorage.getFilmsByIds(filmIds);
     }
 
     @Override
     @Transactional(readOnly = true)
     public List<Film> getFilmsByDirectorsName(String name) {
-        String lowCaseName = name.toLowerCase();
-        List<Director> needDirectors = directorStorage.getDirectorsByName(lowCaseName);
-
-        List<Film> films = new ArrayList<>();
-
-        for (Director director : needDirectors) {
-            films.addAll(filmStorage.getFilmsByDirector(director.getId(), FilmSort.LIKES));
+        ensureBuilt();
+        Set<Long> directorIds = directorIndex.search(name);
+        if (directorIds.isEmpty()) {
+            return new ArrayList<>();
         }
-        //для проверки, что фильмы не повторяются
-        Set<Film> result = new HashSet<>(films);
-
-        return new ArrayList<>(result);
+        return filmStorage.getFilmsByDirectors(directorIds);
     }
 
     @Override
     @Transactional(readOnly = true)
     public List<Film> getFilmsByDirectorAndTitle(String str) {
-        Set<Film> films = new HashSet<>();
+        Map<Long, Film> films = new LinkedHashMap<>();
 
-        films.addAll(getFilmsByDirectorsName(str));
-        films.addAll(getFilmsByTitle(str));
+        getFilmsByDirectorsName(str).forEach(f -> films.putIfAbsent(f.getId(), f));
+        getFilmsByTitle(str).forEach(f -> films.putIfAbsent(f.getId(), f));
 
-        return films.stream()
+        return films.values().stream()
                 .sorted(Comparator.comparingLong(Film::getId).reversed())
                 .collect(Collectors.toList());
     }
@@ -75,4 +90,49 @@ public class SearchServiceImpl implements SearchService {
                 throw new NotFoundException("Неизвестный параметр поиска");
         }
     }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        final TrigramIndex films = new TrigramIndex();
+        final TrigramIndex directors = new TrigramIndex();
+        filmStorage.getFilmNames().forEach(films::put);
+        for (Director director : directorStorage.getAllDirectors()) {
+            directors.put(director.getId(), director.getName());
+        }
+        filmIndex = films;
+        directorIndex = directors;
+        stale = false;
+        log.debug("Поисковые индексы построены");
+    }
+
+    // индексы при старте строит один запрос, остальные ждут его
+    private void ensureBuilt() {
+        if (stale) {
+            synchronized (this) {
+                if (stale) {
+                    rebuild();
+                }
+            }
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onFilmChanged(FilmChangedEvent event) {
+        final Film film = event.getFilm();
+        if (event.getOperation() == Operation.REMOVE) {
+            filmIndex.remove(film.getId());
+        } else {
+            filmIndex.put(film.getId(), film.getName());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onDirectorChanged(DirectorChangedEvent event) {
+        final Director director = event.getDirector();
+        if (event.getOperation() == Operation.REMOVE) {
+            directorIndex.remove(director.getId());
+        } else {
+            directorIndex.put(director.getId(), director.getName());
+        }
+    }
 }
@@ -0,0 +1,115 @@
+package ru.yandex.practicum.filmorate.services;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Инвертированный индекс триграмм для поиска подстроки без учёта регистра.
+ * Для каждой триграммы хранится множество id строк, в которых она встречается.
+ * Кандидаты для запроса получаются пересечением множеств его триграмм, начиная с самого короткого,
+ * и затем проверяются на вхождение подстроки. Запросы короче трёх символов проверяются перебором строк.
+ */
+class TrigramIndex {
+    private static final int N = 3;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, String> texts = new HashMap<>();
+    private final Map<String, Set<Long>> postings = new HashMap<>();
+
+    void put(long id, String text) {
+        final String normalized = text.toLowerCase(Locale.ROOT);
+        lock.writeLock().lock();
+        try {
+            removeInternal(id);
+            texts.put(id, normalized);
+            for (String gram : grams(normalized)) {
+                postings.computeIfAbsent(gram, g -> new HashSet<>()).add(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(long id) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Возвращает id строк, содержащих query как подстроку без учёта регистра.
+     * @param query подстрока
+     * @return Set<Long>
+     */
+    Set<Long> search(String query) {
+        final String normalized = query.toLowerCase(Locale.ROOT);
+        lock.readLock().lock();
+        try {
+            if (normalized.length() < N) {
+                return scan(texts.keySet(), normalized);
+            }
+            List<Set<Long>> lists = new ArrayList<>();
+            for (String gram : grams(normalized)) {
+                Set<Long> posting = postings.get(gram);
+                if (posting == null) {
+                    return new HashSet<>();
+                }
+                lists.add(posting);
+            }
+            lists.sort(Comparator.comparingInt(Set::size));
+            Set<Long> candidates = new HashSet<>(lists.get(0));
+            for (int i = 1; i < lists.size() && !candidates.isEmpty(); i++) {
+                candidates.retainAll(lists.get(i));
+            }
+            // совпадение всех триграмм не гарантирует вхождения подстроки целиком
+            return scan(candidates, normalized);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Set<Long> scan(Set<Long> ids, String normalized) {
+        Set<Long> result = new HashSet<>();
+        for (Long id : ids) {
+            if (texts.get(id).contains(normalized)) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    private void removeInternal(long id) {
+        final String previous = texts.remove(id);
+        if (previous == null) {
+            return;
+        }
+        for (String gram : grams(previous)) {
+            Set<Long> posting = postings.get(gram);
+            if (posting != null) {
+                posting.remove(id);
+                if (posting.isEmpty()) {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    private static Set<String> grams(String text) {
+        final Set<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i + N <= text.length(); i++) {
+            grams.add(text.substring(i, i + N));
+        }
+        return grams;
+    }
+}
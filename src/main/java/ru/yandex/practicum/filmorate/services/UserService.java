@@ -1,10 +1,9 @@
 package ru.yandex.practicum.filmorate.services;
 
 import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.models.Event;
-import ru.yandex.practicum.filmorate.models.EventType;
-import ru.yandex.practicum.filmorate.models.Operation;
 import ru.yandex.practicum.filmorate.models.User;
 
 import java.util.List;
@@ -12,7 +11,7 @@ import java.util.Optional;
 
 public interface UserService {
     @NonNull
-    List<User> getUsers();
+    List<User> getUsers(@Nullable Long afterId, int limit);
 
     @NonNull
     User createUser(@NonNull User user);
@@ -36,10 +35,13 @@ public interface UserService {
     List<User> getCommonFriends(long id, long otherId) throws NotFoundException;
 
     @NonNull
-    List<Event> getFeedByUserId(long id) throws NotFoundException;
+    List<Event> getFeedByUserId(long id, @Nullable Long before, @Nullable Integer limit) throws NotFoundException;
 
+    /**
+     * События ленты пользователя, следующие за событием after, в порядке возрастания времени.
+     */
     @NonNull
-    Event addEvent(long userId, long entityId, EventType et, Operation op) throws NotFoundException;
+    List<Event> getFeedAfter(long id, long after, int limit) throws NotFoundException;
 
     @NonNull
     User deleteUserById(long id) throws NotFoundException, IllegalStateException;
@@ -1,6 +1,7 @@
 package ru.yandex.practicum.filmorate.services;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
@@ -8,26 +9,29 @@ import ru.yandex.practicum.filmorate.models.Event;
 import ru.yandex.practicum.filmorate.models.EventType;
 import ru.yandex.practicum.filmorate.models.Operation;
 import ru.yandex.practicum.filmorate.models.User;
+import ru.yandex.practicum.filmorate.models.UserDeletedEvent;
 import ru.yandex.practicum.filmorate.storages.FeedStorage;
+import ru.yandex.practicum.filmorate.storages.FilmStorage;
 import ru.yandex.practicum.filmorate.storages.UserStorage;
 
-import java.time.Instant;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 @RequiredArgsConstructor
 public class UserServiceImpl implements UserService {
     private final UserStorage userStorage;
+    private final FilmStorage filmStorage;
     private final FeedStorage feedStorage;
+    private final FeedOutbox feedOutbox;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Override
-    public List<User> getUsers() {
-        return userStorage.getAllUsers();
+    public List<User> getUsers(Long afterId, int limit) {
+        return userStorage.getUsers(afterId, limit);
     }
 
     @Transactional
@@ -52,13 +56,16 @@ public class UserServiceImpl implements UserService {
     public User addAsFriend(long id, long friendId) throws NotFoundException, IllegalStateException {
         final User user = userStorage.getUserById(id)
                 .orElseThrow(() -> new NotFoundException("Не найден пользователь id=" + id));
-        final User friend = userStorage.getUserById(friendId)
-                .orElseThrow(() -> new NotFoundException("Не найден пользователь id=" + friendId));
+        if (!userStorage.existsUser(friendId)) {
+            throw new NotFoundException("Не найден пользователь id=" + friendId);
+        }
 
         //В соответствии с логикой тестов Postman, противоречит ТЗ.
         if (user.addFriend(friendId)) {
             userStorage.createFriend(id, friendId); //заявка в друзья
+            feedStorage.addFriendEvents(id, friendId);
         }
+        feedOutbox.stage(id, friendId, EventType.FRIEND, Operation.ADD);
         //В соответствии с ТЗ.
 //        if (friend.addFriend(id)) {
 //            userStorage.createFriend(friendId, id); //заявка в друзья
@@ -71,15 +78,18 @@ public class UserServiceImpl implements UserService {
     public User removeFromFriends(long id, long friendId) throws NotFoundException, IllegalStateException {
         final User user = userStorage.getUserById(id)
                 .orElseThrow(() -> new NotFoundException("Не найден пользователь id=" + id));
-        final User friend = userStorage.getUserById(friendId)
-                .orElseThrow(() -> new NotFoundException("Не найден друг id=" + friendId));
+        if (!userStorage.existsUser(friendId)) {
+            throw new NotFoundException("Не найден друг id=" + friendId);
+        }
 
         //В соответствии с логикой тестов Postman, противоречит ТЗ.
         if (user.removeFriend(friendId)) {
             userStorage.removeFriend(id, friendId);
+            feedStorage.removeFriendEvents(id, friendId);
         } else {
             throw new NotFoundException("Пользователь отсутствует в списке друзей пользователя с id=" + id);
         }
+        feedOutbox.stage(id, friendId, EventType.FRIEND, Operation.REMOVE);
         //В соответствии с ТЗ.
 //        if (friend.removeFriend(id)) {
 //            userStorage.removeFriend(friendId, id);
@@ -92,50 +102,56 @@ public class UserServiceImpl implements UserService {
     @Override
     @Transactional(readOnly = true)
     public List<User> getUserFriends(long id) {
-        final User user = userStorage.getUserById(id)
-                .orElseThrow(() -> new NotFoundException("Не найден пользователь id=" + id));
+        if (!userStorage.existsUser(id)) {
+            throw new NotFoundException("Не найден пользователь id=" + id);
+        }
         return userStorage.getUserFriends(id);
     }
 
     @Override
     @Transactional(readOnly = true)
     public List<User> getCommonFriends(long id, long otherId) throws NotFoundException {
-        final User currentUser = userStorage.getUserById(id)
-                .orElseThrow(() -> new NotFoundException("Не найден пользователь id=" + id));
-        final User otherUser = userStorage.getUserById(otherId)
-                .orElseThrow(() -> new NotFoundException("Не найден пользователь id=" + id));
-        HashSet<User> commonFriends = new HashSet<>(userStorage.getUserFriends(id));
-        HashSet<User> otherFriends = new HashSet<>(userStorage.getUserFriends(otherId));
-        commonFriends.retainAll(otherFriends);
-        return List.copyOf(commonFriends);
+        if (!userStorage.existsUser(id)) {
+            throw new NotFoundException("Не найден пользователь id=" + id);
+        }
+        if (!userStorage.existsUser(otherId)) {
+            throw new NotFoundException("Не найден пользователь id=" + otherId);
+        }
+        return userStorage.getCommonFriends(id, otherId);
     }
 
     @Override
     @Transactional(readOnly = true)
-    public List<Event> getFeedByUserId(long id) throws NotFoundException {
-        final User user = userStorage.getUserById(id)
-                .orElseThrow(() -> new NotFoundException("Не найден пользователь id=" + id));
-        List<Long> userIds = new ArrayList<>(user.getFriends());
-        userIds.add(user.getId());
-        Map<String, Object> params = new HashMap<>();
-        params.put("userIds", userIds);
-        params.put("userId", user.getId());
-        params.put("likeType", EventType.LIKE.name());
-        params.put("reviewType", EventType.REVIEW.name());
+    public List<Event> getFeedByUserId(long id, Long before, Integer limit) throws NotFoundException {
+        Map<String, Object> params = getFeedParams(id);
+        if (limit != null) {
+            params.put("limit", limit);
+        }
+        if (before != null) {
+            params.put("before", before);
+        }
         return feedStorage.getUserFeed(params);
     }
 
     @Override
-    @Transactional
-    public Event addEvent(long userId, long entityId, EventType et, Operation op) throws NotFoundException {
-        Event event = Event.builder()
-                .userId(userId)
-                .entityId(entityId)
-                .eventType(et)
-                .operation(op)
-                .timestamp(Instant.now().toEpochMilli())
-                .build();
-        return feedStorage.addEvent(event);
+    @Transactional(readOnly = true)
+    public List<Event> getFeedAfter(long id, long after, int limit) throws NotFoundException {
+        Map<String, Object> params = getFeedParams(id);
+        params.put("limit", limit);
+        params.put("after", after);
+        return feedStorage.getUserFeed(params);
+    }
+
+    // друзей пользователя хранилище дочитывает само, только если они нужны для выборки
+    private Map<String, Object> getFeedParams(long id) {
+        if (!userStorage.existsUser(id)) {
+            throw new NotFoundException("Не найден пользователь id=" + id);
+        }
+        Map<String, Object> params = new HashMap<>();
+        params.put("userId", id);
+        params.put("likeType", EventType.LIKE.name());
+        params.put("reviewType", EventType.REVIEW.name());
+        return params;
     }
 
     @Override
@@ -143,7 +159,9 @@ public class UserServiceImpl implements UserService {
     public User deleteUserById(long id) throws NotFoundException, IllegalStateException {
         final User user = userStorage.getUserById(id)
                 .orElseThrow(() -> new NotFoundException("Не найден пользователь id=" + id));
+        final Set<Long> likedFilmIds = filmStorage.getUserFilmLikes(id);
         userStorage.deleteUserById(id);
+        eventPublisher.publishEvent(new UserDeletedEvent(id, likedFilmIds));
         return user;
 
     }
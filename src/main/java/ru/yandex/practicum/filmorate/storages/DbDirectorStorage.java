@@ -1,6 +1,5 @@
 package ru.yandex.practicum.filmorate.storages;
 
-import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Primary;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -18,11 +17,19 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
-@RequiredArgsConstructor
 @Repository
 @Primary
 public class DbDirectorStorage implements DirectorStorage {
     private final JdbcTemplate jdbcTemplate;
+    private final SimpleJdbcInsert directorInsert;
+
+    public DbDirectorStorage(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.directorInsert = new SimpleJdbcInsert(jdbcTemplate)
+                .withTableName("directors")
+                .usingColumns("name")
+                .usingGeneratedKeyColumns("id");
+    }
 
     private Director makeDirector(ResultSet rs) throws SQLException {
         return Director.builder()
@@ -40,13 +47,9 @@ public class DbDirectorStorage implements DirectorStorage {
     @Override
     public Director createDirector(Director director) {
         Map<String, Object> row = new HashMap<>();
-        row.put("id", director.getId());
         row.put("name", director.getName());
 
-        SimpleJdbcInsert simpleJdbcInsert = new SimpleJdbcInsert(jdbcTemplate)
-                .withTableName("directors")
-                .usingGeneratedKeyColumns("id");
-        final long id = simpleJdbcInsert.executeAndReturnKey(row).longValue();
+        final long id = directorInsert.executeAndReturnKey(row).longValue();
         director.setId(id);
 
         return director;
@@ -89,16 +92,4 @@ public class DbDirectorStorage implements DirectorStorage {
 
         jdbcTemplate.update(sql, id);
     }
-
-    @Override
-    public List<Director> getDirectorsByName(String name) {
-        String correctNameToQuery = "%" + name + "%";
-
-        String sql = "select id as director_id, name as director_name from directors " +
-                "where lower(name) like ?";
-
-        return jdbcTemplate.query(sql, (rs, rowNum) -> makeDirector(rs), correctNameToQuery);
-    }
-
-
 }
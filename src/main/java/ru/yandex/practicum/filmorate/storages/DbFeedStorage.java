@@ -1,15 +1,18 @@
 package ru.yandex.practicum.filmorate.storages;
 
 
-import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.annotation.Primary;
-import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
-import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.models.Event;
 import ru.yandex.practicum.filmorate.models.EventType;
 import ru.yandex.practicum.filmorate.models.Operation;
@@ -17,27 +20,230 @@ import ru.yandex.practicum.filmorate.models.Operation;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 
-@RequiredArgsConstructor
+/**
+ * Лента событий.
+ * По умолчанию лента читается из feed по списку друзей пользователя.
+ * В режиме app.feed.fan-out-on-write=true при записи события его id добавляется в feed_timeline
+ * автору и всем подписчикам, которым событие видно, и чтение ленты - один диапазон по первичному ключу feed_timeline.
+ * Дружба меняет feed_timeline через {@link #addFriendEvents} и {@link #removeFriendEvents},
+ * при старте приложения пустая таблица заполняется из feed и user_friends.
+ * События старше окна хранения переносятся в {@link FeedSegmentArchive}, таблица feed содержит только свежие.
+ * Таблица feed разбита на суточные бакеты: выборка для переноса идёт по индексу бакета, а не по timestamp.
+ */
+@Slf4j
 @Repository
 @Primary
 public class DbFeedStorage implements FeedStorage {
+    // события друзей, которые попадают в ленту пользователя
+    private static final EnumSet<EventType> FRIEND_EVENT_TYPES = EnumSet.of(EventType.LIKE, EventType.REVIEW);
+    private static final String FRIEND_EVENT_TYPES_SQL = "('" + EventType.LIKE + "', '" + EventType.REVIEW + "')";
+    // ширина бакета feed.bucket, совпадает с выражением столбца в schema.sql
+    private static final long BUCKET_MS = TimeUnit.DAYS.toMillis(1);
+
     private final JdbcTemplate jdbcTemplate;
+    private final FeedSegmentArchive archive;
+    private final boolean fanOutOnWrite;
+
+    public DbFeedStorage(JdbcTemplate jdbcTemplate,
+                         FeedSegmentArchive archive,
+                         @Value("${app.feed.fan-out-on-write:false}") boolean fanOutOnWrite) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.archive = archive;
+        this.fanOutOnWrite = fanOutOnWrite;
+    }
 
+    /**
+     * Страница ленты: последние limit событий, предшествующих событию before, в порядке возрастания времени.
+     * Порядок событий - (timestamp, event_id), поэтому события с одинаковым временем не теряются на границе страниц.
+     * Без before возвращаются последние limit событий, без limit - вся лента.
+     * С курсором after возвращаются первые limit событий, следующих за событием after.
+     * Если в таблице feed страница не заполнена, она дополняется более старыми событиями из архива сегментов.
+     * @param params userId, likeType, reviewType; необязательные limit, before и after;
+     *               необязательный userIds - авторы событий, без него читаются из user_friends, когда нужны
+     * @return List<Event>
+     */
     @Override
     public List<Event> getUserFeed(Map<String, Object> params) {
-        String sql = "SELECT * FROM feed WHERE (user_id IN (:userIds) AND (event_type = :likeType OR event_type =" +
-                " :reviewType)) OR (user_id = :userId) ORDER BY timestamp";
+        if (!fanOutOnWrite) {
+            params = withAuthorIds(params);
+        }
+        final List<Event> page = getHotUserFeed(params);
+        final Integer limit = (Integer) params.get("limit");
+        if (archive.isEmpty() || limit != null && page.size() >= limit && params.get("after") == null) {
+            return page;
+        }
+        return withArchivedEvents(page, params);
+    }
+
+    // дополнение страницы архивными событиями, курсор может указывать и на архивное событие
+    @SuppressWarnings("unchecked")
+    private List<Event> withArchivedEvents(List<Event> page, Map<String, Object> params) {
+        final Integer limit = (Integer) params.get("limit");
+        final Long before = (Long) params.get("before");
+        final Long after = (Long) params.get("after");
+        final Collection<Long> authorIds = (Collection<Long>) withAuthorIds(params).get("userIds");
+        final long userId = ((Number) params.get("userId")).longValue();
+        if (after != null) {
+            if (!page.isEmpty()) {
+                return page;
+            }
+            Optional<Event> cursor = archive.getEvent(after, authorIds);
+            if (cursor.isEmpty()) {
+                return page;
+            }
+            // после архивного курсора идут архивные события, затем начало таблицы feed
+            final List<Event> result = archive.getUserFeedAfter(authorIds, userId, cursor.get(),
+                    limit == null ? Integer.MAX_VALUE : limit);
+            if (limit != null && result.size() >= limit) {
+                return result;
+            }
+            final Set<Long> archivedIds = result.stream().map(Event::getEventId).collect(Collectors.toSet());
+            Map<String, Object> hotParams = new HashMap<>(params);
+            hotParams.put("after", null);
+            if (limit != null) {
+                // события, попавшие и в архив, и в feed, пропускаются, поэтому читается с запасом
+                hotParams.put("limit", limit - result.size() + archivedIds.size());
+            }
+            for (Event event : getHotUserFeed(hotParams)) {
+                if (limit != null && result.size() >= limit) {
+                    break;
+                }
+                if (!archivedIds.contains(event.getEventId())) {
+                    result.add(event);
+                }
+            }
+            return result;
+        }
+        Event cursor = null;
+        if (before != null && page.isEmpty()) {
+            Optional<Event> archived = archive.getEvent(before, authorIds);
+            if (archived.isPresent()) {
+                cursor = archived.get();
+            } else if (!containsEvent(before)) {
+                return page;
+            }
+        }
+        // курсор в таблице feed - архивные события старше него; с запасом на события, попавшие и в архив, и в feed
+        final int remaining = limit == null ? Integer.MAX_VALUE : limit - page.size();
+        final List<Event> archived = archive.getUserFeedBefore(authorIds, userId, cursor,
+                limit == null ? Integer.MAX_VALUE : limit);
+        final Set<Long> hotIds = page.stream().map(Event::getEventId).collect(Collectors.toSet());
+        final List<Event> result = archived.stream()
+                .filter(event -> !hotIds.contains(event.getEventId()))
+                .collect(Collectors.toCollection(ArrayList::new));
+        if (result.size() > remaining) {
+            result.subList(0, result.size() - remaining).clear();
+        }
+        result.addAll(page);
+        return result;
+    }
+
+    // авторы событий ленты - сам пользователь и его друзья
+    private Map<String, Object> withAuthorIds(Map<String, Object> params) {
+        if (params.containsKey("userIds")) {
+            return params;
+        }
+        final long userId = ((Number) params.get("userId")).longValue();
+        final List<Long> userIds = new ArrayList<>(jdbcTemplate.queryForList(
+                "select friend_id from user_friends where user_id=?", Long.class, userId));
+        userIds.add(userId);
+        final Map<String, Object> result = new HashMap<>(params);
+        result.put("userIds", userIds);
+        return result;
+    }
+
+    private List<Event> getHotUserFeed(Map<String, Object> params) {
+        if (fanOutOnWrite) {
+            return getUserTimeline(params);
+        }
+        // userIds содержит и самого пользователя: условие по user_id идёт по индексу feed_user_timestamp_event_idx
+        StringBuilder sql = new StringBuilder("SELECT * FROM feed WHERE user_id IN (:userIds) " +
+                "AND (user_id = :userId OR event_type = :likeType OR event_type = :reviewType)");
+        return queryPage(sql, "", params);
+    }
+
+    // лента из feed_timeline, условие по owner_id идёт по первичному ключу
+    private List<Event> getUserTimeline(Map<String, Object> params) {
+        StringBuilder sql = new StringBuilder("SELECT f.* FROM feed_timeline AS t " +
+                "JOIN feed AS f ON f.event_id = t.event_id WHERE t.owner_id = :userId");
+        return queryPage(sql, "t.", params);
+    }
+
+    private List<Event> queryPage(StringBuilder sql, String alias, Map<String, Object> params) {
+        if (params.get("before") != null) {
+            sql.append(" AND (").append(alias).append("timestamp < (SELECT timestamp FROM feed WHERE event_id = :before) " +
+                    "OR ").append(alias).append("timestamp = (SELECT timestamp FROM feed WHERE event_id = :before) " +
+                    "AND ").append(alias).append("event_id < :before)");
+        }
+        if (params.get("after") != null) {
+            sql.append(" AND (").append(alias).append("timestamp > (SELECT timestamp FROM feed WHERE event_id = :after) " +
+                    "OR ").append(alias).append("timestamp = (SELECT timestamp FROM feed WHERE event_id = :after) " +
+                    "AND ").append(alias).append("event_id > :after)");
+        }
         NamedParameterJdbcTemplate namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
-        return namedParameterJdbcTemplate.query(sql, params, this::makeEvent);
+        if (params.get("limit") == null || params.containsKey("after")) {
+            // после курсора after читаются первые события, а не последние; after = null - от начала ленты
+            if (params.get("limit") != null) {
+                sql.append(" ORDER BY ").append(alias).append("timestamp, ").append(alias)
+                        .append("event_id LIMIT :limit");
+                return namedParameterJdbcTemplate.query(sql.toString(), params, this::makeEvent);
+            }
+            sql.append(" ORDER BY ").append(alias).append("timestamp, ").append(alias).append("event_id");
+            return namedParameterJdbcTemplate.query(sql.toString(), params, this::makeEvent);
+        }
+        sql.append(" ORDER BY ").append(alias).append("timestamp DESC, ")
+                .append(alias).append("event_id DESC LIMIT :limit");
+        List<Event> page = namedParameterJdbcTemplate.query(sql.toString(), params, this::makeEvent);
+        Collections.reverse(page);
+        return page;
+    }
+
+    /**
+     * Самые старые по id события с timestamp меньше заданного.
+     * Условие по суточному бакету идёт по индексу feed_bucket_event_idx, timestamp уточняет последний бакет.
+     */
+    @Override
+    public List<Event> getEventsBefore(long timestamp, int limit) {
+        return jdbcTemplate.query("select * from feed where bucket <= ? and timestamp < ? order by event_id limit ?",
+                this::makeEvent, Math.floorDiv(timestamp, BUCKET_MS), timestamp, limit);
+    }
+
+    @Override
+    public void removeEvents(List<Long> ids) {
+        jdbcTemplate.batchUpdate("delete from feed where event_id = ?",
+                ids.stream().map(id -> new Object[]{id}).collect(Collectors.toList()));
+    }
+
+    private boolean containsEvent(long eventId) {
+        Integer count = jdbcTemplate.queryForObject("select count(*) from feed where event_id = ?",
+                Integer.class, eventId);
+        return count != null && count > 0;
     }
 
     @Override
     public Event addEvent(Event event) {
+        Event savedEvent = insertEvent(event);
+        if (fanOutOnWrite) {
+            fanOut(List.of(savedEvent));
+        }
+        return savedEvent;
+    }
+
+    private Event insertEvent(Event event) {
         String sql = "insert into feed (user_id, entity_id, event_type, operation, timestamp) values (?, ?, ?, ?, ?)";
         KeyHolder keyHolder = new GeneratedKeyHolder();
         jdbcTemplate.update(connection -> {
@@ -49,7 +255,161 @@ public class DbFeedStorage implements FeedStorage {
             stmt.setLong(5, event.getTimestamp());
             return stmt;
         }, keyHolder);
-        return findEventById((Objects.requireNonNull(keyHolder.getKey()).longValue()));
+        return withId(event, Objects.requireNonNull(keyHolder.getKey()).longValue());
+    }
+
+    /**
+     * Пакетная вставка событий. Id событий берутся из сгенерированных ключей пакета, без повторного чтения.
+     * @return события с назначенными id в порядке вставки
+     */
+    @Override
+    public List<Event> addEvents(List<Event> events) {
+        if (events.isEmpty()) {
+            return List.of();
+        }
+        String sql = "insert into feed (user_id, entity_id, event_type, operation, timestamp) values (?, ?, ?, ?, ?)";
+        List<Event> savedEvents = jdbcTemplate.execute((ConnectionCallback<List<Event>>) connection -> {
+            try (PreparedStatement stmt = connection.prepareStatement(sql, new String[]{"event_id"})) {
+                for (Event event : events) {
+                    stmt.setLong(1, event.getUserId());
+                    stmt.setLong(2, event.getEntityId());
+                    stmt.setString(3, event.getEventType().name());
+                    stmt.setString(4, event.getOperation().name());
+                    stmt.setLong(5, event.getTimestamp());
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                List<Event> result = new ArrayList<>(events.size());
+                try (ResultSet keys = stmt.getGeneratedKeys()) {
+                    while (keys.next()) {
+                        result.add(withId(events.get(result.size()), keys.getLong(1)));
+                    }
+                }
+                return result;
+            }
+        });
+        if (fanOutOnWrite) {
+            fanOut(savedEvents);
+        }
+        return savedEvents;
+    }
+
+    /**
+     * Сохраняет событие в feed_outbox в транзакции вызывающего кода, id события в ленте ещё не назначен.
+     */
+    @Override
+    public void addOutboxEvent(Event event) {
+        jdbcTemplate.update("insert into feed_outbox (user_id, entity_id, event_type, operation, timestamp) " +
+                        "values (?, ?, ?, ?, ?)", event.getUserId(), event.getEntityId(), event.getEventType().name(),
+                event.getOperation().name(), event.getTimestamp());
+    }
+
+    @Override
+    public void addOutboxEvents(List<Event> events) {
+        jdbcTemplate.batchUpdate("insert into feed_outbox (user_id, entity_id, event_type, operation, timestamp) " +
+                        "values (?, ?, ?, ?, ?)",
+                events.stream()
+                        .map(e -> new Object[]{e.getUserId(), e.getEntityId(), e.getEventType().name(),
+                                e.getOperation().name(), e.getTimestamp()})
+                        .collect(Collectors.toList()));
+    }
+
+    /**
+     * Самые ранние события feed_outbox в порядке (timestamp, id), eventId содержит id записи в feed_outbox.
+     */
+    @Override
+    public List<Event> getOutboxEvents(int limit) {
+        return jdbcTemplate.query("select id as event_id, user_id, entity_id, event_type, operation, timestamp " +
+                "from feed_outbox order by timestamp, id limit ?", this::makeEvent, limit);
+    }
+
+    @Override
+    public void removeOutboxEvents(List<Long> ids) {
+        new NamedParameterJdbcTemplate(jdbcTemplate)
+                .update("delete from feed_outbox where id in (:ids)", Map.of("ids", ids));
+    }
+
+    /**
+     * Пользователь userId добавил в друзья friendId: события друга, видимые в ленте, добавляются в feed_timeline.
+     */
+    @Override
+    public void addFriendEvents(long userId, long friendId) {
+        if (!fanOutOnWrite || userId == friendId) {
+            return;
+        }
+        jdbcTemplate.update("insert into feed_timeline (owner_id, event_id, timestamp) " +
+                "select ?, event_id, timestamp from feed where user_id = ? and event_type in " + FRIEND_EVENT_TYPES_SQL,
+                userId, friendId);
+    }
+
+    /**
+     * Пользователь userId удалил из друзей friendId: события друга убираются из feed_timeline.
+     */
+    @Override
+    public void removeFriendEvents(long userId, long friendId) {
+        if (!fanOutOnWrite || userId == friendId) {
+            return;
+        }
+        jdbcTemplate.update("delete from feed_timeline where owner_id = ? " +
+                "and event_id in (select event_id from feed where user_id = ?)", userId, friendId);
+    }
+
+    /**
+     * Заполняет пустую feed_timeline из feed и user_friends одной транзакцией.
+     * Заполненная таблица поддерживается при записи и при старте не перестраивается.
+     * Без режима fan-out-on-write в таблицу никто не пишет, поэтому непустая таблица означает, что режим
+     * только что выключен: тогда она очищается, чтобы при включении заполниться заново, а не остаться
+     * с лентами на момент выключения. Пустая таблица при старте не трогается.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void initTimelines() {
+        final boolean filled = Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "select exists(select 1 from feed_timeline)", Boolean.class));
+        if (!fanOutOnWrite) {
+            if (filled) {
+                int removed = jdbcTemplate.update("delete from feed_timeline");
+                log.info("Режим fan-out-on-write выключен, ленты пользователей очищены, записей: {}", removed);
+            }
+            return;
+        }
+        if (filled) {
+            return;
+        }
+        int own = jdbcTemplate.update("insert into feed_timeline (owner_id, event_id, timestamp) " +
+                "select user_id, event_id, timestamp from feed");
+        int friends = jdbcTemplate.update("insert into feed_timeline (owner_id, event_id, timestamp) " +
+                "select uf.user_id, f.event_id, f.timestamp from feed as f " +
+                "join user_friends as uf on uf.friend_id = f.user_id " +
+                "where uf.user_id <> f.user_id and f.event_type in " + FRIEND_EVENT_TYPES_SQL);
+        log.info("Ленты пользователей заполнены, записей: {}", own + friends);
+    }
+
+    // запись событий в ленты автора и его подписчиков
+    private void fanOut(List<Event> events) {
+        jdbcTemplate.batchUpdate("insert into feed_timeline (owner_id, event_id, timestamp) values (?, ?, ?)",
+                events.stream()
+                        .map(e -> new Object[]{e.getUserId(), e.getEventId(), e.getTimestamp()})
+                        .collect(Collectors.toList()));
+        List<Object[]> args = events.stream()
+                .filter(e -> FRIEND_EVENT_TYPES.contains(e.getEventType()))
+                .map(e -> new Object[]{e.getEventId(), e.getTimestamp(), e.getUserId(), e.getUserId()})
+                .collect(Collectors.toList());
+        if (!args.isEmpty()) {
+            jdbcTemplate.batchUpdate("insert into feed_timeline (owner_id, event_id, timestamp) " +
+                    "select user_id, ?, ? from user_friends where friend_id = ? and user_id <> ?", args);
+        }
+    }
+
+    private static Event withId(Event event, long eventId) {
+        return Event.builder()
+                .eventId(eventId)
+                .userId(event.getUserId())
+                .entityId(event.getEntityId())
+                .eventType(event.getEventType())
+                .operation(event.getOperation())
+                .timestamp(event.getTimestamp())
+                .build();
     }
 
     private Event makeEvent(ResultSet rs, int rowNum) throws SQLException {
@@ -62,13 +422,4 @@ public class DbFeedStorage implements FeedStorage {
                 .timestamp(rs.getLong("timestamp"))
                 .build();
     }
-
-    private Event findEventById(long id) {
-        String sql = "select * from feed where event_id = ?";
-        try {
-            return jdbcTemplate.queryForObject(sql, this::makeEvent, id);
-        } catch (EmptyResultDataAccessException e) {
-            throw new NotFoundException(String.format("События с id %s нет в системе", id));
-        }
-    }
 }
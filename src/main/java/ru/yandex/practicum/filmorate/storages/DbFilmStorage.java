@@ -1,123 +1,149 @@
 package ru.yandex.practicum.filmorate.storages;
 
-import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Primary;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.jdbc.core.namedparam.SqlParameterSourceUtils;
 import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.stereotype.Repository;
-import ru.yandex.practicum.filmorate.models.Director;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.models.Film;
 import ru.yandex.practicum.filmorate.models.FilmLike;
-import ru.yandex.practicum.filmorate.models.FilmRating;
+import ru.yandex.practicum.filmorate.models.FilmPopularity;
 import ru.yandex.practicum.filmorate.models.FilmSort;
-import ru.yandex.practicum.filmorate.models.Genre;
 import ru.yandex.practicum.filmorate.utils.AppProperties;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
-@RequiredArgsConstructor
 @Repository
 @Primary
 public class DbFilmStorage implements FilmStorage {
+    private static final int ALL_PAGE_SIZE = 1000;
+
     private final JdbcTemplate jdbcTemplate;
     private final AppProperties appProperties;
+    private final FilmHydrator filmHydrator;
+    private final SimpleJdbcInsert filmInsert;
+    private final SimpleJdbcInsert filmGenreInsert;
+    private final SimpleJdbcInsert filmDirectorInsert;
+    private final IdFilter idFilter;
+
+    public DbFilmStorage(JdbcTemplate jdbcTemplate,
+                         AppProperties appProperties,
+                         FilmHydrator filmHydrator,
+                         @Value("${app.storage.id-filter.enabled:false}") boolean idFilterEnabled) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.appProperties = appProperties;
+        this.filmHydrator = filmHydrator;
+        this.idFilter = new IdFilter(jdbcTemplate, "films", idFilterEnabled);
+        // метаданные таблиц читаются при первой вставке и далее переиспользуются
+        this.filmInsert = new SimpleJdbcInsert(jdbcTemplate)
+                .withTableName("films")
+                .usingColumns("name", "description", "release_date", "duration", "rating")
+                .usingGeneratedKeyColumns("id");
+        this.filmGenreInsert = new SimpleJdbcInsert(jdbcTemplate)
+                .withTableName("film_genres")
+                .usingColumns("film_id", "genre_id");
+        this.filmDirectorInsert = new SimpleJdbcInsert(jdbcTemplate)
+                .withTableName("film_directors")
+                .usingColumns("film_id", "director_id");
+    }
 
     private FilmLike makeFilmLike(ResultSet rs) throws SQLException {
         return new FilmLike(rs.getLong("film_id"), rs.getLong("user_id"));
     }
 
-    private Genre makeGenre(ResultSet rs) throws SQLException {
-        return Genre.builder()
-                .id(rs.getLong("genre_id"))
-                .name(rs.getString("genre_name"))
-                .build();
-    }
-
-    private Director makeDirector(ResultSet rs) throws SQLException {
-        return Director.builder()
-                .id(rs.getLong("director_id"))
-                .name(rs.getString("director_name"))
-                .build();
-    }
-
-    private Film makeFilm(ResultSet rs) throws SQLException {
-        Film film = Film.builder()
-                .id(rs.getLong("film_id"))
-                .name(rs.getString("film_name"))
-                .description(rs.getString("film_description"))
-                .releaseDate(rs.getDate("film_release_date").toLocalDate())
-                .duration(Duration.ofMinutes(rs.getLong("film_duration")))
-                .rating(FilmRating.valueOf(rs.getString("film_rating")))
-                .build();
-        Genre genre = makeGenre(rs);
-        if (genre.getName() != null) {
-            film.addGenre(makeGenre(rs));
-        }
-        long likerId = rs.getLong("liked_user_id");
-        if (likerId != 0) {
-            film.addLike(likerId);
-        }
+    /**
+     * Страница фильмов по ключу: фильмы с id больше afterId в порядке возрастания id.
+     * Стоимость запроса не зависит от номера страницы - поиск начинается по первичному ключу.
+     * @param afterId id последнего фильма предыдущей страницы или null для первой страницы
+     * @param limit размер страницы
+     * @return List<Film>
+     */
+    @Override
+    public List<Film> getFilms(Long afterId, int limit) {
+        String sql = "select " + FilmHydrator.FILM_COLUMNS + " " +
+                "from films as f " +
+                "where f.id > ? " +
+                "order by f.id " +
+                "limit ?";
+
+        long after = afterId == null ? 0 : afterId;
+        List<Film> films = jdbcTemplate.query(sql, (rs, rowNum) -> filmHydrator.makeFilm(rs), after, limit);
+        return filmHydrator.hydrate(films);
+    }
 
-        Director director = makeDirector(rs);
-        if (director.getName() != null) {
-            film.addDirector(director);
+    /**
+     * Все фильмы в порядке возрастания id. Читаются страницами по ключу, по ALL_PAGE_SIZE за запрос.
+     * @return List<Film>
+     */
+    @Override
+    public List<Film> getAllFilms() {
+        final List<Film> result = new ArrayList<>();
+        List<Film> page = getFilms(null, ALL_PAGE_SIZE);
+        result.addAll(page);
+        while (page.size() == ALL_PAGE_SIZE) {
+            page = getFilms(page.get(page.size() - 1).getId(), ALL_PAGE_SIZE);
+            result.addAll(page);
         }
-        return film;
+        return result;
     }
 
-    private List<Film> mapFilmQueryResult(List<Film> filmQueryResult) {
-        final List<Film> buffer = new ArrayList<>();
-        filmQueryResult.forEach(f -> {
-            int buffSize = buffer.size();
-            if (buffSize == 0 || !Objects.equals(buffer.get(buffSize - 1).getId(), f.getId())) {
-                buffer.add(f);
-                return;
+    /**
+     * Последовательно передаёт все фильмы в consumer в порядке возрастания id.
+     * Строки читаются однонаправленным курсором порциями по fetchSize, связи догружаются для каждой порции,
+     * поэтому в памяти одновременно находится не больше одной порции фильмов.
+     * @param fetchSize размер порции
+     * @param consumer получатель фильмов
+     */
+    @Transactional(readOnly = true)
+    @Override
+    public void exportFilms(int fetchSize, Consumer<Film> consumer) {
+        final String sql = "select " + FilmHydrator.FILM_COLUMNS + " " +
+                "from films as f " +
+                "order by f.id";
+        final List<Film> chunk = new ArrayList<>(fetchSize);
+
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            chunk.add(filmHydrator.makeFilm(rs));
+            if (chunk.size() >= fetchSize) {
+                exportChunk(chunk, consumer);
             }
-            Film curFilm = buffer.get(buffSize - 1);
-            curFilm.addGenre(f.getGenres());
-            curFilm.addLike(f.getLikes());
-            curFilm.addDirector(f.getDirectors());
         });
-        return buffer;
-    }
-
-    protected List<Film> getFilms(int limit, int offset) {
-        String sql = "select f.id as film_id, f.name as film_name, f.description as film_description, " +
-                "f.release_date as film_release_date, f.duration as film_duration, f.rating as film_rating, " +
-                "g.id as genre_id, g.name as genre_name, fl.user_id as liked_user_id, " +
-                "dir.id as director_id, dir.name as director_name " +
-                "from (select * from films limit ? offset ?) as f " +
-                "left join film_genres as fg on f.id=fg.film_id " +
-                "left join genres as g on fg.genre_id=g.id " +
-                "left join film_likes as fl on f.id=fl.film_id " +
-                "left join film_directors as fdir on f.id = fdir.film_id " +
-                "left join directors as dir on fdir.director_id=dir.id " +
-                "order by film_id";
-
-        List<Film> queryResult = jdbcTemplate.query(sql, (rs, rowNum) -> makeFilm(rs), limit, offset);
-        return mapFilmQueryResult(queryResult);
+        exportChunk(chunk, consumer);
     }
 
-    @Override
-    public List<Film> getAllFilms() {
-        return getFilms(100, 0); //параметры - для будущей пагинации
+    private void exportChunk(List<Film> chunk, Consumer<Film> consumer) {
+        filmHydrator.hydrate(chunk).forEach(consumer);
+        chunk.clear();
     }
 
+    /**
+     * Добавляет строку фильма без повторного чтения.
+     * Результат собирается из переданного фильма и сгенерированного id, связи не записываются.
+     * @param film фильм
+     * @return Film
+     */
     @Override
     public Film createFilm(Film film) {
         Map<String, Object> row = new HashMap<>();
@@ -126,69 +152,104 @@ public class DbFilmStorage implements FilmStorage {
         row.put("release_date", film.getReleaseDate().format(appProperties.getDefaultDateFormatter()));
         row.put("duration", film.getDuration().toMinutes());
         row.put("rating", film.getRating().name());
-        SimpleJdbcInsert simpleJdbcInsert = new SimpleJdbcInsert(jdbcTemplate)
-                .withTableName("films")
-                .usingGeneratedKeyColumns("id");
-        final long id = simpleJdbcInsert.executeAndReturnKey(row).longValue();
-        return getFilmById(id)
-                .orElseThrow(() -> new IllegalStateException("Ошибка при добавлении записи в БД"));
+        final long id = filmInsert.executeAndReturnKey(row).longValue();
+        idFilter.add(id);
+        Film created = film.copyOf();
+        created.setId(id);
+        created.setLikeCount(0);
+        return created;
     }
 
+    /**
+     * Обновляет строку фильма. Из базы дочитывается только количество лайков,
+     * остальные поля и связи результата берутся из filmUpdates, связи не изменяются.
+     * @param filmUpdates фильм
+     * @return Optional<Film>, пустой если фильма нет
+     */
     @Override
     public Optional<Film> updateFilm(Film filmUpdates) {
         String sql = "update films set name=?, description=?, release_date=?, duration=?, rating=? where id=?";
 
-        jdbcTemplate.update(sql,
+        int updated = jdbcTemplate.update(sql,
                 filmUpdates.getName(),
                 filmUpdates.getDescription(),
                 filmUpdates.getReleaseDate().format(appProperties.getDefaultDateFormatter()),
                 filmUpdates.getDuration().toMinutes(),
                 filmUpdates.getRating().name(),
                 filmUpdates.getId());
-        return getFilmById(filmUpdates.getId());
+        if (updated == 0) {
+            return Optional.empty();
+        }
+        Integer likeCount = jdbcTemplate.queryForObject("select like_count from films where id=?",
+                Integer.class, filmUpdates.getId());
+        Film film = filmUpdates.copyOf();
+        film.setLikeCount(likeCount == null ? 0 : likeCount);
+        return Optional.of(film);
     }
 
     @Override
     public Optional<Film> getFilmById(long id) {
-        String sql = "select f.id as film_id, f.name as film_name, f.description as film_description, " +
-                "f.release_date as film_release_date, f.duration as film_duration, f.rating as film_rating, " +
-                "g.id as genre_id, g.name as genre_name, fl.user_id as liked_user_id, " +
-                "dir.id as director_id, dir.name as director_name " +
+        String sql = "select " + FilmHydrator.FILM_COLUMNS + " " +
                 "from films as f " +
-                "left join film_genres as fg on f.id=fg.film_id " +
-                "left join genres as g on fg.genre_id=g.id " +
-                "left join film_likes as fl on f.id=fl.film_id " +
-                "left join film_directors as fdir on f.id=fdir.film_id " +
-                "left join directors as dir on fdir.director_id= dir.id " +
                 "where f.id=?";
-        List<Film> queryResult = jdbcTemplate.query(sql, (rs, rowNum) -> makeFilm(rs), id);
-        if (queryResult.size() == 0) {
+        List<Film> films = jdbcTemplate.query(sql, (rs, rowNum) -> filmHydrator.makeFilm(rs), id);
+        if (films.size() == 0) {
             return Optional.empty();
         }
-        return Optional.of(mapFilmQueryResult(queryResult).get(0));
+        return Optional.of(filmHydrator.hydrate(films).get(0));
+    }
+
+    /**
+     * Проверка существования фильма по первичному ключу, без жанров, режиссёров и лайков.
+     * Id, которых точно нет, отсекаются фильтром id без запроса к БД.
+     * @param id id фильма
+     * @return boolean
+     */
+    @Override
+    public boolean existsFilm(long id) {
+        if (!idFilter.mightContain(id)) {
+            return false;
+        }
+        String sql = "select exists(select 1 from films where id=?)";
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(sql, Boolean.class, id));
+    }
+
+    /**
+     * Id из переданных, для которых есть фильм. Id, отсечённые фильтром id, в запрос не попадают.
+     * @param ids id фильмов
+     * @return Set<Long>
+     */
+    @Override
+    public Set<Long> existingIds(Set<Long> ids) {
+        final List<Long> candidates = ids.stream()
+                .filter(idFilter::mightContain)
+                .collect(Collectors.toList());
+        if (candidates.isEmpty()) {
+            return new HashSet<>();
+        }
+        String inSql = String.join(",", Collections.nCopies(candidates.size(), "?"));
+        String sql = "select id from films where id in (%s)";
+        return new HashSet<>(jdbcTemplate.query(String.format(sql, inSql),
+                (rs, rowNum) -> rs.getLong("id"), candidates.toArray()));
     }
 
     @Override
     public List<Film> getFilmsByIds(Set<Long> ids) {
+        if (ids.size() == 0) {
+            return new ArrayList<>();
+        }
         String inSql = String.join(",", Collections.nCopies(ids.size(), "?"));
-        String sql = "select f.id as film_id, f.name as film_name, f.description as film_description, " +
-                "f.release_date as film_release_date, f.duration as film_duration, f.rating as film_rating, " +
-                "g.id as genre_id, g.name as genre_name, fl.user_id as liked_user_id, " +
-                "d.id as director_id, d.name as director_name " +
+        String sql = "select " + FilmHydrator.FILM_COLUMNS + " " +
                 "from films as f " +
-                "left join film_genres as fg on f.id=fg.film_id " +
-                "left join genres as g on fg.genre_id=g.id " +
-                "left join film_likes as fl on f.id=fl.film_id " +
-                "left join film_directors as fd on f.id = fd.film_id " +
-                "left join directors as d on fd.director_id = d.id " +
-                "where f.id in (%s)";
-        List<Film> queryResult = jdbcTemplate.query(
+                "where f.id in (%s) " +
+                "order by film_id";
+        List<Film> films = jdbcTemplate.query(
                 String.format(sql, inSql),
-                (rs, rowNum) -> makeFilm(rs),
+                (rs, rowNum) -> filmHydrator.makeFilm(rs),
                 ids.toArray()
         );
 
-        return mapFilmQueryResult(queryResult);
+        return filmHydrator.hydrate(films);
     }
 
     @Override
@@ -199,100 +260,158 @@ public class DbFilmStorage implements FilmStorage {
                 .addValue("count", count)
                 .addValue("year", year);
 
-        String sql = "select topf.*, g.id as genre_id, g.name as genre_name, fl.user_id as liked_user_id,  dir.id as director_id, dir.name as director_name \n" +
-                "from (select f.id as film_id, f.name as film_name, f.description as film_description, \n" +
-                "f.release_date as film_release_date, f.duration as film_duration, f.rating as film_rating, \n" +
-                "count(fl.user_id) as cnt\n" +
-                "from films as f left join film_likes as fl on f.id=fl.film_id \n" +
+        String sql = "select " + FilmHydrator.FILM_COLUMNS + " " +
+                "from films as f " +
                 "where (:year is null or extract(year from f.release_date)=:year) and " +
-                "((:genre_id is null) or (:genre_id in (select cfg.genre_id from film_genres as cfg where cfg.film_id=f.id))) \n" +
-                "group by film_id, film_name, film_description, film_release_date, film_duration, film_rating \n" +
-                "order by cnt desc\n" +
-                "limit :count) as topf \n" +
-                "left join film_genres as fg on topf.film_id=fg.film_id\n" +
-                "left join genres as g on fg.genre_id=g.id\n" +
-                "left join film_likes as fl on topf.film_id=fl.film_id " +
-                "left join film_directors as fdir on topf.film_id=fdir.film_id " +
-                "left join directors as dir on fdir.director_id=dir.id ";
-
-        List<Film> queryResult = namedParameterJdbcTemplate.query(sql, namedParameters, (rs, rowNum) -> makeFilm(rs));
-        return mapFilmQueryResult(queryResult);
+                "((:genre_id is null) or exists (select 1 from film_genres as cfg " +
+                "where cfg.film_id=f.id and cfg.genre_id=:genre_id)) " +
+                "order by f.like_count desc, f.id " +
+                "limit :count";
+
+        List<Film> films = namedParameterJdbcTemplate.query(sql, namedParameters,
+                (rs, rowNum) -> filmHydrator.makeFilm(rs));
+        return filmHydrator.hydrate(films);
     }
 
+    /**
+     * Фильмы режиссёра. Запрос начинается с film_directors по индексу director_id
+     * и затрагивает только фильмы этого режиссёра, количество лайков берётся из films.like_count.
+     * @param directorId id режиссёра
+     * @param sort способ сортировки: по убыванию лайков или по году выпуска
+     * @return List<Film>
+     */
     @Override
     public List<Film> getFilmsByDirector(long directorId, FilmSort sort) {
+        String orderBy = sort == FilmSort.LIKES
+                ? "order by f.like_count desc, f.id"
+                : "order by f.release_date, f.id";
+        String sql = "select " + FilmHydrator.FILM_COLUMNS + " " +
+                "from film_directors as fd " +
+                "join films as f on f.id=fd.film_id " +
+                "where fd.director_id=? " +
+                orderBy;
+
+        List<Film> films = jdbcTemplate.query(sql, (rs, rowNum) -> filmHydrator.makeFilm(rs), directorId);
+        return filmHydrator.hydrate(films);
+    }
 
-        String sql;
-        if (sort.equals(FilmSort.LIKES)) {
-            sql = "select topf.*, g.id as genre_id, g.name as genre_name, fl.user_id as liked_user_id,  dir.id as director_id, dir.name as director_name \n" +
-                    "from (select f.id as film_id, f.name as film_name, f.description as film_description, \n" +
-                    "f.release_date as film_release_date, f.duration as film_duration, f.rating as film_rating, \n" +
-                    "count(fl.user_id) as cnt\n" +
-                    "from films as f left join film_likes as fl on f.id=fl.film_id \n" +
-                    "group by film_id, film_name, film_description, film_release_date, film_duration, film_rating \n" +
-                    "order by cnt desc ) as topf \n" +
-                    "left join film_genres as fg on topf.film_id=fg.film_id\n" +
-                    "left join genres as g on fg.genre_id=g.id\n" +
-                    "left join film_likes as fl on topf.film_id=fl.film_id " +
-                    "left join film_directors as fdir on topf.film_id=fdir.film_id " +
-                    "left join directors as dir on fdir.director_id=dir.id " +
-                    "where dir.id = ?";
-        } else {
-            sql = "select topf.*, g.id as genre_id, g.name as genre_name, fl.user_id as liked_user_id,  dir.id as director_id, dir.name as director_name \n" +
-                    "from (select f.id as film_id, f.name as film_name, f.description as film_description, \n" +
-                    "f.release_date as film_release_date, f.duration as film_duration, f.rating as film_rating, \n" +
-                    "extract(year from cast(f.release_date as date)) as years \n" +
-                    "from films as f left join film_likes as fl on f.id=fl.film_id \n" +
-                    "group by film_id, film_name, film_description, film_release_date, film_duration, film_rating \n" +
-                    "order by years asc ) as topf \n" +
-                    "left join film_genres as fg on topf.film_id=fg.film_id\n" +
-                    "left join genres as g on fg.genre_id=g.id\n" +
-                    "left join film_likes as fl on topf.film_id=fl.film_id " +
-                    "left join film_directors as fdir on topf.film_id=fdir.film_id " +
-                    "left join directors as dir on fdir.director_id=dir.id " +
-                    "where dir.id = ?";
+    /**
+     * Фильмы любого из режиссёров одним запросом, по убыванию лайков.
+     * Фильм нескольких найденных режиссёров возвращается один раз.
+     * @param directorIds id режиссёров
+     * @return List<Film>
+     */
+    @Override
+    public List<Film> getFilmsByDirectors(Set<Long> directorIds) {
+        if (directorIds.isEmpty()) {
+            return new ArrayList<>();
         }
+        String inSql = String.join(",", Collections.nCopies(directorIds.size(), "?"));
+        String sql = "select " + FilmHydrator.FILM_COLUMNS + " " +
+                "from films as f " +
+                "where exists (select 1 from film_directors as fd " +
+                "where fd.film_id=f.id and fd.director_id in (%s)) " +
+                "order by f.like_count desc, f.id";
 
-        List<Film> queryResult = jdbcTemplate.query(sql, (rs, rowNum) -> makeFilm(rs), directorId);
-        return mapFilmQueryResult(queryResult);
+        List<Film> films = jdbcTemplate.query(
+                String.format(sql, inSql),
+                (rs, rowNum) -> filmHydrator.makeFilm(rs),
+                directorIds.toArray()
+        );
+        return filmHydrator.hydrate(films);
     }
 
     @Override
-    public List<Film> getFilmsByTitle(String title) {
-
-        String titleForQuery = "%" + title + "%";
-        String sql = "select f.id as film_id, f.name as film_name, f.description as film_description, " +
-                "f.release_date as film_release_date, f.duration as film_duration, f.rating as film_rating, " +
-                "g.id as genre_id, g.name as genre_name, fl.user_id as liked_user_id, " +
-                "dir.id as director_id, dir.name as director_name " +
-                "from (select * from films ) as f " +
-                "left join film_genres as fg on f.id=fg.film_id " +
-                "left join genres as g on fg.genre_id=g.id " +
-                "left join film_likes as fl on f.id=fl.film_id " +
-                "left join film_directors as fdir on f.id = fdir.film_id " +
-                "left join directors as dir on fdir.director_id=dir.id " +
-                "where lower(f.name) like ? " +
-                "order by film_id";
+    public Map<Long, String> getFilmNames() {
+        String sql = "select id, name from films";
+        final Map<Long, String> result = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            result.put(rs.getLong("id"), rs.getString("name"));
+        });
+        return result;
+    }
 
-        List<Film> queryResult = jdbcTemplate.query(sql, (rs, rowNum) -> makeFilm(rs), titleForQuery);
-        return mapFilmQueryResult(queryResult);
+    @Override
+    @Transactional
+    public boolean createFilmLike(long filmId, long userId) {
+        String sql = "insert into film_likes (film_id, user_id) values (?, ?) on conflict do nothing";
+        if (jdbcTemplate.update(sql, filmId, userId) == 0) {
+            return false;
+        }
+        jdbcTemplate.update("update films set like_count=like_count+1 where id=?", filmId);
+        return true;
     }
 
     @Override
-    public void createFilmLike(long filmId, long userId) {
-        Map<String, Object> row = new HashMap<>();
-        row.put("film_id", filmId);
-        row.put("user_id", userId);
+    @Transactional
+    public boolean removeFilmLike(long filmId, long userId) {
+        String sql = "delete from film_likes where film_id=? and user_id=?";
+        if (jdbcTemplate.update(sql, filmId, userId) == 0) {
+            return false;
+        }
+        jdbcTemplate.update("update films set like_count=like_count-1 where id=?", filmId);
+        return true;
+    }
 
-        SimpleJdbcInsert simpleJdbcInsert = new SimpleJdbcInsert(jdbcTemplate)
-                .withTableName("film_likes");
-        simpleJdbcInsert.execute(row);
+    /**
+     * Пакетная постановка лайков. Лайки несуществующим фильмам или от несуществующих пользователей
+     * и уже поставленные лайки пропускаются без ошибки.
+     * @param likes лайки
+     * @return количество вставленных строк для каждого лайка (0 или 1)
+     */
+    @Override
+    @Transactional
+    public int[] createFilmLikes(List<FilmLike> likes) {
+        String sql = "insert into film_likes (film_id, user_id) " +
+                "select f.id, u.id from films as f cross join users as u where f.id=? and u.id=? " +
+                "on conflict do nothing";
+        int[] result = jdbcTemplate.batchUpdate(sql, toBatchArgs(likes));
+        updateLikeCounts(likes, result, 1);
+        return result;
     }
 
+    /**
+     * Пакетное удаление лайков. Отсутствующие лайки пропускаются.
+     * @param likes лайки
+     * @return количество удалённых строк для каждого лайка (0 или 1)
+     */
     @Override
-    public void removeFilmLike(long filmId, long userId) {
+    @Transactional
+    public int[] removeFilmLikes(List<FilmLike> likes) {
         String sql = "delete from film_likes where film_id=? and user_id=?";
-        jdbcTemplate.update(sql, filmId, userId);
+        int[] result = jdbcTemplate.batchUpdate(sql, toBatchArgs(likes));
+        updateLikeCounts(likes, result, -1);
+        return result;
+    }
+
+    private List<Object[]> toBatchArgs(List<FilmLike> likes) {
+        return likes.stream()
+                .map(like -> new Object[]{like.getFilmId(), like.getUserId()})
+                .collect(Collectors.toList());
+    }
+
+    private void updateLikeCounts(List<FilmLike> likes, int[] affectedRows, int sign) {
+        final Map<Long, Integer> deltas = new HashMap<>();
+        for (int i = 0; i < affectedRows.length; i++) {
+            if (affectedRows[i] > 0) {
+                deltas.merge(likes.get(i).getFilmId(), sign, Integer::sum);
+            }
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+        List<Object[]> args = deltas.entrySet().stream()
+                .map(e -> new Object[]{e.getValue(), e.getKey()})
+                .collect(Collectors.toList());
+        jdbcTemplate.batchUpdate("update films set like_count=like_count+? where id=?", args);
+    }
+
+    @Override
+    public int reconcileFilmLikeCounts() {
+        String sql = "update films as f set like_count=" +
+                "(select count(*) from film_likes as fl where fl.film_id=f.id) " +
+                "where like_count<>(select count(*) from film_likes as fl where fl.film_id=f.id)";
+        return jdbcTemplate.update(sql);
     }
 
     @Override
@@ -302,6 +421,27 @@ public class DbFilmStorage implements FilmStorage {
         return jdbcTemplate.query(sql, (rs, rowNum) -> makeFilmLike(rs));
     }
 
+    @Override
+    public List<FilmPopularity> getFilmPopularity() {
+        String sql = "select f.id as film_id, extract(year from f.release_date) as release_year, " +
+                "count(fl.user_id) as likes " +
+                "from films as f left join film_likes as fl on f.id=fl.film_id " +
+                "group by f.id, f.release_date";
+        final Map<Long, FilmPopularity> result = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            long filmId = rs.getLong("film_id");
+            result.put(filmId, new FilmPopularity(filmId, rs.getInt("release_year"), rs.getInt("likes"),
+                    new HashSet<>()));
+        });
+        jdbcTemplate.query("select film_id, genre_id from film_genres", rs -> {
+            FilmPopularity popularity = result.get(rs.getLong("film_id"));
+            if (popularity != null) {
+                popularity.getGenreIds().add(rs.getLong("genre_id"));
+            }
+        });
+        return new ArrayList<>(result.values());
+    }
+
     @Override
     public Set<Long> getUserFilmLikes(long userId) {
         String sql = "select film_id from film_likes where user_id=?";
@@ -309,51 +449,57 @@ public class DbFilmStorage implements FilmStorage {
         return new HashSet<>(jdbcTemplate.query(sql, (rs, rowNum) -> rs.getLong("film_id"), userId));
     }
 
+    @Override
+    public List<Film> getCommonFilms(long userId, long otherId) {
+        String sql = "select " + FilmHydrator.FILM_COLUMNS + " " +
+                "from film_likes as fl " +
+                "join film_likes as ofl on ofl.film_id=fl.film_id and ofl.user_id=? " +
+                "join films as f on f.id=fl.film_id " +
+                "where fl.user_id=? " +
+                "order by film_like_count desc, film_id";
+        List<Film> films = jdbcTemplate.query(sql, (rs, rowNum) -> filmHydrator.makeFilm(rs), otherId, userId);
+
+        return filmHydrator.hydrate(films);
+    }
+
     @Override
     public void addFilmGenres(long id, Set<Long> foundGenresId) {
+        if (foundGenresId.isEmpty()) {
+            return;
+        }
         final List<Map<String, Object>> rows = new ArrayList<>();
         foundGenresId.forEach(gid -> rows.add(Map.of("film_id", id, "genre_id", gid)));
 
-        SimpleJdbcInsert simpleJdbcInsert = new SimpleJdbcInsert(jdbcTemplate)
-                .withTableName("film_genres");
-        simpleJdbcInsert.executeBatch(SqlParameterSourceUtils.createBatch(rows));
-
+        filmGenreInsert.executeBatch(SqlParameterSourceUtils.createBatch(rows));
     }
 
     @Override
     public void addFilmDirectors(long id, Set<Long> foundDirectors) {
+        if (foundDirectors.isEmpty()) {
+            return;
+        }
         final List<Map<String, Object>> directorRows = new ArrayList<>();
         foundDirectors.forEach(did -> directorRows.add(Map.of("film_id", id, "director_id", did)));
 
-        SimpleJdbcInsert simpleJdbcInsertForDirectors = new SimpleJdbcInsert(jdbcTemplate)
-                .withTableName("film_directors");
-        simpleJdbcInsertForDirectors.executeBatch(SqlParameterSourceUtils.createBatch(directorRows));
+        filmDirectorInsert.executeBatch(SqlParameterSourceUtils.createBatch(directorRows));
     }
 
     @Override
-    public void removeFilmGenres(long id, Set<Long> genresToRemove) {
-        if (genresToRemove.size() == 0) {
-            return;
-        }
-        String inSql = String.join(",", Collections.nCopies(genresToRemove.size(), "?"));
-        String sql = "delete from film_genres where film_id=? and genre_id in (%s)";
-        jdbcTemplate.update(String.format(sql, inSql), id, genresToRemove.toArray());
+    public void setFilmGenres(long id, Set<Long> genresId) {
+        jdbcTemplate.update("delete from film_genres where film_id=?", id);
+        addFilmGenres(id, genresId);
     }
 
     @Override
-    public void removeFilmDirectors(long id, Set<Long> directorsToRemove) {
-        if (directorsToRemove.size() == 0) {
-            return;
-        }
-
-        String inSql = String.join(",", Collections.nCopies(directorsToRemove.size(), "?"));
-        String sql = "delete from film_directors where film_id=? and director_id in (%s)";
-        jdbcTemplate.update(String.format(sql, inSql), id, directorsToRemove.toArray());
+    public void setFilmDirectors(long id, Set<Long> directorsId) {
+        jdbcTemplate.update("delete from film_directors where film_id=?", id);
+        addFilmDirectors(id, directorsId);
     }
 
     @Override
     public void deleteFilmById(long id) {
         String sql = "delete from films where id = ?";
         jdbcTemplate.update(sql, id);
+        idFilter.remove(id);
     }
 }
@@ -1,6 +1,5 @@
 package ru.yandex.practicum.filmorate.storages;
 
-import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Primary;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -18,11 +17,23 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
-@RequiredArgsConstructor
 @Repository
 @Primary
 public class DbReviewStorage implements ReviewStorage {
     private final JdbcTemplate jdbcTemplate;
+    private final SimpleJdbcInsert reviewInsert;
+    private final SimpleJdbcInsert reactionInsert;
+
+    public DbReviewStorage(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.reviewInsert = new SimpleJdbcInsert(jdbcTemplate)
+                .withTableName("reviews")
+                .usingColumns("film_id", "user_id", "content", "is_positive")
+                .usingGeneratedKeyColumns("id");
+        this.reactionInsert = new SimpleJdbcInsert(jdbcTemplate)
+                .withTableName("review_reactions")
+                .usingColumns("review_id", "user_id", "reaction");
+    }
 
     private Review makeReview(ResultSet rs) throws SQLException {
         return Review.builder()
@@ -46,7 +57,7 @@ public class DbReviewStorage implements ReviewStorage {
                 "coalesce(sum(reaction.reaction), 0) as useful " +
                 "from reviews as r " +
                 "left join review_reactions as reaction on r.id=reaction.review_id " +
-                "where (:film_id is null) or r.film_id=:film_id " +
+                (filmId == null ? "" : "where r.film_id=:film_id ") +
                 "group by review_id, film_id, author_id, content, is_positive " +
                 "order by useful desc " +
                 "limit :count";
@@ -54,6 +65,12 @@ public class DbReviewStorage implements ReviewStorage {
         return namedParameterJdbcTemplate.query(sql, namedParameters, (rs, rowNum) -> makeReview(rs));
     }
 
+    /**
+     * Добавляет отзыв без повторного чтения: результат собирается из переданного отзыва
+     * и сгенерированного id, у нового отзыва ещё нет оценок.
+     * @param review отзыв
+     * @return Review
+     */
     @Override
     public Review createReview(Review review) {
         Map<String, Object> row = new HashMap<>();
@@ -61,21 +78,28 @@ public class DbReviewStorage implements ReviewStorage {
         row.put("user_id", review.getUserId());
         row.put("content", review.getContent());
         row.put("is_positive", review.isPositive());
-        SimpleJdbcInsert simpleJdbcInsert = new SimpleJdbcInsert(jdbcTemplate)
-                .withTableName("reviews")
-                .usingGeneratedKeyColumns("id");
-        final long id = simpleJdbcInsert.executeAndReturnKey(row).longValue();
-        return getReviewById(id)
-                .orElseThrow(() -> new IllegalStateException("Ошибка при добавлении записи в БД"));
+        final long id = reviewInsert.executeAndReturnKey(row).longValue();
+        return Review.builder()
+                .id(id)
+                .userId(review.getUserId())
+                .filmId(review.getFilmId())
+                .content(review.getContent())
+                .isPositive(review.isPositive())
+                .useful(0)
+                .build();
     }
 
     @Override
     public Optional<Review> updateReview(Review reviewUpdates) {
         String sql = "update reviews set content=?, is_positive=? where id=?";
-        jdbcTemplate.update(sql,
+        int updated = jdbcTemplate.update(sql,
                 reviewUpdates.getContent(),
                 reviewUpdates.isPositive(),
                 reviewUpdates.getId());
+        if (updated == 0) {
+            return Optional.empty();
+        }
+        // автор, фильм и полезность в запросе на обновление не передаются
         return getReviewById(reviewUpdates.getId());
     }
 
@@ -109,10 +133,8 @@ public class DbReviewStorage implements ReviewStorage {
         row.put("user_id", userId);
         row.put("reaction", 1);
 
-        SimpleJdbcInsert simpleJdbcInsert = new SimpleJdbcInsert(jdbcTemplate)
-                .withTableName("review_reactions");
         try {
-            return simpleJdbcInsert.execute(row);
+            return reactionInsert.execute(row);
         } catch (DuplicateKeyException ex) {
             String sql = "update review_reactions set reaction=1 where review_id=? and user_id=?";
             return jdbcTemplate.update(sql, id, userId);
@@ -126,10 +148,8 @@ public class DbReviewStorage implements ReviewStorage {
         row.put("user_id", userId);
         row.put("reaction", -1);
 
-        SimpleJdbcInsert simpleJdbcInsert = new SimpleJdbcInsert(jdbcTemplate)
-                .withTableName("review_reactions");
         try {
-            return simpleJdbcInsert.execute(row);
+            return reactionInsert.execute(row);
         } catch (DuplicateKeyException ex) {
             String sql = "update review_reactions set reaction=-1 where review_id=? and user_id=?";
             return jdbcTemplate.update(sql, id, userId);
@@ -1,10 +1,11 @@
 package ru.yandex.practicum.filmorate.storages;
 
-import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Primary;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.models.User;
 import ru.yandex.practicum.filmorate.utils.AppProperties;
 
@@ -13,18 +14,39 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Collectors;
 
-@RequiredArgsConstructor
 @Repository
 @Primary
 public class DbUserStorage implements UserStorage {
+    private static final int ALL_PAGE_SIZE = 1000;
+
     private final JdbcTemplate jdbcTemplate;
     private final AppProperties appProperties;
+    private final SimpleJdbcInsert userInsert;
+    private final SimpleJdbcInsert friendInsert;
+    private final IdFilter idFilter;
+
+    public DbUserStorage(JdbcTemplate jdbcTemplate,
+                         AppProperties appProperties,
+                         @Value("${app.storage.id-filter.enabled:false}") boolean idFilterEnabled) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.appProperties = appProperties;
+        this.idFilter = new IdFilter(jdbcTemplate, "users", idFilterEnabled);
+        this.userInsert = new SimpleJdbcInsert(jdbcTemplate)
+                .withTableName("users")
+                .usingColumns("email", "login", "name", "birthday")
+                .usingGeneratedKeyColumns("id");
+        this.friendInsert = new SimpleJdbcInsert(jdbcTemplate)
+                .withTableName("user_friends")
+                .usingColumns("user_id", "friend_id");
+    }
 
     private User makeUser(ResultSet rs) throws SQLException {
         User user = User.builder()
@@ -55,23 +77,49 @@ public class DbUserStorage implements UserStorage {
         return buffer;
     }
 
-    protected List<User> getUsers(int limit, int offset) {
+    /**
+     * Страница пользователей по ключу: пользователи с id больше afterId в порядке возрастания id.
+     * Стоимость запроса не зависит от номера страницы - поиск начинается по первичному ключу.
+     * @param afterId id последнего пользователя предыдущей страницы или null для первой страницы
+     * @param limit размер страницы
+     * @return List<User>
+     */
+    @Override
+    public List<User> getUsers(Long afterId, int limit) {
         String sql = "select u.id as user_id, u.name as user_name, u.email as user_email, " +
                 "u.birthday as user_birthday, u.login as user_login, " +
                 "f.friend_id as friend_id " +
-                "from (select * from users limit ? offset ?) as u " +
+                "from (select * from users where id > ? order by id limit ?) as u " +
                 "left join user_friends as f on u.id=f.user_id " +
                 "order by user_id";
 
-        List<User> queryResult = jdbcTemplate.query(sql, (rs, rowNum) -> makeUser(rs), limit, offset);
+        long after = afterId == null ? 0 : afterId;
+        List<User> queryResult = jdbcTemplate.query(sql, (rs, rowNum) -> makeUser(rs), after, limit);
         return mapUserQueryResult(queryResult);
     }
 
+    /**
+     * Все пользователи в порядке возрастания id. Читаются страницами по ключу, по ALL_PAGE_SIZE за запрос.
+     * @return List<User>
+     */
     @Override
     public List<User> getAllUsers() {
-        return getUsers(100, 0); //параметры - для будущей пагинации
+        final List<User> result = new ArrayList<>();
+        List<User> page = getUsers(null, ALL_PAGE_SIZE);
+        result.addAll(page);
+        while (page.size() == ALL_PAGE_SIZE) {
+            page = getUsers(page.get(page.size() - 1).getId(), ALL_PAGE_SIZE);
+            result.addAll(page);
+        }
+        return result;
     }
 
+    /**
+     * Добавляет пользователя без повторного чтения: результат собирается из переданного пользователя
+     * и сгенерированного id, друзей у нового пользователя нет.
+     * @param user пользователь
+     * @return User
+     */
     @Override
     public User createUser(User user) {
         Map<String, Object> row = new HashMap<>();
@@ -80,24 +128,40 @@ public class DbUserStorage implements UserStorage {
         row.put("name", user.getName());
         row.put("birthday", user.getBirthday().format(appProperties.getDefaultDateFormatter()));
 
-        SimpleJdbcInsert simpleJdbcInsert = new SimpleJdbcInsert(jdbcTemplate)
-                .withTableName("users")
-                .usingGeneratedKeyColumns("id");
-        long id = simpleJdbcInsert.executeAndReturnKey(row).longValue();
-        return getUserById(id)
-                .orElseThrow(() -> new IllegalStateException("Ошибка при добавлении записи в БД"));
+        long id = userInsert.executeAndReturnKey(row).longValue();
+        idFilter.add(id);
+        return User.builder()
+                .id(id)
+                .email(user.getEmail())
+                .login(user.getLogin())
+                .name(user.getName())
+                .birthday(user.getBirthday())
+                .build();
     }
 
     @Override
     public Optional<User> updateUser(User userUpdates) {
         String sql = "update users set email=?, login=?, name=?, birthday=? where id=?";
-        jdbcTemplate.update(sql,
+        int updated = jdbcTemplate.update(sql,
                 userUpdates.getEmail(),
                 userUpdates.getLogin(),
                 userUpdates.getName(),
                 userUpdates.getBirthday().format(appProperties.getDefaultDateFormatter()),
                 userUpdates.getId());
-        return getUserById(userUpdates.getId());
+        if (updated == 0) {
+            return Optional.empty();
+        }
+        // из базы нужны только друзья, остальные поля уже известны
+        User user = User.builder()
+                .id(userUpdates.getId())
+                .email(userUpdates.getEmail())
+                .login(userUpdates.getLogin())
+                .name(userUpdates.getName())
+                .birthday(userUpdates.getBirthday())
+                .build();
+        user.addFriend(new HashSet<>(jdbcTemplate.queryForList(
+                "select friend_id from user_friends where user_id=?", Long.class, userUpdates.getId())));
+        return Optional.of(user);
     }
 
     @Override
@@ -116,6 +180,40 @@ public class DbUserStorage implements UserStorage {
         return Optional.of(mapUserQueryResult(queryResult).get(0));
     }
 
+    /**
+     * Проверка существования пользователя по первичному ключу, без загрузки друзей.
+     * Id, которых точно нет, отсекаются фильтром id без запроса к БД.
+     * @param id id пользователя
+     * @return boolean
+     */
+    @Override
+    public boolean existsUser(long id) {
+        if (!idFilter.mightContain(id)) {
+            return false;
+        }
+        String sql = "select exists(select 1 from users where id=?)";
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(sql, Boolean.class, id));
+    }
+
+    /**
+     * Id из переданных, для которых есть пользователь. Id, отсечённые фильтром id, в запрос не попадают.
+     * @param ids id пользователей
+     * @return Set<Long>
+     */
+    @Override
+    public Set<Long> existingIds(Set<Long> ids) {
+        final List<Long> candidates = ids.stream()
+                .filter(idFilter::mightContain)
+                .collect(Collectors.toList());
+        if (candidates.isEmpty()) {
+            return new HashSet<>();
+        }
+        String inSql = String.join(",", Collections.nCopies(candidates.size(), "?"));
+        String sql = "select id from users where id in (%s)";
+        return new HashSet<>(jdbcTemplate.query(String.format(sql, inSql),
+                (rs, rowNum) -> rs.getLong("id"), candidates.toArray()));
+    }
+
     @Override
     public List<User> getUsersById(Set<Long> ids) {
         if (ids.size() == 0) {
@@ -140,9 +238,7 @@ public class DbUserStorage implements UserStorage {
         row.put("user_id", userId);
         row.put("friend_id", friendId);
 
-        SimpleJdbcInsert simpleJdbcInsert = new SimpleJdbcInsert(jdbcTemplate)
-                .withTableName("user_friends");
-        simpleJdbcInsert.execute(row);
+        friendInsert.execute(row);
     }
 
     @Override
@@ -166,8 +262,35 @@ public class DbUserStorage implements UserStorage {
     }
 
     @Override
+    public List<Long> getFriendIds(long id) {
+        String sql = "select friend_id from user_friends where user_id=? order by friend_id";
+        return jdbcTemplate.queryForList(sql, Long.class, id);
+    }
+
+    @Override
+    public List<User> getCommonFriends(long id, long otherId) {
+        String sql = "select uf.friend_id as user_id, u.name as user_name, u.email as user_email, u.birthday as user_birthday, u.login as user_login, " +
+                "f.friend_id as friend_id " +
+                "from user_friends as uf " +
+                "join user_friends as ouf on ouf.friend_id=uf.friend_id and ouf.user_id=? " +
+                "join users as u on uf.friend_id=u.id " +
+                "left join user_friends as f on uf.friend_id=f.user_id " +
+                "where uf.user_id=? " +
+                "order by user_id";
+
+        List<User> queryResult = jdbcTemplate.query(sql, (rs, rowNum) -> makeUser(rs), otherId, id);
+        return mapUserQueryResult(queryResult);
+    }
+
+    @Override
+    @Transactional
     public void deleteUserById(long id) {
+        // лайки пользователя удалятся каскадно, счётчики фильмов нужно поправить заранее
+        String likesSql = "update films set like_count=like_count-1 " +
+                "where id in (select film_id from film_likes where user_id=?)";
+        jdbcTemplate.update(likesSql, id);
         String sql = "delete from users where id = ?";
         jdbcTemplate.update(sql, id);
+        idFilter.remove(id);
     }
 }
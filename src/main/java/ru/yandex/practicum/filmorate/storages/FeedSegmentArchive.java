@@ -0,0 +1,467 @@
+package ru.yandex.practicum.filmorate.storages;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.models.Event;
+import ru.yandex.practicum.filmorate.models.EventType;
+import ru.yandex.practicum.filmorate.models.Operation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Холодный архив ленты: неизменяемые файлы-сегменты в каталоге app.feed.archive.dir.
+ * Сегмент - заголовок, индекс авторов (id, первая запись, количество) и записи фиксированной длины,
+ * отсортированные по (автор, timestamp, event_id). Запись занимает 17 байт: event_id и entity_id как int,
+ * тип и операция в одном байте, timestamp как long; автор записи берётся из индекса и в записи не хранится.
+ * Сегменты прежнего формата с user_id в каждой записи (21 байт) читаются как есть.
+ * Файлы читаются через отображение в память, записи автора находятся двоичным поиском по индексу.
+ * Сжатие потоком не используется: записи фиксированной длины читаются по смещению без распаковки сегмента.
+ * Записи автора уже идут в порядке ленты, поэтому страница читается от курсора в каждой такой группе,
+ * а сегменты, целиком лежащие за пределами уже набранной страницы, не читаются.
+ * Новый сегмент пишется во временный файл и переименовывается, частично записанных сегментов не бывает.
+ */
+@Slf4j
+@Component
+public class FeedSegmentArchive {
+    private static final int MAGIC = 0x46454532;
+    private static final int MAGIC_V1 = 0x46454544;
+    private static final int HEADER_SIZE = 12;
+    private static final int INDEX_ENTRY_SIZE = 12;
+    private static final int RECORD_SIZE = 17;
+    private static final int RECORD_SIZE_V1 = 21;
+    private static final String SUFFIX = ".seg";
+    private static final EventType[] EVENT_TYPES = EventType.values();
+    private static final Operation[] OPERATIONS = Operation.values();
+    private static final Comparator<Event> FEED_ORDER = Comparator.comparingLong(Event::getTimestamp)
+            .thenComparingLong(Event::getEventId);
+
+    private final Path directory;
+    private volatile List<Segment> segments;
+
+    public FeedSegmentArchive(@Value("${app.feed.archive.dir:./db/feed-archive}") String directory) {
+        this.directory = Paths.get(directory);
+    }
+
+    /**
+     * Записывает события в новый сегмент.
+     * @param events события с назначенными id
+     */
+    public synchronized void writeSegment(List<Event> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        final List<Segment> current = getSegments();
+        final List<Event> sorted = new ArrayList<>(events);
+        sorted.sort(Comparator.comparingLong(Event::getUserId).thenComparing(FEED_ORDER));
+        final List<int[]> index = new ArrayList<>();
+        for (int i = 0; i < sorted.size(); i++) {
+            if (i == 0 || !sorted.get(i).getUserId().equals(sorted.get(i - 1).getUserId())) {
+                index.add(new int[]{sorted.get(i).getUserId().intValue(), i, 0});
+            }
+            index.get(index.size() - 1)[2]++;
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + index.size() * INDEX_ENTRY_SIZE
+                + sorted.size() * RECORD_SIZE);
+        buffer.putInt(MAGIC).putInt(index.size()).putInt(sorted.size());
+        index.forEach(entry -> buffer.putInt(entry[0]).putInt(entry[1]).putInt(entry[2]));
+        for (Event event : sorted) {
+            buffer.putInt(event.getEventId().intValue())
+                    .putInt(event.getEntityId().intValue())
+                    .put((byte) (event.getEventType().ordinal() << 4 | event.getOperation().ordinal()))
+                    .putLong(event.getTimestamp());
+        }
+        buffer.flip();
+
+        final long number = current.isEmpty() ? 1 : current.get(current.size() - 1).number + 1;
+        final Path target = directory.resolve(String.format("%010d%s", number, SUFFIX));
+        try {
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, "segment", ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            List<Segment> updated = new ArrayList<>(current);
+            updated.add(Segment.open(number, target));
+            segments = updated;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось записать сегмент ленты " + target, e);
+        }
+        log.debug("Записан сегмент ленты {}, событий: {}", target, sorted.size());
+    }
+
+    /**
+     * Архивные события ленты пользователя: свои события и лайки и отзывы авторов из authorIds.
+     * @param authorIds пользователь и его друзья
+     * @param userId id пользователя
+     * @return события в порядке (timestamp, event_id)
+     */
+    public List<Event> getUserFeed(Collection<Long> authorIds, long userId) {
+        return getUserFeedBefore(authorIds, userId, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Последние limit архивных событий ленты, предшествующих событию before.
+     * @param authorIds пользователь и его друзья
+     * @param userId id пользователя
+     * @param before событие-курсор из архива, null - без курсора
+     * @param limit максимальное количество событий
+     * @return события в порядке (timestamp, event_id)
+     */
+    public List<Event> getUserFeedBefore(Collection<Long> authorIds, long userId, @Nullable Event before, int limit) {
+        // в куче - limit самых поздних из прочитанных, в вершине самое раннее из них
+        final PriorityQueue<Event> page = new PriorityQueue<>(FEED_ORDER);
+        final List<Segment> byNewest = new ArrayList<>(getSegments());
+        byNewest.sort((a, b) -> compare(b.maxTimestamp, b.maxEventId, a.maxTimestamp, a.maxEventId));
+        for (Segment segment : byNewest) {
+            if (page.size() >= limit && isBefore(segment.maxTimestamp, segment.maxEventId, page.peek())) {
+                break;
+            }
+            for (Long authorId : authorIds) {
+                int author = segment.authorIndex(authorId);
+                if (author < 0) {
+                    continue;
+                }
+                int from = segment.firstRecord(author);
+                int end = before == null ? segment.endRecord(author)
+                        : segment.lowerBound(author, before.getTimestamp(), before.getEventId());
+                for (int i = end - 1; i >= from; i--) {
+                    if (page.size() >= limit && isBefore(segment.timestampAt(i), segment.eventIdAt(i), page.peek())) {
+                        break;
+                    }
+                    if (isVisible(segment, i, authorId, userId)) {
+                        page.offer(segment.readRecord(i, authorId));
+                        if (page.size() > limit) {
+                            page.poll();
+                        }
+                    }
+                }
+            }
+        }
+        return sorted(page);
+    }
+
+    /**
+     * Первые limit архивных событий ленты, следующих за событием after.
+     * @param authorIds пользователь и его друзья
+     * @param userId id пользователя
+     * @param after событие-курсор из архива
+     * @param limit максимальное количество событий
+     * @return события в порядке (timestamp, event_id)
+     */
+    public List<Event> getUserFeedAfter(Collection<Long> authorIds, long userId, Event after, int limit) {
+        // в куче - limit самых ранних из прочитанных, в вершине самое позднее из них
+        final PriorityQueue<Event> page = new PriorityQueue<>(FEED_ORDER.reversed());
+        final List<Segment> byOldest = new ArrayList<>(getSegments());
+        byOldest.sort((a, b) -> compare(a.minTimestamp, a.minEventId, b.minTimestamp, b.minEventId));
+        for (Segment segment : byOldest) {
+            if (page.size() >= limit && isAfter(segment.minTimestamp, segment.minEventId, page.peek())) {
+                break;
+            }
+            for (Long authorId : authorIds) {
+                int author = segment.authorIndex(authorId);
+                if (author < 0) {
+                    continue;
+                }
+                int end = segment.endRecord(author);
+                for (int i = segment.lowerBound(author, after.getTimestamp(), after.getEventId() + 1); i < end; i++) {
+                    if (page.size() >= limit && isAfter(segment.timestampAt(i), segment.eventIdAt(i), page.peek())) {
+                        break;
+                    }
+                    if (isVisible(segment, i, authorId, userId)) {
+                        page.offer(segment.readRecord(i, authorId));
+                        if (page.size() > limit) {
+                            page.poll();
+                        }
+                    }
+                }
+            }
+        }
+        return sorted(page);
+    }
+
+    /**
+     * Архивное событие ленты по id, если его автор есть в authorIds.
+     * Просматриваются только сегменты, в диапазон id которых оно попадает, запись ищется по индексу id сегмента.
+     * @param eventId id события
+     * @param authorIds пользователь и его друзья
+     * @return Optional<Event>, пустой если события в архиве нет
+     */
+    public Optional<Event> getEvent(long eventId, Collection<Long> authorIds) {
+        for (Segment segment : getSegments()) {
+            if (eventId < segment.minEventIdInSegment || eventId > segment.maxEventIdInSegment) {
+                continue;
+            }
+            int record = segment.recordOf(eventId);
+            if (record < 0) {
+                continue;
+            }
+            long authorId = segment.authorAt(record);
+            if (authorIds.contains(authorId)) {
+                return Optional.of(segment.readRecord(record, authorId));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Id событий последнего записанного сегмента.
+     * @return List<Long>
+     */
+    public List<Long> getLastSegmentEventIds() {
+        final List<Segment> current = getSegments();
+        if (current.isEmpty()) {
+            return List.of();
+        }
+        return current.get(current.size() - 1).readEventIds();
+    }
+
+    public boolean isEmpty() {
+        return getSegments().isEmpty();
+    }
+
+    private static boolean isVisible(Segment segment, int record, long authorId, long userId) {
+        if (authorId == userId) {
+            return true;
+        }
+        EventType type = segment.eventTypeAt(record);
+        return type == EventType.LIKE || type == EventType.REVIEW;
+    }
+
+    private static boolean isBefore(long timestamp, long eventId, Event event) {
+        return compare(timestamp, eventId, event.getTimestamp(), event.getEventId()) < 0;
+    }
+
+    private static boolean isAfter(long timestamp, long eventId, Event event) {
+        return compare(timestamp, eventId, event.getTimestamp(), event.getEventId()) > 0;
+    }
+
+    private static int compare(long timestamp, long eventId, long otherTimestamp, long otherEventId) {
+        int result = Long.compare(timestamp, otherTimestamp);
+        return result != 0 ? result : Long.compare(eventId, otherEventId);
+    }
+
+    private static List<Event> sorted(Collection<Event> events) {
+        List<Event> result = new ArrayList<>(events);
+        result.sort(FEED_ORDER);
+        return result;
+    }
+
+    private List<Segment> getSegments() {
+        List<Segment> current = segments;
+        if (current == null) {
+            synchronized (this) {
+                if (segments == null) {
+                    segments = loadSegments();
+                }
+                current = segments;
+            }
+        }
+        return current;
+    }
+
+    private List<Segment> loadSegments() {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Segment> result = new ArrayList<>();
+            for (Path file : files.filter(f -> f.getFileName().toString().endsWith(SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList())) {
+                String name = file.getFileName().toString();
+                result.add(Segment.open(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())), file));
+            }
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось прочитать каталог сегментов ленты " + directory, e);
+        }
+    }
+
+    private static final class Segment {
+        private final long number;
+        private final MappedByteBuffer buffer;
+        private final int[] authorIds;
+        private final int[] firstRecords;
+        private final int[] recordCounts;
+        private final int recordsOffset;
+        private final int recordCount;
+        private final int recordSize;
+        // смещения полей в записи, в прежнем формате после event_id идёт user_id
+        private final int entityOffset;
+        private final int kindOffset;
+        private final int timestampOffset;
+        // (event_id << 32 | номер записи), отсортированные по event_id
+        private final long[] recordsByEventId;
+        // самая ранняя и самая поздняя запись сегмента в порядке ленты и диапазон id
+        private long minTimestamp = Long.MAX_VALUE;
+        private long minEventId = Long.MAX_VALUE;
+        private long maxTimestamp = Long.MIN_VALUE;
+        private long maxEventId = Long.MIN_VALUE;
+        private long minEventIdInSegment = Long.MAX_VALUE;
+        private long maxEventIdInSegment = Long.MIN_VALUE;
+
+        private Segment(long number, MappedByteBuffer buffer) {
+            this.number = number;
+            this.buffer = buffer;
+            int magic = buffer.getInt(0);
+            if (magic == MAGIC) {
+                this.recordSize = RECORD_SIZE;
+            } else if (magic == MAGIC_V1) {
+                this.recordSize = RECORD_SIZE_V1;
+            } else {
+                throw new IllegalStateException("Повреждён сегмент ленты " + number);
+            }
+            this.entityOffset = recordSize - 13;
+            this.kindOffset = recordSize - 9;
+            this.timestampOffset = recordSize - 8;
+            int authorCount = buffer.getInt(4);
+            this.recordCount = buffer.getInt(8);
+            this.authorIds = new int[authorCount];
+            this.firstRecords = new int[authorCount];
+            this.recordCounts = new int[authorCount];
+            for (int i = 0; i < authorCount; i++) {
+                int position = HEADER_SIZE + i * INDEX_ENTRY_SIZE;
+                authorIds[i] = buffer.getInt(position);
+                firstRecords[i] = buffer.getInt(position + 4);
+                recordCounts[i] = buffer.getInt(position + 8);
+            }
+            this.recordsOffset = HEADER_SIZE + authorCount * INDEX_ENTRY_SIZE;
+            this.recordsByEventId = new long[recordCount];
+            for (int i = 0; i < recordCount; i++) {
+                long eventId = eventIdAt(i);
+                recordsByEventId[i] = eventId << 32 | i;
+                long timestamp = timestampAt(i);
+                if (compare(timestamp, eventId, minTimestamp, minEventId) < 0) {
+                    minTimestamp = timestamp;
+                    minEventId = eventId;
+                }
+                if (compare(timestamp, eventId, maxTimestamp, maxEventId) > 0) {
+                    maxTimestamp = timestamp;
+                    maxEventId = eventId;
+                }
+                minEventIdInSegment = Math.min(minEventIdInSegment, eventId);
+                maxEventIdInSegment = Math.max(maxEventIdInSegment, eventId);
+            }
+            Arrays.sort(recordsByEventId);
+        }
+
+        static Segment open(long number, Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                // отображение остаётся действительным после закрытия канала
+                return new Segment(number, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        }
+
+        int authorIndex(long authorId) {
+            return authorId > Integer.MAX_VALUE ? -1 : Arrays.binarySearch(authorIds, (int) authorId);
+        }
+
+        // номер записи события или -1
+        int recordOf(long eventId) {
+            int low = 0;
+            int high = recordsByEventId.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                long middleId = recordsByEventId[middle] >>> 32;
+                if (middleId < eventId) {
+                    low = middle + 1;
+                } else if (middleId > eventId) {
+                    high = middle - 1;
+                } else {
+                    return (int) recordsByEventId[middle];
+                }
+            }
+            return -1;
+        }
+
+        // автор записи - последняя группа индекса, начинающаяся не позже неё
+        long authorAt(int record) {
+            int author = Arrays.binarySearch(firstRecords, record);
+            if (author < 0) {
+                author = -author - 2;
+            }
+            return authorIds[author];
+        }
+
+        int firstRecord(int author) {
+            return firstRecords[author];
+        }
+
+        int endRecord(int author) {
+            return firstRecords[author] + recordCounts[author];
+        }
+
+        // первая запись автора, не меньшая (timestamp, eventId) в порядке ленты
+        int lowerBound(int author, long timestamp, long eventId) {
+            int low = firstRecord(author);
+            int high = endRecord(author);
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (compare(timestampAt(middle), eventIdAt(middle), timestamp, eventId) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        long eventIdAt(int record) {
+            return buffer.getInt(recordsOffset + record * recordSize);
+        }
+
+        long timestampAt(int record) {
+            return buffer.getLong(recordsOffset + record * recordSize + timestampOffset);
+        }
+
+        EventType eventTypeAt(int record) {
+            return EVENT_TYPES[buffer.get(recordsOffset + record * recordSize + kindOffset) >> 4];
+        }
+
+        List<Long> readEventIds() {
+            List<Long> ids = new ArrayList<>(recordCount);
+            for (int i = 0; i < recordCount; i++) {
+                ids.add((long) buffer.getInt(recordsOffset + i * recordSize));
+            }
+            return ids;
+        }
+
+        Event readRecord(int record, long authorId) {
+            int position = recordsOffset + record * recordSize;
+            byte kind = buffer.get(position + kindOffset);
+            return Event.builder()
+                    .eventId((long) buffer.getInt(position))
+                    .userId(authorId)
+                    .entityId((long) buffer.getInt(position + entityOffset))
+                    .eventType(EVENT_TYPES[kind >> 4])
+                    .operation(OPERATIONS[kind & 0x0F])
+                    .timestamp(buffer.getLong(position + timestampOffset))
+                    .build();
+        }
+    }
+}
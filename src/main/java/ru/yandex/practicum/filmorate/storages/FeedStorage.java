@@ -9,4 +9,22 @@ public interface FeedStorage {
     List<Event> getUserFeed(Map<String, Object> params);
 
     Event addEvent(Event event);
+
+    List<Event> addEvents(List<Event> events);
+
+    void addFriendEvents(long userId, long friendId);
+
+    void removeFriendEvents(long userId, long friendId);
+
+    void addOutboxEvent(Event event);
+
+    void addOutboxEvents(List<Event> events);
+
+    List<Event> getOutboxEvents(int limit);
+
+    void removeOutboxEvents(List<Long> ids);
+
+    List<Event> getEventsBefore(long timestamp, int limit);
+
+    void removeEvents(List<Long> ids);
 }
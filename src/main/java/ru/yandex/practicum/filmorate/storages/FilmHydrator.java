@@ -0,0 +1,94 @@
+package ru.yandex.practicum.filmorate.storages;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.models.Director;
+import ru.yandex.practicum.filmorate.models.Film;
+import ru.yandex.practicum.filmorate.models.FilmRating;
+import ru.yandex.practicum.filmorate.models.Genre;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Двухфазная загрузка фильмов.
+ * Сначала читаются только строки таблицы films, затем жанры и режиссёры догружаются
+ * отдельными пакетными запросами по id фильмов. Количество строк растёт линейно
+ * от числа связей, а не от их произведения. Лайки не загружаются - их количество берётся из films.like_count.
+ */
+@RequiredArgsConstructor
+@Component
+public class FilmHydrator {
+    static final String FILM_COLUMNS = "f.id as film_id, f.name as film_name, f.description as film_description, " +
+            "f.release_date as film_release_date, f.duration as film_duration, f.rating as film_rating, " +
+            "f.like_count as film_like_count";
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    Film makeFilm(ResultSet rs) throws SQLException {
+        return Film.builder()
+                .id(rs.getLong("film_id"))
+                .name(rs.getString("film_name"))
+                .description(rs.getString("film_description"))
+                .releaseDate(rs.getDate("film_release_date").toLocalDate())
+                .duration(Duration.ofMinutes(rs.getLong("film_duration")))
+                .rating(FilmRating.valueOf(rs.getString("film_rating")))
+                .likeCount(rs.getInt("film_like_count"))
+                .build();
+    }
+
+    /**
+     * Догружает жанры и режиссёров для переданных фильмов.
+     * Порядок списка сохраняется.
+     * @param films фильмы, загруженные без связей
+     * @return тот же список
+     */
+    public List<Film> hydrate(List<Film> films) {
+        for (int from = 0; from < films.size(); from += MAX_BATCH_SIZE) {
+            hydrateBatch(films.subList(from, Math.min(from + MAX_BATCH_SIZE, films.size())));
+        }
+        return films;
+    }
+
+    private void hydrateBatch(List<Film> films) {
+        if (films.isEmpty()) {
+            return;
+        }
+        final Map<Long, Film> filmsById = new HashMap<>();
+        final List<Long> ids = new ArrayList<>(films.size());
+        films.forEach(f -> {
+            filmsById.put(f.getId(), f);
+            ids.add(f.getId());
+        });
+        Map<String, Object> params = Map.of("ids", ids);
+
+        String genresSql = "select fg.film_id as film_id, g.id as genre_id, g.name as genre_name " +
+                "from film_genres as fg " +
+                "join genres as g on fg.genre_id=g.id " +
+                "where fg.film_id in (:ids)";
+        namedParameterJdbcTemplate.query(genresSql, params, rs -> {
+            filmsById.get(rs.getLong("film_id")).addGenre(Genre.builder()
+                    .id(rs.getLong("genre_id"))
+                    .name(rs.getString("genre_name"))
+                    .build());
+        });
+
+        String directorsSql = "select fd.film_id as film_id, d.id as director_id, d.name as director_name " +
+                "from film_directors as fd " +
+                "join directors as d on fd.director_id=d.id " +
+                "where fd.film_id in (:ids)";
+        namedParameterJdbcTemplate.query(directorsSql, params, rs -> {
+            filmsById.get(rs.getLong("film_id")).addDirector(Director.builder()
+                    .id(rs.getLong("director_id"))
+                    .name(rs.getString("director_name"))
+                    .build());
+        });
+    }
+}
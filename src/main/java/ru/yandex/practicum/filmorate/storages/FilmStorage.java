@@ -4,44 +4,67 @@ import org.springframework.lang.NonNull;
 import org.springframework.lang.Nullable;
 import ru.yandex.practicum.filmorate.models.Film;
 import ru.yandex.practicum.filmorate.models.FilmLike;
+import ru.yandex.practicum.filmorate.models.FilmPopularity;
 import ru.yandex.practicum.filmorate.models.FilmSort;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
     List<Film> getAllFilms();
 
+    List<Film> getFilms(@Nullable Long afterId, int limit);
+
+    void exportFilms(int fetchSize, @NonNull Consumer<Film> consumer);
+
     Film createFilm(@NonNull Film film);
 
     Optional<Film> updateFilm(@NonNull Film filmUpdates);
 
     Optional<Film> getFilmById(long id);
 
+    boolean existsFilm(long id);
+
+    Set<Long> existingIds(@NonNull Set<Long> ids);
+
     List<Film> getFilmsByIds(@NonNull Set<Long> ids);
 
     List<Film> getMostPopularFilms(int count, @Nullable Long genreId, @Nullable Integer year);
 
     List<Film> getFilmsByDirector(long directorId, FilmSort sort);
 
-    List<Film> getFilmsByTitle(String title);
+    List<Film> getFilmsByDirectors(@NonNull Set<Long> directorIds);
+
+    Map<Long, String> getFilmNames();
 
-    void createFilmLike(long filmId, long userId);
+    boolean createFilmLike(long filmId, long userId);
 
-    void removeFilmLike(long filmId, long userId);
+    boolean removeFilmLike(long filmId, long userId);
+
+    int[] createFilmLikes(@NonNull List<FilmLike> likes);
+
+    int[] removeFilmLikes(@NonNull List<FilmLike> likes);
+
+    int reconcileFilmLikeCounts();
 
     List<FilmLike> getAllFilmLikes();
 
+    List<FilmPopularity> getFilmPopularity();
+
     Set<Long> getUserFilmLikes(long userId);
 
+    List<Film> getCommonFilms(long userId, long otherId);
+
     void addFilmGenres(long id, @NonNull Set<Long> foundGenresId);
 
     void addFilmDirectors(long id, Set<Long> foundDirectors);
 
-    void removeFilmGenres(long id, @NonNull Set<Long> genresToRemove);
+    void setFilmGenres(long id, @NonNull Set<Long> genresId);
 
-    void removeFilmDirectors(long id, Set<Long> directorsToRemove);
+    void setFilmDirectors(long id, @NonNull Set<Long> directorsId);
 
     void deleteFilmById(long id);
 }
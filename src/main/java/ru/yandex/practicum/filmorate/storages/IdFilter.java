@@ -0,0 +1,110 @@
+package ru.yandex.practicum.filmorate.storages;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.BitSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Битовая карта id строк таблицы для отсечения заведомо несуществующих id без запроса к БД.
+ * Сброшенный бит - строки точно нет, установленный - строка, возможно, есть и нужна проверка по ключу.
+ * Карта заполняется из таблицы при первом обращении, бит ставится при вставке и снимается после фиксации удаления,
+ * поэтому откат транзакции оставляет только лишние установленные биты. Один бит на id, 1 млн id - 125 КБ.
+ * Строки, добавленные в таблицу в обход хранилища, карта не видит, поэтому по умолчанию фильтр выключен
+ * и включается настройкой app.storage.id-filter.enabled, только если все записи идут через хранилища.
+ */
+final class IdFilter {
+    private final JdbcTemplate jdbcTemplate;
+    private final String table;
+    private final boolean enabled;
+    private final BitSet ids = new BitSet();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean loaded;
+
+    IdFilter(JdbcTemplate jdbcTemplate, String table, boolean enabled) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.table = table;
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return false, если строки с таким id точно нет
+     */
+    boolean mightContain(long id) {
+        if (!enabled) {
+            return true;
+        }
+        if (id <= 0 || id > Integer.MAX_VALUE) {
+            return false; // id в таблицах - положительные int
+        }
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            return ids.get((int) id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void add(long id) {
+        if (!enabled || id <= 0 || id > Integer.MAX_VALUE) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            ids.set((int) id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(long id) {
+        if (!enabled || id <= 0 || id > Integer.MAX_VALUE) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    clear((int) id);
+                }
+            });
+        } else {
+            clear((int) id);
+        }
+    }
+
+    private void clear(int id) {
+        lock.writeLock().lock();
+        try {
+            ids.clear(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            // биты, поставленные вставками во время чтения, не теряются - карта объединяется с прочитанной
+            final BitSet existing = new BitSet();
+            jdbcTemplate.query("select id from " + table, rs -> {
+                existing.set(rs.getInt("id"));
+            });
+            lock.writeLock().lock();
+            try {
+                ids.or(existing);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            loaded = true;
+        }
+    }
+}
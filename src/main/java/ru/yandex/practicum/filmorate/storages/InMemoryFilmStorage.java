@@ -1,36 +1,50 @@
 package ru.yandex.practicum.filmorate.storages;
 
 import lombok.AccessLevel;
-import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.models.Director;
 import ru.yandex.practicum.filmorate.models.Film;
 import ru.yandex.practicum.filmorate.models.FilmLike;
+import ru.yandex.practicum.filmorate.models.FilmPopularity;
 import ru.yandex.practicum.filmorate.models.FilmSort;
+import ru.yandex.practicum.filmorate.models.Genre;
 
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Slf4j
-@AllArgsConstructor(access = AccessLevel.PACKAGE)
 @Getter(AccessLevel.PACKAGE)
 @Component
 public class InMemoryFilmStorage implements FilmStorage {
     private final Map<Long, Film> films;
     private final AtomicLong currentId;
+    private final Map<Long, Set<Long>> filmLikes = new ConcurrentHashMap<>();
+    // пользователь -> фильмы, которые он лайкнул, по возрастанию id; меняется вместе с filmLikes
+    private final Map<Long, Set<Long>> userLikes = new ConcurrentHashMap<>();
 
     public InMemoryFilmStorage() {
         this.films = new ConcurrentHashMap<>();
         this.currentId = new AtomicLong(1L);
     }
 
+    InMemoryFilmStorage(Map<Long, Film> films, AtomicLong currentId) {
+        this.films = films;
+        this.currentId = currentId;
+    }
+
     @Override
     public List<Film> getAllFilms() {
         return films.values().stream()
@@ -38,6 +52,25 @@ public class InMemoryFilmStorage implements FilmStorage {
                 .collect(Collectors.toUnmodifiableList());
     }
 
+    @Override
+    public List<Film> getFilms(Long afterId, int limit) {
+        final long after = afterId == null ? 0 : afterId;
+        return films.values().stream()
+                .filter(f -> f.getId() > after)
+                .sorted(Comparator.comparingLong(Film::getId))
+                .limit(limit)
+                .map(Film::copyOf)
+                .collect(Collectors.toUnmodifiableList());
+    }
+
+    @Override
+    public void exportFilms(int fetchSize, Consumer<Film> consumer) {
+        films.values().stream()
+                .sorted(Comparator.comparingLong(Film::getId))
+                .map(Film::copyOf)
+                .forEach(consumer);
+    }
+
     @Override
     public Film createFilm(Film film) {
         final Film createdFilm = film.copyOf();
@@ -58,6 +91,18 @@ public class InMemoryFilmStorage implements FilmStorage {
                 .map(Film::copyOf);
     }
 
+    @Override
+    public boolean existsFilm(long id) {
+        return films.containsKey(id);
+    }
+
+    @Override
+    public Set<Long> existingIds(Set<Long> ids) {
+        return ids.stream()
+                .filter(films::containsKey)
+                .collect(Collectors.toSet());
+    }
+
     @Override
     public List<Film> getFilmsByIds(Set<Long> ids) {
         throw new IllegalStateException("Not implemented");
@@ -67,7 +112,7 @@ public class InMemoryFilmStorage implements FilmStorage {
     public List<Film> getMostPopularFilms(int count, Long genreId, Integer year) {
         return films.values()
                 .stream()
-                .sorted(Comparator.comparingInt(Film::getNumOfLikes).reversed())
+                .sorted(Comparator.comparingInt(Film::getLikeCount).reversed())
                 .limit(count)
                 .map(Film::copyOf)
                 .collect(Collectors.toList());
@@ -79,24 +124,63 @@ public class InMemoryFilmStorage implements FilmStorage {
     }
 
     @Override
-    public List<Film> getFilmsByTitle(String title) {
+    public List<Film> getFilmsByDirectors(Set<Long> directorIds) {
         throw new IllegalStateException("Not Implemented");
     }
 
     @Override
-    public void createFilmLike(long filmId, long userId) {
+    public Map<Long, String> getFilmNames() {
+        return films.values()
+                .stream()
+                .collect(Collectors.toMap(Film::getId, Film::getName));
+    }
+
+    @Override
+    public boolean createFilmLike(long filmId, long userId) {
+        final AtomicBoolean created = new AtomicBoolean(false);
         films.computeIfPresent(filmId, (id, film) -> {
-            film.addLike(userId);
+            if (filmLikes.computeIfAbsent(id, k -> ConcurrentHashMap.newKeySet()).add(userId)) {
+                userLikes.computeIfAbsent(userId, k -> new ConcurrentSkipListSet<>()).add(id);
+                film.setLikeCount(film.getLikeCount() + 1);
+                created.set(true);
+            }
             return film;
         });
+        return created.get();
     }
 
     @Override
-    public void removeFilmLike(long filmId, long userId) {
+    public boolean removeFilmLike(long filmId, long userId) {
+        final AtomicBoolean removed = new AtomicBoolean(false);
         films.computeIfPresent(filmId, (id, film) -> {
-            film.removeLike(userId);
+            Set<Long> likes = filmLikes.get(id);
+            if (likes != null && likes.remove(userId)) {
+                userLikes.getOrDefault(userId, Set.of()).remove(id);
+                film.setLikeCount(film.getLikeCount() - 1);
+                removed.set(true);
+            }
             return film;
         });
+        return removed.get();
+    }
+
+    @Override
+    public int[] createFilmLikes(List<FilmLike> likes) {
+        return likes.stream()
+                .mapToInt(like -> createFilmLike(like.getFilmId(), like.getUserId()) ? 1 : 0)
+                .toArray();
+    }
+
+    @Override
+    public int[] removeFilmLikes(List<FilmLike> likes) {
+        return likes.stream()
+                .mapToInt(like -> removeFilmLike(like.getFilmId(), like.getUserId()) ? 1 : 0)
+                .toArray();
+    }
+
+    @Override
+    public int reconcileFilmLikeCounts() {
+        return 0; // количество лайков меняется вместе с множеством filmLikes
     }
 
     @Override
@@ -104,11 +188,32 @@ public class InMemoryFilmStorage implements FilmStorage {
         throw new IllegalStateException("Not implemented");
     }
 
+    @Override
+    public List<FilmPopularity> getFilmPopularity() {
+        return films.values()
+                .stream()
+                .map(f -> new FilmPopularity(f.getId(), f.getReleaseDate().getYear(), f.getLikeCount(),
+                        f.getGenres().stream().map(Genre::getId).collect(Collectors.toSet())))
+                .collect(Collectors.toList());
+    }
+
     @Override
     public Set<Long> getUserFilmLikes(long userId) {
         throw new IllegalStateException("Not implemented");
     }
 
+    @Override
+    public List<Film> getCommonFilms(long userId, long otherId) {
+        final long[] userFilms = getSortedFilmIds(userId);
+        final long[] otherFilms = getSortedFilmIds(otherId);
+        return Arrays.stream(SortedIds.intersect(userFilms, otherFilms))
+                .mapToObj(films::get)
+                .filter(Objects::nonNull)
+                .map(Film::copyOf)
+                .sorted(Comparator.comparingInt(Film::getLikeCount).reversed())
+                .collect(Collectors.toList());
+    }
+
     @Override
     public void addFilmGenres(long id, Set<Long> foundGenresId) {
         throw new IllegalStateException("Not implemented");
@@ -120,17 +225,38 @@ public class InMemoryFilmStorage implements FilmStorage {
     }
 
     @Override
-    public void removeFilmGenres(long id, Set<Long> genresToRemove) {
-        throw new IllegalStateException("Not implemented");
+    public void setFilmGenres(long id, Set<Long> genresId) {
+        films.computeIfPresent(id, (k, film) -> {
+            film.getGenres().removeIf(genre -> !genresId.contains(genre.getId()));
+            final Set<Long> present = film.getGenres().stream().map(Genre::getId).collect(Collectors.toSet());
+            genresId.stream()
+                    .filter(gid -> !present.contains(gid))
+                    .forEach(gid -> film.addGenre(Genre.builder().id(gid).build()));
+            return film;
+        });
     }
 
     @Override
-    public void removeFilmDirectors(long id, Set<Long> directorsToRemove) {
-        throw new IllegalStateException("Not implemented");
+    public void setFilmDirectors(long id, Set<Long> directorsId) {
+        films.computeIfPresent(id, (k, film) -> {
+            film.getDirectors().removeIf(director -> !directorsId.contains(director.getId()));
+            final Set<Long> present = film.getDirectors().stream().map(Director::getId).collect(Collectors.toSet());
+            directorsId.stream()
+                    .filter(did -> !present.contains(did))
+                    .forEach(did -> film.addDirector(Director.builder().id(did).build()));
+            return film;
+        });
     }
 
     @Override
     public void deleteFilmById(long id) {
         throw new IllegalStateException("Not implemented");
     }
+
+    private long[] getSortedFilmIds(long userId) {
+        return userLikes.getOrDefault(userId, Set.of())
+                .stream()
+                .mapToLong(Long::longValue)
+                .toArray();
+    }
 }
@@ -6,8 +6,11 @@ import lombok.Getter;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.models.User;
 
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -34,6 +37,18 @@ public class InMemoryUserStorage implements UserStorage {
                 .collect(Collectors.toList());
     }
 
+    @Override
+    public List<User> getUsers(Long afterId, int limit) {
+        final long after = afterId == null ? 0 : afterId;
+        return users.values()
+                .stream()
+                .filter(u -> u.getId() > after)
+                .sorted(Comparator.comparingLong(User::getId))
+                .limit(limit)
+                .map(User::copyOf)
+                .collect(Collectors.toList());
+    }
+
     @Override
     public User createUser(User user) {
         final User createdUser = user.copyOf();
@@ -54,6 +69,18 @@ public class InMemoryUserStorage implements UserStorage {
                 .map(User::copyOf);
     }
 
+    @Override
+    public boolean existsUser(long id) {
+        return users.containsKey(id);
+    }
+
+    @Override
+    public Set<Long> existingIds(Set<Long> ids) {
+        return ids.stream()
+                .filter(users::containsKey)
+                .collect(Collectors.toSet());
+    }
+
     @Override
     public List<User> getUsersById(Set<Long> ids) {
         return users.values()
@@ -84,6 +111,27 @@ public class InMemoryUserStorage implements UserStorage {
         throw new IllegalStateException("Not implemented!");
     }
 
+    @Override
+    public List<Long> getFriendIds(long id) {
+        return Optional.ofNullable(users.get(id))
+                .map(user -> user.getFriends().stream().sorted().collect(Collectors.toList()))
+                .orElseGet(List::of);
+    }
+
+    @Override
+    public List<User> getCommonFriends(long id, long otherId) {
+        final User user = users.get(id);
+        final User other = users.get(otherId);
+        if (user == null || other == null) {
+            return List.of();
+        }
+        return Arrays.stream(SortedIds.intersect(SortedIds.of(user.getFriends()), SortedIds.of(other.getFriends())))
+                .mapToObj(users::get)
+                .filter(Objects::nonNull)
+                .map(User::copyOf)
+                .collect(Collectors.toList());
+    }
+
     @Override
     public void deleteUserById(long id) {
         throw new IllegalStateException("Not implemented!");
@@ -0,0 +1,41 @@
+package ru.yandex.practicum.filmorate.storages;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Операции над отсортированными по возрастанию массивами id без повторов.
+ */
+final class SortedIds {
+    private SortedIds() {
+    }
+
+    static long[] of(Collection<Long> ids) {
+        final long[] result = ids.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Пересечение слиянием за O(a.length + b.length).
+     * @return отсортированный массив id, которые есть в обоих массивах
+     */
+    static long[] intersect(long[] a, long[] b) {
+        final long[] result = new long[Math.min(a.length, b.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+}
@@ -1,6 +1,7 @@
 package ru.yandex.practicum.filmorate.storages;
 
 import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
 import ru.yandex.practicum.filmorate.models.User;
 
 import java.util.List;
@@ -10,12 +11,18 @@ import java.util.Set;
 public interface UserStorage {
     List<User> getAllUsers();
 
+    List<User> getUsers(@Nullable Long afterId, int limit);
+
     User createUser(@NonNull User user);
 
     Optional<User> updateUser(@NonNull User userUpdates);
 
     Optional<User> getUserById(long id);
 
+    boolean existsUser(long id);
+
+    Set<Long> existingIds(@NonNull Set<Long> ids);
+
     List<User> getUsersById(@NonNull Set<Long> ids);
 
     void createFriend(long userId, long friendId);
@@ -24,5 +31,9 @@ public interface UserStorage {
 
     List<User> getUserFriends(long id);
 
+    List<Long> getFriendIds(long id);
+
+    List<User> getCommonFriends(long id, long otherId);
+
     void deleteUserById(long id);
 }
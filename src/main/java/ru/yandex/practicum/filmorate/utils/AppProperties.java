@@ -14,6 +14,12 @@ public final class AppProperties {
     @Value("${spring.mvc.format.date:yyyy-MM-dd}")
     private String defaultDateFormat;
 
+    @Value("${app.films.export.fetch-size:500}")
+    private int filmExportFetchSize;
+
+    @Value("${app.feed.stream.timeout-ms:1800000}")
+    private long feedStreamTimeoutMs;
+
     public DateTimeFormatter getDefaultDateFormatter() {
         return DateTimeFormatter.ofPattern(defaultDateFormat);
     }
@@ -0,0 +1,26 @@
+package ru.yandex.practicum.filmorate.utils;
+
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+
+/**
+ * Общие параметры постраничной выдачи по курсору.
+ */
+public final class Paging {
+    /**
+     * Заголовок ответа с курсором следующей страницы.
+     */
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private Paging() {
+    }
+
+    /**
+     * @throws NotFoundException если limit вне диапазона от 1 до MAX_PAGE_SIZE
+     */
+    public static void checkLimit(int limit) throws NotFoundException {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new NotFoundException("Значение параметра limit должно быть от 1 до " + MAX_PAGE_SIZE);
+        }
+    }
+}
@@ -14,7 +14,8 @@ public class OperationValidator implements ConstraintValidator<ValidOperation, O
 
     @Override
     public void initialize(ValidOperation annotation) {
-        acceptedValues = Stream.of(Operation.values())
+        Operation[] accepted = annotation.anyOf().length > 0 ? annotation.anyOf() : Operation.values();
+        acceptedValues = Stream.of(accepted)
                 .map(Enum::name)
                 .collect(Collectors.toList());
     }
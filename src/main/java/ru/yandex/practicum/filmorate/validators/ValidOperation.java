@@ -1,5 +1,7 @@
 package ru.yandex.practicum.filmorate.validators;
 
+import ru.yandex.practicum.filmorate.models.Operation;
+
 import javax.validation.Constraint;
 import javax.validation.Payload;
 import javax.validation.constraints.NotNull;
@@ -18,6 +20,11 @@ import java.lang.annotation.Target;
 public @interface ValidOperation {
     String message() default "Значение события может быть только REMOVE, ADD или UPDATE";
 
+    /**
+     * Допустимые значения. Если не заданы, допустимы все значения Operation.
+     */
+    Operation[] anyOf() default {};
+
     Class<?>[] groups() default {};
 
     Class<? extends Payload>[] payload() default {};
@@ -3,13 +3,16 @@ delete from film_likes;
 delete from film_genres;
 delete from users;
 delete from films;
+delete from feed_timeline;
 delete from feed;
+delete from feed_outbox;
 delete from reviews;
 delete from review_reactions;
 delete from directors;
 delete from film_directors;
 
 alter table feed alter column event_id restart with 1;
+alter table feed_outbox alter column id restart with 1;
 alter table films alter column id restart with 1;
 alter table users alter column id restart with 1;
 alter table directors alter column id restart with 1;
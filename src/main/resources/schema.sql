@@ -14,9 +14,16 @@ create table if not exists films (
      release_date date not null,
      duration int not null,
      rating varchar(5) not null,
+     like_count int not null default 0,
      constraint films_pk primary key (id)
 );
 
+-- таблица films, созданная до появления like_count: колонка добавляется пустой и заполняется ниже по film_likes
+alter table films add column if not exists like_count int;
+
+create index if not exists films_like_count_idx on films (like_count desc, id);
+create index if not exists films_release_date_idx on films (release_date);
+
 create table if not exists directors (
     id int not null generated by default as identity,
     name varchar(30) not null,
@@ -29,6 +36,8 @@ create table if not exists film_directors (
     constraint film_directors_pk primary key (film_id, director_id)
 );
 
+create index if not exists film_directors_director_idx on film_directors (director_id, film_id);
+
 create table if not exists genres (
      id int not null generated by default as identity,
      name varchar(20) not null,
@@ -41,6 +50,8 @@ create table if not exists film_genres (
      constraint film_genres_pk primary key (film_id, genre_id)
 );
 
+create index if not exists film_genres_genre_idx on film_genres (genre_id, film_id);
+
 create table if not exists user_friends (
      user_id int not null references users(id) on delete cascade,
      friend_id int not null references users(id) on delete cascade,
@@ -48,6 +59,8 @@ create table if not exists user_friends (
      constraint user_friends_pk primary key (user_id, friend_id)
 );
 
+create index if not exists user_friends_friend_idx on user_friends (friend_id, user_id);
+
 create table if not exists film_likes (
      film_id int not null references films(id) on delete cascade,
      user_id int not null references users(id) on delete cascade,
@@ -55,6 +68,14 @@ create table if not exists film_likes (
      constraint film_likes_pk primary key (film_id, user_id)
 );
 
+create index if not exists film_likes_user_idx on film_likes (user_id, film_id);
+
+-- заполняются только строки добавленной колонки, при следующих запусках строк с null нет
+update films as f set like_count = (select count(*) from film_likes as l where l.film_id = f.id)
+where like_count is null;
+alter table films alter column like_count set default 0;
+alter table films alter column like_count set not null;
+
 create table if not exists feed (
     event_id int generated by default as identity,
     user_id int not null references users(id) on delete cascade,
@@ -62,8 +83,39 @@ create table if not exists feed (
     event_type varchar(50) not null,
     operation varchar(50) not null,
     timestamp bigint not null,
+    bucket int generated always as (cast(timestamp / 86400000 as int)),
     constraint "feed_pk" primary key (event_id)
 );
+alter table feed add column if not exists bucket int generated always as (cast(timestamp / 86400000 as int));
+
+-- индекс заменён на включающий event_id для постраничного чтения ленты
+drop index if exists feed_user_timestamp_idx;
+create index if not exists feed_user_timestamp_event_idx on feed (user_id, timestamp, event_id);
+-- события хранятся по суточным бакетам bucket = timestamp / 86400000,
+-- выборка бакетов старше окна хранения для переноса в архив
+drop index if exists feed_timestamp_idx;
+create index if not exists feed_bucket_event_idx on feed (bucket, event_id);
+
+-- события, записанные в транзакции изменения и ещё не перенесённые в feed
+create table if not exists feed_outbox (
+    id int generated by default as identity,
+    user_id int not null references users(id) on delete cascade,
+    entity_id int not null,
+    event_type varchar(50) not null,
+    operation varchar(50) not null,
+    timestamp bigint not null,
+    constraint feed_outbox_pk primary key (id)
+);
+
+create index if not exists feed_outbox_timestamp_idx on feed_outbox (timestamp, id);
+
+-- ленты пользователей для режима app.feed.fan-out-on-write: события автора и друзей, на которых подписан owner_id
+create table if not exists feed_timeline (
+    owner_id int not null references users(id) on delete cascade,
+    event_id int not null references feed(event_id) on delete cascade,
+    timestamp bigint not null,
+    constraint feed_timeline_pk primary key (owner_id, timestamp, event_id)
+);
 
 create table if not exists reviews (
      id int generated by default as identity,
@@ -74,9 +126,13 @@ create table if not exists reviews (
      constraint reviews_pk primary key (id)
 );
 
+create index if not exists reviews_film_idx on reviews (film_id);
+
 create table if not exists review_reactions (
      review_id int not null references reviews(id) on delete cascade,
      user_id int not null references users(id) on delete cascade,
      reaction smallint not null,
      constraint review_reactions_pk primary key (review_id, user_id)
-);
\ No newline at end of file
+);
+
+create index if not exists review_reactions_user_idx on review_reactions (user_id);
\ No newline at end of file
@@ -26,6 +26,8 @@ insert into film_likes (film_id, user_id)
 values (3, 1), (3, 2), (3, 3), (2, 1), (2, 2), (1, 1)
 on conflict do nothing;
 
+update films set like_count = (select count(*) from film_likes as fl where fl.film_id = films.id);
+
 insert into user_friends (user_id, friend_id)
 values (1, 2), (1, 3), (2, 1), (2, 3)
 on conflict do nothing;
@@ -4,6 +4,7 @@ delete from film_genres;
 delete from users;
 delete from films;
 delete from feed;
+delete from feed_outbox;
 delete from reviews;
 delete from review_reactions;
 delete from film_directors;
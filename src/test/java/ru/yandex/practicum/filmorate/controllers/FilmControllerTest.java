@@ -9,13 +9,19 @@ import org.springframework.context.annotation.Import;
 import org.springframework.core.convert.ConversionService;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import ru.yandex.practicum.filmorate.configs.TestAppConfig;
 import ru.yandex.practicum.filmorate.dto.FilmDto;
+import ru.yandex.practicum.filmorate.dto.FilmLikeBatchDto;
+import ru.yandex.practicum.filmorate.dto.FilmLikeDto;
 import ru.yandex.practicum.filmorate.dto.LongIdDto;
 import ru.yandex.practicum.filmorate.dto.UpdateFilmDto;
+import ru.yandex.practicum.filmorate.exceptions.TooManyRequestsException;
 import ru.yandex.practicum.filmorate.models.Film;
+import ru.yandex.practicum.filmorate.models.FilmLikeOperation;
 import ru.yandex.practicum.filmorate.models.FilmRating;
 import ru.yandex.practicum.filmorate.models.Genre;
+import ru.yandex.practicum.filmorate.models.Operation;
 import ru.yandex.practicum.filmorate.services.FilmService;
 import ru.yandex.practicum.filmorate.services.SearchService;
 import ru.yandex.practicum.filmorate.services.UserService;
@@ -25,15 +31,24 @@ import java.time.Duration;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(FilmController.class)
@@ -104,6 +119,75 @@ class FilmControllerTest {
                 .andExpect(status().isOk());
     }
 
+    @Test
+    public void exportFilms_writesOneFilmPerLine() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<Film> consumer = invocation.getArgument(0);
+            consumer.accept(getValidFilm());
+            consumer.accept(getValidFilm());
+            return null;
+        }).when(filmService).exportFilms(any());
+
+        MvcResult result = mockMvc.perform(get("/films/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String content = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = content.split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(getValidFilm().getId(), objectMapper.readTree(lines[0]).get("id").asLong());
+    }
+
+    @Test
+    public void submitFilmLikes_isAccepted() throws Exception {
+        FilmLikeBatchDto batch = new FilmLikeBatchDto(List.of(
+                new FilmLikeDto(1L, 2L, Operation.ADD),
+                new FilmLikeDto(1L, 3L, Operation.REMOVE)));
+        mockMvc.perform(post("/films/likes:batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsBytes(batch)))
+                .andExpect(status().isAccepted());
+        verify(filmService).submitFilmLikes(List.of(
+                new FilmLikeOperation(1L, 2L, Operation.ADD),
+                new FilmLikeOperation(1L, 3L, Operation.REMOVE)));
+    }
+
+    @Test
+    public void submitFilmLikes_ifInvalidOperation_thenBadRequest() throws Exception {
+        FilmLikeBatchDto batch = new FilmLikeBatchDto(List.of(new FilmLikeDto(1L, 2L, Operation.UPDATE)));
+        mockMvc.perform(post("/films/likes:batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsBytes(batch)))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void submitFilmLikes_ifQueueIsFull_thenTooManyRequests() throws Exception {
+        doThrow(new TooManyRequestsException("full")).when(filmService).submitFilmLikes(any());
+        FilmLikeBatchDto batch = new FilmLikeBatchDto(List.of(new FilmLikeDto(1L, 2L, Operation.ADD)));
+        mockMvc.perform(post("/films/likes:batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsBytes(batch)))
+                .andExpect(status().isTooManyRequests());
+    }
+
+    @Test
+    public void getFilms_ifPageIsNotFull_thenNoNextCursor() throws Exception {
+        when(filmService.getFilms(5L, 2)).thenReturn(List.of(getValidFilm()));
+        mockMvc.perform(get("/films?after=5&limit=2"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("X-Next-Cursor"));
+    }
+
+    @Test
+    public void getFilms_ifInvalidLimit_thenNotFound() throws Exception {
+        mockMvc.perform(get("/films?limit=1001"))
+                .andExpect(status().isNotFound());
+    }
+
     @Test
     public void createFilm_isAvailable() throws Exception {
         when(filmService.createFilm(any(Film.class))).thenReturn(getValidFilm());
@@ -150,6 +234,19 @@ class FilmControllerTest {
                 .andExpect(status().isOk());
     }
 
+    @Test
+    public void getSimilarFilms_isAvailable() throws Exception {
+        when(filmService.getSimilarFilms(1L, 5)).thenReturn(List.of(getValidFilm()));
+        mockMvc.perform(get("/films/1/similar?count=5"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void getSimilarFilms_ifInvalidCount_thenNotFound() throws Exception {
+        mockMvc.perform(get("/films/1/similar?count=0"))
+                .andExpect(status().isNotFound());
+    }
+
     @Test
     public void getGenres_isAvailable() throws Exception {
         mockMvc.perform(get("/genres"))
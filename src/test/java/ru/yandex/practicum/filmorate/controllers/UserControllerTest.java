@@ -12,22 +12,31 @@ import org.springframework.test.web.servlet.MockMvc;
 import ru.yandex.practicum.filmorate.configs.TestAppConfig;
 import ru.yandex.practicum.filmorate.dto.UpdateUserDto;
 import ru.yandex.practicum.filmorate.dto.UserDto;
+import ru.yandex.practicum.filmorate.models.Event;
+import ru.yandex.practicum.filmorate.models.EventType;
+import ru.yandex.practicum.filmorate.models.Operation;
 import ru.yandex.practicum.filmorate.models.User;
+import ru.yandex.practicum.filmorate.services.FeedStreamHub;
 import ru.yandex.practicum.filmorate.services.RecommendationService;
 import ru.yandex.practicum.filmorate.services.UserService;
 import ru.yandex.practicum.filmorate.utils.AppProperties;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(UserController.class)
@@ -40,6 +49,9 @@ class UserControllerTest {
     @MockBean
     private RecommendationService recommendationService;
 
+    @MockBean
+    private FeedStreamHub feedStreamHub;
+
     @Autowired
     private ConversionService conversionService;
 
@@ -85,11 +97,25 @@ class UserControllerTest {
 
     @Test
     public void getUsers_isAvailable() throws Exception {
-        when(userService.getUsers()).thenReturn(new ArrayList<>());
+        when(userService.getUsers(null, 100)).thenReturn(new ArrayList<>());
         mockMvc.perform(get("/users"))
                 .andExpect(status().isOk());
     }
 
+    @Test
+    public void getUsers_ifPageIsFull_thenReturnNextCursor() throws Exception {
+        when(userService.getUsers(5L, 1)).thenReturn(List.of(getValidUser()));
+        mockMvc.perform(get("/users?after=5&limit=1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Next-Cursor", String.valueOf(getValidUser().getId())));
+    }
+
+    @Test
+    public void getUsers_ifInvalidLimit_thenNotFound() throws Exception {
+        mockMvc.perform(get("/users?limit=0"))
+                .andExpect(status().isNotFound());
+    }
+
     @Test
     public void createUser_isAvailable() throws Exception {
         when(userService.createUser(any(User.class))).thenReturn(getValidUser());
@@ -152,9 +178,41 @@ class UserControllerTest {
 
     @Test
     public void getFeedByUserId_isAvailable() throws Exception {
-        when(userService.getFeedByUserId(anyLong())).thenReturn(new ArrayList<>());
+        when(userService.getFeedByUserId(1L, null, null)).thenReturn(new ArrayList<>());
         mockMvc.perform(get("/users/1/feed"))
-                .andExpect(status().isOk());
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("X-Next-Cursor"));
+    }
+
+    @Test
+    public void getFeedByUserId_ifPageIsFull_thenReturnNextCursor() throws Exception {
+        when(userService.getFeedByUserId(1L, 10L, 2)).thenReturn(List.of(
+                Event.builder().eventId(7L).userId(1L).entityId(1L)
+                        .eventType(EventType.LIKE).operation(Operation.ADD).timestamp(1L).build(),
+                Event.builder().eventId(8L).userId(1L).entityId(2L)
+                        .eventType(EventType.LIKE).operation(Operation.ADD).timestamp(2L).build()));
+        mockMvc.perform(get("/users/1/feed?before=10&limit=2"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Next-Cursor", "7"));
+    }
+
+    @Test
+    public void streamFeedByUserId_isAsyncStarted() throws Exception {
+        mockMvc.perform(get("/users/1/feed/stream").header("Last-Event-ID", "5"))
+                .andExpect(request().asyncStarted());
+        verify(feedStreamHub).subscribe(eq(1L), eq(5L), any(), any());
+    }
+
+    @Test
+    public void streamFeedByUserId_ifInvalidLastEventId_thenNotFound() throws Exception {
+        mockMvc.perform(get("/users/1/feed/stream").header("Last-Event-ID", "0"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void getFeedByUserId_ifInvalidLimit_thenNotFound() throws Exception {
+        mockMvc.perform(get("/users/1/feed?limit=0"))
+                .andExpect(status().isNotFound());
     }
 
     @Test
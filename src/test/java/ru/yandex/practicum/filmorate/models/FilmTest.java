@@ -4,7 +4,6 @@ import org.junit.jupiter.api.Test;
 
 import java.time.Duration;
 import java.time.LocalDate;
-import java.util.Arrays;
 import java.util.HashSet;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -15,39 +14,22 @@ class FilmTest {
     @Test
     void copyOf() {
         Film film = new Film(1L, "name", "description", LocalDate.of(1990, 1, 1),
-                Duration.ofMinutes(120), new HashSet<>(Arrays.asList(1L, 5L, 7L)), FilmRating.G, new HashSet<>(), new HashSet<>());
+                Duration.ofMinutes(120), 3, FilmRating.G, new HashSet<>(), new HashSet<>());
         Film copy = film.copyOf();
         assertEquals(film, copy);
         assertNotSame(film, copy);
-        assertNotSame(film.getLikes(), copy.getLikes());
+        assertNotSame(film.getGenres(), copy.getGenres());
+        assertEquals(3, copy.getLikeCount());
     }
 
     @Test
-    void addLike() {
+    void getLikeCount() {
         Film film = Film.builder().build();
-        assertEquals(0, film.getLikes().size());
-        film.addLike(1L);
-        assertEquals(1, film.getLikes().size());
-    }
-
-    @Test
-    void removeLike() {
-        Film film = Film.builder()
-                .likes(new HashSet<>(Arrays.asList(1L, 5L, 7L)))
-                .build();
-        assertEquals(3, film.getLikes().size());
-        film.removeLike(5L);
-        assertEquals(2, film.getLikes().size());
-    }
-
-    @Test
-    void getNumOfLikes() {
-        Film film = Film.builder().build();
-        assertEquals(0, film.getNumOfLikes());
+        assertEquals(0, film.getLikeCount());
 
         film = Film.builder()
-                .likes(new HashSet<>(Arrays.asList(1L, 5L, 7L)))
+                .likeCount(3)
                 .build();
-        assertEquals(3, film.getNumOfLikes());
+        assertEquals(3, film.getLikeCount());
     }
-}
\ No newline at end of file
+}
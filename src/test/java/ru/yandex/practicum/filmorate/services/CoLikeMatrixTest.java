@@ -0,0 +1,105 @@
+package ru.yandex.practicum.filmorate.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.yandex.practicum.filmorate.models.Film;
+import ru.yandex.practicum.filmorate.models.FilmChangedEvent;
+import ru.yandex.practicum.filmorate.models.FilmLike;
+import ru.yandex.practicum.filmorate.models.FilmLikeChangedEvent;
+import ru.yandex.practicum.filmorate.models.Operation;
+import ru.yandex.practicum.filmorate.models.UserDeletedEvent;
+import ru.yandex.practicum.filmorate.storages.FilmStorage;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CoLikeMatrixTest {
+    @Mock
+    private FilmStorage filmStorage;
+
+    private LikeIndex likeIndex;
+    private CoLikeMatrix coLikeMatrix;
+
+    @BeforeEach
+    void setUp() {
+        likeIndex = new LikeIndex(filmStorage);
+        coLikeMatrix = new CoLikeMatrix(likeIndex);
+    }
+
+    @Test
+    void getSimilarFilmIds_ordersByCommonLikes() {
+        // фильм 1 лайкали пользователи 1, 2, 3; фильм 2 - 1 и 2; фильм 3 - только 3
+        when(filmStorage.getAllFilmLikes()).thenReturn(List.of(
+                new FilmLike(1L, 1L), new FilmLike(1L, 2L), new FilmLike(1L, 3L),
+                new FilmLike(2L, 1L), new FilmLike(2L, 2L),
+                new FilmLike(3L, 3L), new FilmLike(4L, 4L)));
+
+        assertEquals(List.of(2L, 3L), coLikeMatrix.getSimilarFilmIds(1L, 10));
+        assertEquals(List.of(2L), coLikeMatrix.getSimilarFilmIds(1L, 1));
+        assertEquals(2, coLikeMatrix.getCommonLikes(2L, 1L));
+        assertTrue(coLikeMatrix.getSimilarFilmIds(4L, 10).isEmpty());
+        assertTrue(coLikeMatrix.getSimilarFilmIds(100L, 10).isEmpty());
+    }
+
+    @Test
+    void likeIndexChanges_patchMatrixLikeFullRebuild() {
+        Random random = new Random(11);
+        List<FilmLike> likes = new ArrayList<>();
+        Set<String> pairs = new HashSet<>();
+        for (int i = 0; i < 3000; i++) {
+            long filmId = random.nextInt(600) + 1;
+            long userId = random.nextInt(200) + 1;
+            if (pairs.add(filmId + ":" + userId)) {
+                likes.add(new FilmLike(filmId, userId));
+            }
+        }
+        when(filmStorage.getAllFilmLikes()).thenReturn(likes);
+        coLikeMatrix.rebuild();
+
+        List<FilmLike> current = new ArrayList<>(likes);
+        for (int i = 0; i < 500; i++) {
+            long filmId = random.nextInt(600) + 1;
+            long userId = random.nextInt(200) + 1;
+            FilmLike like = new FilmLike(filmId, userId);
+            if (current.contains(like)) {
+                current.remove(like);
+                likeIndex.onFilmLikeChanged(new FilmLikeChangedEvent(filmId, userId, Operation.REMOVE));
+            } else {
+                current.add(like);
+                likeIndex.onFilmLikeChanged(new FilmLikeChangedEvent(filmId, userId, Operation.ADD));
+            }
+        }
+        likeIndex.onFilmChanged(new FilmChangedEvent(Film.builder().id(1L).build(), Operation.REMOVE));
+        current.removeIf(like -> like.getFilmId() == 1L);
+        likeIndex.onUserDeleted(new UserDeletedEvent(1L, Set.of()));
+        current.removeIf(like -> like.getUserId() == 1L);
+
+        List<List<Long>> patched = new ArrayList<>();
+        for (long filmId = 1; filmId <= 600; filmId++) {
+            patched.add(coLikeMatrix.getSimilarFilmIds(filmId, Integer.MAX_VALUE));
+        }
+        when(filmStorage.getAllFilmLikes()).thenReturn(current);
+        CoLikeMatrix rebuilt = new CoLikeMatrix(new LikeIndex(filmStorage));
+        for (long filmId = 1; filmId <= 600; filmId++) {
+            assertEquals(rebuilt.getSimilarFilmIds(filmId, Integer.MAX_VALUE), patched.get((int) filmId - 1),
+                    "Фильм " + filmId);
+        }
+        // перестроение по графу индекса, в который изменения ещё не внесены
+        coLikeMatrix.rebuild();
+        for (long filmId = 1; filmId <= 600; filmId++) {
+            assertEquals(patched.get((int) filmId - 1), coLikeMatrix.getSimilarFilmIds(filmId, Integer.MAX_VALUE),
+                    "Фильм " + filmId);
+        }
+    }
+}
@@ -5,7 +5,10 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 import ru.yandex.practicum.filmorate.models.Director;
+import ru.yandex.practicum.filmorate.models.DirectorChangedEvent;
+import ru.yandex.practicum.filmorate.models.Operation;
 import ru.yandex.practicum.filmorate.storages.DirectorStorage;
 
 import java.util.ArrayList;
@@ -17,6 +20,7 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -24,6 +28,9 @@ class DirectorServiceImplTest {
     @Mock
     private DirectorStorage directorStorage;
 
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     @InjectMocks
     private DirectorServiceImpl directorService;
 
@@ -59,6 +66,7 @@ class DirectorServiceImplTest {
         var actual = directorService.createDirector(expected);
 
         verify(directorStorage).createDirector(expected);
+        verify(eventPublisher).publishEvent(new DirectorChangedEvent(expected, Operation.ADD));
         assertSame(expected, actual);
     }
 
@@ -70,6 +78,7 @@ class DirectorServiceImplTest {
         var actual = directorService.updateDirector(expected);
 
         verify(directorStorage).updateDirector(expected);
+        verifyNoInteractions(eventPublisher);
         assertNotNull(actual);
         assertTrue(actual.isEmpty());
     }
@@ -82,8 +91,18 @@ class DirectorServiceImplTest {
         var actual = directorService.updateDirector(expected);
 
         verify(directorStorage).updateDirector(expected);
+        verify(eventPublisher).publishEvent(new DirectorChangedEvent(expected, Operation.UPDATE));
         assertNotNull(actual);
         assertTrue(actual.isPresent());
         assertSame(expected, actual.get());
     }
-}
\ No newline at end of file
+
+    @Test
+    void deleteDirectorById_publishesRemoveEvent() {
+        directorService.deleteDirectorById(1L);
+
+        verify(directorStorage).deleteDirectorById(1L);
+        verify(eventPublisher).publishEvent(
+                new DirectorChangedEvent(Director.builder().id(1L).build(), Operation.REMOVE));
+    }
+}
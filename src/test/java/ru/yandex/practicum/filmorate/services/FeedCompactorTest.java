@@ -0,0 +1,100 @@
+package ru.yandex.practicum.filmorate.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.models.Event;
+import ru.yandex.practicum.filmorate.models.EventType;
+import ru.yandex.practicum.filmorate.models.Operation;
+import ru.yandex.practicum.filmorate.storages.FeedSegmentArchive;
+import ru.yandex.practicum.filmorate.storages.FeedStorage;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class FeedCompactorTest {
+    @Mock
+    private FeedStorage feedStorage;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @TempDir
+    Path directory;
+
+    private FeedSegmentArchive archive;
+
+    @BeforeEach
+    void setUp() {
+        archive = new FeedSegmentArchive(directory.toString());
+        lenient().doAnswer(invocation -> {
+            Consumer<TransactionStatus> action = invocation.getArgument(0);
+            action.accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+    }
+
+    @Test
+    void compactBefore_movesEventsToSegmentsInBatches() {
+        FeedCompactor compactor = new FeedCompactor(feedStorage, archive, transactionTemplate, 30, 2);
+        when(feedStorage.getEventsBefore(1000L, 2)).thenReturn(
+                List.of(event(1L, 1L), event(2L, 2L)),
+                List.of(event(3L, 1L)));
+
+        int moved = compactor.compactBefore(1000L);
+
+        assertEquals(3, moved);
+        verify(feedStorage).removeEvents(List.of(1L, 2L));
+        verify(feedStorage).removeEvents(List.of(3L));
+        assertEquals(List.of(1L, 3L), archive.getUserFeed(List.of(1L), 1L).stream()
+                .map(Event::getEventId).collect(Collectors.toList()));
+    }
+
+    @Test
+    void compactBefore_removesEventsOfLastSegmentLeftInFeed() {
+        archive.writeSegment(List.of(event(1L, 1L), event(2L, 1L)));
+        FeedCompactor compactor = new FeedCompactor(feedStorage, archive, transactionTemplate, 30, 2);
+        when(feedStorage.getEventsBefore(1000L, 2)).thenReturn(List.of());
+
+        assertEquals(0, compactor.compactBefore(1000L));
+
+        verify(feedStorage).removeEvents(List.of(1L, 2L));
+    }
+
+    @Test
+    void compact_ifRetentionDisabled_thenNothingMoved() {
+        FeedCompactor compactor = new FeedCompactor(feedStorage, archive, transactionTemplate, 0, 2);
+
+        assertEquals(0, compactor.compact());
+
+        verify(feedStorage, never()).getEventsBefore(anyLong(), anyInt());
+    }
+
+    private static Event event(long eventId, long userId) {
+        return Event.builder()
+                .eventId(eventId)
+                .userId(userId)
+                .entityId(1L)
+                .eventType(EventType.LIKE)
+                .operation(Operation.ADD)
+                .timestamp(100L + eventId)
+                .build();
+    }
+}
@@ -0,0 +1,153 @@
+package ru.yandex.practicum.filmorate.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.models.Event;
+import ru.yandex.practicum.filmorate.models.EventType;
+import ru.yandex.practicum.filmorate.models.FeedEventsAddedEvent;
+import ru.yandex.practicum.filmorate.models.Operation;
+import ru.yandex.practicum.filmorate.storages.FeedStorage;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class FeedOutboxTest {
+    @Mock
+    private FeedStorage feedStorage;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(invocation -> {
+            TransactionCallback<?> action = invocation.getArgument(0);
+            return action.doInTransaction(null);
+        });
+    }
+
+    @Test
+    void stage_thenWriteToOutbox() {
+        FeedOutbox outbox = new FeedOutbox(feedStorage, eventPublisher, transactionTemplate, 10, false);
+
+        outbox.stage(1L, 2L, EventType.LIKE, Operation.ADD);
+
+        ArgumentCaptor<Event> captor = ArgumentCaptor.forClass(Event.class);
+        verify(feedStorage).addOutboxEvent(captor.capture());
+        assertEquals(1L, captor.getValue().getUserId());
+        assertEquals(2L, captor.getValue().getEntityId());
+        assertEquals(EventType.LIKE, captor.getValue().getEventType());
+        assertEquals(Operation.ADD, captor.getValue().getOperation());
+        verify(feedStorage, never()).addEvents(anyList());
+    }
+
+    @Test
+    void stage_inSyncMode_thenWriteToFeed() {
+        FeedOutbox outbox = new FeedOutbox(feedStorage, eventPublisher, transactionTemplate, 10, true);
+
+        outbox.stage(1L, 2L, EventType.FRIEND, Operation.REMOVE);
+
+        verify(feedStorage).addEvents(anyList());
+        verify(feedStorage, never()).addOutboxEvent(any());
+    }
+
+    @Test
+    void publish_movesEventsInBatches() {
+        FeedOutbox outbox = new FeedOutbox(feedStorage, eventPublisher, transactionTemplate, 2, false);
+        List<Event> first = List.of(event(1L), event(2L));
+        List<Event> second = List.of(event(3L));
+        when(feedStorage.getOutboxEvents(2)).thenReturn(first, second);
+        when(feedStorage.addEvents(anyList())).thenReturn(first, second);
+
+        int published = outbox.publish();
+
+        assertEquals(3, published);
+        ArgumentCaptor<List<Event>> captor = ArgumentCaptor.forClass(List.class);
+        verify(feedStorage, times(2)).addEvents(captor.capture());
+        assertEquals(List.of(1L, 2L), captor.getAllValues().get(0).stream()
+                .map(Event::getEntityId).collect(Collectors.toList()));
+        assertEquals(List.of(3L), captor.getAllValues().get(1).stream()
+                .map(Event::getEntityId).collect(Collectors.toList()));
+        verify(feedStorage).removeOutboxEvents(List.of(1L, 2L));
+        verify(eventPublisher).publishEvent(new FeedEventsAddedEvent(first));
+        verify(feedStorage).removeOutboxEvents(List.of(3L));
+    }
+
+    @Test
+    void publish_keepsTimestampRecordedAtStage() {
+        FeedOutbox outbox = new FeedOutbox(feedStorage, eventPublisher, transactionTemplate, 2, false);
+        when(feedStorage.getOutboxEvents(2)).thenReturn(List.of(event(1L)));
+
+        outbox.publish();
+
+        ArgumentCaptor<List<Event>> captor = ArgumentCaptor.forClass(List.class);
+        verify(feedStorage).addEvents(captor.capture());
+        assertEquals(1698599680000L, captor.getValue().get(0).getTimestamp());
+    }
+
+    @Test
+    void stageBatch_thenWriteToOutboxOrFeed() {
+        List<Event> events = List.of(event(1L), event(2L));
+        FeedOutbox outbox = new FeedOutbox(feedStorage, eventPublisher, transactionTemplate, 10, false);
+        FeedOutbox syncOutbox = new FeedOutbox(feedStorage, eventPublisher, transactionTemplate, 10, true);
+
+        outbox.stage(events);
+        outbox.stage(List.of());
+        syncOutbox.stage(events);
+
+        verify(feedStorage).addOutboxEvents(events);
+        verify(feedStorage).addEvents(events);
+    }
+
+    @Test
+    void publish_ifOutboxEmpty_thenNothingWritten() {
+        FeedOutbox outbox = new FeedOutbox(feedStorage, eventPublisher, transactionTemplate, 2, false);
+        when(feedStorage.getOutboxEvents(2)).thenReturn(List.of());
+
+        assertEquals(0, outbox.publish());
+
+        verify(feedStorage, never()).addEvents(anyList());
+    }
+
+    @Test
+    void publish_inSyncMode_thenOutboxDrainedOnce() {
+        FeedOutbox outbox = new FeedOutbox(feedStorage, eventPublisher, transactionTemplate, 2, true);
+        when(feedStorage.getOutboxEvents(2)).thenReturn(List.of(event(1L)));
+
+        assertEquals(1, outbox.publish());
+        assertEquals(0, outbox.publish());
+
+        verify(feedStorage, times(1)).getOutboxEvents(2);
+    }
+
+    private static Event event(long id) {
+        return Event.builder()
+                .eventId(id)
+                .userId(1L)
+                .entityId(id)
+                .eventType(EventType.LIKE)
+                .operation(Operation.ADD)
+                .timestamp(1698599680000L)
+                .build();
+    }
+}
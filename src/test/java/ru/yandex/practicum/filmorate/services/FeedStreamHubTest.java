@@ -0,0 +1,243 @@
+package ru.yandex.practicum.filmorate.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.models.Event;
+import ru.yandex.practicum.filmorate.models.EventType;
+import ru.yandex.practicum.filmorate.models.FeedEventsAddedEvent;
+import ru.yandex.practicum.filmorate.models.Operation;
+import ru.yandex.practicum.filmorate.storages.UserStorage;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class FeedStreamHubTest {
+    @Mock
+    private UserStorage userStorage;
+
+    @Mock
+    private UserService userService;
+
+    private FeedStreamHub hub;
+
+    @AfterEach
+    void tearDown() {
+        if (hub != null) {
+            hub.stop();
+        }
+    }
+
+    @Test
+    void subscribe_ifUserNotFound_thenThrowNotFoundException() {
+        hub = new FeedStreamHub(userStorage, userService, 10, 100, 1);
+        when(userStorage.existsUser(1L)).thenReturn(false);
+
+        assertThrows(NotFoundException.class,
+                () -> hub.subscribe(1L, null, new SseEmitter(), event -> event));
+    }
+
+    @Test
+    void subscribe_sendsReplayThenLiveEventsWithoutDuplicates() throws Exception {
+        hub = new FeedStreamHub(userStorage, userService, 10, 100, 1);
+        when(userStorage.existsUser(1L)).thenReturn(true);
+        when(userStorage.getFriendIds(1L)).thenReturn(List.of(2L));
+        when(userService.getFeedAfter(1L, 3L, 100)).thenReturn(List.of(event(4L, 1L, EventType.LIKE)));
+        List<Long> sent = new CopyOnWriteArrayList<>();
+        CountDownLatch delivered = new CountDownLatch(3);
+
+        hub.subscribe(1L, 3L, new SseEmitter(), event -> {
+            sent.add(event.getEventId());
+            delivered.countDown();
+            return event;
+        });
+        hub.onFeedEventsAdded(new FeedEventsAddedEvent(List.of(
+                event(4L, 1L, EventType.LIKE),
+                event(5L, 2L, EventType.REVIEW),
+                event(6L, 2L, EventType.FRIEND),
+                event(7L, 3L, EventType.LIKE),
+                event(8L, 1L, EventType.FRIEND))));
+
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertEquals(List.of(4L, 5L, 8L), sent);
+    }
+
+    @Test
+    void subscribe_ifEventCommittedLateWithLowerId_thenDeliveredLive() throws Exception {
+        hub = new FeedStreamHub(userStorage, userService, 10, 100, 1);
+        when(userStorage.existsUser(1L)).thenReturn(true);
+        when(userService.getFeedAfter(1L, 3L, 100)).thenReturn(List.of(event(5L, 1L, EventType.LIKE)));
+        List<Long> sent = new CopyOnWriteArrayList<>();
+        CountDownLatch delivered = new CountDownLatch(2);
+
+        hub.subscribe(1L, 3L, new SseEmitter(), event -> {
+            sent.add(event.getEventId());
+            delivered.countDown();
+            return event;
+        });
+        hub.onFeedEventsAdded(new FeedEventsAddedEvent(List.of(
+                event(5L, 1L, EventType.LIKE),
+                event(4L, 1L, EventType.LIKE))));
+
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertEquals(List.of(5L, 4L), sent);
+    }
+
+    @Test
+    void onFeedEventsAdded_ifOneSubscriberStalls_thenOthersStillReceiveEvents() throws Exception {
+        hub = new FeedStreamHub(userStorage, userService, 10, 100, 1);
+        when(userStorage.existsUser(1L)).thenReturn(true);
+        when(userStorage.existsUser(2L)).thenReturn(true);
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        hub.subscribe(1L, null, blockingEmitter(sending, release, new CountDownLatch(1)), event -> event);
+        CountDownLatch delivered = new CountDownLatch(1);
+        hub.subscribe(2L, null, new SseEmitter(), event -> {
+            delivered.countDown();
+            return event;
+        });
+
+        hub.onFeedEventsAdded(new FeedEventsAddedEvent(List.of(event(1L, 1L, EventType.LIKE))));
+        assertTrue(sending.await(5, TimeUnit.SECONDS));
+        hub.onFeedEventsAdded(new FeedEventsAddedEvent(List.of(event(2L, 2L, EventType.LIKE))));
+
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    @Test
+    void subscribe_ifHistoryLongerThanReplayLimit_thenReplaysAllPages() throws Exception {
+        hub = new FeedStreamHub(userStorage, userService, 10, 2, 1);
+        when(userStorage.existsUser(1L)).thenReturn(true);
+        when(userService.getFeedAfter(1L, 3L, 2)).thenReturn(List.of(
+                event(4L, 1L, EventType.LIKE), event(5L, 1L, EventType.LIKE)));
+        when(userService.getFeedAfter(1L, 5L, 2)).thenReturn(List.of(event(6L, 1L, EventType.LIKE)));
+        List<Long> sent = new CopyOnWriteArrayList<>();
+        CountDownLatch delivered = new CountDownLatch(3);
+
+        hub.subscribe(1L, 3L, new SseEmitter(), event -> {
+            sent.add(event.getEventId());
+            delivered.countDown();
+            return event;
+        });
+
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(4L, 5L, 6L), sent);
+    }
+
+    @Test
+    void subscribe_ifReplayReaderIsSlow_thenSubscriberEvicted() throws Exception {
+        hub = new FeedStreamHub(userStorage, userService, 1, 100, 1);
+        when(userStorage.existsUser(1L)).thenReturn(true);
+        when(userService.getFeedAfter(1L, 3L, 100)).thenReturn(List.of(
+                event(4L, 1L, EventType.LIKE), event(5L, 1L, EventType.LIKE)));
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch completed = new CountDownLatch(1);
+        List<Long> sent = new CopyOnWriteArrayList<>();
+        SseEmitter emitter = blockingEmitter(sending, release, completed);
+
+        hub.subscribe(1L, 3L, emitter, event -> {
+            sent.add(event.getEventId());
+            return event;
+        });
+        assertTrue(sending.await(5, TimeUnit.SECONDS));
+        hub.onFeedEventsAdded(new FeedEventsAddedEvent(List.of(
+                event(6L, 1L, EventType.LIKE),
+                event(7L, 1L, EventType.LIKE))));
+
+        assertTrue(completed.await(5, TimeUnit.SECONDS));
+        assertEquals(0, hub.getSubscriberCount());
+        release.countDown();
+        Thread.sleep(100);
+        assertEquals(List.of(4L), sent);
+    }
+
+    @Test
+    void onFeedEventsAdded_ifSubscriberAddsFriend_thenFriendEventsDelivered() throws Exception {
+        hub = new FeedStreamHub(userStorage, userService, 10, 100, 1);
+        when(userStorage.existsUser(1L)).thenReturn(true);
+        List<Long> sent = new CopyOnWriteArrayList<>();
+        CountDownLatch delivered = new CountDownLatch(2);
+
+        hub.subscribe(1L, null, new SseEmitter(), event -> {
+            sent.add(event.getEventId());
+            delivered.countDown();
+            return event;
+        });
+        hub.onFeedEventsAdded(new FeedEventsAddedEvent(List.of(
+                Event.builder().eventId(1L).userId(1L).entityId(3L).eventType(EventType.FRIEND)
+                        .operation(Operation.ADD).timestamp(1L).build(),
+                event(2L, 3L, EventType.LIKE))));
+
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(1L, 2L), sent);
+    }
+
+    @Test
+    void onFeedEventsAdded_ifBufferOverflows_thenSubscriberEvicted() throws Exception {
+        hub = new FeedStreamHub(userStorage, userService, 1, 100, 1);
+        when(userStorage.existsUser(1L)).thenReturn(true);
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch completed = new CountDownLatch(1);
+        SseEmitter emitter = blockingEmitter(sending, release, completed);
+
+        hub.subscribe(1L, null, emitter, event -> event);
+        hub.onFeedEventsAdded(new FeedEventsAddedEvent(List.of(event(1L, 1L, EventType.LIKE))));
+        assertTrue(sending.await(5, TimeUnit.SECONDS));
+        hub.onFeedEventsAdded(new FeedEventsAddedEvent(List.of(
+                event(2L, 1L, EventType.LIKE),
+                event(3L, 1L, EventType.LIKE))));
+
+        assertTrue(completed.await(5, TimeUnit.SECONDS));
+        assertEquals(0, hub.getSubscriberCount());
+        release.countDown();
+    }
+
+    // emitter, отправка в который ждёт release
+    private static SseEmitter blockingEmitter(CountDownLatch sending, CountDownLatch release, CountDownLatch completed) {
+        return new SseEmitter() {
+            @Override
+            public void send(SseEventBuilder builder) throws IOException {
+                sending.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public synchronized void complete() {
+                completed.countDown();
+            }
+        };
+    }
+
+    private static Event event(long eventId, long userId, EventType eventType) {
+        return Event.builder()
+                .eventId(eventId)
+                .userId(userId)
+                .entityId(1L)
+                .eventType(eventType)
+                .operation(Operation.ADD)
+                .timestamp(System.currentTimeMillis())
+                .build();
+    }
+}
@@ -0,0 +1,175 @@
+package ru.yandex.practicum.filmorate.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.exceptions.TooManyRequestsException;
+import ru.yandex.practicum.filmorate.models.Event;
+import ru.yandex.practicum.filmorate.models.EventType;
+import ru.yandex.practicum.filmorate.models.FilmLike;
+import ru.yandex.practicum.filmorate.models.FilmLikeChangedEvent;
+import ru.yandex.practicum.filmorate.models.FilmLikeOperation;
+import ru.yandex.practicum.filmorate.models.Operation;
+import ru.yandex.practicum.filmorate.storages.FilmStorage;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class FilmLikeBufferTest {
+    @Mock
+    private FilmStorage filmStorage;
+
+    @Mock
+    private FeedOutbox feedOutbox;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        lenient().doAnswer(invocation -> {
+            Consumer<TransactionStatus> action = invocation.getArgument(0);
+            action.accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+    }
+
+    private FilmLikeBuffer buffer(int capacity, int batchSize, long flushIntervalMs, boolean sync) {
+        return new FilmLikeBuffer(filmStorage, feedOutbox, eventPublisher, transactionTemplate,
+                new SimpleMeterRegistry(), capacity, batchSize, flushIntervalMs, 10, sync, 2, 1);
+    }
+
+    @Test
+    void submit_inSyncMode_coalescesOperationsOnSamePair() {
+        FilmLikeBuffer buffer = buffer(10, 10, 1000, true);
+        when(filmStorage.createFilmLikes(List.of(new FilmLike(1L, 1L)))).thenReturn(new int[]{1});
+        when(filmStorage.removeFilmLikes(List.of(new FilmLike(2L, 1L)))).thenReturn(new int[]{0});
+
+        buffer.submit(List.of(
+                new FilmLikeOperation(1L, 1L, Operation.ADD),
+                new FilmLikeOperation(1L, 1L, Operation.REMOVE),
+                new FilmLikeOperation(2L, 1L, Operation.ADD),
+                new FilmLikeOperation(1L, 1L, Operation.ADD),
+                new FilmLikeOperation(2L, 1L, Operation.REMOVE)));
+
+        verify(filmStorage).createFilmLikes(List.of(new FilmLike(1L, 1L)));
+        verify(filmStorage).removeFilmLikes(List.of(new FilmLike(2L, 1L)));
+        verify(eventPublisher).publishEvent(new FilmLikeChangedEvent(1L, 1L, Operation.ADD));
+        verify(eventPublisher, never()).publishEvent(new FilmLikeChangedEvent(2L, 1L, Operation.REMOVE));
+        ArgumentCaptor<List<Event>> captor = ArgumentCaptor.forClass(List.class);
+        verify(feedOutbox).stage(captor.capture());
+        assertEquals(1, captor.getValue().size());
+        assertEquals(1L, captor.getValue().get(0).getEntityId());
+        assertEquals(EventType.LIKE, captor.getValue().get(0).getEventType());
+        assertEquals(Operation.ADD, captor.getValue().get(0).getOperation());
+    }
+
+    @Test
+    void submit_inAsyncMode_flushesWhenBatchIsFull() throws InterruptedException {
+        FilmLikeBuffer buffer = buffer(10, 2, 60_000, false);
+        when(filmStorage.createFilmLikes(anyList())).thenReturn(new int[]{1, 1});
+        buffer.start();
+        try {
+            buffer.submit(List.of(
+                    new FilmLikeOperation(1L, 1L, Operation.ADD),
+                    new FilmLikeOperation(1L, 2L, Operation.ADD)));
+
+            verify(filmStorage, timeout(5000)).createFilmLikes(List.of(new FilmLike(1L, 1L), new FilmLike(1L, 2L)));
+        } finally {
+            buffer.stop();
+        }
+    }
+
+    @Test
+    void submit_inAsyncMode_flushesByTimer() throws InterruptedException {
+        FilmLikeBuffer buffer = buffer(10, 100, 50, false);
+        when(filmStorage.createFilmLikes(anyList())).thenReturn(new int[]{1});
+        buffer.start();
+        try {
+            buffer.submit(List.of(new FilmLikeOperation(1L, 1L, Operation.ADD)));
+
+            verify(filmStorage, timeout(5000)).createFilmLikes(List.of(new FilmLike(1L, 1L)));
+        } finally {
+            buffer.stop();
+        }
+    }
+
+    @Test
+    void submit_ifQueueIsFull_thenThrowTooManyRequestsException() {
+        FilmLikeBuffer buffer = buffer(1, 10, 1000, false);
+
+        buffer.submit(List.of(new FilmLikeOperation(1L, 1L, Operation.ADD)));
+
+        assertThrows(TooManyRequestsException.class,
+                () -> buffer.submit(List.of(new FilmLikeOperation(1L, 2L, Operation.ADD))));
+        assertEquals(1, buffer.getPendingCount());
+    }
+
+    @Test
+    void stop_writesPendingOperations() throws InterruptedException {
+        FilmLikeBuffer buffer = buffer(10, 100, 60_000, false);
+        when(filmStorage.removeFilmLikes(anyList())).thenReturn(new int[]{1});
+        buffer.start();
+
+        buffer.submit(List.of(new FilmLikeOperation(1L, 1L, Operation.REMOVE)));
+        buffer.stop();
+
+        verify(filmStorage).removeFilmLikes(List.of(new FilmLike(1L, 1L)));
+        assertEquals(0, buffer.getPendingCount());
+    }
+
+    @Test
+    void flush_ifWriteFails_thenRetriesBatch() throws InterruptedException {
+        FilmLikeBuffer buffer = buffer(10, 100, 60_000, false);
+        when(filmStorage.createFilmLikes(anyList()))
+                .thenThrow(new IllegalStateException("db"))
+                .thenThrow(new IllegalStateException("db"))
+                .thenReturn(new int[]{1});
+        buffer.start();
+
+        buffer.submit(List.of(new FilmLikeOperation(1L, 1L, Operation.ADD)));
+        buffer.stop();
+
+        verify(filmStorage, times(3)).createFilmLikes(List.of(new FilmLike(1L, 1L)));
+        verify(eventPublisher).publishEvent(new FilmLikeChangedEvent(1L, 1L, Operation.ADD));
+        assertEquals(0, buffer.getDroppedCount());
+    }
+
+    @Test
+    void flush_ifRetriesExhausted_thenCountsDroppedOperations() throws InterruptedException {
+        FilmLikeBuffer buffer = buffer(10, 100, 60_000, false);
+        when(filmStorage.createFilmLikes(anyList())).thenThrow(new IllegalStateException("db"));
+        buffer.start();
+
+        buffer.submit(List.of(
+                new FilmLikeOperation(1L, 1L, Operation.ADD),
+                new FilmLikeOperation(2L, 1L, Operation.ADD)));
+        buffer.stop();
+
+        verify(filmStorage, times(3)).createFilmLikes(anyList());
+        assertEquals(2, buffer.getDroppedCount());
+    }
+}
@@ -5,13 +5,16 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.models.Director;
 import ru.yandex.practicum.filmorate.models.Film;
+import ru.yandex.practicum.filmorate.models.FilmLikeChangedEvent;
+import ru.yandex.practicum.filmorate.models.FilmLikeOperation;
 import ru.yandex.practicum.filmorate.models.Genre;
-import ru.yandex.practicum.filmorate.models.User;
-import ru.yandex.practicum.filmorate.storages.DirectorStorage;
+import ru.yandex.practicum.filmorate.models.EventType;
+import ru.yandex.practicum.filmorate.models.Operation;
 import ru.yandex.practicum.filmorate.storages.FilmStorage;
-import ru.yandex.practicum.filmorate.storages.GenreStorage;
 import ru.yandex.practicum.filmorate.storages.UserStorage;
 
 import java.util.ArrayList;
@@ -24,7 +27,10 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -35,24 +41,36 @@ class FilmServiceImplTest {
     private FilmStorage filmStorage;
 
     @Mock
-    private GenreStorage genreStorage;
+    private ReferenceDataCache referenceDataCache;
 
     @Mock
     private UserStorage userStorage;
 
     @Mock
-    private DirectorStorage directorStorage;
+    private PopularityIndex popularityIndex;
+
+    @Mock
+    private CoLikeMatrix coLikeMatrix;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private FeedOutbox feedOutbox;
+
+    @Mock
+    private FilmLikeBuffer filmLikeBuffer;
 
     @InjectMocks
     private FilmServiceImpl filmService;
 
     @Test
     void getFilms_ifNotFound_thenReturnEmptyList() {
-        when(filmStorage.getAllFilms()).thenReturn(new ArrayList<>());
+        when(filmStorage.getFilms(null, 100)).thenReturn(new ArrayList<>());
 
-        List<Film> films = filmService.getFilms();
+        List<Film> films = filmService.getFilms(null, 100);
 
-        verify(filmStorage).getAllFilms();
+        verify(filmStorage).getFilms(null, 100);
         assertNotNull(films);
         assertTrue(films.isEmpty());
     }
@@ -60,11 +78,11 @@ class FilmServiceImplTest {
     @Test
     void getFilms_ifFounded_thenReturnFounded() {
         var expected = Film.builder().id(1L).name("name").build();
-        when(filmStorage.getAllFilms()).thenReturn(List.of(expected));
+        when(filmStorage.getFilms(10L, 5)).thenReturn(List.of(expected));
 
-        var actual = filmService.getFilms();
+        var actual = filmService.getFilms(10L, 5);
 
-        verify(filmStorage).getAllFilms();
+        verify(filmStorage).getFilms(10L, 5);
         assertNotNull(actual);
         assertEquals(1, actual.size());
         assertSame(expected, actual.get(0));
@@ -81,6 +99,23 @@ class FilmServiceImplTest {
         assertSame(expected, actual);
     }
 
+    @Test
+    void createFilm_comparesFoundDirectorsWithRequestedDirectors() {
+        Set<Genre> genres = Set.of(Genre.builder().id(1L).build());
+        Set<Director> directors = Set.of(Director.builder().id(1L).build(), Director.builder().id(2L).build());
+        var film = Film.builder().name("name").genres(genres).directors(directors).build();
+        when(referenceDataCache.getGenresById(Set.of(1L))).thenReturn(List.copyOf(genres));
+        when(referenceDataCache.getDirectorsById(Set.of(1L, 2L))).thenReturn(List.copyOf(directors));
+        var created = film.copyOf();
+        created.setId(1L);
+        when(filmStorage.createFilm(film)).thenReturn(created);
+
+        var actual = filmService.createFilm(film);
+
+        verify(filmStorage).addFilmDirectors(1L, Set.of(1L, 2L));
+        assertEquals(directors, actual.getDirectors());
+    }
+
     @Test
     void updateFilm_ifNotFound_thenReturnEmptyOptional() {
         var expected = Film.builder().id(1L).name("name").build();
@@ -97,11 +132,13 @@ class FilmServiceImplTest {
     void updateFilm_ifFounded_thenReturnUpdatedOptional() {
         var expected = Film.builder().id(1L).name("name").build();
         when(filmStorage.updateFilm(expected)).thenReturn(Optional.of(expected));
-        when(filmStorage.getFilmById(expected.getId())).thenReturn(Optional.of(expected));
 
         var actual = filmService.updateFilm(expected);
 
         verify(filmStorage).updateFilm(expected);
+        verify(filmStorage).setFilmGenres(1L, Set.of());
+        verify(filmStorage).setFilmDirectors(1L, Set.of());
+        verify(filmStorage, never()).getFilmById(anyLong());
         assertNotNull(actual);
         assertTrue(actual.isPresent());
         assertSame(expected, actual.get());
@@ -147,10 +184,10 @@ class FilmServiceImplTest {
         final long userId = 2L;
         final Film film = Film.builder().id(filmId).name("name").build();
         when(filmStorage.getFilmById(filmId)).thenReturn(Optional.of(film));
-        when(userStorage.getUserById(userId)).thenReturn(Optional.empty());
+        when(userStorage.existsUser(userId)).thenReturn(false);
 
         assertThrows(NotFoundException.class, () -> filmService.likeFilm(filmId, userId));
-        verify(userStorage).getUserById(userId);
+        verify(userStorage).existsUser(userId);
     }
 
     @Test
@@ -158,16 +195,18 @@ class FilmServiceImplTest {
         final long filmId = 1L;
         final long userId = 2L;
         final Film film = Film.builder().id(filmId).name("filmname").build();
-        final Film expected = Film.builder().id(filmId).name("filmname").likes(Set.of(userId)).build();
-        final User user = User.builder().id(userId).name("username").build();
+        final Film expected = Film.builder().id(filmId).name("filmname").likeCount(1).build();
         when(filmStorage.getFilmById(filmId)).thenReturn(Optional.of(film));
-        when(userStorage.getUserById(userId)).thenReturn(Optional.of(user));
+        when(userStorage.existsUser(userId)).thenReturn(true);
+        when(filmStorage.createFilmLike(filmId, userId)).thenReturn(true);
 
         Film result = filmService.likeFilm(filmId, userId);
 
         verify(filmStorage).getFilmById(filmId);
-        verify(userStorage).getUserById(userId);
+        verify(userStorage).existsUser(userId);
         verify(filmStorage).createFilmLike(filmId, userId);
+        verify(eventPublisher).publishEvent(new FilmLikeChangedEvent(filmId, userId, Operation.ADD));
+        verify(feedOutbox).stage(userId, filmId, EventType.LIKE, Operation.ADD);
         assertNotNull(result);
         assertEquals(expected, result);
     }
@@ -189,11 +228,11 @@ class FilmServiceImplTest {
         final long userId = 2L;
         final Film film = Film.builder().id(filmId).name("name").build();
         when(filmStorage.getFilmById(filmId)).thenReturn(Optional.of(film));
-        when(userStorage.getUserById(userId)).thenReturn(Optional.empty());
+        when(userStorage.existsUser(userId)).thenReturn(false);
 
         assertThrows(NotFoundException.class, () -> filmService.unlikeFilm(filmId, userId));
 
-        verify(userStorage).getUserById(userId);
+        verify(userStorage).existsUser(userId);
     }
 
     @Test
@@ -201,53 +240,75 @@ class FilmServiceImplTest {
         final long filmId = 1L;
         final long userId = 2L;
         final Film film = Film.builder().id(filmId).name("filmname").build();
-        film.addLike(userId);
+        film.setLikeCount(1);
         final Film expected = Film.builder().id(filmId).name("filmname").build();
-        final User user = User.builder().id(userId).name("username").build();
         when(filmStorage.getFilmById(filmId)).thenReturn(Optional.of(film));
-        when(userStorage.getUserById(userId)).thenReturn(Optional.of(user));
+        when(userStorage.existsUser(userId)).thenReturn(true);
+        when(filmStorage.removeFilmLike(filmId, userId)).thenReturn(true);
 
         Film result = filmService.unlikeFilm(filmId, userId);
 
         verify(filmStorage).getFilmById(filmId);
-        verify(userStorage).getUserById(userId);
+        verify(userStorage).existsUser(userId);
         verify(filmStorage).removeFilmLike(filmId, userId);
+        verify(eventPublisher).publishEvent(new FilmLikeChangedEvent(filmId, userId, Operation.REMOVE));
         assertNotNull(result);
         assertEquals(expected, result);
     }
 
     @Test
     void getMostPopularFilms_ifNotFound_thenReturnEmptyList() {
-        when(filmStorage.getMostPopularFilms(10, null, null)).thenReturn(new ArrayList<>());
+        when(popularityIndex.getMostPopularFilmIds(10, null, null)).thenReturn(new ArrayList<>());
 
         List<Film> actual = filmService.getMostPopularFilms(10, null, null);
 
-        verify(filmStorage).getMostPopularFilms(10, null, null);
+        verify(popularityIndex).getMostPopularFilmIds(10, null, null);
+        verify(filmStorage, never()).getFilmsByIds(any());
         assertNotNull(actual);
         assertTrue(actual.isEmpty());
     }
 
     @Test
-    void getMostPopularFilms_ifFounded_thenReturnFoundedList() {
-        List<Film> expected = List.of(
-                Film.builder().id(1L).build(),
-                Film.builder().id(2L).build()
-        );
-        when(filmStorage.getMostPopularFilms(10, null, null)).thenReturn(expected);
+    void getMostPopularFilms_ifFounded_thenReturnFoundedListInIndexOrder() {
+        Film first = Film.builder().id(2L).build();
+        Film second = Film.builder().id(1L).build();
+        when(popularityIndex.getMostPopularFilmIds(10, null, null)).thenReturn(List.of(2L, 1L));
+        when(filmStorage.getFilmsByIds(Set.of(1L, 2L))).thenReturn(List.of(second, first));
 
         List<Film> actual = filmService.getMostPopularFilms(10, null, null);
 
-        verify(filmStorage).getMostPopularFilms(10, null, null);
-        assertSame(expected, actual);
+        verify(popularityIndex).getMostPopularFilmIds(10, null, null);
+        assertEquals(List.of(first, second), actual);
+    }
+
+    @Test
+    void getSimilarFilms_ifFilmNotFound_thenThrowNotFoundException() {
+        when(filmStorage.existsFilm(1L)).thenReturn(false);
+
+        assertThrows(NotFoundException.class, () -> filmService.getSimilarFilms(1L, 10));
+        verify(coLikeMatrix, never()).getSimilarFilmIds(anyLong(), anyInt());
+    }
+
+    @Test
+    void getSimilarFilms_ifFounded_thenReturnFoundedListInMatrixOrder() {
+        Film first = Film.builder().id(3L).build();
+        Film second = Film.builder().id(2L).build();
+        when(filmStorage.existsFilm(1L)).thenReturn(true);
+        when(coLikeMatrix.getSimilarFilmIds(1L, 10)).thenReturn(List.of(3L, 2L));
+        when(filmStorage.getFilmsByIds(Set.of(2L, 3L))).thenReturn(List.of(second, first));
+
+        List<Film> actual = filmService.getSimilarFilms(1L, 10);
+
+        assertEquals(List.of(first, second), actual);
     }
 
     @Test
     void getGenreById_ifNotFound_thenReturnEmptyOptional() {
-        when(genreStorage.getGenreById(1L)).thenReturn(Optional.empty());
+        when(referenceDataCache.getGenreById(1L)).thenReturn(Optional.empty());
 
         var actual = filmService.getGenreById(1L);
 
-        verify(genreStorage).getGenreById(1L);
+        verify(referenceDataCache).getGenreById(1L);
         assertNotNull(actual);
         assertTrue(actual.isEmpty());
     }
@@ -255,11 +316,11 @@ class FilmServiceImplTest {
     @Test
     void getGenreById_ifFounded_thenReturnFoundedOptional() {
         var expected = Genre.builder().id(1L).name("name").build();
-        when(genreStorage.getGenreById(1L)).thenReturn(Optional.of(expected));
+        when(referenceDataCache.getGenreById(1L)).thenReturn(Optional.of(expected));
 
         var actual = filmService.getGenreById(1L);
 
-        verify(genreStorage).getGenreById(1L);
+        verify(referenceDataCache).getGenreById(1L);
         assertNotNull(actual);
         assertTrue(actual.isPresent());
         assertSame(expected, actual.get());
@@ -267,11 +328,11 @@ class FilmServiceImplTest {
 
     @Test
     void getGenres_ifNotFound_thenReturnEmptyList() {
-        when(genreStorage.getAllGenres()).thenReturn(new ArrayList<>());
+        when(referenceDataCache.getAllGenres()).thenReturn(new ArrayList<>());
 
         var actual = filmService.getGenres();
 
-        verify(genreStorage).getAllGenres();
+        verify(referenceDataCache).getAllGenres();
         assertNotNull(actual);
         assertTrue(actual.isEmpty());
     }
@@ -279,11 +340,11 @@ class FilmServiceImplTest {
     @Test
     void getGenres_ifFounded_thenReturnFounded() {
         var expected = Genre.builder().id(1L).name("name").build();
-        when(genreStorage.getAllGenres()).thenReturn(List.of(expected));
+        when(referenceDataCache.getAllGenres()).thenReturn(List.of(expected));
 
         var actual = filmService.getGenres();
 
-        verify(genreStorage).getAllGenres();
+        verify(referenceDataCache).getAllGenres();
         assertNotNull(actual);
         assertEquals(1, actual.size());
         assertSame(expected, actual.get(0));
@@ -294,11 +355,11 @@ class FilmServiceImplTest {
         final long userId = 1L;
         final long friendId = 2L;
         final Film film = Film.builder().id(1L).name("name").build();
-        when(userStorage.getUserById(userId)).thenReturn(Optional.empty());
+        when(userStorage.existsUser(userId)).thenReturn(false);
 
         assertThrows(NotFoundException.class, () -> filmService.getCommonFilms(userId, friendId));
 
-        verify(userStorage).getUserById(userId);
+        verify(userStorage).existsUser(userId);
     }
 
     @Test
@@ -306,40 +367,32 @@ class FilmServiceImplTest {
         final long userId = 1L;
         final long friendId = 2L;
         final Film film = Film.builder().id(1L).name("name").build();
-        when(userStorage.getUserById(userId)).thenReturn(Optional.of(User.builder().id(userId).build()));
-        when(userStorage.getUserById(friendId)).thenReturn(Optional.empty());
+        when(userStorage.existsUser(userId)).thenReturn(true);
+        when(userStorage.existsUser(friendId)).thenReturn(false);
 
         assertThrows(NotFoundException.class, () -> filmService.getCommonFilms(userId, friendId));
 
-        verify(userStorage).getUserById(friendId);
+        verify(userStorage).existsUser(friendId);
     }
 
     @Test
-    void getCommonFilms_returnCommonFilmsSortedByLikesDesc() {
+    void getCommonFilms_ifUsersFound_thenReturnCommonFilmsFromStorage() {
         final long userId = 1L;
         final long friendId = 2L;
-        final Film film = Film.builder().id(1L).name("name").build();
-        when(userStorage.getUserById(userId)).thenReturn(Optional.of(User.builder().id(userId).build()));
-        when(userStorage.getUserById(friendId)).thenReturn(Optional.of(User.builder().id(friendId).build()));
-        when(filmStorage.getUserFilmLikes(userId)).thenReturn(Set.of(1L, 2L, 3L));
-        when(filmStorage.getUserFilmLikes(friendId)).thenReturn(Set.of(2L, 3L, 4L));
-        when(filmStorage.getFilmsByIds(Set.of(2L, 3L))).thenReturn(List.of(
-                Film.builder().id(2L).build(),
-                Film.builder().id(3L).likes(Set.of(2L)).build()
-        ));
+        final List<Film> expected = List.of(
+                Film.builder().id(3L).likeCount(1).build(),
+                Film.builder().id(2L).build()
+        );
+        when(userStorage.existsUser(userId)).thenReturn(true);
+        when(userStorage.existsUser(friendId)).thenReturn(true);
+        when(filmStorage.getCommonFilms(userId, friendId)).thenReturn(expected);
 
         List<Film> actual = filmService.getCommonFilms(userId, friendId);
 
-        verify(userStorage).getUserById(userId);
-        verify(userStorage).getUserById(friendId);
-        verify(filmStorage).getUserFilmLikes(userId);
-        verify(filmStorage).getUserFilmLikes(friendId);
-        verify(filmStorage).getFilmsByIds(Set.of(2L, 3L));
-
-        assertNotNull(actual);
-        assertEquals(2, actual.size());
-        assertEquals(3L, actual.get(0).getId());
-        assertEquals(2L, actual.get(1).getId());
+        verify(userStorage).existsUser(userId);
+        verify(userStorage).existsUser(friendId);
+        verify(filmStorage).getCommonFilms(userId, friendId);
+        assertSame(expected, actual);
     }
 
     @Test
@@ -366,4 +419,30 @@ class FilmServiceImplTest {
         verify(filmStorage).getFilmById(filmId);
         verify(filmStorage, never()).deleteFilmById(anyLong());
     }
-}
\ No newline at end of file
+
+    @Test
+    void submitFilmLikes_checksIdsWithOneQueryPerTable() {
+        List<FilmLikeOperation> operations = List.of(
+                new FilmLikeOperation(1L, 1L, Operation.ADD),
+                new FilmLikeOperation(2L, 1L, Operation.REMOVE));
+        when(filmStorage.existingIds(Set.of(1L, 2L))).thenReturn(Set.of(1L, 2L));
+        when(userStorage.existingIds(Set.of(1L))).thenReturn(Set.of(1L));
+
+        filmService.submitFilmLikes(operations);
+
+        verify(filmLikeBuffer).submit(operations);
+        verify(filmStorage, never()).existsFilm(anyLong());
+        verify(userStorage, never()).existsUser(anyLong());
+    }
+
+    @Test
+    void submitFilmLikes_ifUnknownIds_thenThrowNotFoundException() {
+        when(filmStorage.existingIds(Set.of(1L, 100L))).thenReturn(Set.of(1L));
+
+        assertThrows(NotFoundException.class, () -> filmService.submitFilmLikes(List.of(
+                new FilmLikeOperation(1L, 1L, Operation.ADD),
+                new FilmLikeOperation(100L, 1L, Operation.ADD))));
+
+        verify(filmLikeBuffer, never()).submit(anyList());
+    }
+}
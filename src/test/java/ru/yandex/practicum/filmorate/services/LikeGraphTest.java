@@ -0,0 +1,61 @@
+package ru.yandex.practicum.filmorate.services;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.models.FilmLike;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LikeGraphTest {
+
+    @Test
+    void of_buildsSortedRowsInBothDirections() {
+        LikeGraph graph = LikeGraph.of(List.of(
+                new FilmLike(30L, 2L), new FilmLike(10L, 2L), new FilmLike(20L, 1L),
+                new FilmLike(10L, 1L), new FilmLike(10L, 5L)));
+
+        assertEquals(3, graph.userCount());
+        assertEquals(3, graph.filmCount());
+        assertEquals(5, graph.likeCount());
+        int user = graph.userIndex(2L);
+        assertEquals(2, graph.userDegree(user));
+        assertEquals(10L, graph.filmId(graph.userFilmAt(graph.userFilmsStart(user))));
+        assertEquals(30L, graph.filmId(graph.userFilmAt(graph.userFilmsEnd(user) - 1)));
+        int film = graph.filmIndex(10L);
+        assertEquals(3, graph.filmUsersEnd(film) - graph.filmUsersStart(film));
+        assertTrue(graph.containsLike(graph.userIndex(5L), film));
+        assertFalse(graph.containsLike(graph.userIndex(5L), graph.filmIndex(20L)));
+        assertEquals(-1, graph.userIndex(3L));
+        assertEquals(-1, graph.filmIndex(40L));
+    }
+
+    @Test
+    void countCommonFilms_intersectsUserRows() {
+        LikeGraph graph = LikeGraph.of(List.of(
+                new FilmLike(1L, 1L), new FilmLike(2L, 1L), new FilmLike(3L, 1L),
+                new FilmLike(2L, 2L), new FilmLike(3L, 2L), new FilmLike(4L, 2L)));
+        int user = graph.userIndex(1L);
+        int other = graph.userIndex(2L);
+
+        assertEquals(2, graph.countCommonFilms(user, other));
+        assertEquals(2, graph.countCommonFilms(other, user));
+    }
+
+    @Test
+    void intersectionSize_mergesSortedRanges() {
+        int[] a = {0, 1, 3, 5, 8, 9};
+        int[] b = {2, 3, 4, 5, 9, 10};
+
+        assertEquals(3, LikeGraph.intersectionSize(a, 0, a.length, b, 0, b.length));
+        assertEquals(1, LikeGraph.intersectionSize(a, 0, 3, b, 0, 3));
+    }
+
+    @Test
+    void empty_hasNoUsersAndFilms() {
+        assertEquals(0, LikeGraph.EMPTY.userCount());
+        assertEquals(-1, LikeGraph.EMPTY.userIndex(1L));
+    }
+}
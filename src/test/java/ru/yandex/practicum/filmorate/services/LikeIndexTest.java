@@ -0,0 +1,185 @@
+package ru.yandex.practicum.filmorate.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.yandex.practicum.filmorate.models.Film;
+import ru.yandex.practicum.filmorate.models.FilmChangedEvent;
+import ru.yandex.practicum.filmorate.models.FilmLike;
+import ru.yandex.practicum.filmorate.models.FilmLikeChangedEvent;
+import ru.yandex.practicum.filmorate.models.Operation;
+import ru.yandex.practicum.filmorate.models.UserDeletedEvent;
+import ru.yandex.practicum.filmorate.storages.FilmStorage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class LikeIndexTest {
+    @Mock
+    private FilmStorage filmStorage;
+
+    @InjectMocks
+    private LikeIndex likeIndex;
+
+    @BeforeEach
+    void setUp() {
+        when(filmStorage.getAllFilmLikes()).thenReturn(List.of(
+                new FilmLike(1L, 1L), new FilmLike(2L, 1L),
+                new FilmLike(1L, 2L), new FilmLike(2L, 2L),
+                new FilmLike(2L, 3L), new FilmLike(3L, 4L)));
+        likeIndex.rebuild();
+    }
+
+    @Test
+    void countCommonFilms_countsOnlyUsersWithCommonLikes() {
+        assertEquals(Set.of(1L, 2L), likeIndex.getUserFilms(1L));
+        assertEquals(Map.of(2L, 2, 3L, 1), overlaps(1L));
+        assertTrue(overlaps(100L).isEmpty());
+    }
+
+    @Test
+    void onFilmLikeChanged_updatesBothDirections() {
+        likeIndex.onFilmLikeChanged(new FilmLikeChangedEvent(3L, 1L, Operation.ADD));
+        likeIndex.onFilmLikeChanged(new FilmLikeChangedEvent(2L, 3L, Operation.REMOVE));
+
+        assertEquals(Map.of(2L, 2, 4L, 1), overlaps(1L));
+    }
+
+    @Test
+    void onFilmLikeChanged_ifEarlierChangeArrivesLate_thenSkipped() {
+        FilmLikeChangedEvent like = new FilmLikeChangedEvent(3L, 1L, Operation.ADD);
+        FilmLikeChangedEvent unlike = new FilmLikeChangedEvent(3L, 1L, Operation.REMOVE);
+
+        likeIndex.onFilmLikeChanged(unlike);
+        likeIndex.onFilmLikeChanged(like);
+
+        assertEquals(Set.of(1L, 2L), likeIndex.getUserFilms(1L));
+    }
+
+    @Test
+    void onFilmChangedAndUserDeleted_dropLikes() {
+        likeIndex.onFilmChanged(new FilmChangedEvent(Film.builder().id(1L).build(), Operation.REMOVE));
+        likeIndex.onUserDeleted(new UserDeletedEvent(3L, Set.of()));
+
+        assertEquals(Set.of(2L), likeIndex.getUserFilms(1L));
+        assertEquals(Map.of(2L, 1), overlaps(1L));
+    }
+
+    @Test
+    void getTopNeighboursAndCountCommonFilms_withAndWithoutPendingChanges() {
+        assertEquals(List.of(2L, 3L), likeIndex.getTopNeighbours(1L, 2));
+        assertEquals(List.of(2L), likeIndex.getTopNeighbours(1L, 1));
+        assertEquals(2, likeIndex.countCommonFilms(1L, 2L));
+        assertEquals(1, likeIndex.countCommonFilms(1L, 3L));
+
+        // пользователь 5 появился после построения графа
+        likeIndex.onFilmLikeChanged(new FilmLikeChangedEvent(1L, 5L, Operation.ADD));
+        likeIndex.onFilmLikeChanged(new FilmLikeChangedEvent(2L, 5L, Operation.ADD));
+        likeIndex.onFilmLikeChanged(new FilmLikeChangedEvent(1L, 2L, Operation.REMOVE));
+
+        assertEquals(List.of(5L, 2L, 3L), likeIndex.getTopNeighbours(1L, 5));
+        assertEquals(1, likeIndex.countCommonFilms(1L, 2L));
+        assertEquals(2, likeIndex.countCommonFilms(5L, 1L));
+        assertEquals(Set.of(1L, 2L, 3L, 4L, 5L), likeIndex.getUserIds());
+    }
+
+    @Test
+    void randomChanges_matchPlainSetsAcrossCompactions() {
+        Random random = new Random(3);
+        Map<Long, Set<Long>> expected = new HashMap<>();
+        List<FilmLike> initial = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            long filmId = random.nextInt(100) + 1;
+            long userId = random.nextInt(100) + 1;
+            if (expected.computeIfAbsent(userId, id -> new HashSet<>()).add(filmId)) {
+                initial.add(new FilmLike(filmId, userId));
+            }
+        }
+        when(filmStorage.getAllFilmLikes()).thenReturn(initial);
+        likeIndex.rebuild();
+
+        for (int i = 0; i < 3000; i++) {
+            long filmId = random.nextInt(100) + 1;
+            long userId = random.nextInt(120) + 1;
+            Operation operation = random.nextBoolean() ? Operation.ADD : Operation.REMOVE;
+            likeIndex.onFilmLikeChanged(new FilmLikeChangedEvent(filmId, userId, operation));
+            if (operation == Operation.ADD) {
+                expected.computeIfAbsent(userId, id -> new HashSet<>()).add(filmId);
+            } else {
+                expected.getOrDefault(userId, new HashSet<>()).remove(filmId);
+            }
+        }
+        expected.values().removeIf(Set::isEmpty);
+
+        assertEquals(expected.keySet(), likeIndex.getUserIds());
+        for (long userId = 1; userId <= 120; userId++) {
+            Set<Long> films = expected.getOrDefault(userId, Set.of());
+            assertEquals(films, likeIndex.getUserFilms(userId));
+            Map<Long, Integer> overlaps = new HashMap<>();
+            for (Map.Entry<Long, Set<Long>> other : expected.entrySet()) {
+                Set<Long> common = new HashSet<>(other.getValue());
+                common.retainAll(films);
+                if (other.getKey() != userId && !common.isEmpty()) {
+                    overlaps.put(other.getKey(), common.size());
+                }
+            }
+            assertEquals(overlaps, overlaps(userId), "Пользователь " + userId);
+            assertEquals(topNeighbours(overlaps, 3), likeIndex.getTopNeighbours(userId, 3), "Пользователь " + userId);
+        }
+    }
+
+    @Test
+    void scratch_sparseCountsLikeDense() {
+        LikeIndex.Scratch dense = new LikeIndex.Scratch(true);
+        LikeIndex.Scratch sparse = new LikeIndex.Scratch(false);
+        dense.ensureCapacity(10);
+        sparse.ensureCapacity(10);
+        for (int user : new int[]{0, 3, 3, 9, 0, 3}) {
+            dense.increment(user);
+            sparse.increment(user);
+        }
+
+        Map<Long, Integer> expected = new HashMap<>();
+        dense.forEach(expected::put);
+        Map<Long, Integer> actual = new HashMap<>();
+        sparse.forEach(actual::put);
+
+        assertEquals(Map.of(0L, 2, 3L, 3, 9L, 1), expected);
+        assertEquals(expected, actual);
+    }
+
+    // количество общих лайков с каждым пользователем, у которого они есть
+    private Map<Long, Integer> overlaps(long userId) {
+        Map<Long, Integer> overlaps = new HashMap<>();
+        for (Long otherId : likeIndex.getUserIds()) {
+            int common = likeIndex.countCommonFilms(userId, otherId);
+            if (otherId != userId && common > 0) {
+                overlaps.put(otherId, common);
+            }
+        }
+        return overlaps;
+    }
+
+    private static List<Long> topNeighbours(Map<Long, Integer> overlaps, int limit) {
+        return overlaps.entrySet().stream()
+                .sorted(Map.Entry.<Long, Integer>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+}
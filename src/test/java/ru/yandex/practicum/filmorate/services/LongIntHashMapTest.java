@@ -0,0 +1,55 @@
+package ru.yandex.practicum.filmorate.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LongIntHashMapTest {
+
+    @Test
+    void addTo_removesKeyWhenValueBecomesZero() {
+        LongIntHashMap map = new LongIntHashMap();
+
+        assertEquals(1, map.addTo(5L, 1));
+        assertEquals(3, map.addTo(5L, 2));
+        assertEquals(0, map.addTo(5L, -3));
+
+        assertEquals(0, map.size());
+        assertEquals(0, map.get(5L));
+    }
+
+    @Test
+    void addTo_ifZeroKey_thenThrowIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> new LongIntHashMap().addTo(0L, 1));
+    }
+
+    @Test
+    void randomOperations_matchHashMap() {
+        Random random = new Random(7);
+        LongIntHashMap map = new LongIntHashMap();
+        Map<Long, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 20_000; i++) {
+            long key = random.nextInt(500) + 1;
+            if (random.nextInt(4) == 0) {
+                map.remove(key);
+                expected.remove(key);
+            } else {
+                int delta = random.nextInt(3) - 1;
+                map.addTo(key, delta);
+                expected.merge(key, delta, Integer::sum);
+                expected.remove(key, 0);
+            }
+        }
+
+        Map<Long, Integer> actual = new HashMap<>();
+        map.forEach(actual::put);
+        assertEquals(expected, actual);
+        assertEquals(expected.size(), map.size());
+        expected.forEach((key, value) -> assertEquals(value, map.get(key)));
+    }
+}
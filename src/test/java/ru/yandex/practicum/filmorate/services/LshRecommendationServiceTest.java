@@ -0,0 +1,132 @@
+package ru.yandex.practicum.filmorate.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.models.Film;
+import ru.yandex.practicum.filmorate.models.FilmLike;
+import ru.yandex.practicum.filmorate.storages.FilmStorage;
+import ru.yandex.practicum.filmorate.storages.UserStorage;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.when;
+
+@Slf4j
+@ExtendWith(MockitoExtension.class)
+class LshRecommendationServiceTest {
+    private static final int USERS = 3000;
+    private static final int CLUSTERS = 60;
+    private static final int CLUSTER_FILMS = 50;
+    private static final int CLUSTER_LIKES = 12;
+    private static final int RANDOM_LIKES = 3;
+
+    @Mock
+    private FilmStorage filmStorage;
+
+    @Mock
+    private UserStorage userStorage;
+
+    @Test
+    void getRecommendations_ifUserNotFound_thenThrowNotFoundException() {
+        LikeIndex likeIndex = new LikeIndex(filmStorage);
+        LshRecommendationService service = new LshRecommendationService(filmStorage, userStorage, likeIndex,
+                new MinHashIndex(likeIndex, 64, 2));
+        when(userStorage.existsUser(anyLong())).thenReturn(false);
+
+        assertThrows(NotFoundException.class, () -> service.getRecommendations(1L));
+    }
+
+    @Test
+    void getRecommendations_scoresOnlyLshCandidates() {
+        Film expected = Film.builder().id(3L).build();
+        when(userStorage.existsUser(anyLong())).thenReturn(true);
+        when(filmStorage.getAllFilmLikes()).thenReturn(List.of(
+                new FilmLike(1L, 1L), new FilmLike(2L, 1L),
+                new FilmLike(1L, 2L), new FilmLike(2L, 2L), new FilmLike(3L, 2L)));
+        when(filmStorage.getFilmsByIds(Set.of(3L))).thenReturn(List.of(expected));
+        LikeIndex likeIndex = new LikeIndex(filmStorage);
+        LshRecommendationService service = new LshRecommendationService(filmStorage, userStorage, likeIndex,
+                new MinHashIndex(likeIndex, 64, 2));
+
+        assertEquals(List.of(expected), service.getRecommendations(1L));
+    }
+
+    /**
+     * Полнота приближённых рекомендаций относительно точных на синтетических данных:
+     * пользователи разбиты на группы со своим набором фильмов и лайкают в основном фильмы группы.
+     * Полнота по пользователю - доля фильмов точного результата, найденных приближённо.
+     * Таблица в логе помогает подобрать bands и rows, проверяются значения по умолчанию.
+     */
+    @Test
+    void recallAgainstExactRecommendations() {
+        when(filmStorage.getAllFilmLikes()).thenReturn(generateLikes());
+        LikeIndex likeIndex = new LikeIndex(filmStorage);
+        SimpleRecommendationService exact = new SimpleRecommendationService(filmStorage, userStorage, likeIndex);
+        List<Set<Long>> expected = new ArrayList<>();
+        for (long userId = 1; userId <= USERS; userId++) {
+            expected.add(exact.getRecommendedFilmIds(userId));
+        }
+
+        double defaultRecall = 0;
+        int[][] configs = {{16, 1}, {32, 2}, {64, 2}, {128, 2}, {64, 3}};
+        for (int[] config : configs) {
+            MinHashIndex minHashIndex = new MinHashIndex(likeIndex, config[0], config[1]);
+            LshRecommendationService approximate =
+                    new LshRecommendationService(filmStorage, userStorage, likeIndex, minHashIndex);
+            double recallSum = 0;
+            long candidates = 0;
+            int measured = 0;
+            long started = System.nanoTime();
+            for (long userId = 1; userId <= USERS; userId++) {
+                Set<Long> exactIds = expected.get((int) userId - 1);
+                Set<Long> found = approximate.getRecommendedFilmIds(userId);
+                candidates += minHashIndex.getCandidates(userId).size();
+                if (exactIds.isEmpty()) {
+                    continue;
+                }
+                found.retainAll(exactIds);
+                recallSum += (double) found.size() / exactIds.size();
+                measured++;
+            }
+            double recall = recallSum / measured;
+            log.info("bands={} rows={}: полнота {}, кандидатов на пользователя {}, {} мс",
+                    config[0], config[1], String.format("%.3f", recall), candidates / USERS,
+                    (System.nanoTime() - started) / 1_000_000);
+            if (config[0] == 64 && config[1] == 2) {
+                defaultRecall = recall;
+            }
+        }
+        assertTrue(defaultRecall >= 0.9, "Полнота при настройках по умолчанию: " + defaultRecall);
+    }
+
+    private static List<FilmLike> generateLikes() {
+        final Random random = new Random(42);
+        final List<FilmLike> likes = new ArrayList<>();
+        for (long userId = 1; userId <= USERS; userId++) {
+            int cluster = random.nextInt(CLUSTERS);
+            Set<Long> films = new HashSet<>();
+            while (films.size() < CLUSTER_LIKES) {
+                films.add((long) cluster * CLUSTER_FILMS + random.nextInt(CLUSTER_FILMS) + 1);
+            }
+            for (int i = 0; i < RANDOM_LIKES; i++) {
+                films.add((long) random.nextInt(CLUSTERS * CLUSTER_FILMS) + 1);
+            }
+            for (Long filmId : films) {
+                likes.add(new FilmLike(filmId, userId));
+            }
+        }
+        return likes;
+    }
+}
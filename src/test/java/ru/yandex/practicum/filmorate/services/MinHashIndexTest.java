@@ -0,0 +1,89 @@
+package ru.yandex.practicum.filmorate.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.annotation.Order;
+import ru.yandex.practicum.filmorate.models.FilmLike;
+import ru.yandex.practicum.filmorate.models.FilmLikeChangedEvent;
+import ru.yandex.practicum.filmorate.models.Operation;
+import ru.yandex.practicum.filmorate.models.UserDeletedEvent;
+import ru.yandex.practicum.filmorate.storages.FilmStorage;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.lenient;
+
+@ExtendWith(MockitoExtension.class)
+class MinHashIndexTest {
+    @Mock
+    private FilmStorage filmStorage;
+
+    private LikeIndex likeIndex;
+    private MinHashIndex minHashIndex;
+
+    @BeforeEach
+    void setUp() {
+        // пользователи 1 и 2 лайкали одно и то же, у пользователя 3 ничего общего с ними
+        lenient().when(filmStorage.getAllFilmLikes()).thenReturn(List.of(
+                new FilmLike(1L, 1L), new FilmLike(2L, 1L), new FilmLike(3L, 1L),
+                new FilmLike(1L, 2L), new FilmLike(2L, 2L), new FilmLike(3L, 2L),
+                new FilmLike(10L, 3L), new FilmLike(11L, 3L)));
+        likeIndex = new LikeIndex(filmStorage);
+        minHashIndex = new MinHashIndex(likeIndex, 8, 2);
+    }
+
+    @Test
+    void getCandidates_identicalLikesAlwaysCollide() {
+        assertEquals(Set.of(2L), minHashIndex.getCandidates(1L));
+        assertEquals(Set.of(1L), minHashIndex.getCandidates(2L));
+        assertEquals(Set.of(), minHashIndex.getCandidates(3L));
+        assertTrue(minHashIndex.getCandidates(100L).isEmpty());
+    }
+
+    @Test
+    void getCandidates_followsLikeAndUserEvents() {
+        minHashIndex.getCandidates(1L);
+        changeLike(1L, 3L, Operation.ADD);
+        changeLike(2L, 3L, Operation.ADD);
+        changeLike(3L, 3L, Operation.ADD);
+        changeLike(10L, 3L, Operation.REMOVE);
+        changeLike(11L, 3L, Operation.REMOVE);
+
+        assertEquals(Set.of(1L, 2L), minHashIndex.getCandidates(3L));
+
+        likeIndex.onUserDeleted(new UserDeletedEvent(2L, Set.of()));
+        minHashIndex.onUserDeleted(new UserDeletedEvent(2L, Set.of()));
+
+        assertEquals(Set.of(1L), minHashIndex.getCandidates(3L));
+    }
+
+    @Test
+    void constructor_ifInvalidBands_thenThrowIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> new MinHashIndex(likeIndex, 0, 2));
+    }
+
+    @Test
+    void listeners_runAfterLikeIndexListeners() throws Exception {
+        assertTrue(listenerOrder(LikeIndex.class, "onFilmLikeChanged", FilmLikeChangedEvent.class)
+                < listenerOrder(MinHashIndex.class, "onFilmLikeChanged", FilmLikeChangedEvent.class));
+        assertTrue(listenerOrder(LikeIndex.class, "onUserDeleted", UserDeletedEvent.class)
+                < listenerOrder(MinHashIndex.class, "onUserDeleted", UserDeletedEvent.class));
+    }
+
+    private static int listenerOrder(Class<?> type, String method, Class<?> eventType) throws Exception {
+        return type.getMethod(method, eventType).getAnnotation(Order.class).value();
+    }
+
+    private void changeLike(long filmId, long userId, Operation operation) {
+        FilmLikeChangedEvent event = new FilmLikeChangedEvent(filmId, userId, operation);
+        likeIndex.onFilmLikeChanged(event);
+        minHashIndex.onFilmLikeChanged(event);
+    }
+}
@@ -0,0 +1,183 @@
+package ru.yandex.practicum.filmorate.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.yandex.practicum.filmorate.models.Film;
+import ru.yandex.practicum.filmorate.models.FilmChangedEvent;
+import ru.yandex.practicum.filmorate.models.FilmLikeChangedEvent;
+import ru.yandex.practicum.filmorate.models.FilmPopularity;
+import ru.yandex.practicum.filmorate.models.Genre;
+import ru.yandex.practicum.filmorate.models.Operation;
+import ru.yandex.practicum.filmorate.models.UserDeletedEvent;
+import ru.yandex.practicum.filmorate.storages.FilmStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class PopularityIndexTest {
+    @Mock
+    private FilmStorage filmStorage;
+
+    @InjectMocks
+    private PopularityIndex popularityIndex;
+
+    @BeforeEach
+    void setUp() {
+        when(filmStorage.getFilmPopularity()).thenReturn(List.of(
+                new FilmPopularity(1L, 2000, 1, Set.of(1L)),
+                new FilmPopularity(2L, 2010, 2, Set.of(2L, 3L)),
+                new FilmPopularity(3L, 2015, 3, Set.of())));
+    }
+
+    @Test
+    void getMostPopularFilmIds_buildsFromStorageOnce() {
+        assertEquals(List.of(3L, 2L), popularityIndex.getMostPopularFilmIds(2, null, null));
+        assertEquals(List.of(3L, 2L, 1L), popularityIndex.getMostPopularFilmIds(10, null, null));
+
+        verify(filmStorage, times(1)).getFilmPopularity();
+    }
+
+    @Test
+    void getMostPopularFilmIds_byGenreAndYear() {
+        assertEquals(List.of(2L), popularityIndex.getMostPopularFilmIds(10, 3L, null));
+        assertEquals(List.of(2L), popularityIndex.getMostPopularFilmIds(10, null, 2010));
+        assertEquals(List.of(2L), popularityIndex.getMostPopularFilmIds(10, 3L, 2010));
+        assertTrue(popularityIndex.getMostPopularFilmIds(10, 1L, 2010).isEmpty());
+        assertTrue(popularityIndex.getMostPopularFilmIds(10, 100L, null).isEmpty());
+    }
+
+    @Test
+    void onFilmLikeChanged_reordersFilms() {
+        popularityIndex.rebuild();
+
+        popularityIndex.onFilmLikeChanged(new FilmLikeChangedEvent(1L, 5L, Operation.ADD));
+        popularityIndex.onFilmLikeChanged(new FilmLikeChangedEvent(1L, 6L, Operation.ADD));
+        popularityIndex.onFilmLikeChanged(new FilmLikeChangedEvent(3L, 1L, Operation.REMOVE));
+
+        assertEquals(List.of(1L, 2L, 3L), popularityIndex.getMostPopularFilmIds(10, null, null));
+    }
+
+    @Test
+    void onFilmChanged_movesFilmBetweenBuckets() {
+        popularityIndex.rebuild();
+        Film updated = Film.builder()
+                .id(2L)
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .genres(Set.of(Genre.builder().id(1L).build()))
+                .build();
+
+        popularityIndex.onFilmChanged(new FilmChangedEvent(updated, Operation.UPDATE));
+        popularityIndex.onFilmChanged(new FilmChangedEvent(Film.builder().id(3L).build(), Operation.REMOVE));
+
+        assertEquals(List.of(2L, 1L), popularityIndex.getMostPopularFilmIds(10, 1L, 2000));
+        assertTrue(popularityIndex.getMostPopularFilmIds(10, 3L, null).isEmpty());
+        assertEquals(List.of(2L, 1L), popularityIndex.getMostPopularFilmIds(10, null, null));
+    }
+
+    @Test
+    void onFilmLikeChanged_ifFilmMissingFromIndex_thenIndexRebuilt() {
+        popularityIndex.rebuild();
+        when(filmStorage.getFilmPopularity()).thenReturn(List.of(
+                new FilmPopularity(1L, 2000, 1, Set.of(1L)),
+                new FilmPopularity(2L, 2010, 2, Set.of(2L, 3L)),
+                new FilmPopularity(3L, 2015, 3, Set.of()),
+                new FilmPopularity(4L, 2020, 4, Set.of())));
+
+        popularityIndex.onFilmLikeChanged(new FilmLikeChangedEvent(4L, 5L, Operation.ADD));
+
+        assertEquals(List.of(4L, 3L, 2L, 1L), popularityIndex.getMostPopularFilmIds(10, null, null));
+        verify(filmStorage, times(2)).getFilmPopularity();
+    }
+
+    @Test
+    void onFilmLikeChanged_concurrentLikesAreNotLost() throws InterruptedException {
+        popularityIndex.rebuild();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Runnable> tasks = new ArrayList<>();
+        for (long userId = 100; userId < 300; userId++) {
+            final long uid = userId;
+            tasks.add(() -> popularityIndex.onFilmLikeChanged(new FilmLikeChangedEvent(1L, uid, Operation.ADD)));
+            tasks.add(() -> popularityIndex.onFilmLikeChanged(new FilmLikeChangedEvent(3L, uid, Operation.ADD)));
+            tasks.add(() -> popularityIndex.onFilmLikeChanged(new FilmLikeChangedEvent(3L, uid, Operation.REMOVE)));
+        }
+        tasks.forEach(executor::submit);
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(List.of(1L, 3L, 2L), popularityIndex.getMostPopularFilmIds(10, null, null));
+    }
+
+    @Test
+    void onUserDeleted_decrementsLikedFilmsWithoutRebuild() {
+        popularityIndex.rebuild();
+
+        popularityIndex.onUserDeleted(new UserDeletedEvent(7L, Set.of(3L, 2L)));
+
+        assertEquals(List.of(3L, 1L, 2L), popularityIndex.getMostPopularFilmIds(10, null, null));
+        verify(filmStorage, times(1)).getFilmPopularity();
+    }
+
+    @Test
+    void invalidate_duringRebuild_isNotLost() {
+        when(filmStorage.getFilmPopularity()).thenAnswer(invocation -> {
+            popularityIndex.invalidate();
+            return List.of(new FilmPopularity(1L, 2000, 1, Set.of()));
+        }).thenReturn(List.of(new FilmPopularity(1L, 2000, 5, Set.of())));
+
+        popularityIndex.rebuild();
+        popularityIndex.getMostPopularFilmIds(10, null, null);
+
+        verify(filmStorage, times(2)).getFilmPopularity();
+    }
+
+    @Test
+    void onFilmLikeChanged_committedBeforeSnapshot_isNotCountedTwice() throws Exception {
+        popularityIndex.rebuild();
+        // снимок, прочитанный после фиксации лайка, уже содержит его: у фильма 1 стало 2 лайка
+        when(filmStorage.getFilmPopularity()).thenReturn(List.of(
+                new FilmPopularity(1L, 2000, 2, Set.of(1L)),
+                new FilmPopularity(2L, 2010, 3, Set.of(2L, 3L)),
+                new FilmPopularity(3L, 2015, 1, Set.of())));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            popularityIndex.onFilmLikeChanged(new FilmLikeChangedEvent(1L, 5L, Operation.ADD));
+            List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+            synchronizations.forEach(sync -> sync.beforeCommit(false));
+
+            popularityIndex.invalidate();
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            Future<?> rebuild = executor.submit(popularityIndex::rebuild);
+            assertThrows(TimeoutException.class, () -> rebuild.get(200, TimeUnit.MILLISECONDS));
+
+            synchronizations.forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+            rebuild.get(5, TimeUnit.SECONDS);
+            executor.shutdown();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        // при двойном счёте у фильма 1 было бы 3 лайка и он обогнал бы фильм 2
+        assertEquals(List.of(2L, 1L, 3L), popularityIndex.getMostPopularFilmIds(10, null, null));
+    }
+}
@@ -0,0 +1,111 @@
+package ru.yandex.practicum.filmorate.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.models.Film;
+import ru.yandex.practicum.filmorate.models.UserDeletedEvent;
+import ru.yandex.practicum.filmorate.storages.FilmStorage;
+import ru.yandex.practicum.filmorate.storages.UserStorage;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class PrecomputedRecommendationServiceTest {
+    @Mock
+    private AbstractRecommendationService recommendationService;
+
+    @Mock
+    private FilmStorage filmStorage;
+
+    @Mock
+    private UserStorage userStorage;
+
+    @Mock
+    private LikeIndex likeIndex;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private PrecomputedRecommendationService precomputedService;
+
+    @BeforeEach
+    void setUp() {
+        precomputedService = new PrecomputedRecommendationService(
+                recommendationService, filmStorage, userStorage, likeIndex, meterRegistry, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        precomputedService.stop();
+    }
+
+    @Test
+    void refresh_computesAllUsersWithLikes() {
+        when(likeIndex.getUserIds()).thenReturn(Set.of(1L, 2L, 3L));
+        when(recommendationService.getRecommendedFilmIds(anyLong())).thenReturn(Set.of());
+        when(recommendationService.getRecommendedFilmIds(1L)).thenReturn(Set.of(5L));
+        Film expected = Film.builder().id(5L).build();
+        when(filmStorage.getFilmsByIds(Set.of(5L))).thenReturn(List.of(expected));
+
+        assertTrue(precomputedService.getLastRefreshAge().isEmpty());
+        assertTrue(Double.isNaN(meterRegistry.get("filmorate.recommendations.refresh.age").gauge().value()));
+        precomputedService.refresh();
+
+        assertTrue(precomputedService.getLastRefreshAge().isPresent());
+        assertTrue(meterRegistry.get("filmorate.recommendations.refresh.age").gauge().value() >= 0);
+        assertEquals(List.of(expected), precomputedService.getRecommendations(1L));
+        assertTrue(precomputedService.getRecommendations(2L).isEmpty());
+        verify(recommendationService, times(3)).getRecommendedFilmIds(anyLong());
+        verifyNoInteractions(userStorage);
+    }
+
+    @Test
+    void getRecommendations_ifUserNotPrecomputed_thenComputeOnDemandWithoutCaching() {
+        when(userStorage.existsUser(1L)).thenReturn(true);
+        when(recommendationService.getRecommendedFilmIds(1L)).thenReturn(Set.of());
+
+        assertTrue(precomputedService.getRecommendations(1L).isEmpty());
+        assertTrue(precomputedService.getRecommendations(1L).isEmpty());
+
+        verify(recommendationService, times(2)).getRecommendedFilmIds(1L);
+        verify(filmStorage, never()).getFilmsByIds(Set.of());
+    }
+
+    @Test
+    void getRecommendations_ifUserNotFound_thenThrowNotFoundException() {
+        when(userStorage.existsUser(anyLong())).thenReturn(false);
+
+        assertThrows(NotFoundException.class, () -> precomputedService.getRecommendations(1L));
+        verifyNoInteractions(recommendationService);
+    }
+
+    @Test
+    void onUserDeleted_dropsPrecomputedRecommendations() {
+        when(likeIndex.getUserIds()).thenReturn(Set.of(1L));
+        when(recommendationService.getRecommendedFilmIds(1L)).thenReturn(Set.of(5L));
+        when(userStorage.existsUser(1L)).thenReturn(false);
+        precomputedService.refresh();
+
+        precomputedService.onUserDeleted(new UserDeletedEvent(1L, Set.of()));
+
+        assertThrows(NotFoundException.class, () -> precomputedService.getRecommendations(1L));
+        assertFalse(precomputedService.getLastRefreshAge().isEmpty());
+    }
+}
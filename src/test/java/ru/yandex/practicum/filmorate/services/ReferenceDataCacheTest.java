@@ -0,0 +1,101 @@
+package ru.yandex.practicum.filmorate.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.yandex.practicum.filmorate.models.Director;
+import ru.yandex.practicum.filmorate.models.DirectorChangedEvent;
+import ru.yandex.practicum.filmorate.models.Genre;
+import ru.yandex.practicum.filmorate.models.Operation;
+import ru.yandex.practicum.filmorate.storages.DirectorStorage;
+import ru.yandex.practicum.filmorate.storages.GenreStorage;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ReferenceDataCacheTest {
+    private final Genre comedy = Genre.builder().id(1L).name("Комедия").build();
+    private final Genre drama = Genre.builder().id(2L).name("Драма").build();
+    private final Director director = Director.builder().id(1L).name("director").build();
+
+    @Mock
+    private GenreStorage genreStorage;
+
+    @Mock
+    private DirectorStorage directorStorage;
+
+    private ReferenceDataCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new ReferenceDataCache(genreStorage, directorStorage, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void getGenresById_servesFromMemoryAfterFirstLoad() {
+        when(genreStorage.getAllGenres()).thenReturn(List.of(drama, comedy));
+        when(directorStorage.getAllDirectors()).thenReturn(List.of(director));
+
+        assertEquals(List.of(comedy, drama), cache.getAllGenres());
+        assertEquals(Set.of(comedy, drama), Set.copyOf(cache.getGenresById(Set.of(1L, 2L))));
+        assertTrue(cache.getDirectorById(1L).isPresent());
+
+        verify(genreStorage, times(1)).getAllGenres();
+        verify(directorStorage, times(1)).getAllDirectors();
+        verifyNoMoreInteractions(genreStorage, directorStorage);
+        assertEquals(4, cache.getHitCount());
+        assertEquals(0, cache.getMissCount());
+    }
+
+    @Test
+    void getDirectorsById_loadsMissingIdsFromStorage() {
+        Director another = Director.builder().id(2L).name("another").build();
+        when(directorStorage.getAllDirectors()).thenReturn(List.of(director));
+        when(directorStorage.getDirectorsById(Set.of(2L, 3L))).thenReturn(List.of(another));
+
+        assertEquals(2, cache.getDirectorsById(Set.of(1L, 2L, 3L)).size());
+        assertEquals(1, cache.getDirectorsById(Set.of(2L)).size());
+
+        assertEquals(2, cache.getMissCount());
+        assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    void onDirectorChanged_updatesCachedDirectors() {
+        when(directorStorage.getAllDirectors()).thenReturn(List.of(director));
+        cache.getAllDirectors();
+
+        cache.onDirectorChanged(new DirectorChangedEvent(Director.builder().id(1L).name("renamed").build(),
+                Operation.UPDATE));
+        cache.onDirectorChanged(new DirectorChangedEvent(Director.builder().id(5L).name("new").build(),
+                Operation.ADD));
+        cache.onDirectorChanged(new DirectorChangedEvent(Director.builder().id(5L).build(), Operation.REMOVE));
+
+        assertEquals(List.of(Director.builder().id(1L).name("renamed").build()), cache.getAllDirectors());
+    }
+
+    @Test
+    void getDirectorsById_ifDirectorRemovedWhileLoading_thenNotCached() {
+        Director another = Director.builder().id(2L).name("another").build();
+        when(directorStorage.getAllDirectors()).thenReturn(List.of(director));
+        when(directorStorage.getDirectorsById(Set.of(2L))).thenAnswer(invocation -> {
+            cache.onDirectorChanged(new DirectorChangedEvent(another, Operation.REMOVE));
+            return List.of(another);
+        });
+
+        assertEquals(List.of(another), cache.getDirectorsById(Set.of(2L)));
+
+        assertEquals(List.of(director), cache.getAllDirectors());
+    }
+}
@@ -6,8 +6,9 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.models.EventType;
+import ru.yandex.practicum.filmorate.models.Operation;
 import ru.yandex.practicum.filmorate.models.Review;
-import ru.yandex.practicum.filmorate.models.User;
 import ru.yandex.practicum.filmorate.storages.ReviewStorage;
 import ru.yandex.practicum.filmorate.storages.UserStorage;
 
@@ -20,6 +21,7 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.never;
@@ -36,6 +38,9 @@ class ReviewServiceImplTest {
     @Mock
     private UserStorage userStorage;
 
+    @Mock
+    private FeedOutbox feedOutbox;
+
     @InjectMocks
     private ReviewServiceImpl reviewService;
 
@@ -66,12 +71,13 @@ class ReviewServiceImplTest {
 
     @Test
     void createReview_ifCreate_thenReturnCreated() {
-        var expected = Review.builder().id(1L).build();
+        var expected = Review.builder().id(1L).userId(2L).build();
         when(reviewStorage.createReview(expected)).thenReturn(expected);
 
         var actual = reviewService.createReview(expected);
 
         verify(reviewStorage).createReview(expected);
+        verify(feedOutbox).stage(2L, 1L, EventType.REVIEW, Operation.ADD);
         assertSame(expected, actual);
     }
 
@@ -83,6 +89,7 @@ class ReviewServiceImplTest {
         var actual = reviewService.updateReview(expected);
 
         verify(reviewStorage).updateReview(expected);
+        verify(feedOutbox, never()).stage(anyLong(), anyLong(), any(), any());
         assertNotNull(actual);
         assertTrue(actual.isEmpty());
     }
@@ -122,6 +129,7 @@ class ReviewServiceImplTest {
 
         verify(reviewStorage).getReviewById(1L);
         verify(reviewStorage).deleteReviewById(1L);
+        verify(feedOutbox).stage(0L, 1L, EventType.REVIEW, Operation.REMOVE);
         assertNotNull(actual);
         assertTrue(actual.isPresent());
         assertSame(expected, actual.get());
@@ -154,7 +162,7 @@ class ReviewServiceImplTest {
     @Test
     void addOrUpdateLikeReview_ifUserNotFound_thenThrowNotFoundException() {
         var expected = Review.builder().id(1L).build();
-        when(userStorage.getUserById(anyLong())).thenThrow(new NotFoundException("not found"));
+        when(userStorage.existsUser(anyLong())).thenReturn(false);
         when(reviewStorage.getReviewById(anyLong())).thenReturn(Optional.of(expected));
 
         assertThrows(NotFoundException.class, () -> reviewService.addOrUpdateLikeReview(1L, 1L));
@@ -170,13 +178,13 @@ class ReviewServiceImplTest {
     @Test
     void addOrUpdateLikeReview_ifAdded_thenReturnAdded() {
         var expected = Review.builder().id(1L).build();
-        when(userStorage.getUserById(anyLong())).thenReturn(Optional.of(User.builder().id(1L).build()));
+        when(userStorage.existsUser(anyLong())).thenReturn(true);
         when(reviewStorage.getReviewById(anyLong())).thenReturn(Optional.of(expected));
         when(reviewStorage.createReviewLike(anyLong(), anyLong())).thenReturn(1);
 
         var actual = reviewService.addOrUpdateLikeReview(1L, 1L);
 
-        verify(userStorage).getUserById(1L);
+        verify(userStorage).existsUser(1L);
         verify(reviewStorage, times(2)).getReviewById(1L);
         verify(reviewStorage).createReviewLike(1L, 1L);
         assertSame(expected, actual);
@@ -185,7 +193,7 @@ class ReviewServiceImplTest {
     @Test
     void addOrUpdateDislikeReview_ifUserNotFound_thenThrowNotFoundException() {
         var expected = Review.builder().id(1L).build();
-        when(userStorage.getUserById(anyLong())).thenThrow(new NotFoundException("not found"));
+        when(userStorage.existsUser(anyLong())).thenReturn(false);
         when(reviewStorage.getReviewById(anyLong())).thenReturn(Optional.of(expected));
 
         assertThrows(NotFoundException.class, () -> reviewService.addOrUpdateDislikeReview(1L, 1L));
@@ -201,13 +209,13 @@ class ReviewServiceImplTest {
     @Test
     void addOrUpdateDislikeReview_ifAdded_thenReturnAdded() {
         var expected = Review.builder().id(1L).build();
-        when(userStorage.getUserById(anyLong())).thenReturn(Optional.of(User.builder().id(1L).build()));
+        when(userStorage.existsUser(anyLong())).thenReturn(true);
         when(reviewStorage.getReviewById(anyLong())).thenReturn(Optional.of(expected));
         when(reviewStorage.createReviewDislike(anyLong(), anyLong())).thenReturn(1);
 
         var actual = reviewService.addOrUpdateDislikeReview(1L, 1L);
 
-        verify(userStorage).getUserById(1L);
+        verify(userStorage).existsUser(1L);
         verify(reviewStorage, times(2)).getReviewById(1L);
         verify(reviewStorage).createReviewDislike(1L, 1L);
         assertSame(expected, actual);
@@ -216,7 +224,7 @@ class ReviewServiceImplTest {
     @Test
     void deleteLikeReview_ifUserNotFound_thenThrowNotFoundException() {
         var expected = Review.builder().id(1L).build();
-        when(userStorage.getUserById(anyLong())).thenThrow(new NotFoundException("not found"));
+        when(userStorage.existsUser(anyLong())).thenReturn(false);
         when(reviewStorage.getReviewById(anyLong())).thenReturn(Optional.of(expected));
 
         assertThrows(NotFoundException.class, () -> reviewService.deleteLikeReview(1L, 1L));
@@ -225,12 +233,12 @@ class ReviewServiceImplTest {
     @Test
     void deleteLikeReview_ifLikeNotFound_thenThrowNotFoundException() {
         var expected = Review.builder().id(1L).build();
-        when(userStorage.getUserById(anyLong())).thenReturn(Optional.of(User.builder().id(1L).build()));
+        when(userStorage.existsUser(anyLong())).thenReturn(true);
         when(reviewStorage.getReviewById(anyLong())).thenReturn(Optional.of(expected));
         when(reviewStorage.deleteLikeReview(anyLong(), anyLong())).thenReturn(false);
 
         assertThrows(NotFoundException.class, () -> reviewService.deleteLikeReview(1L, 1L));
-        verify(userStorage).getUserById(1L);
+        verify(userStorage).existsUser(1L);
         verify(reviewStorage).getReviewById(1L);
         verify(reviewStorage).deleteLikeReview(1L, 1L);
     }
@@ -246,13 +254,13 @@ class ReviewServiceImplTest {
     @Test
     void deleteLikeReview_ifDelete_thenReturnDeleted() {
         var expected = Review.builder().id(1L).build();
-        when(userStorage.getUserById(anyLong())).thenReturn(Optional.of(User.builder().id(1L).build()));
+        when(userStorage.existsUser(anyLong())).thenReturn(true);
         when(reviewStorage.getReviewById(anyLong())).thenReturn(Optional.of(expected));
         when(reviewStorage.deleteLikeReview(anyLong(), anyLong())).thenReturn(true);
 
         var actual = reviewService.deleteLikeReview(1L, 1L);
 
-        verify(userStorage).getUserById(1L);
+        verify(userStorage).existsUser(1L);
         verify(reviewStorage, times(2)).getReviewById(1L);
         verify(reviewStorage).deleteLikeReview(1L, 1L);
         assertSame(expected, actual);
@@ -261,7 +269,7 @@ class ReviewServiceImplTest {
     @Test
     void deleteDislikeReview_ifUserNotFound_thenThrowNotFoundException() {
         var expected = Review.builder().id(1L).build();
-        when(userStorage.getUserById(anyLong())).thenThrow(new NotFoundException("not found"));
+        when(userStorage.existsUser(anyLong())).thenReturn(false);
         when(reviewStorage.getReviewById(anyLong())).thenReturn(Optional.of(expected));
 
         assertThrows(NotFoundException.class, () -> reviewService.deleteDislikeReview(1L, 1L));
@@ -277,12 +285,12 @@ class ReviewServiceImplTest {
     @Test
     void deleteDislikeReview_ifLikeNotFound_thenThrowNotFoundException() {
         var expected = Review.builder().id(1L).build();
-        when(userStorage.getUserById(anyLong())).thenReturn(Optional.of(User.builder().id(1L).build()));
+        when(userStorage.existsUser(anyLong())).thenReturn(true);
         when(reviewStorage.getReviewById(anyLong())).thenReturn(Optional.of(expected));
         when(reviewStorage.deleteDisLikeReview(anyLong(), anyLong())).thenReturn(false);
 
         assertThrows(NotFoundException.class, () -> reviewService.deleteDislikeReview(1L, 1L));
-        verify(userStorage).getUserById(1L);
+        verify(userStorage).existsUser(1L);
         verify(reviewStorage).getReviewById(1L);
         verify(reviewStorage).deleteDisLikeReview(1L, 1L);
     }
@@ -290,13 +298,13 @@ class ReviewServiceImplTest {
     @Test
     void deleteDislikeReview_ifDelete_thenReturnDeleted() {
         var expected = Review.builder().id(1L).build();
-        when(userStorage.getUserById(anyLong())).thenReturn(Optional.of(User.builder().id(1L).build()));
+        when(userStorage.existsUser(anyLong())).thenReturn(true);
         when(reviewStorage.getReviewById(anyLong())).thenReturn(Optional.of(expected));
         when(reviewStorage.deleteDisLikeReview(anyLong(), anyLong())).thenReturn(true);
 
         var actual = reviewService.deleteDislikeReview(1L, 1L);
 
-        verify(userStorage).getUserById(1L);
+        verify(userStorage).existsUser(1L);
         verify(reviewStorage, times(2)).getReviewById(1L);
         verify(reviewStorage).deleteDisLikeReview(1L, 1L);
         assertSame(expected, actual);
@@ -6,19 +6,31 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import ru.yandex.practicum.filmorate.models.Director;
+import ru.yandex.practicum.filmorate.models.DirectorChangedEvent;
 import ru.yandex.practicum.filmorate.models.Film;
-import ru.yandex.practicum.filmorate.models.FilmSort;
+import ru.yandex.practicum.filmorate.models.FilmChangedEvent;
+import ru.yandex.practicum.filmorate.models.Operation;
 import ru.yandex.practicum.filmorate.storages.DirectorStorage;
 import ru.yandex.practicum.filmorate.storages.FilmStorage;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -35,11 +47,11 @@ class SearchServiceImplTest {
 
     @Test
     void getFilmsByTitle_whenNotFound_thenReturnEmptyList() {
-        when(filmStorage.getFilmsByTitle("some title")).thenReturn(new ArrayList<>());
+        when(filmStorage.getFilmNames()).thenReturn(Map.of(1L, "Name"));
 
         List<Film> actual = searchService.getFilmsByTitle("some title");
 
-        verify(filmStorage).getFilmsByTitle("some title");
+        verify(filmStorage, never()).getFilmsByIds(anySet());
         assertNotNull(actual);
         assertTrue(actual.isEmpty());
     }
@@ -54,25 +66,67 @@ class SearchServiceImplTest {
                 .id(2L)
                 .name("need")
                 .build();
-        when(filmStorage.getFilmsByTitle("need")).thenReturn(List.of(film, secondFilm));
+        when(filmStorage.getFilmNames()).thenReturn(Map.of(1L, "needName", 2L, "need", 3L, "other"));
+        when(filmStorage.getFilmsByIds(Set.of(1L, 2L))).thenReturn(List.of(film, secondFilm));
 
-        List<Film> actual = searchService.getFilmsByTitle("need");
+        List<Film> actual = searchService.getFilmsByTitle("NEED");
 
-        verify(filmStorage).getFilmsByTitle("need");
+        verify(filmStorage).getFilmsByIds(Set.of(1L, 2L));
         assertNotNull(actual);
         assertFalse(actual.isEmpty());
         assertEquals(1L, actual.get(0).getId());
         assertEquals(2L, actual.get(1).getId());
     }
 
+    @Test
+    void getFilmsByTitle_indexFollowsFilmChanges() {
+        when(filmStorage.getFilmNames()).thenReturn(Map.of(1L, "Name"));
+        searchService.rebuild();
+
+        searchService.onFilmChanged(new FilmChangedEvent(Film.builder().id(1L).name("Other").build(),
+                Operation.UPDATE));
+        searchService.onFilmChanged(new FilmChangedEvent(Film.builder().id(2L).name("Another name").build(),
+                Operation.ADD));
+        searchService.onFilmChanged(new FilmChangedEvent(Film.builder().id(2L).build(), Operation.REMOVE));
+        when(filmStorage.getFilmsByIds(Set.of(1L))).thenReturn(List.of(Film.builder().id(1L).build()));
+
+        assertTrue(searchService.getFilmsByTitle("name").isEmpty());
+        assertEquals(1, searchService.getFilmsByTitle("othe").size());
+        verify(filmStorage, times(1)).getFilmNames();
+    }
+
+    @Test
+    void getFilmsByTitle_duringRebuild_searchesPreviousIndex() throws Exception {
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(filmStorage.getFilmNames()).thenReturn(Map.of(1L, "Name")).thenAnswer(invocation -> {
+            reading.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return Map.of(1L, "Name", 2L, "Other name");
+        });
+        when(filmStorage.getFilmsByIds(Set.of(1L))).thenReturn(List.of(Film.builder().id(1L).build()));
+        searchService.rebuild();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> rebuild = executor.submit(searchService::rebuild);
+            assertTrue(reading.await(5, TimeUnit.SECONDS));
+
+            assertEquals(1, searchService.getFilmsByTitle("name").size());
+            release.countDown();
+            rebuild.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     @Test
     void getFilmsByDirectorsName_whenNotFound_thenReturnEmptyList() {
         Director director = Director.builder().id(1L).name("newDirector").build();
-        when(directorStorage.getDirectorsByName("newdirect")).thenReturn(new ArrayList<>());
+        when(directorStorage.getAllDirectors()).thenReturn(List.of(director));
 
-        List<Film> actual = searchService.getFilmsByDirectorsName("newDirect");
+        List<Film> actual = searchService.getFilmsByDirectorsName("oldDirect");
 
-        verify(directorStorage).getDirectorsByName("newdirect");
+        verify(filmStorage, never()).getFilmsByDirectors(anySet());
         assertNotNull(actual);
         assertTrue(actual.isEmpty());
     }
@@ -90,16 +144,45 @@ class SearchServiceImplTest {
                 .name("need")
                 .directors(Set.of(director))
                 .build();
-        when(directorStorage.getDirectorsByName("new")).thenReturn(List.of(director));
-        when(filmStorage.getFilmsByDirector(director.getId(), FilmSort.LIKES)).thenReturn(List.of(film, secondFilm));
+        when(directorStorage.getAllDirectors()).thenReturn(List.of(director));
+        when(filmStorage.getFilmsByDirectors(Set.of(director.getId()))).thenReturn(List.of(secondFilm, film));
 
         List<Film> actual = searchService.getFilmsByDirectorsName("new");
 
-        verify(directorStorage).getDirectorsByName("new");
-        verify(filmStorage).getFilmsByDirector(director.getId(), FilmSort.LIKES);
+        verify(filmStorage).getFilmsByDirectors(Set.of(director.getId()));
+        verify(filmStorage, never()).getFilmsByDirector(anyLong(), any());
         assertNotNull(actual);
         assertFalse(actual.isEmpty());
         assertEquals(2L, actual.get(0).getId());
         assertEquals(1L, actual.get(1).getId());
     }
-}
\ No newline at end of file
+
+    @Test
+    void getFilmsByDirectorsName_indexFollowsDirectorChanges() {
+        when(directorStorage.getAllDirectors()).thenReturn(List.of(Director.builder().id(1L).name("first").build()));
+        searchService.rebuild();
+
+        searchService.onDirectorChanged(new DirectorChangedEvent(Director.builder().id(2L).name("second").build(),
+                Operation.ADD));
+        searchService.onDirectorChanged(new DirectorChangedEvent(Director.builder().id(1L).build(),
+                Operation.REMOVE));
+
+        assertTrue(searchService.getFilmsByDirectorsName("first").isEmpty());
+        searchService.getFilmsByDirectorsName("sec");
+        verify(filmStorage).getFilmsByDirectors(Set.of(2L));
+    }
+
+    @Test
+    void getFilmsByDirectorAndTitle_mergesByIdDescending() {
+        Film film = Film.builder().id(1L).name("first").build();
+        Film secondFilm = Film.builder().id(2L).name("second").build();
+        when(filmStorage.getFilmNames()).thenReturn(Map.of(1L, "first", 2L, "second"));
+        when(directorStorage.getAllDirectors()).thenReturn(List.of(Director.builder().id(1L).name("firstDir").build()));
+        when(filmStorage.getFilmsByDirectors(Set.of(1L))).thenReturn(List.of(film));
+        when(filmStorage.getFilmsByIds(Set.of(1L))).thenReturn(List.of(film.copyOf()));
+
+        List<Film> actual = searchService.getFilmsByDirectorAndTitle("first");
+
+        assertEquals(List.of(film), actual);
+    }
+}
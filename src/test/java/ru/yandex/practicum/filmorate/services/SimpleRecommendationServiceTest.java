@@ -1,25 +1,27 @@
 package ru.yandex.practicum.filmorate.services;
 
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.models.Film;
 import ru.yandex.practicum.filmorate.models.FilmLike;
-import ru.yandex.practicum.filmorate.models.User;
+import ru.yandex.practicum.filmorate.models.FilmLikeChangedEvent;
+import ru.yandex.practicum.filmorate.models.Operation;
 import ru.yandex.practicum.filmorate.storages.FilmStorage;
 import ru.yandex.practicum.filmorate.storages.UserStorage;
 
 import java.util.List;
-import java.util.Optional;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -32,12 +34,16 @@ class SimpleRecommendationServiceTest {
     @Mock
     private UserStorage userStorage;
 
-    @InjectMocks
     SimpleRecommendationService recommendationService;
 
+    @BeforeEach
+    void setUp() {
+        recommendationService = new SimpleRecommendationService(filmStorage, userStorage, new LikeIndex(filmStorage));
+    }
+
     @Test
     void getRecommendations_ifUserNotFound_thenThrowNotFoundException() {
-        when(userStorage.getUserById(anyLong())).thenReturn(Optional.empty());
+        when(userStorage.existsUser(anyLong())).thenReturn(false);
 
         assertThrows(NotFoundException.class, () -> recommendationService.getRecommendations(1L));
     }
@@ -45,7 +51,7 @@ class SimpleRecommendationServiceTest {
     @Test
     void getRecommendations() {
         Film expected = Film.builder().id(2L).build();
-        when(userStorage.getUserById(anyLong())).thenReturn(Optional.of(User.builder().id(1L).build()));
+        when(userStorage.existsUser(anyLong())).thenReturn(true);
         when(filmStorage.getAllFilmLikes()).thenReturn(List.of(
                 new FilmLike(1L, 1L),
                 new FilmLike(1L, 2L),
@@ -54,11 +60,43 @@ class SimpleRecommendationServiceTest {
 
         var actual = recommendationService.getRecommendations(1L);
 
-        verify(userStorage).getUserById(1L);
+        verify(userStorage).existsUser(1L);
         verify(filmStorage).getAllFilmLikes();
         verify(filmStorage).getFilmsByIds(Set.of(2L));
         assertNotNull(actual);
         assertEquals(1, actual.size());
         assertEquals(expected, actual.get(0));
     }
-}
\ No newline at end of file
+
+    @Test
+    void getRecommendations_usesUsersWithMostCommonLikes() {
+        when(userStorage.existsUser(anyLong())).thenReturn(true);
+        when(filmStorage.getAllFilmLikes()).thenReturn(List.of(
+                new FilmLike(1L, 1L), new FilmLike(2L, 1L),
+                new FilmLike(1L, 2L), new FilmLike(2L, 2L), new FilmLike(3L, 2L),
+                new FilmLike(1L, 3L), new FilmLike(4L, 3L),
+                new FilmLike(5L, 4L)));
+        when(filmStorage.getFilmsByIds(Set.of(3L, 4L))).thenReturn(List.of());
+
+        recommendationService.getRecommendations(1L);
+
+        verify(filmStorage).getFilmsByIds(Set.of(3L, 4L));
+    }
+
+    @Test
+    void getRecommendations_followsLikeEvents() {
+        LikeIndex likeIndex = new LikeIndex(filmStorage);
+        recommendationService = new SimpleRecommendationService(filmStorage, userStorage, likeIndex);
+        when(userStorage.existsUser(anyLong())).thenReturn(true);
+        when(filmStorage.getAllFilmLikes()).thenReturn(List.of(new FilmLike(1L, 1L)));
+        when(filmStorage.getFilmsByIds(Set.of(2L))).thenReturn(List.of());
+
+        assertTrue(recommendationService.getRecommendations(1L).isEmpty());
+        likeIndex.onFilmLikeChanged(new FilmLikeChangedEvent(1L, 2L, Operation.ADD));
+        likeIndex.onFilmLikeChanged(new FilmLikeChangedEvent(2L, 2L, Operation.ADD));
+        recommendationService.getRecommendations(1L);
+
+        verify(filmStorage).getFilmsByIds(Set.of(2L));
+        verify(filmStorage, times(1)).getAllFilmLikes();
+    }
+}
@@ -0,0 +1,65 @@
+package ru.yandex.practicum.filmorate.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TrigramIndexTest {
+    private TrigramIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new TrigramIndex();
+        index.put(1L, "Крадущийся тигр");
+        index.put(2L, "Тигр и дракон");
+        index.put(3L, "Abracadabra");
+    }
+
+    @Test
+    void search_findsSubstringIgnoringCase() {
+        assertEquals(Set.of(1L, 2L), index.search("ТИГР"));
+        assertEquals(Set.of(3L), index.search("cada"));
+        assertTrue(index.search("тигры").isEmpty());
+    }
+
+    @Test
+    void search_checksCandidatesForWholeSubstring() {
+        index.put(4L, "tigr igra");
+
+        // все триграммы "tigra" есть в "tigr igra", но сама подстрока - нет
+        assertTrue(index.search("tigra").isEmpty());
+    }
+
+    @Test
+    void search_shortQueryScansTexts() {
+        assertEquals(Set.of(1L, 2L), index.search("и"));
+        assertEquals(Set.of(1L, 2L, 3L), index.search(""));
+    }
+
+    @Test
+    void put_replacesPreviousText() {
+        index.put(2L, "Дракон");
+        index.remove(1L);
+
+        assertTrue(index.search("тигр").isEmpty());
+        assertEquals(Set.of(2L), index.search("дра"));
+    }
+
+    @Test
+    void search_doesNotDependOnDefaultLocale() {
+        final Locale defaultLocale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr"));
+        try {
+            index.put(5L, "TITLE");
+
+            assertEquals(Set.of(5L), index.search("title"));
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+}
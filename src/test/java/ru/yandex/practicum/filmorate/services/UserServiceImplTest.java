@@ -5,11 +5,15 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.models.Event;
 import ru.yandex.practicum.filmorate.models.EventType;
+import ru.yandex.practicum.filmorate.models.Operation;
 import ru.yandex.practicum.filmorate.models.User;
+import ru.yandex.practicum.filmorate.models.UserDeletedEvent;
 import ru.yandex.practicum.filmorate.storages.FeedStorage;
+import ru.yandex.practicum.filmorate.storages.FilmStorage;
 import ru.yandex.practicum.filmorate.storages.UserStorage;
 
 import java.util.ArrayList;
@@ -36,19 +40,28 @@ class UserServiceImplTest {
     @Mock
     private UserStorage userStorage;
 
+    @Mock
+    private FilmStorage filmStorage;
+
     @Mock
     private FeedStorage feedStorage;
 
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private FeedOutbox feedOutbox;
+
     @InjectMocks
     private UserServiceImpl userService;
 
     @Test
     void getUsers_ifNotFound_thenReturnEmptyList() {
-        when(userStorage.getAllUsers()).thenReturn(new ArrayList<>());
+        when(userStorage.getUsers(null, 100)).thenReturn(new ArrayList<>());
 
-        var actual = userService.getUsers();
+        var actual = userService.getUsers(null, 100);
 
-        verify(userStorage).getAllUsers();
+        verify(userStorage).getUsers(null, 100);
         assertNotNull(actual);
         assertTrue(actual.isEmpty());
     }
@@ -56,11 +69,11 @@ class UserServiceImplTest {
     @Test
     void getUsers_ifFounded_thenReturnFounded() {
         var expected = User.builder().id(1L).name("name").build();
-        when(userStorage.getAllUsers()).thenReturn(List.of(expected));
+        when(userStorage.getUsers(10L, 5)).thenReturn(List.of(expected));
 
-        var actual = userService.getUsers();
+        var actual = userService.getUsers(10L, 5);
 
-        verify(userStorage).getAllUsers();
+        verify(userStorage).getUsers(10L, 5);
         assertNotNull(actual);
         assertEquals(1, actual.size());
         assertSame(expected, actual.get(0));
@@ -143,11 +156,11 @@ class UserServiceImplTest {
         final long friendId = 2L;
         User user = User.builder().id(id).name("user").build();
         when(userStorage.getUserById(id)).thenReturn(Optional.of(user));
-        when(userStorage.getUserById(friendId)).thenReturn(Optional.empty());
+        when(userStorage.existsUser(friendId)).thenReturn(false);
 
         assertThrows(NotFoundException.class, () -> userService.addAsFriend(id, friendId));
 
-        verify(userStorage).getUserById(friendId);
+        verify(userStorage).existsUser(friendId);
     }
 
     @Test
@@ -156,13 +169,13 @@ class UserServiceImplTest {
         final long friendId = 2L;
         User user = User.builder().id(id).name("user").build();
         User expectedUser = User.builder().id(id).name("user").friends(Set.of(friendId)).build();
-        User friend = User.builder().id(friendId).name("friend").build();
         when(userStorage.getUserById(id)).thenReturn(Optional.of(user));
-        when(userStorage.getUserById(friendId)).thenReturn(Optional.of(friend));
+        when(userStorage.existsUser(friendId)).thenReturn(true);
 
         User actualUser = userService.addAsFriend(id, friendId);
 
         verify(userStorage).createFriend(id, friendId);
+        verify(feedStorage).addFriendEvents(id, friendId);
         assertEquals(expectedUser, actualUser);
     }
 
@@ -183,11 +196,11 @@ class UserServiceImplTest {
         final long friendId = 2L;
         User user = User.builder().id(id).name("user").build();
         when(userStorage.getUserById(id)).thenReturn(Optional.of(user));
-        when(userStorage.getUserById(friendId)).thenReturn(Optional.empty());
+        when(userStorage.existsUser(friendId)).thenReturn(false);
 
         assertThrows(NotFoundException.class, () -> userService.removeFromFriends(id, friendId));
 
-        verify(userStorage).getUserById(friendId);
+        verify(userStorage).existsUser(friendId);
     }
 
     @Test
@@ -195,9 +208,8 @@ class UserServiceImplTest {
         final long id = 1L;
         final long friendId = 2L;
         User user = User.builder().id(id).name("user").build();
-        User friend = User.builder().id(friendId).name("friend").build();
         when(userStorage.getUserById(id)).thenReturn(Optional.of(user));
-        when(userStorage.getUserById(friendId)).thenReturn(Optional.of(friend));
+        when(userStorage.existsUser(friendId)).thenReturn(true);
 
         assertThrows(NotFoundException.class, () -> userService.removeFromFriends(id, friendId));
     }
@@ -207,35 +219,33 @@ class UserServiceImplTest {
         final long id = 1L;
         final long friendId = 2L;
         User user = User.builder().id(id).name("user").friends(new HashSet<>(List.of(friendId))).build();
-        User friend = User.builder().id(friendId).name("friend").friends(new HashSet<>(List.of(id))).build();
         User expectedUser = User.builder().id(id).name("user").build();
         when(userStorage.getUserById(id)).thenReturn(Optional.of(user));
-        when(userStorage.getUserById(friendId)).thenReturn(Optional.of(friend));
+        when(userStorage.existsUser(friendId)).thenReturn(true);
 
         User actualUser = userService.removeFromFriends(id, friendId);
 
         verify(userStorage).removeFriend(id, friendId);
+        verify(feedOutbox).stage(id, friendId, EventType.FRIEND, Operation.REMOVE);
         assertEquals(expectedUser, actualUser);
     }
 
     @Test
     void getUserFriends_ifNotFoundUser_thenThrowNotFoundException() {
         final long id = 1L;
-        when(userStorage.getUserById(id)).thenReturn(Optional.empty());
+        when(userStorage.existsUser(id)).thenReturn(false);
 
         assertThrows(NotFoundException.class, () -> userService.getUserFriends(id));
 
-        verify(userStorage).getUserById(id);
+        verify(userStorage).existsUser(id);
     }
 
     @Test
     void getUserFriends_ifUserFounded_thenReturnUserFriends() {
         final long id = 1L;
         final long friendId = 2L;
-        final Set<Long> friendSet = Set.of(friendId);
-        final User user = User.builder().id(id).friends(friendSet).build();
         final User friend = User.builder().id(friendId).build();
-        when(userStorage.getUserById(id)).thenReturn(Optional.of(user));
+        when(userStorage.existsUser(id)).thenReturn(true);
         when(userStorage.getUserFriends(id)).thenReturn(List.of(friend));
 
         List<User> actual = userService.getUserFriends(id);
@@ -250,46 +260,38 @@ class UserServiceImplTest {
     void getCommonFriends_ifNotFoundUser_thenThrowNotFoundException() {
         final long id = 1L;
         final long otherId = 1L;
-        when(userStorage.getUserById(id)).thenReturn(Optional.empty());
+        when(userStorage.existsUser(id)).thenReturn(false);
 
         assertThrows(NotFoundException.class, () -> userService.getCommonFriends(id, otherId));
 
-        verify(userStorage).getUserById(id);
+        verify(userStorage).existsUser(id);
     }
 
     @Test
     void getCommonFriends_ifNotFoundOtherUser_thenThrowNotFoundException() {
         final long id = 1L;
         final long otherId = 2L;
-        User user = User.builder().id(id).name("user").build();
-        when(userStorage.getUserById(id)).thenReturn(Optional.of(user));
-        when(userStorage.getUserById(otherId)).thenReturn(Optional.empty());
+        when(userStorage.existsUser(id)).thenReturn(true);
+        when(userStorage.existsUser(otherId)).thenReturn(false);
 
         assertThrows(NotFoundException.class, () -> userService.getCommonFriends(id, otherId));
 
-        verify(userStorage).getUserById(otherId);
+        verify(userStorage).existsUser(otherId);
     }
 
     @Test
     void getCommonFriends_ifUsersFounded_thenReturnCommonFriends() {
         final long id = 1L;
         final long otherId = 2L;
-        final Set<Long> usersFriends = Set.of(4L, 5L);
-        final Set<Long> otherFriends = Set.of(5L, 6L);
-        final User user = User.builder().id(id).friends(usersFriends).build();
-        final User other = User.builder().id(otherId).friends(otherFriends).build();
-        final User friend4 = User.builder().id(4L).build();
         final User friend5 = User.builder().id(5L).build();
-        final User friend6 = User.builder().id(6L).build();
-        when(userStorage.getUserById(id)).thenReturn(Optional.of(user));
-        when(userStorage.getUserById(otherId)).thenReturn(Optional.of(other));
-        when(userStorage.getUserFriends(id)).thenReturn(List.of(friend4, friend5));
-        when(userStorage.getUserFriends(otherId)).thenReturn(List.of(friend5, friend6));
+        when(userStorage.existsUser(id)).thenReturn(true);
+        when(userStorage.existsUser(otherId)).thenReturn(true);
+        when(userStorage.getCommonFriends(id, otherId)).thenReturn(List.of(friend5));
 
         List<User> actual = userService.getCommonFriends(id, otherId);
 
-        verify(userStorage).getUserFriends(id);
-        verify(userStorage).getUserFriends(otherId);
+        verify(userStorage).getCommonFriends(id, otherId);
+        verify(userStorage, never()).getUserFriends(anyLong());
         assertNotNull(actual);
         assertEquals(1, actual.size());
         assertSame(friend5, actual.get(0));
@@ -317,20 +319,49 @@ class UserServiceImplTest {
 
     }
 
+    @Test
+    void getFeedByUserId_passesCursorAndLimitToStorage() {
+        Map<String, Object> params = new HashMap<>();
+        params.put("userId", 1L);
+        params.put("likeType", EventType.LIKE.name());
+        params.put("reviewType", EventType.REVIEW.name());
+        params.put("limit", 10);
+        params.put("before", 50L);
+        when(userStorage.existsUser(1L)).thenReturn(true);
+        when(feedStorage.getUserFeed(params)).thenReturn(new ArrayList<>());
+
+        userService.getFeedByUserId(1L, 50L, 10);
+
+        verify(feedStorage).getUserFeed(params);
+    }
+
+    @Test
+    void getFeedAfter_passesAfterCursorToStorage() {
+        Map<String, Object> params = new HashMap<>();
+        params.put("userId", 1L);
+        params.put("likeType", EventType.LIKE.name());
+        params.put("reviewType", EventType.REVIEW.name());
+        params.put("limit", 10);
+        params.put("after", 50L);
+        when(userStorage.existsUser(1L)).thenReturn(true);
+        when(feedStorage.getUserFeed(params)).thenReturn(new ArrayList<>());
+
+        userService.getFeedAfter(1L, 50L, 10);
+
+        verify(feedStorage).getUserFeed(params);
+    }
+
     @Test
     void getFeedByUserId_ifNotFound_ThenReturnEmptyList() {
-        var user = User.builder().id(1L).login("nameOne").name("nameOne").build();
-        List<Long> userIds = new ArrayList<>(user.getFriends());
-        userIds.add(user.getId());
         Map<String, Object> params = new HashMap<>();
-        params.put("userIds", userIds);
-        params.put("userId", user.getId());
+        params.put("userId", 1L);
         params.put("likeType", EventType.LIKE.name());
         params.put("reviewType", EventType.REVIEW.name());
-        when(userStorage.getUserById(1L)).thenReturn(Optional.of(user));
+        params.put("limit", 100);
+        when(userStorage.existsUser(1L)).thenReturn(true);
         when(feedStorage.getUserFeed(any())).thenReturn(new ArrayList<>());
 
-        var actual = userService.getFeedByUserId(1L);
+        var actual = userService.getFeedByUserId(1L, null, 100);
 
         verify(feedStorage).getUserFeed(params);
         assertNotNull(actual);
@@ -343,10 +374,12 @@ class UserServiceImplTest {
         long userId = 1L;
         var mockUser = User.builder().id(1L).login("nameOne").name("nameOne").build();
         when(userStorage.getUserById(userId)).thenReturn(Optional.of(mockUser));
+        when(filmStorage.getUserFilmLikes(userId)).thenReturn(Set.of(2L, 3L));
         User deletedUser = userService.deleteUserById(userId);
         assertEquals(mockUser, deletedUser);
         verify(userStorage).deleteUserById(userId);
         verify(userStorage).getUserById(userId);
+        verify(eventPublisher).publishEvent(new UserDeletedEvent(userId, Set.of(2L, 3L)));
     }
 
     @Test
@@ -0,0 +1,142 @@
+package ru.yandex.practicum.filmorate.storages;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.jdbc.Sql;
+import ru.yandex.practicum.filmorate.models.Event;
+import ru.yandex.practicum.filmorate.models.EventType;
+import ru.yandex.practicum.filmorate.models.Operation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "app.feed.fan-out-on-write=true")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+class DbFeedStorageFanOutTest {
+
+    @Autowired
+    @Qualifier("dbFeedStorage")
+    private DbFeedStorage feedStorage;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private FeedSegmentArchive archive;
+
+    @Autowired
+    @Qualifier("dbUserStorage")
+    private UserStorage userStorage;
+
+    private DbFeedStorage pullFeedStorage;
+
+    @BeforeEach
+    void setUp() {
+        pullFeedStorage = new DbFeedStorage(jdbcTemplate, archive, false);
+    }
+
+    @Test
+    @Sql({"/test-feed.sql"})
+    void getUserFeed_afterRebuild_thenSameAsPullFeed() {
+        userStorage.createFriend(1L, 2L);
+        feedStorage.initTimelines();
+
+        assertThat(feedStorage.getUserFeed(params(1L, 2L))).isEqualTo(pullFeedStorage.getUserFeed(params(1L, 2L)));
+        assertThat(feedStorage.getUserFeed(params(2L))).isEqualTo(pullFeedStorage.getUserFeed(params(2L)));
+    }
+
+    @Test
+    @Sql({"/test-feed.sql"})
+    void initTimelines_ifTimelineFilled_thenKeepsItAndPullModeClearsIt() {
+        feedStorage.initTimelines();
+        userStorage.createFriend(1L, 2L);
+
+        feedStorage.initTimelines();
+
+        // события друга попадают в ленту только через addFriendEvents
+        assertThat(feedStorage.getUserFeed(params(1L))).extracting(Event::getEventId).containsExactly(1L, 2L, 4L);
+
+        pullFeedStorage.initTimelines();
+
+        assertThat(jdbcTemplate.queryForObject("select count(*) from feed_timeline", Integer.class)).isZero();
+    }
+
+    @Test
+    @Sql({"/test-feed.sql"})
+    void addEvent_thenAppendedToFollowersTimelines() {
+        feedStorage.initTimelines();
+        userStorage.createFriend(1L, 2L);
+        feedStorage.addFriendEvents(1L, 2L);
+        userStorage.createFriend(3L, 2L);
+        feedStorage.addFriendEvents(3L, 2L);
+
+        Event like = feedStorage.addEvent(event(2L, 1L, EventType.LIKE));
+        Event friend = feedStorage.addEvent(event(2L, 1L, EventType.FRIEND));
+        feedStorage.addEvents(List.of(event(2L, 2L, EventType.REVIEW), event(3L, 3L, EventType.LIKE)));
+
+        assertThat(feedStorage.getUserFeed(params(1L, 2L))).isEqualTo(pullFeedStorage.getUserFeed(params(1L, 2L)))
+                .extracting(Event::getEventId).contains(like.getEventId()).doesNotContain(friend.getEventId());
+        assertThat(feedStorage.getUserFeed(params(3L, 2L))).isEqualTo(pullFeedStorage.getUserFeed(params(3L, 2L)))
+                .hasSize(3);
+        assertThat(feedStorage.getUserFeed(params(2L))).isEqualTo(pullFeedStorage.getUserFeed(params(2L)));
+    }
+
+    @Test
+    @Sql({"/test-feed.sql"})
+    void removeFriendEvents_thenFriendEventsRemovedFromTimeline() {
+        feedStorage.initTimelines();
+        userStorage.createFriend(1L, 2L);
+        feedStorage.addFriendEvents(1L, 2L);
+        feedStorage.addEvent(event(2L, 1L, EventType.LIKE));
+
+        userStorage.removeFriend(1L, 2L);
+        feedStorage.removeFriendEvents(1L, 2L);
+
+        assertThat(feedStorage.getUserFeed(params(1L))).extracting(Event::getEventId).containsExactly(1L, 2L, 4L);
+    }
+
+    @Test
+    @Sql({"/test-feed.sql"})
+    void getUserFeed_ifLimitAndBefore_thenReturnOlderPage() {
+        feedStorage.initTimelines();
+        Map<String, Object> params = params(1L);
+        params.put("limit", 2);
+
+        var firstPage = feedStorage.getUserFeed(params);
+        params.put("before", firstPage.get(0).getEventId());
+        var secondPage = feedStorage.getUserFeed(params);
+
+        assertThat(firstPage).extracting(Event::getEventId).containsExactly(2L, 4L);
+        assertThat(secondPage).extracting(Event::getEventId).containsExactly(1L);
+    }
+
+    private static Map<String, Object> params(long userId, Long... friendIds) {
+        List<Long> userIds = new ArrayList<>(List.of(friendIds));
+        userIds.add(userId);
+        Map<String, Object> params = new HashMap<>();
+        params.put("userIds", userIds);
+        params.put("userId", userId);
+        params.put("likeType", EventType.LIKE.name());
+        params.put("reviewType", EventType.REVIEW.name());
+        return params;
+    }
+
+    private static Event event(long userId, long entityId, EventType eventType) {
+        return Event.builder()
+                .userId(userId)
+                .entityId(entityId)
+                .eventType(eventType)
+                .operation(Operation.ADD)
+                .timestamp(1698599680000L + userId)
+                .build();
+    }
+}
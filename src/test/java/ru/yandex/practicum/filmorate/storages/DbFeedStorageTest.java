@@ -2,9 +2,11 @@ package ru.yandex.practicum.filmorate.storages;
 
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.jdbc.Sql;
 import ru.yandex.practicum.filmorate.models.Event;
@@ -12,11 +14,13 @@ import ru.yandex.practicum.filmorate.models.EventType;
 import ru.yandex.practicum.filmorate.models.Operation;
 import ru.yandex.practicum.filmorate.models.User;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -28,6 +32,12 @@ class DbFeedStorageTest {
     @Qualifier("dbFeedStorage")
     private FeedStorage feedStorage;
 
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @TempDir
+    Path archiveDirectory;
+
     @Test
     @Sql({"/test-feed.sql"})
     void getUserFeed() {
@@ -46,6 +56,175 @@ class DbFeedStorageTest {
         Assertions.assertThat(actual.get(0)).hasFieldOrPropertyWithValue("userId", 1L);
     }
 
+    @Test
+    @Sql({"/test-feed.sql"})
+    void getUserFeed_ifNoUserIds_thenReadsFriendsFromStorage() {
+        jdbcTemplate.update("insert into user_friends (user_id, friend_id) values (1, 2)");
+        feedStorage.addEvent(Event.builder()
+                .userId(2L)
+                .entityId(1L)
+                .eventType(EventType.LIKE)
+                .operation(Operation.ADD)
+                .timestamp(1698599674000L)
+                .build());
+        Map<String, Object> params = new HashMap<>();
+        params.put("userId", 1L);
+        params.put("likeType", EventType.LIKE.name());
+        params.put("reviewType", EventType.REVIEW.name());
+
+        var actual = feedStorage.getUserFeed(params);
+
+        Assertions.assertThat(actual).extracting(Event::getEventId).containsExactly(1L, 2L, 4L, 5L);
+    }
+
+    @Test
+    @Sql({"/test-feed.sql"})
+    void getUserFeed_ifLimitAndBefore_thenReturnOlderPage() {
+        Map<String, Object> params = new HashMap<>();
+        params.put("userIds", List.of(1L));
+        params.put("userId", 1L);
+        params.put("likeType", EventType.LIKE.name());
+        params.put("reviewType", EventType.REVIEW.name());
+        params.put("limit", 2);
+
+        var firstPage = feedStorage.getUserFeed(params);
+        params.put("before", firstPage.get(0).getEventId());
+        var secondPage = feedStorage.getUserFeed(params);
+
+        Assertions.assertThat(firstPage).extracting(Event::getEventId).containsExactly(2L, 4L);
+        Assertions.assertThat(secondPage).extracting(Event::getEventId).containsExactly(1L);
+    }
+
+    @Test
+    @Sql({"/test-feed.sql"})
+    void getUserFeed_ifSameTimestamp_thenPagesDoNotOverlap() {
+        for (long entityId = 1; entityId <= 3; entityId++) {
+            feedStorage.addEvent(Event.builder()
+                    .userId(1L)
+                    .entityId(entityId)
+                    .eventType(EventType.REVIEW)
+                    .operation(Operation.ADD)
+                    .timestamp(1698599673000L)
+                    .build());
+        }
+        Map<String, Object> params = new HashMap<>();
+        params.put("userIds", List.of(1L));
+        params.put("userId", 1L);
+        params.put("likeType", EventType.LIKE.name());
+        params.put("reviewType", EventType.REVIEW.name());
+        var all = feedStorage.getUserFeed(params);
+
+        params.put("limit", 2);
+        List<Event> paged = new ArrayList<>();
+        List<Event> page = feedStorage.getUserFeed(params);
+        while (!page.isEmpty()) {
+            paged.addAll(0, page);
+            params.put("before", page.get(0).getEventId());
+            page = feedStorage.getUserFeed(params);
+        }
+
+        Assertions.assertThat(paged).extracting(Event::getEventId)
+                .containsExactlyElementsOf(all.stream().map(Event::getEventId).collect(Collectors.toList()));
+    }
+
+    @Test
+    @Sql({"/test-feed.sql"})
+    void getUserFeed_ifAfter_thenReturnNewerEventsAscending() {
+        Map<String, Object> params = new HashMap<>();
+        params.put("userIds", List.of(1L));
+        params.put("userId", 1L);
+        params.put("likeType", EventType.LIKE.name());
+        params.put("reviewType", EventType.REVIEW.name());
+        params.put("limit", 1);
+        params.put("after", 1L);
+
+        Assertions.assertThat(feedStorage.getUserFeed(params)).extracting(Event::getEventId).containsExactly(2L);
+        params.put("limit", 10);
+        Assertions.assertThat(feedStorage.getUserFeed(params)).extracting(Event::getEventId).containsExactly(2L, 4L);
+    }
+
+    @Test
+    @Sql({"/test-feed.sql"})
+    void getUserFeed_ifEventsArchived_thenPagesContinueIntoArchive() {
+        FeedSegmentArchive archive = new FeedSegmentArchive(archiveDirectory.toString());
+        DbFeedStorage storage = new DbFeedStorage(jdbcTemplate, archive, false);
+        List<Event> old = storage.getEventsBefore(1698599672500L, 100);
+        archive.writeSegment(old);
+        storage.removeEvents(old.stream().map(Event::getEventId).collect(Collectors.toList()));
+        Map<String, Object> params = new HashMap<>();
+        params.put("userIds", List.of(1L));
+        params.put("userId", 1L);
+        params.put("likeType", EventType.LIKE.name());
+        params.put("reviewType", EventType.REVIEW.name());
+
+        Assertions.assertThat(old).extracting(Event::getEventId).containsExactly(1L, 2L, 3L);
+        Assertions.assertThat(storage.getUserFeed(params)).extracting(Event::getEventId).containsExactly(1L, 2L, 4L);
+        params.put("limit", 2);
+        Assertions.assertThat(storage.getUserFeed(params)).extracting(Event::getEventId).containsExactly(2L, 4L);
+        params.put("before", 2L);
+        Assertions.assertThat(storage.getUserFeed(params)).extracting(Event::getEventId).containsExactly(1L);
+        params.remove("before");
+        params.put("after", 1L);
+        Assertions.assertThat(storage.getUserFeed(params)).extracting(Event::getEventId).containsExactly(2L, 4L);
+        params.put("after", 4L);
+        Assertions.assertThat(storage.getUserFeed(params)).isEmpty();
+    }
+
+    @Test
+    @Sql({"/test-feed.sql"})
+    void addEvents_thenReturnEventsWithIds() {
+        var saved = feedStorage.addEvents(List.of(
+                Event.builder().userId(1L).entityId(2L).eventType(EventType.LIKE)
+                        .operation(Operation.ADD).timestamp(1698599680000L).build(),
+                Event.builder().userId(2L).entityId(3L).eventType(EventType.REVIEW)
+                        .operation(Operation.UPDATE).timestamp(1698599681000L).build()));
+
+        Assertions.assertThat(saved).extracting(Event::getEventId).containsExactly(5L, 6L);
+        Assertions.assertThat(saved).extracting(Event::getUserId).containsExactly(1L, 2L);
+    }
+
+    @Test
+    @Sql({"/test-feed.sql"})
+    void outboxEvents_addGetRemove() {
+        feedStorage.addOutboxEvent(Event.builder()
+                .userId(2L)
+                .entityId(1L)
+                .eventType(EventType.LIKE)
+                .operation(Operation.ADD)
+                .timestamp(1698599680000L)
+                .build());
+        feedStorage.addOutboxEvent(Event.builder()
+                .userId(3L)
+                .entityId(1L)
+                .eventType(EventType.REVIEW)
+                .operation(Operation.REMOVE)
+                .timestamp(1698599681000L)
+                .build());
+
+        var events = feedStorage.getOutboxEvents(10);
+        assertThat(events).extracting(Event::getUserId).containsExactly(2L, 3L);
+        assertThat(events.get(1)).hasFieldOrPropertyWithValue("eventType", EventType.REVIEW)
+                .hasFieldOrPropertyWithValue("operation", Operation.REMOVE);
+
+        feedStorage.removeOutboxEvents(List.of(events.get(0).getEventId()));
+
+        assertThat(feedStorage.getOutboxEvents(10)).extracting(Event::getUserId).containsExactly(3L);
+    }
+
+    @Test
+    @Sql({"/test-feed.sql"})
+    void getOutboxEvents_ordersByTimestampThenId() {
+        feedStorage.addOutboxEvents(List.of(
+                Event.builder().userId(1L).entityId(1L).eventType(EventType.LIKE)
+                        .operation(Operation.ADD).timestamp(1698599682000L).build(),
+                Event.builder().userId(2L).entityId(1L).eventType(EventType.LIKE)
+                        .operation(Operation.ADD).timestamp(1698599681000L).build(),
+                Event.builder().userId(3L).entityId(1L).eventType(EventType.LIKE)
+                        .operation(Operation.ADD).timestamp(1698599682000L).build()));
+
+        assertThat(feedStorage.getOutboxEvents(10)).extracting(Event::getUserId).containsExactly(2L, 1L, 3L);
+    }
+
     @Test
     @Sql({"/test-feed.sql"})
     void addEvent() {
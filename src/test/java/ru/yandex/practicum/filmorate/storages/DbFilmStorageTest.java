@@ -4,23 +4,30 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.jdbc.Sql;
 import ru.yandex.practicum.filmorate.models.Director;
 import ru.yandex.practicum.filmorate.models.Film;
+import ru.yandex.practicum.filmorate.models.FilmLike;
 import ru.yandex.practicum.filmorate.models.FilmRating;
 import ru.yandex.practicum.filmorate.models.FilmSort;
 import ru.yandex.practicum.filmorate.models.Genre;
 
 import java.time.Duration;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest
 @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
@@ -30,6 +37,9 @@ class DbFilmStorageTest {
     @Qualifier("dbFilmStorage")
     private FilmStorage filmStorage;
 
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     @Test
     @Sql({"/test-data.sql"})
     void getAllFilms() {
@@ -38,6 +48,17 @@ class DbFilmStorageTest {
         assertEquals(3, actual.size());
     }
 
+    @Test
+    @Sql({"/test-data.sql"})
+    void getFilms_returnsPagesAfterCursor() {
+        var firstPage = filmStorage.getFilms(null, 2);
+        var secondPage = filmStorage.getFilms(firstPage.get(1).getId(), 2);
+
+        assertEquals(List.of(1L, 2L), firstPage.stream().map(Film::getId).collect(Collectors.toList()));
+        assertEquals(List.of(3L), secondPage.stream().map(Film::getId).collect(Collectors.toList()));
+        assertTrue(filmStorage.getFilms(3L, 2).isEmpty());
+    }
+
     @Test
     @Sql({"/data-clear.sql"})
     void createFilm() {
@@ -88,6 +109,38 @@ class DbFilmStorageTest {
                 });
     }
 
+    @Test
+    @Sql({"/test-data.sql"})
+    void updateFilm_keepsLikeCountAndReturnsEmptyForMissingFilm() {
+        Film film = Film.builder()
+                .id(2L)
+                .name("updated_name")
+                .description("descr")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(Duration.ofMinutes(120))
+                .rating(FilmRating.PG)
+                .build();
+
+        var actual = filmStorage.updateFilm(film);
+        film.setId(100L);
+
+        assertThat(actual).hasValueSatisfying(obj -> assertEquals(2, obj.getLikeCount()));
+        assertTrue(filmStorage.updateFilm(film).isEmpty());
+    }
+
+    @Test
+    @Sql({"/test-data.sql"})
+    void setFilmGenresAndDirectors_replacesAssociations() {
+        filmStorage.setFilmGenres(2L, Set.of(1L, 2L));
+        filmStorage.setFilmDirectors(1L, Set.of());
+
+        var actual = filmStorage.getFilmsByIds(Set.of(1L, 2L));
+
+        assertTrue(actual.get(0).getDirectors().isEmpty());
+        assertEquals(Set.of(Genre.builder().id(1L).name("Комедия").build(),
+                Genre.builder().id(2L).name("Драма").build()), actual.get(1).getGenres());
+    }
+
     @Test
     @Sql({"/test-data.sql"})
     void getFilmById() {
@@ -104,7 +157,7 @@ class DbFilmStorageTest {
                     assertThat(obj).hasFieldOrPropertyWithValue("rating", FilmRating.PG);
                     assertThat(obj).hasFieldOrPropertyWithValue("genres", Set.of(Genre
                             .builder().id(1L).name("Комедия").build()));
-                    assertThat(obj).hasFieldOrPropertyWithValue("likes", Set.of(1L));
+                    assertThat(obj).hasFieldOrPropertyWithValue("likeCount", 1);
                 });
     }
 
@@ -117,6 +170,38 @@ class DbFilmStorageTest {
         assertEquals(2, actual.size());
     }
 
+    @Test
+    @Sql({"/test-data.sql"})
+    void getFilmsByIds_hydratesAllAssociations() {
+        var actual = filmStorage.getFilmsByIds(Set.of(1L, 2L));
+
+        assertEquals(2, actual.size());
+        assertThat(actual.get(0)).hasFieldOrPropertyWithValue("id", 1L);
+        assertThat(actual.get(0)).hasFieldOrPropertyWithValue("likeCount", 1);
+        assertThat(actual.get(0)).hasFieldOrPropertyWithValue("directors", Set.of(
+                Director.builder().id(1L).name("firstDirector").build(),
+                Director.builder().id(2L).name("secondDirector").build()));
+        assertThat(actual.get(1)).hasFieldOrPropertyWithValue("id", 2L);
+        assertThat(actual.get(1)).hasFieldOrPropertyWithValue("likeCount", 2);
+        assertThat(actual.get(1)).hasFieldOrPropertyWithValue("genres", Set.of(
+                Genre.builder().id(2L).name("Драма").build(),
+                Genre.builder().id(3L).name("Мультфильм").build()));
+    }
+
+    @Test
+    @Sql({"/test-data.sql"})
+    void exportFilms_streamsHydratedFilmsInChunks() {
+        List<Film> exported = new ArrayList<>();
+
+        filmStorage.exportFilms(2, exported::add);
+
+        assertEquals(List.of(1L, 2L, 3L), exported.stream().map(Film::getId).collect(Collectors.toList()));
+        assertThat(exported.get(1)).hasFieldOrPropertyWithValue("likeCount", 2);
+        assertThat(exported.get(1)).hasFieldOrPropertyWithValue("genres", Set.of(
+                Genre.builder().id(2L).name("Драма").build(),
+                Genre.builder().id(3L).name("Мультфильм").build()));
+    }
+
     @Test
     @Sql({"/test-data.sql"})
     void getMostPopularFilms() {
@@ -165,34 +250,132 @@ class DbFilmStorageTest {
         assertEquals(1L, actual.get(0).getId());
     }
 
+    @Test
+    @Sql({"/test-data.sql"})
+    void getFilmsByDirector_sortsOnlyDirectorFilms() {
+        jdbcTemplate.update("insert into film_directors (film_id, director_id) values (2, 1), (3, 1)");
+
+        var byLikes = filmStorage.getFilmsByDirector(1L, FilmSort.LIKES);
+        var byYear = filmStorage.getFilmsByDirector(1L, FilmSort.YEAR);
+
+        assertEquals(List.of(3L, 2L, 1L), byLikes.stream().map(Film::getId).collect(Collectors.toList()));
+        assertEquals(List.of(1L, 2L, 3L), byYear.stream().map(Film::getId).collect(Collectors.toList()));
+        assertEquals(Set.of(Director.builder().id(1L).name("firstDirector").build(),
+                Director.builder().id(3L).name("thirdDirector").build()), byYear.get(1).getDirectors());
+    }
+
+    @Test
+    @Sql({"/test-data.sql"})
+    void getFilmsByDirectors_ranksByLikesWithoutDuplicates() {
+        var actual = filmStorage.getFilmsByDirectors(Set.of(1L, 2L, 3L));
+
+        assertEquals(List.of(2L, 1L), actual.stream().map(Film::getId).collect(Collectors.toList()));
+        assertEquals(2, actual.get(1).getDirectors().size());
+        assertTrue(filmStorage.getFilmsByDirectors(Set.of(100L)).isEmpty());
+    }
+
+    @Test
+    @Sql({"/test-data.sql"})
+    void existsFilm() {
+        assertTrue(filmStorage.existsFilm(1L));
+        assertFalse(filmStorage.existsFilm(100L));
+    }
+
+    @Test
+    @Sql({"/test-data.sql"})
+    void existingIds() {
+        assertEquals(Set.of(2L, 3L), filmStorage.existingIds(Set.of(2L, 3L, 100L)));
+        assertTrue(filmStorage.existingIds(Set.of()).isEmpty());
+    }
+
+    @Test
+    @Sql({"/test-data.sql"})
+    void getCommonFilms_returnsFilmsLikedByBothSortedByLikes() {
+        var actual = filmStorage.getCommonFilms(1L, 2L);
+
+        assertEquals(List.of(3L, 2L), actual.stream().map(Film::getId).collect(Collectors.toList()));
+        assertEquals(3, actual.get(0).getLikeCount());
+        assertTrue(filmStorage.getCommonFilms(1L, 100L).isEmpty());
+    }
+
     @Test
     @Sql({"/test-data.sql"})
     void createFilmLike() {
-        filmStorage.createFilmLike(1L, 2L);
+        assertTrue(filmStorage.createFilmLike(1L, 2L));
+        assertFalse(filmStorage.createFilmLike(1L, 2L));
         var actual = filmStorage.getFilmById(1L);
 
         assertThat(actual)
                 .isPresent()
                 .hasValueSatisfying(obj -> {
                     assertThat(obj).hasFieldOrPropertyWithValue("id", 1L);
-                    assertThat(obj).hasFieldOrPropertyWithValue("likes", Set.of(1L, 2L));
+                    assertThat(obj).hasFieldOrPropertyWithValue("likeCount", 2);
                 });
+        assertTrue(filmStorage.getUserFilmLikes(2L).contains(1L));
+    }
+
+    @Test
+    @Sql({"/test-data.sql"})
+    void createFilmLikes_skipsExistingAndUnknownAndUpdatesLikeCount() {
+        int[] actual = filmStorage.createFilmLikes(List.of(
+                new FilmLike(1L, 2L),
+                new FilmLike(1L, 1L),
+                new FilmLike(1L, 100L),
+                new FilmLike(100L, 1L),
+                new FilmLike(1L, 3L)));
+
+        assertArrayEquals(new int[]{1, 0, 0, 0, 1}, actual);
+        assertEquals(3, filmStorage.getFilmById(1L).orElseThrow().getLikeCount());
+    }
+
+    @Test
+    @Sql({"/test-data.sql"})
+    void removeFilmLikes_updatesLikeCount() {
+        int[] actual = filmStorage.removeFilmLikes(List.of(new FilmLike(2L, 1L), new FilmLike(2L, 3L)));
+
+        assertArrayEquals(new int[]{1, 0}, actual);
+        assertEquals(1, filmStorage.getFilmById(2L).orElseThrow().getLikeCount());
     }
 
     @Test
     @Sql({"/test-data.sql"})
     void removeFilmLike() {
-        filmStorage.removeFilmLike(1L, 1L);
+        assertTrue(filmStorage.removeFilmLike(1L, 1L));
+        assertFalse(filmStorage.removeFilmLike(1L, 1L));
         var actual = filmStorage.getFilmById(1L);
 
         assertThat(actual)
                 .isPresent()
                 .hasValueSatisfying(obj -> {
                     assertThat(obj).hasFieldOrPropertyWithValue("id", 1L);
-                    assertThat(obj).hasFieldOrPropertyWithValue("likes", Set.of());
+                    assertThat(obj).hasFieldOrPropertyWithValue("likeCount", 0);
                 });
     }
 
+    @Test
+    @Sql({"/test-data.sql"})
+    void removeFilmLike_updatesMostPopularFilms() {
+        filmStorage.removeFilmLike(3L, 1L);
+        filmStorage.removeFilmLike(3L, 2L);
+        var actual = filmStorage.getMostPopularFilms(1, null, null);
+
+        assertEquals(1, actual.size());
+        assertEquals(2L, actual.get(0).getId());
+    }
+
+    @Test
+    @Sql({"/test-data.sql"})
+    void reconcileFilmLikeCounts() {
+        jdbcTemplate.update("update films set like_count=0");
+
+        var repaired = filmStorage.reconcileFilmLikeCounts();
+        var actual = filmStorage.getMostPopularFilms(3, null, null);
+
+        assertEquals(3, repaired);
+        assertEquals(0, filmStorage.reconcileFilmLikeCounts());
+        assertEquals(List.of(3L, 2L, 1L), actual.stream().map(Film::getId).collect(Collectors.toList()));
+    }
+
     @Test
     @Sql({"/test-data.sql"})
     void getAllFilmLikes() {
@@ -243,34 +426,6 @@ class DbFilmStorageTest {
                 });
     }
 
-    @Test
-    @Sql({"/test-data.sql"})
-    void removeFilmGenres() {
-        filmStorage.removeFilmGenres(1L, Set.of(1L));
-        var actual = filmStorage.getFilmById(1L);
-
-        assertThat(actual)
-                .isPresent()
-                .hasValueSatisfying(obj -> {
-                    assertThat(obj).hasFieldOrPropertyWithValue("id", 1L);
-                    assertThat(obj).hasFieldOrPropertyWithValue("genres", Set.of());
-                });
-    }
-
-    @Test
-    @Sql({"/test-data.sql"})
-    void removeFilmDirectors() {
-        filmStorage.removeFilmDirectors(2L, Set.of(3L));
-        var actual = filmStorage.getFilmById(2L);
-
-        assertThat(actual)
-                .isPresent()
-                .hasValueSatisfying(obj -> {
-                    assertThat(obj).hasFieldOrPropertyWithValue("id", 2L);
-                    assertThat(obj).hasFieldOrPropertyWithValue("directors", Set.of());
-                });
-    }
-
     @Test
     @Sql({"/test-data.sql"})
     void deleteFilmById() {
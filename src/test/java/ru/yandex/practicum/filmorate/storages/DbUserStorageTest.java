@@ -17,6 +17,8 @@ import java.util.stream.Collectors;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest
 @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
@@ -34,6 +36,16 @@ class DbUserStorageTest {
         assertEquals(3, actual.size());
     }
 
+    @Test
+    @Sql({"/test-data.sql"})
+    void getUsers_returnsPagesAfterCursor() {
+        var firstPage = userStorage.getUsers(null, 2);
+        var secondPage = userStorage.getUsers(firstPage.get(1).getId(), 2);
+
+        assertEquals(List.of(1L, 2L), firstPage.stream().map(User::getId).collect(Collectors.toList()));
+        assertEquals(List.of(3L), secondPage.stream().map(User::getId).collect(Collectors.toList()));
+    }
+
     @Test
     @Sql({"/data-clear.sql"})
     void createUser() {
@@ -147,6 +159,38 @@ class DbUserStorageTest {
         assertEquals(3L, actual.get(1).getId());
     }
 
+    @Test
+    @Sql({"/test-data.sql"})
+    void getFriendIds() {
+        assertEquals(List.of(2L, 3L), userStorage.getFriendIds(1L));
+        assertTrue(userStorage.getFriendIds(100L).isEmpty());
+    }
+
+    @Test
+    @Sql({"/test-data.sql"})
+    void existsUser() {
+        assertTrue(userStorage.existsUser(1L));
+        assertFalse(userStorage.existsUser(100L));
+    }
+
+    @Test
+    @Sql({"/test-data.sql"})
+    void existingIds() {
+        assertEquals(Set.of(1L, 3L), userStorage.existingIds(Set.of(1L, 3L, 100L)));
+        assertTrue(userStorage.existingIds(Set.of()).isEmpty());
+    }
+
+    @Test
+    @Sql({"/test-data.sql"})
+    void getCommonFriends() {
+        List<User> actual = userStorage.getCommonFriends(1L, 2L);
+
+        assertEquals(1, actual.size());
+        assertEquals(3L, actual.get(0).getId());
+        assertEquals("user3", actual.get(0).getName());
+        assertTrue(userStorage.getCommonFriends(1L, 3L).isEmpty());
+    }
+
     @Test
     @Sql({"/test-data.sql"})
     void deleteUserById() {
@@ -0,0 +1,130 @@
+package ru.yandex.practicum.filmorate.storages;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.yandex.practicum.filmorate.models.Event;
+import ru.yandex.practicum.filmorate.models.EventType;
+import ru.yandex.practicum.filmorate.models.Operation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FeedSegmentArchiveTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void getUserFeed_readsAuthorsAcrossSegmentsInFeedOrder() {
+        FeedSegmentArchive archive = new FeedSegmentArchive(directory.toString());
+        archive.writeSegment(List.of(
+                event(1L, 1L, EventType.FRIEND, Operation.ADD, 100L),
+                event(2L, 2L, EventType.LIKE, Operation.ADD, 110L),
+                event(3L, 2L, EventType.FRIEND, Operation.ADD, 120L),
+                event(4L, 3L, EventType.LIKE, Operation.ADD, 130L)));
+        archive.writeSegment(List.of(
+                event(5L, 2L, EventType.REVIEW, Operation.UPDATE, 105L),
+                event(6L, 1L, EventType.LIKE, Operation.REMOVE, 140L)));
+
+        List<Event> feed = archive.getUserFeed(List.of(2L, 1L), 1L);
+
+        assertThat(feed).extracting(Event::getEventId).containsExactly(1L, 5L, 2L, 6L);
+        assertThat(feed.get(1)).isEqualTo(event(5L, 2L, EventType.REVIEW, Operation.UPDATE, 105L));
+        assertThat(feed.get(3)).isEqualTo(event(6L, 1L, EventType.LIKE, Operation.REMOVE, 140L));
+    }
+
+    @Test
+    void getUserFeedBeforeAndAfter_readPagesAcrossOverlappingSegments() {
+        FeedSegmentArchive archive = new FeedSegmentArchive(directory.toString());
+        archive.writeSegment(List.of(
+                event(1L, 1L, EventType.FRIEND, Operation.ADD, 100L),
+                event(2L, 2L, EventType.LIKE, Operation.ADD, 110L),
+                event(3L, 2L, EventType.FRIEND, Operation.ADD, 120L),
+                event(4L, 3L, EventType.LIKE, Operation.ADD, 130L)));
+        archive.writeSegment(List.of(
+                event(5L, 2L, EventType.REVIEW, Operation.UPDATE, 105L),
+                event(6L, 1L, EventType.LIKE, Operation.REMOVE, 140L),
+                event(7L, 1L, EventType.LIKE, Operation.ADD, 140L)));
+        List<Long> authorIds = List.of(2L, 1L);
+
+        assertThat(archive.getUserFeedBefore(authorIds, 1L, null, 2))
+                .extracting(Event::getEventId).containsExactly(6L, 7L);
+        assertThat(archive.getUserFeedBefore(authorIds, 1L, archive.getEvent(7L, authorIds).orElseThrow(), 3))
+                .extracting(Event::getEventId).containsExactly(5L, 2L, 6L);
+        assertThat(archive.getUserFeedBefore(authorIds, 1L, archive.getEvent(5L, authorIds).orElseThrow(), 3))
+                .extracting(Event::getEventId).containsExactly(1L);
+        assertThat(archive.getUserFeedAfter(authorIds, 1L, archive.getEvent(1L, authorIds).orElseThrow(), 2))
+                .extracting(Event::getEventId).containsExactly(5L, 2L);
+        assertThat(archive.getUserFeedAfter(authorIds, 1L, archive.getEvent(6L, authorIds).orElseThrow(), 2))
+                .extracting(Event::getEventId).containsExactly(7L);
+    }
+
+    @Test
+    void getEvent_findsOnlyEventsOfGivenAuthors() {
+        FeedSegmentArchive archive = new FeedSegmentArchive(directory.toString());
+        archive.writeSegment(List.of(
+                event(1L, 1L, EventType.FRIEND, Operation.ADD, 100L),
+                event(2L, 3L, EventType.LIKE, Operation.ADD, 110L)));
+
+        assertThat(archive.getEvent(1L, List.of(1L))).contains(event(1L, 1L, EventType.FRIEND, Operation.ADD, 100L));
+        assertThat(archive.getEvent(2L, List.of(1L))).isEmpty();
+        assertThat(archive.getEvent(9L, List.of(1L, 3L))).isEmpty();
+    }
+
+    @Test
+    void segments_areLoadedFromDirectory() {
+        FeedSegmentArchive archive = new FeedSegmentArchive(directory.toString());
+        archive.writeSegment(List.of(event(1L, 1L, EventType.LIKE, Operation.ADD, 100L)));
+        archive.writeSegment(List.of(
+                event(3L, 2L, EventType.LIKE, Operation.ADD, 120L),
+                event(2L, 1L, EventType.REVIEW, Operation.ADD, 110L)));
+
+        FeedSegmentArchive reopened = new FeedSegmentArchive(directory.toString());
+
+        assertThat(reopened.isEmpty()).isFalse();
+        assertThat(reopened.getUserFeed(List.of(1L), 1L)).extracting(Event::getEventId).containsExactly(1L, 2L);
+        assertThat(reopened.getLastSegmentEventIds()).containsExactlyInAnyOrder(2L, 3L);
+    }
+
+    @Test
+    void segments_ifWrittenInFormerFormat_thenRead() throws IOException {
+        // заголовок, индекс одного автора и запись с user_id: event_id, user_id, entity_id, тип и операция, timestamp
+        ByteBuffer buffer = ByteBuffer.allocate(12 + 12 + 21)
+                .putInt(0x46454544).putInt(1).putInt(1)
+                .putInt(1).putInt(0).putInt(1)
+                .putInt(7).putInt(1).putInt(17)
+                .put((byte) (EventType.LIKE.ordinal() << 4 | Operation.ADD.ordinal()))
+                .putLong(100L);
+        Files.write(directory.resolve("0000000001.seg"), buffer.array());
+
+        FeedSegmentArchive archive = new FeedSegmentArchive(directory.toString());
+
+        assertThat(archive.getEvent(7L, List.of(1L))).contains(event(7L, 1L, EventType.LIKE, Operation.ADD, 100L));
+        assertThat(archive.getUserFeed(List.of(1L), 1L)).extracting(Event::getEventId).containsExactly(7L);
+    }
+
+    @Test
+    void emptyArchive_thenNothingRead() {
+        FeedSegmentArchive archive = new FeedSegmentArchive(directory.resolve("missing").toString());
+
+        assertThat(archive.isEmpty()).isTrue();
+        assertThat(archive.getUserFeed(List.of(1L), 1L)).isEmpty();
+        assertThat(archive.getLastSegmentEventIds()).isEmpty();
+    }
+
+    private static Event event(long eventId, long userId, EventType eventType, Operation operation, long timestamp) {
+        return Event.builder()
+                .eventId(eventId)
+                .userId(userId)
+                .entityId(10L + eventId)
+                .eventType(eventType)
+                .operation(operation)
+                .timestamp(timestamp)
+                .build();
+    }
+}
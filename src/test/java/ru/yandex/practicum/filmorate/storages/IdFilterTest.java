@@ -0,0 +1,98 @@
+package ru.yandex.practicum.filmorate.storages;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.ResultSet;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class IdFilterTest {
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void mightContain_ifDisabled_thenAlwaysTrueWithoutQuery() {
+        IdFilter filter = new IdFilter(jdbcTemplate, "users", false);
+
+        assertTrue(filter.mightContain(1L));
+        assertTrue(filter.mightContain(-1L));
+        verify(jdbcTemplate, never()).query(anyString(), any(RowCallbackHandler.class));
+    }
+
+    @Test
+    void mightContain_loadsIdsOnceAndRejectsMissing() throws Exception {
+        givenTableIds(1, 3);
+        IdFilter filter = new IdFilter(jdbcTemplate, "users", true);
+
+        assertTrue(filter.mightContain(1L));
+        assertTrue(filter.mightContain(3L));
+        assertFalse(filter.mightContain(2L));
+        assertFalse(filter.mightContain(0L));
+        assertFalse(filter.mightContain(-1L));
+        assertFalse(filter.mightContain(Integer.MAX_VALUE + 1L));
+        verify(jdbcTemplate, times(1)).query(eq("select id from users"), any(RowCallbackHandler.class));
+    }
+
+    @Test
+    void addAndRemove_outsideTransaction_thenApplyImmediately() throws Exception {
+        givenTableIds(1);
+        IdFilter filter = new IdFilter(jdbcTemplate, "users", true);
+
+        filter.add(5L);
+        assertTrue(filter.mightContain(5L));
+
+        filter.remove(1L);
+        assertFalse(filter.mightContain(1L));
+    }
+
+    @Test
+    void remove_insideTransaction_thenClearedOnlyAfterCommit() throws Exception {
+        givenTableIds(1);
+        IdFilter filter = new IdFilter(jdbcTemplate, "users", true);
+        TransactionSynchronizationManager.initSynchronization();
+
+        filter.remove(1L);
+        assertTrue(filter.mightContain(1L));
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertFalse(filter.mightContain(1L));
+    }
+
+    private void givenTableIds(int... ids) throws Exception {
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (int id : ids) {
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.getInt("id")).thenReturn(id);
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class));
+    }
+}
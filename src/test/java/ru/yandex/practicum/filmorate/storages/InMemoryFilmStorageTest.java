@@ -1,14 +1,18 @@
 package ru.yandex.practicum.filmorate.storages;
 
 import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.models.Director;
 import ru.yandex.practicum.filmorate.models.Film;
+import ru.yandex.practicum.filmorate.models.Genre;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -141,8 +145,8 @@ class InMemoryFilmStorageTest {
 
     @Test
     void getMostPopularFilms_isReturnSortedDescByNumLikes() {
-        Film film1 = Film.builder().id(1L).likes(Set.of(1L, 2L, 3L)).build();
-        Film film2 = Film.builder().id(2L).likes(Set.of(1L, 2L)).build();
+        Film film1 = Film.builder().id(1L).likeCount(3).build();
+        Film film2 = Film.builder().id(2L).likeCount(2).build();
         Film film3 = Film.builder().id(3L).build();
         InMemoryFilmStorage storage = new InMemoryFilmStorage();
         storage.getFilms().put(film2.getId(), film2);
@@ -155,4 +159,72 @@ class InMemoryFilmStorageTest {
         assertEquals(film1, mostPopularFilms.get(0));
         assertEquals(film2, mostPopularFilms.get(1));
     }
-}
\ No newline at end of file
+
+    @Test
+    void createFilmLike_ifAlreadyLiked_thenCountedOnce() {
+        InMemoryFilmStorage storage = new InMemoryFilmStorage();
+        long filmId = storage.createFilm(Film.builder().name("name").build()).getId();
+
+        assertTrue(storage.createFilmLike(filmId, 1L));
+        assertFalse(storage.createFilmLike(filmId, 1L));
+        assertTrue(storage.createFilmLike(filmId, 2L));
+        assertTrue(storage.removeFilmLike(filmId, 1L));
+        assertFalse(storage.removeFilmLike(filmId, 1L));
+
+        assertEquals(1, storage.getFilmById(filmId).orElseThrow().getLikeCount());
+    }
+
+    @Test
+    void getCommonFilms_returnIntersectionSortedDescByNumLikes() {
+        InMemoryFilmStorage storage = new InMemoryFilmStorage();
+        long first = storage.createFilm(Film.builder().name("first").build()).getId();
+        long second = storage.createFilm(Film.builder().name("second").build()).getId();
+        long third = storage.createFilm(Film.builder().name("third").build()).getId();
+        storage.createFilmLike(first, 1L);
+        storage.createFilmLike(second, 1L);
+        storage.createFilmLike(second, 2L);
+        storage.createFilmLike(second, 3L);
+        storage.createFilmLike(third, 1L);
+        storage.createFilmLike(third, 2L);
+
+        List<Film> actual = storage.getCommonFilms(1L, 2L);
+
+        assertEquals(List.of(second, third), actual.stream().map(Film::getId).collect(Collectors.toList()));
+        assertTrue(storage.getCommonFilms(1L, 4L).isEmpty());
+    }
+
+    @Test
+    void getCommonFilms_ifLikeRemoved_thenFilmNotCommon() {
+        InMemoryFilmStorage storage = new InMemoryFilmStorage();
+        long first = storage.createFilm(Film.builder().name("first").build()).getId();
+        long second = storage.createFilm(Film.builder().name("second").build()).getId();
+        storage.createFilmLike(first, 1L);
+        storage.createFilmLike(first, 2L);
+        storage.createFilmLike(second, 1L);
+        storage.createFilmLike(second, 2L);
+
+        storage.removeFilmLike(first, 2L);
+
+        assertEquals(List.of(second), storage.getCommonFilms(1L, 2L).stream()
+                .map(Film::getId)
+                .collect(Collectors.toList()));
+    }
+
+    @Test
+    void setFilmGenresAndDirectors_replacesAssociations() {
+        InMemoryFilmStorage storage = new InMemoryFilmStorage();
+        Genre comedy = Genre.builder().id(1L).name("Комедия").build();
+        Director director = Director.builder().id(1L).name("firstDirector").build();
+        long filmId = storage.createFilm(Film.builder().name("film")
+                .genres(new HashSet<>(Set.of(comedy)))
+                .directors(new HashSet<>(Set.of(director)))
+                .build()).getId();
+
+        storage.setFilmGenres(filmId, Set.of(1L, 2L));
+        storage.setFilmDirectors(filmId, Set.of());
+
+        Film actual = storage.getFilmById(filmId).orElseThrow();
+        assertEquals(Set.of(comedy, Genre.builder().id(2L).build()), actual.getGenres());
+        assertTrue(actual.getDirectors().isEmpty());
+    }
+}
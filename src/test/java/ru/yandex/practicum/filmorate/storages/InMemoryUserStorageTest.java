@@ -156,4 +156,22 @@ class InMemoryUserStorageTest {
         assertEquals(user1, founded.get(0));
         assertNotSame(user1, founded.get(0));
     }
-}
\ No newline at end of file
+
+    @Test
+    void getCommonFriends_returnIntersectionOfFriends() {
+        InMemoryUserStorage storage = new InMemoryUserStorage();
+        long first = storage.createUser(User.builder().name("first").build()).getId();
+        long second = storage.createUser(User.builder().name("second").build()).getId();
+        long third = storage.createUser(User.builder().name("third").build()).getId();
+        long fourth = storage.createUser(User.builder().name("fourth").build()).getId();
+        storage.createFriend(first, third);
+        storage.createFriend(first, fourth);
+        storage.createFriend(second, third);
+
+        List<User> actual = storage.getCommonFriends(first, second);
+
+        assertEquals(1, actual.size());
+        assertEquals(third, actual.get(0).getId());
+        assertTrue(storage.getCommonFriends(first, 100L).isEmpty());
+    }
+}
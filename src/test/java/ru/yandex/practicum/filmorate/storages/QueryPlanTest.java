@@ -0,0 +1,176 @@
+package ru.yandex.practicum.filmorate.storages;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.models.Event;
+import ru.yandex.practicum.filmorate.models.EventType;
+import ru.yandex.practicum.filmorate.models.FilmSort;
+import ru.yandex.practicum.filmorate.models.Operation;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Проверка планов запросов хранилищ на заполненной базе.
+ * Запросы, выполненные методами хранилищ с поиском по ключу, собираются из статистики H2
+ * и прогоняются через EXPLAIN. Тест падает, если какой-либо из них читает большую таблицу целиком.
+ * Новые методы с поиском по ключу нужно добавлять в список вызовов теста.
+ * Лента проверяется в обоих режимах: запросы feed_timeline выполняет хранилище с fan-out-on-write.
+ */
+@SpringBootTest
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+class QueryPlanTest {
+    private static final int ROWS = 2000;
+    private static final Pattern TABLE_SCAN = Pattern.compile("PUBLIC\\.(\\w+)\\.tableScan");
+    // справочники малы и читаются целиком намеренно
+    private static final Set<String> SMALL_TABLES = Set.of("GENRES", "DIRECTORS");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private FilmStorage filmStorage;
+
+    @Autowired
+    private UserStorage userStorage;
+
+    @Autowired
+    private ReviewStorage reviewStorage;
+
+    @Autowired
+    private FeedStorage feedStorage;
+
+    @Autowired
+    private DirectorStorage directorStorage;
+
+    @Autowired
+    private FeedSegmentArchive archive;
+
+    private DbFeedStorage fanOutFeedStorage;
+
+    @BeforeEach
+    void seed() {
+        fanOutFeedStorage = new DbFeedStorage(jdbcTemplate, archive, true);
+        jdbcTemplate.update("insert into users (email, login, name, birthday) " +
+                "select 'u' || x || '@mail.ru', 'u' || x, 'u' || x, date '1990-01-01' from system_range(1, ?)", ROWS);
+        jdbcTemplate.update("insert into films (name, description, release_date, duration, rating) " +
+                "select 'film' || x, 'descr', dateadd(day, x, date '1950-01-01'), 100, 'PG' " +
+                "from system_range(1, ?)", ROWS);
+        jdbcTemplate.update("insert into film_likes (film_id, user_id) " +
+                "select f.x, u.x from system_range(1, ?) as f join system_range(1, 10) as u on true", ROWS);
+        jdbcTemplate.update("insert into user_friends (user_id, friend_id) " +
+                "select x, mod(x, ?) + 1 from system_range(1, ?)", ROWS, ROWS);
+        jdbcTemplate.update("insert into film_genres (film_id, genre_id) " +
+                "select x, mod(x, 6) + 1 from system_range(1, ?)", ROWS);
+        jdbcTemplate.update("insert into directors (name) select 'director' || x from system_range(1, 10)");
+        jdbcTemplate.update("insert into film_directors (film_id, director_id) " +
+                "select x, mod(x, 10) + 1 from system_range(1, ?)", ROWS);
+        jdbcTemplate.update("insert into reviews (film_id, user_id, content, is_positive) " +
+                "select mod(x, ?) + 1, x, 'review', true from system_range(1, ?)", ROWS, ROWS);
+        jdbcTemplate.update("insert into feed (user_id, entity_id, event_type, operation, timestamp) " +
+                "select mod(x, ?) + 1, x, 'LIKE', 'ADD', x from system_range(1, ?)", ROWS, ROWS * 5);
+        jdbcTemplate.update("insert into feed_outbox (user_id, entity_id, event_type, operation, timestamp) " +
+                "select mod(x, ?) + 1, x, 'LIKE', 'ADD', x from system_range(1, ?)", ROWS, ROWS);
+        fanOutFeedStorage.initTimelines();
+        jdbcTemplate.execute("analyze");
+        jdbcTemplate.execute("set query_statistics true");
+    }
+
+    @Test
+    void keyLookups_doNotScanLargeTables() {
+        filmStorage.getFilmById(5L);
+        filmStorage.existsFilm(5L);
+        filmStorage.existingIds(Set.of(1L, 2L));
+        filmStorage.getFilmsByIds(Set.of(1L, 2L, 3L));
+        filmStorage.getFilms(100L, 20);
+        filmStorage.getFilmsByDirector(1L, FilmSort.LIKES);
+        filmStorage.getFilmsByDirector(1L, FilmSort.YEAR);
+        filmStorage.getFilmsByDirectors(Set.of(1L, 2L));
+        filmStorage.getUserFilmLikes(7L);
+        filmStorage.getCommonFilms(7L, 8L);
+        userStorage.getUserById(5L);
+        userStorage.existsUser(5L);
+        userStorage.existingIds(Set.of(1L, 2L));
+        userStorage.getUsers(100L, 20);
+        userStorage.getUsersById(Set.of(1L, 2L));
+        userStorage.getUserFriends(5L);
+        userStorage.getCommonFriends(5L, 6L);
+        reviewStorage.getReviewById(5L);
+        reviewStorage.getReviews(5L, 10);
+        directorStorage.getDirectorById(1L);
+        feedStorage.getUserFeed(Map.of(
+                "userIds", List.of(1L, 2L, 3L),
+                "likeType", EventType.LIKE.name(),
+                "reviewType", EventType.REVIEW.name(),
+                "userId", 1L));
+        feedStorage.getUserFeed(Map.of(
+                "userIds", List.of(1L, 2L, 3L),
+                "likeType", EventType.LIKE.name(),
+                "reviewType", EventType.REVIEW.name(),
+                "userId", 1L,
+                "limit", 20,
+                "before", 100L));
+        feedStorage.getEventsBefore(1000L, 20);
+        feedStorage.removeEvents(List.of(1L, 2L));
+        feedStorage.getOutboxEvents(20);
+        feedStorage.removeOutboxEvents(List.of(1L, 2L));
+        fanOutFeedStorage.getUserFeed(Map.of(
+                "userId", 1L,
+                "limit", 20,
+                "before", 100L));
+        fanOutFeedStorage.addEvent(Event.builder().userId(3L).entityId(1L)
+                .eventType(EventType.LIKE).operation(Operation.ADD).timestamp(ROWS * 10L).build());
+        fanOutFeedStorage.addFriendEvents(7L, 9L);
+        fanOutFeedStorage.removeFriendEvents(7L, 9L);
+        userStorage.removeFriend(5L, 6L);
+        userStorage.deleteUserById(10L);
+
+        List<String> statements = jdbcTemplate.queryForList(
+                "select sql_statement from information_schema.query_statistics", String.class);
+        List<String> violations = new ArrayList<>();
+        for (String sql : statements) {
+            String statement = sql.trim().toLowerCase();
+            if (!statement.startsWith("select") && !statement.startsWith("update")
+                    && !statement.startsWith("delete") && !statement.startsWith("insert")) {
+                continue;
+            }
+            String plan = explain(sql);
+            Matcher matcher = TABLE_SCAN.matcher(plan);
+            while (matcher.find()) {
+                if (!SMALL_TABLES.contains(matcher.group(1))) {
+                    violations.add(matcher.group(1) + ": " + sql + "\n" + plan);
+                }
+            }
+        }
+        assertTrue(statements.size() > 10, "Статистика запросов не собрана");
+        assertTrue(violations.isEmpty(), String.join("\n\n", violations));
+    }
+
+    private String explain(String sql) {
+        return jdbcTemplate.execute((Connection con) -> {
+            try (PreparedStatement ps = con.prepareStatement("explain " + sql)) {
+                int count = ps.getParameterMetaData().getParameterCount();
+                for (int i = 1; i <= count; i++) {
+                    ps.setLong(i, 1L);
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                    return rs.getString(1);
+                }
+            }
+        });
+    }
+}